@@ -1,7 +1,7 @@
 #!/usr/bin/env bash
 
 export LAUNCHER="io.vertx.core.Launcher"
-export VERTICLE="tech.pinhole.service.verticle.APIGatewayVerticle"
+export VERTICLE="tech.pinhole.service.verticle.APIGatewayDeploymentVerticle"
 export CMD="mvn compile"
 export VERTX_CMD="run"
 
@@ -0,0 +1,263 @@
+package tech.pinhole.service.gateway;
+
+import io.vertx.circuitbreaker.CircuitBreaker;
+import io.vertx.circuitbreaker.CircuitBreakerOptions;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.json.JsonObject;
+import io.vertx.servicediscovery.Record;
+import io.vertx.servicediscovery.ServiceDiscovery;
+import io.vertx.servicediscovery.ServiceDiscoveryOptions;
+import io.vertx.servicediscovery.Status;
+import io.vertx.servicediscovery.types.HttpLocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Registry of the backend service instances the gateway sends its requests to.
+ * <p>
+ * One keep-alive, pipelined client (and so one connection pool) is created per service record and reused by every
+ * request, the service discovery is only queried the first time a service is used. Records are then kept up to
+ * date from the discovery announcements, the client of a record which goes away is closed.
+ * </p>
+ * <p>
+ * Requests are spread over every available record of a service by the configured {@link LoadBalancingStrategy}.
+ * Each record has its own circuit breaker, so a failing instance is ejected without taking its healthy siblings
+ * down with it, and can optionally be probed actively.
+ * </p>
+ * <p>
+ * Not thread safe, an instance belongs to the verticle which created it and is only used from its context.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class BackendClientRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackendClientRegistry.class);
+
+    private static final String CLIENT_MAX_POOL_SIZE = "api.gateway.client.max.pool.size";
+    private static final String CLIENT_MAX_WAIT_QUEUE_SIZE = "api.gateway.client.max.wait.queue.size";
+    private static final String CLIENT_KEEP_ALIVE = "api.gateway.client.keep.alive";
+    private static final String CLIENT_PIPELINING = "api.gateway.client.pipelining";
+    private static final String CLIENT_PIPELINING_LIMIT = "api.gateway.client.pipelining.limit";
+    private static final String CLIENT_CONNECT_TIMEOUT_MS = "api.gateway.client.connect.timeout.ms";
+    private static final String CLIENT_IDLE_TIMEOUT_SECONDS = "api.gateway.client.idle.timeout.seconds";
+    private static final String CLIENT_HTTP2 = "api.gateway.client.http2";
+    private static final String CLIENT_HTTP2_MAX_POOL_SIZE = "api.gateway.client.http2.max.pool.size";
+    private static final String CLIENT_HTTP2_MULTIPLEXING_LIMIT = "api.gateway.client.http2.multiplexing.limit";
+    private static final String LOAD_BALANCING_STRATEGY = "api.gateway.load.balancing.strategy";
+    private static final String HEALTH_CHECK_INTERVAL_MS = "api.gateway.health.check.interval.ms";
+    private static final String HEALTH_CHECK_PATH = "api.gateway.health.check.path";
+    private static final String HEALTH_CHECK_TIMEOUT_MS = "api.gateway.health.check.timeout.ms";
+
+    private final Vertx vertx;
+    private final ServiceDiscovery discovery;
+    private final JsonObject config;
+    private final CircuitBreakerOptions breakerOptions;
+    private final LoadBalancingStrategy strategy;
+
+    /**
+     * Service name to its available instances, only for the services which were already used.
+     */
+    private final Map<String, List<BackendInstance>> instances = new HashMap<>();
+
+    /**
+     * Requests waiting for the discovery lookup of a service, a service is looked up once however many requests
+     * need it.
+     */
+    private final Map<String, List<Handler<AsyncResult<List<BackendInstance>>>>> lookups = new HashMap<>();
+
+    private final MessageConsumer<JsonObject> announcements;
+    private final long healthCheckTimer;
+
+    public BackendClientRegistry(Vertx vertx, ServiceDiscovery discovery, JsonObject config,
+                                 CircuitBreakerOptions breakerOptions) {
+        this.vertx = vertx;
+        this.discovery = discovery;
+        this.config = config;
+        this.breakerOptions = breakerOptions;
+        this.strategy = LoadBalancingStrategy.create(
+                config.getString(LOAD_BALANCING_STRATEGY, LoadBalancingStrategy.POWER_OF_TWO_CHOICES));
+        this.announcements = vertx.eventBus().consumer(ServiceDiscoveryOptions.DEFAULT_ANNOUNCE_ADDRESS,
+                message -> onAnnouncement(new Record(message.body())));
+
+        final long healthCheckInterval = config.getLong(HEALTH_CHECK_INTERVAL_MS, 0L);
+        this.healthCheckTimer = healthCheckInterval > 0 ? vertx.setPeriodic(healthCheckInterval, id -> probe()) : -1;
+    }
+
+    /**
+     * Sends a request to an available instance of the service.
+     *
+     * @param serviceName name the service is published with.
+     * @param command     sends the request with the given client and completes the given future with the response,
+     *                    with {@code tryComplete} / {@code tryFail} as a connection can fail after the response.
+     * @param handler     response, paused until the handler returns so its body can still be read or pumped.
+     */
+    public void execute(String serviceName, BiConsumer<HttpClient, Future<HttpClientResponse>> command,
+                        Handler<AsyncResult<HttpClientResponse>> handler) {
+        getInstances(serviceName, ar -> {
+            if (ar.failed()) {
+                handler.handle(Future.failedFuture(ar.cause()));
+                return;
+            }
+            final List<BackendInstance> available = ar.result().stream()
+                    .filter(BackendInstance::isAvailable)
+                    .collect(Collectors.toList());
+            if (available.isEmpty()) {
+                handler.handle(Future.failedFuture("No healthy instance of service " + serviceName));
+            } else {
+                strategy.select(available).execute(command, handler);
+            }
+        });
+    }
+
+    /**
+     * Gets the instances of the service, from the discovery the first time, from the registry afterwards.
+     *
+     * @param serviceName name the service is published with.
+     * @param handler     instances, never empty, failed if the service has no available record.
+     */
+    private void getInstances(String serviceName, Handler<AsyncResult<List<BackendInstance>>> handler) {
+        final List<BackendInstance> known = instances.get(serviceName);
+        if (known != null && !known.isEmpty()) {
+            handler.handle(Future.succeededFuture(known));
+            return;
+        }
+
+        List<Handler<AsyncResult<List<BackendInstance>>>> waiting = lookups.get(serviceName);
+        if (waiting != null) {
+            waiting.add(handler);
+            return;
+        }
+        waiting = new ArrayList<>();
+        waiting.add(handler);
+        lookups.put(serviceName, waiting);
+
+        discovery.getRecords(new JsonObject().put("name", serviceName), ar -> {
+            final List<Handler<AsyncResult<List<BackendInstance>>>> handlers = lookups.remove(serviceName);
+            final AsyncResult<List<BackendInstance>> result;
+            if (ar.failed()) {
+                result = Future.failedFuture(ar.cause());
+            } else if (ar.result().isEmpty()) {
+                result = Future.failedFuture("No available record for service " + serviceName);
+            } else {
+                // announcements received meanwhile are already part of the lookup result
+                final List<BackendInstance> discovered = new ArrayList<>();
+                ar.result().forEach(record -> discovered.add(instance(record)));
+                final List<BackendInstance> previous = instances.put(serviceName, discovered);
+                if (previous != null) {
+                    previous.forEach(BackendInstance::close);
+                }
+                result = Future.succeededFuture(discovered);
+            }
+            handlers.forEach(waitingHandler -> waitingHandler.handle(result));
+        });
+    }
+
+    private BackendInstance instance(Record record) {
+        final HttpClient client = vertx.createHttpClient(clientOptions(new HttpLocation(record.getLocation())));
+        final CircuitBreaker breaker = CircuitBreaker.create(
+                record.getName() + "-" + record.getRegistration(), vertx, breakerOptions);
+        return new BackendInstance(record, client, breaker);
+    }
+
+    private HttpClientOptions clientOptions(HttpLocation location) {
+        final HttpClientOptions options = new HttpClientOptions()
+                .setDefaultHost(location.getHost())
+                .setDefaultPort(location.getPort())
+                .setSsl(location.isSsl())
+                .setKeepAlive(config.getBoolean(CLIENT_KEEP_ALIVE, true))
+                .setPipelining(config.getBoolean(CLIENT_PIPELINING, true))
+                .setPipeliningLimit(config.getInteger(CLIENT_PIPELINING_LIMIT, 10))
+                .setMaxPoolSize(config.getInteger(CLIENT_MAX_POOL_SIZE, 20))
+                .setMaxWaitQueueSize(config.getInteger(CLIENT_MAX_WAIT_QUEUE_SIZE, 1000))
+                .setConnectTimeout(config.getInteger(CLIENT_CONNECT_TIMEOUT_MS, 5000))
+                .setIdleTimeout(config.getInteger(CLIENT_IDLE_TIMEOUT_SECONDS, 60));
+        if (config.getBoolean(CLIENT_HTTP2, false)) {
+            // requests are multiplexed over a few connections, clear text ones with prior knowledge (h2c)
+            options.setProtocolVersion(HttpVersion.HTTP_2)
+                    .setUseAlpn(location.isSsl())
+                    .setHttp2ClearTextUpgrade(false)
+                    .setHttp2MaxPoolSize(config.getInteger(CLIENT_HTTP2_MAX_POOL_SIZE, 1))
+                    .setHttp2MultiplexingLimit(config.getInteger(CLIENT_HTTP2_MULTIPLEXING_LIMIT, 100));
+        }
+        return options;
+    }
+
+    /**
+     * Keeps the instances of the used services in line with the discovery. A record which is not up any more (the
+     * discovery announces unpublished records as down, without their registration, so these are matched by their
+     * location) is removed and its client closed, a modified record gets a new instance.
+     */
+    private void onAnnouncement(Record announced) {
+        final List<BackendInstance> known = instances.get(announced.getName());
+        if (known == null || (announced.getRegistration() == null && announced.getStatus() == Status.UP)) {
+            return;
+        }
+
+        for (Iterator<BackendInstance> iterator = known.iterator(); iterator.hasNext(); ) {
+            final BackendInstance instance = iterator.next();
+            if (announced.getRegistration() == null
+                    ? instance.record().getLocation().equals(announced.getLocation())
+                    : instance.record().getRegistration().equals(announced.getRegistration())) {
+                if (announced.getStatus() == Status.UP
+                        && instance.record().getLocation().equals(announced.getLocation())) {
+                    return;
+                }
+                iterator.remove();
+                instance.close();
+            }
+        }
+        if (announced.getStatus() == Status.UP) {
+            known.add(instance(announced));
+        }
+        logger.info("Service <" + announced.getName() + "> now has " + known.size() + " instance(s)");
+    }
+
+    /**
+     * Active health check, an instance which does not answer the probe or answers it with a server error gets no
+     * traffic until it answers again.
+     */
+    private void probe() {
+        final String path = config.getString(HEALTH_CHECK_PATH, "/");
+        final long timeout = config.getLong(HEALTH_CHECK_TIMEOUT_MS, 2000L);
+        instances.values().forEach(serviceInstances -> serviceInstances.forEach(instance ->
+                instance.client().get(path, response -> {
+                    instance.setProbeHealthy(response.statusCode() < 500);
+                    response.exceptionHandler(t -> { }).handler(data -> { });
+                }).exceptionHandler(t -> {
+                    if (instance.isAvailable()) {
+                        logger.warn("Health probe of " + instance.record().getName() + " at "
+                                + instance.record().getLocation() + " failed", t);
+                    }
+                    instance.setProbeHealthy(false);
+                }).setTimeout(timeout).end()));
+    }
+
+    /**
+     * Closes every client, to be called when the owning verticle stops.
+     */
+    public void close() {
+        if (healthCheckTimer >= 0) {
+            vertx.cancelTimer(healthCheckTimer);
+        }
+        announcements.unregister();
+        instances.values().forEach(serviceInstances -> serviceInstances.forEach(BackendInstance::close));
+        instances.clear();
+    }
+}
@@ -0,0 +1,107 @@
+package tech.pinhole.service.gateway;
+
+import io.vertx.circuitbreaker.CircuitBreaker;
+import io.vertx.circuitbreaker.CircuitBreakerState;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.servicediscovery.Record;
+
+import java.util.function.BiConsumer;
+
+/**
+ * One backend service record, with its pooled client, its own circuit breaker and the count of requests in flight.
+ * <p>
+ * The breaker ejects the instance passively: once it has seen too many failed or timed out requests it opens and
+ * the instance gets no traffic until the breaker lets a trial request through. An active health probe can eject it
+ * too.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class BackendInstance {
+
+    private final Record record;
+    private final HttpClient client;
+    private final CircuitBreaker breaker;
+    private int outstanding;
+    private boolean probeHealthy = true;
+
+    public BackendInstance(Record record, HttpClient client, CircuitBreaker breaker) {
+        this.record = record;
+        this.client = client;
+        this.breaker = breaker;
+    }
+
+    public Record record() {
+        return record;
+    }
+
+    public HttpClient client() {
+        return client;
+    }
+
+    public int outstanding() {
+        return outstanding;
+    }
+
+    /**
+     * A half open breaker lets a single trial request through, so a half open instance is only available while it
+     * has nothing in flight.
+     *
+     * @return whether the instance should get traffic.
+     */
+    public boolean isAvailable() {
+        final CircuitBreakerState state = breaker.state();
+        return probeHealthy
+                && state != CircuitBreakerState.OPEN
+                && (state != CircuitBreakerState.HALF_OPEN || outstanding == 0);
+    }
+
+    public void setProbeHealthy(boolean probeHealthy) {
+        this.probeHealthy = probeHealthy;
+    }
+
+    /**
+     * Sends a request to the instance through its circuit breaker.
+     * <p>
+     * The response is paused until the handler got it, the breaker hands results over asynchronously and the body
+     * would otherwise be lost before the handler had a chance to read it.
+     * </p>
+     *
+     * @param command sends the request with the given client and completes the given future with the response.
+     * @param handler response, or the failure of the request.
+     */
+    public void execute(BiConsumer<HttpClient, Future<HttpClientResponse>> command,
+                        Handler<AsyncResult<HttpClientResponse>> handler) {
+        outstanding++;
+        breaker.<HttpClientResponse>execute(attempt -> {
+            final Future<HttpClientResponse> sent = Future.future();
+            sent.setHandler(ar -> {
+                if (ar.succeeded()) {
+                    ar.result().pause();
+                    if (!attempt.tryComplete(ar.result())) {
+                        // the breaker timed the request out meanwhile
+                        ar.result().resume();
+                    }
+                } else {
+                    attempt.tryFail(ar.cause());
+                }
+            });
+            command.accept(client, sent);
+        }).setHandler(ar -> {
+            outstanding--;
+            handler.handle(ar);
+            if (ar.succeeded()) {
+                ar.result().resume();
+            }
+        });
+    }
+
+    public void close() {
+        breaker.close();
+        client.close();
+    }
+}
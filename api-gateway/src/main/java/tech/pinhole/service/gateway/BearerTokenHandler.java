@@ -0,0 +1,86 @@
+package tech.pinhole.service.gateway;
+
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Authenticates the requests of a route by the JWT of their {@code Authorization: Bearer} header, answering
+ * {@code 401 Unauthorized} to the requests without a valid one.
+ * <p>
+ * Behaves like the {@code JWTAuthHandler} of vertx-web without its per request header splitting and regular
+ * expression: the scheme is matched in place and the token cut out of the header, then verified by the
+ * {@link CachingJWTAuth} directly. Requests of a logged in session and CORS preflights asking for the
+ * {@code Authorization} header are let through.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class BearerTokenHandler implements Handler<RoutingContext> {
+
+    private static final Logger logger = LoggerFactory.getLogger(BearerTokenHandler.class);
+
+    private static final String BEARER = "Bearer ";
+
+    private final CachingJWTAuth jwtAuth;
+
+    public BearerTokenHandler(CachingJWTAuth jwtAuth) {
+        this.jwtAuth = jwtAuth;
+    }
+
+    @Override
+    public void handle(RoutingContext context) {
+        if (context.user() != null) {
+            context.next();
+            return;
+        }
+        final HttpServerRequest request = context.request();
+        if (request.method() == HttpMethod.OPTIONS && isAuthorizationPreflight(request)) {
+            context.next();
+            return;
+        }
+
+        final String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authorization == null || !authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            context.fail(401);
+            return;
+        }
+        final String token = authorization.substring(BEARER.length()).trim();
+        if (token.isEmpty()) {
+            context.fail(401);
+            return;
+        }
+
+        jwtAuth.authenticate(token, ar -> {
+            if (ar.failed()) {
+                logger.debug("Invalid token: {}", ar.cause().getMessage());
+                context.fail(401);
+                return;
+            }
+            context.setUser(ar.result());
+            final Session session = context.session();
+            if (session != null) {
+                session.regenerateId();
+            }
+            context.next();
+        });
+    }
+
+    private static boolean isAuthorizationPreflight(HttpServerRequest request) {
+        final String requested = request.getHeader(HttpHeaders.ACCESS_CONTROL_REQUEST_HEADERS);
+        if (requested == null) {
+            return false;
+        }
+        for (String header : requested.split(",")) {
+            if (header.trim().equalsIgnoreCase(HttpHeaders.AUTHORIZATION.toString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
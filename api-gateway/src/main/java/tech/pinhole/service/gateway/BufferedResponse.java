@@ -0,0 +1,44 @@
+package tech.pinhole.service.gateway;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Backend response read whole, so that it can be answered to several requests. Carries the generation of the
+ * {@link ResponseCache} read before the request was sent, so whichever request caches it checks it against the
+ * invalidations since the backend call and not since it started waiting for it.
+ *
+ * @author tosheer.kalra
+ */
+public class BufferedResponse {
+
+    private final int statusCode;
+    private final String contentType;
+    private final Buffer body;
+    private final long generation;
+
+    public BufferedResponse(int statusCode, String contentType, Buffer body, long generation) {
+        this.statusCode = statusCode;
+        this.contentType = contentType;
+        this.body = body;
+        this.generation = generation;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public Buffer getBody() {
+        return body;
+    }
+
+    /**
+     * @return generation of the response cache read before the backend call.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+}
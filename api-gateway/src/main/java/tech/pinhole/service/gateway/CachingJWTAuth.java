@@ -0,0 +1,148 @@
+package tech.pinhole.service.gateway;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.User;
+import io.vertx.ext.auth.jwt.JWTAuth;
+import io.vertx.ext.auth.jwt.JWTOptions;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link JWTAuth} which remembers the tokens it verified, so a token has its signature checked once and not on
+ * every request carrying it.
+ * <p>
+ * Verified users are cached by their token, never longer than the TTL nor past the {@code exp} claim of the token.
+ * Once full the least recently used token is evicted. Failed verifications are not cached. Every caller is expected
+ * to authenticate with the same options, which are not part of the cache key. A cache hit costs the hash and the
+ * comparison of the token string, {@link #authenticate(String, Handler)} also spares building the auth info.
+ * </p>
+ * <p>
+ * Thread safe.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class CachingJWTAuth implements JWTAuth {
+
+    private final JWTAuth delegate;
+    private final int maxEntries;
+    private final long ttlMs;
+    private final Map<String, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public CachingJWTAuth(JWTAuth delegate, int maxEntries, long ttlMs) {
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.ttlMs = ttlMs;
+        // Access ordered so that the eldest entry is the least recently used one.
+        this.entries = new LinkedHashMap<String, Entry>(Math.min(maxEntries, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > CachingJWTAuth.this.maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public void authenticate(JsonObject authInfo, Handler<AsyncResult<User>> resultHandler) {
+        final String token = authInfo.getString("jwt");
+        if (token == null) {
+            delegate.authenticate(authInfo, resultHandler);
+            return;
+        }
+        authenticate(token, authInfo, resultHandler);
+    }
+
+    /**
+     * Authenticates a token with the default options.
+     *
+     * @param token         token, without the {@code Bearer} scheme.
+     * @param resultHandler called with the user the token was issued to, synchronously when the token is cached.
+     */
+    public void authenticate(String token, Handler<AsyncResult<User>> resultHandler) {
+        authenticate(token, null, resultHandler);
+    }
+
+    private void authenticate(String token, JsonObject authInfo, Handler<AsyncResult<User>> resultHandler) {
+        final User cached = get(token);
+        if (cached != null) {
+            resultHandler.handle(Future.succeededFuture(cached));
+            return;
+        }
+
+        final JsonObject verify = authInfo != null
+                ? authInfo
+                : new JsonObject().put("jwt", token).put("options", new JsonObject());
+        delegate.authenticate(verify, ar -> {
+            if (ar.succeeded()) {
+                put(token, ar.result());
+            }
+            resultHandler.handle(ar);
+        });
+    }
+
+    @Override
+    public String generateToken(JsonObject claims, JWTOptions options) {
+        return delegate.generateToken(claims, options);
+    }
+
+    private User get(String key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+                hits.incrementAndGet();
+                return entry.user;
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    private void put(String key, User user) {
+        if (maxEntries <= 0) {
+            return;
+        }
+        long expiresAt = System.currentTimeMillis() + ttlMs;
+        final Long exp = user.principal().getLong("exp");
+        if (exp != null) {
+            expiresAt = Math.min(expiresAt, exp * 1000);
+        }
+        Entry entry = new Entry(user, expiresAt);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static final class Entry {
+        private final User user;
+        private final long expiresAt;
+
+        private Entry(User user, long expiresAt) {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package tech.pinhole.service.gateway;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.Http2Settings;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.JdkSSLEngineOptions;
+import io.vertx.core.net.OpenSSLEngineOptions;
+import io.vertx.core.net.PemKeyCertOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+
+/**
+ * Options of the gateway HTTP server.
+ * <p>
+ * Clear text, the server speaks HTTP/1.1 and HTTP/2 over clear text (h2c, by upgrade or prior knowledge). With TLS
+ * enabled the server terminates TLS with the key of the gateway keystore and negotiates HTTP/2 with ALPN. The
+ * OpenSSL engine is used when available, with its session cache and session tickets, otherwise the JDK engine with
+ * its session cache. The JDK engine of Java 8 needs the ALPN boot jar for HTTP/2, without it the server speaks
+ * HTTP/1.1 over TLS.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public final class GatewayServerOptions {
+
+    private static final Logger logger = LoggerFactory.getLogger(GatewayServerOptions.class);
+
+    private static final String TLS_ENABLED = "api.gateway.tls.enabled";
+    private static final String TLS_KEYSTORE_PATH = "api.gateway.tls.keystore.path";
+    private static final String TLS_KEYSTORE_PASSWORD = "api.gateway.tls.keystore.password";
+    private static final String TLS_KEY_ALIAS = "api.gateway.tls.key.alias";
+    private static final String TLS_SESSION_CACHE_ENABLED = "api.gateway.tls.session.cache.enabled";
+    private static final String HTTP2_ENABLED = "api.gateway.http2.enabled";
+    private static final String HTTP2_MAX_CONCURRENT_STREAMS = "api.gateway.http2.max.concurrent.streams";
+    private static final String HTTP2_INITIAL_WINDOW_SIZE = "api.gateway.http2.initial.window.size";
+    private static final String HTTP2_CONNECTION_WINDOW_SIZE = "api.gateway.http2.connection.window.size";
+
+    private GatewayServerOptions() {
+    }
+
+    /**
+     * @param vertx  vertx, to read the keystore.
+     * @param config gateway config.
+     * @return options of the gateway HTTP server.
+     */
+    public static HttpServerOptions create(Vertx vertx, JsonObject config) {
+        final HttpServerOptions options = new HttpServerOptions()
+                .setInitialSettings(new Http2Settings()
+                        .setMaxConcurrentStreams(config.getLong(HTTP2_MAX_CONCURRENT_STREAMS, 100L))
+                        .setInitialWindowSize(config.getInteger(HTTP2_INITIAL_WINDOW_SIZE,
+                                Http2Settings.DEFAULT_INITIAL_WINDOW_SIZE)))
+                .setHttp2ConnectionWindowSize(config.getInteger(HTTP2_CONNECTION_WINDOW_SIZE,
+                        HttpServerOptions.DEFAULT_HTTP2_CONNECTION_WINDOW_SIZE));
+
+        if (!config.getBoolean(TLS_ENABLED, false)) {
+            return options;
+        }
+
+        options.setSsl(true)
+                .setPemKeyCertOptions(keyCert(vertx,
+                        config.getString(TLS_KEYSTORE_PATH, "keystore.jceks"),
+                        config.getString(TLS_KEYSTORE_PASSWORD, "secret"),
+                        config.getString(TLS_KEY_ALIAS, "rs256")));
+
+        final boolean alpnAvailable;
+        if (OpenSSLEngineOptions.isAvailable()) {
+            options.setOpenSslEngineOptions(new OpenSSLEngineOptions()
+                    .setSessionCacheEnabled(config.getBoolean(TLS_SESSION_CACHE_ENABLED, true)));
+            alpnAvailable = OpenSSLEngineOptions.isAlpnAvailable();
+        } else {
+            options.setJdkSslEngineOptions(new JdkSSLEngineOptions());
+            alpnAvailable = JdkSSLEngineOptions.isAlpnAvailable();
+        }
+
+        if (config.getBoolean(HTTP2_ENABLED, true)) {
+            if (alpnAvailable) {
+                options.setUseAlpn(true)
+                        .setAlpnVersions(Arrays.asList(HttpVersion.HTTP_2, HttpVersion.HTTP_1_1));
+            } else {
+                logger.warn("ALPN is not available, the gateway serves HTTP/1.1 only over TLS.");
+            }
+        } else {
+            options.setAlpnVersions(Collections.singletonList(HttpVersion.HTTP_1_1));
+        }
+        return options;
+    }
+
+    /**
+     * The keystore of the gateway is a JCEKS one, which the server can not read, so its key is handed over as PEM.
+     */
+    private static PemKeyCertOptions keyCert(Vertx vertx, String path, String password, String alias) {
+        try {
+            final KeyStore keyStore = KeyStore.getInstance("JCEKS");
+            keyStore.load(new ByteArrayInputStream(vertx.fileSystem().readFileBlocking(path).getBytes()),
+                    password.toCharArray());
+            final Key key = keyStore.getKey(alias, password.toCharArray());
+            final Certificate[] chain = keyStore.getCertificateChain(alias);
+            if (!(key instanceof PrivateKey) || chain == null) {
+                throw new IllegalStateException("No private key with certificate " + alias + " in " + path);
+            }
+
+            final StringBuilder certs = new StringBuilder();
+            for (Certificate cert : chain) {
+                certs.append(pem("CERTIFICATE", cert.getEncoded()));
+            }
+            return new PemKeyCertOptions()
+                    .setKeyValue(Buffer.buffer(pem("PRIVATE KEY", key.getEncoded()), StandardCharsets.US_ASCII.name()))
+                    .setCertValue(Buffer.buffer(certs.toString(), StandardCharsets.US_ASCII.name()));
+        } catch (IllegalStateException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not read the TLS key " + alias + " from " + path, e);
+        }
+    }
+
+    private static String pem(String type, byte[] der) {
+        return "-----BEGIN " + type + "-----\n"
+                + Base64.getMimeEncoder(64, new byte[]{'\n'}).encodeToString(der)
+                + "\n-----END " + type + "-----\n";
+    }
+}
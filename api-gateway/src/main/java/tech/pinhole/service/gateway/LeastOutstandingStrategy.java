@@ -0,0 +1,27 @@
+package tech.pinhole.service.gateway;
+
+import java.util.List;
+
+/**
+ * Sends requests to the instance with the fewest requests in flight, so a slow instance, whose requests pile up,
+ * gets less traffic. Ties go to the instances in turn.
+ *
+ * @author tosheer.kalra
+ */
+public class LeastOutstandingStrategy implements LoadBalancingStrategy {
+
+    private int offset;
+
+    @Override
+    public BackendInstance select(List<BackendInstance> available) {
+        offset = (offset + 1) % Integer.MAX_VALUE;
+        BackendInstance selected = null;
+        for (int i = 0; i < available.size(); i++) {
+            final BackendInstance instance = available.get((offset + i) % available.size());
+            if (selected == null || instance.outstanding() < selected.outstanding()) {
+                selected = instance;
+            }
+        }
+        return selected;
+    }
+}
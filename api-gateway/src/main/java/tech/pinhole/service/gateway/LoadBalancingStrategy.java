@@ -0,0 +1,40 @@
+package tech.pinhole.service.gateway;
+
+import java.util.List;
+
+/**
+ * Picks the backend instance a request is sent to.
+ *
+ * @author tosheer.kalra
+ */
+public interface LoadBalancingStrategy {
+
+    String ROUND_ROBIN = "round-robin";
+    String LEAST_OUTSTANDING = "least-outstanding";
+    String POWER_OF_TWO_CHOICES = "power-of-two-choices";
+
+    /**
+     * @param available available instances of a service, never empty.
+     * @return instance to send the request to.
+     */
+    BackendInstance select(List<BackendInstance> available);
+
+    /**
+     * Creates a strategy from its configured name.
+     *
+     * @param name one of {@link #ROUND_ROBIN}, {@link #LEAST_OUTSTANDING} or {@link #POWER_OF_TWO_CHOICES}.
+     * @return new strategy, strategies hold state and are not shared between registries.
+     */
+    static LoadBalancingStrategy create(String name) {
+        switch (name) {
+            case ROUND_ROBIN:
+                return new RoundRobinStrategy();
+            case LEAST_OUTSTANDING:
+                return new LeastOutstandingStrategy();
+            case POWER_OF_TWO_CHOICES:
+                return new PowerOfTwoChoicesStrategy();
+            default:
+                throw new IllegalArgumentException("Unknown load balancing strategy " + name);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package tech.pinhole.service.gateway;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Samples two distinct instances at random and sends the request to the one with fewer requests in flight. Nearly
+ * as even as {@link LeastOutstandingStrategy} without scanning every instance, and without every gateway herding
+ * onto the same least loaded instance.
+ *
+ * @author tosheer.kalra
+ */
+public class PowerOfTwoChoicesStrategy implements LoadBalancingStrategy {
+
+    @Override
+    public BackendInstance select(List<BackendInstance> available) {
+        if (available.size() == 1) {
+            return available.get(0);
+        }
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int first = random.nextInt(available.size());
+        final int second = (first + 1 + random.nextInt(available.size() - 1)) % available.size();
+        final BackendInstance a = available.get(first);
+        final BackendInstance b = available.get(second);
+        return b.outstanding() < a.outstanding() ? b : a;
+    }
+}
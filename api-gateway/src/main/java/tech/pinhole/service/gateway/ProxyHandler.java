@@ -0,0 +1,187 @@
+package tech.pinhole.service.gateway;
+
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.streams.Pump;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * Streams a request to a backend service and the backend response back to the client.
+ * <p>
+ * Bodies are pumped chunk by chunk in both directions with back pressure, nothing is buffered, so the memory used by
+ * a request does not depend on its size. Only routes which need to look at small bodies, such as forms, have a
+ * {@code BodyHandler}, their already read body is sent as is.
+ * </p>
+ * <p>
+ * Hop-by-hop headers, which only describe the connection they came on, are not forwarded.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class ProxyHandler implements Handler<RoutingContext> {
+
+    /**
+     * Headers which apply to a single connection (RFC 7230 section 6.1), the client sets its own host.
+     */
+    private static final List<String> HOP_BY_HOP_HEADERS = Arrays.asList(
+            "Connection", "Keep-Alive", "Proxy-Authenticate", "Proxy-Authorization", "Proxy-Connection", "TE",
+            "Trailer", "Transfer-Encoding", "Upgrade", "Host");
+
+    private final BackendClientRegistry clients;
+    private final String serviceName;
+    private final Function<HttpServerRequest, String> uri;
+    private final long timeout;
+
+    /**
+     * @param clients     backend clients.
+     * @param serviceName service the requests are proxied to.
+     * @param uri         backend URI of a request.
+     * @param timeout     milliseconds the backend may stay silent before the request fails.
+     */
+    public ProxyHandler(BackendClientRegistry clients, String serviceName,
+                        Function<HttpServerRequest, String> uri, long timeout) {
+        this.clients = clients;
+        this.serviceName = serviceName;
+        this.uri = uri;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void handle(RoutingContext context) {
+        final HttpServerRequest request = context.request();
+        final HttpServerResponse response = context.response();
+        if (context.getBody() == null) {
+            // nothing may be read before the backend request exists to pump it into
+            request.pause();
+        }
+
+        clients.execute(serviceName, (httpClient, attempt) -> {
+            final HttpClientRequest backendRequest =
+                    httpClient.request(request.method(), uri.apply(request), attempt::tryComplete)
+                            .setTimeout(timeout);
+            sendRequest(context, backendRequest, attempt::tryFail);
+        }, backendResponse -> {
+            if (backendResponse.failed()) {
+                request.resume();
+                response.setStatusCode(502).end("Service error while calling " + serviceName);
+            } else {
+                sendResponse(backendResponse.result(), response);
+            }
+        });
+    }
+
+    /**
+     * Sends the client request to the backend, with the body a {@code BodyHandler} of the route read already, or
+     * streamed if the route has none.
+     *
+     * @param context          routing context, its request paused unless its body was read.
+     * @param backendRequest   backend request, with its response handler set.
+     * @param exceptionHandler failure of the backend request.
+     */
+    public static void sendRequest(RoutingContext context, HttpClientRequest backendRequest,
+                                   Handler<Throwable> exceptionHandler) {
+        final Buffer body = context.getBody();
+        if (body == null) {
+            sendRequest(context.request(), backendRequest, exceptionHandler);
+        } else {
+            copyHeaders(context.request().headers(), backendRequest.headers());
+            backendRequest.exceptionHandler(exceptionHandler).end(body);
+        }
+    }
+
+    /**
+     * Sends the client request, headers and streamed body, to the backend.
+     *
+     * @param request          paused client request.
+     * @param backendRequest   backend request, with its response handler set.
+     * @param exceptionHandler failure of the backend request.
+     */
+    public static void sendRequest(HttpServerRequest request, HttpClientRequest backendRequest,
+                                   Handler<Throwable> exceptionHandler) {
+        copyHeaders(request.headers(), backendRequest.headers());
+        // an HTTP/2 request has no transfer encoding and may have no content length, its body is framed
+        backendRequest.setChunked(!backendRequest.headers().contains(HttpHeaders.CONTENT_LENGTH)
+                && (request.headers().contains(HttpHeaders.TRANSFER_ENCODING) || mayHaveBody(request)));
+
+        final Pump pump = Pump.pump(request, backendRequest).start();
+        backendRequest.exceptionHandler(t -> {
+            pump.stop();
+            // drain what is left of the body so the client connection can carry its next request
+            request.handler(data -> { }).resume();
+            exceptionHandler.handle(t);
+        });
+        request.endHandler(v -> backendRequest.end());
+        request.resume();
+    }
+
+    /**
+     * Sends the backend response, status, headers and streamed body, to the client.
+     *
+     * @param backendResponse paused backend response.
+     * @param response        client response.
+     */
+    public static void sendResponse(HttpClientResponse backendResponse, HttpServerResponse response) {
+        response.setStatusCode(backendResponse.statusCode()).setStatusMessage(backendResponse.statusMessage());
+        copyHeaders(backendResponse.headers(), response.headers());
+        response.setChunked(!response.headers().contains(HttpHeaders.CONTENT_LENGTH) && hasBody(backendResponse));
+
+        Pump.pump(backendResponse, response).start();
+        backendResponse.exceptionHandler(t -> response.close());
+        backendResponse.endHandler(v -> response.end());
+        // the client went away, do not keep the backend connection busy for it
+        response.closeHandler(v -> backendResponse.request().reset());
+    }
+
+    private static boolean mayHaveBody(HttpServerRequest request) {
+        switch (request.method()) {
+            case GET:
+            case HEAD:
+            case OPTIONS:
+            case TRACE:
+            case CONNECT:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private static boolean hasBody(HttpClientResponse backendResponse) {
+        final int status = backendResponse.statusCode();
+        return backendResponse.request().method() != HttpMethod.HEAD
+                && status != 204 && status != 304 && (status < 100 || status >= 200);
+    }
+
+    /**
+     * Copies end-to-end headers, leaving out the hop-by-hop ones and those listed in the {@code Connection} header.
+     *
+     * @param from headers received.
+     * @param to   headers to send.
+     */
+    public static void copyHeaders(MultiMap from, MultiMap to) {
+        final Set<String> excluded = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        excluded.addAll(HOP_BY_HOP_HEADERS);
+        for (String connection : from.getAll(HttpHeaders.CONNECTION)) {
+            for (String token : connection.split(",")) {
+                excluded.add(token.trim());
+            }
+        }
+        from.forEach(header -> {
+            if (!excluded.contains(header.getKey())) {
+                to.add(header.getKey(), header.getValue());
+            }
+        });
+    }
+}
@@ -0,0 +1,69 @@
+package tech.pinhole.service.gateway;
+
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.ext.web.RoutingContext;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Throttles a route by client IP, by route and by the identity (phone number or email) the request is about.
+ * The IP of a client behind proxies is read as {@link RateLimiter#clientAddress(String, String)} says.
+ * A throttled request is answered {@code 429 Too Many Requests} with a {@code Retry-After} header.
+ * <p>
+ * The identity is read from the query parameters, or from the form attributes when the route has a
+ * {@code BodyHandler} ahead of this handler.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class RateLimitHandler implements Handler<RoutingContext> {
+
+    private static final String X_FORWARDED_FOR = "X-Forwarded-For";
+
+    private final RateLimiter limiter;
+    private final String routeKey;
+    private final String[] identityParams;
+
+    /**
+     * @param limiter        gateway rate limiter.
+     * @param route          name of the route bucket.
+     * @param identityParams parameters holding the identity the request is about.
+     */
+    public RateLimitHandler(RateLimiter limiter, String route, String... identityParams) {
+        this.limiter = limiter;
+        this.routeKey = RateLimiter.ROUTE + ':' + route;
+        this.identityParams = identityParams;
+    }
+
+    @Override
+    public void handle(RoutingContext context) {
+        final HttpServerRequest request = context.request();
+        final List<String> keys = new ArrayList<>(2 + identityParams.length);
+        keys.add(routeKey);
+        keys.add(RateLimiter.IP + ':' + limiter.clientAddress(request.remoteAddress().host(),
+                request.getHeader(X_FORWARDED_FOR)));
+        for (String param : identityParams) {
+            String identity = request.getParam(param);
+            if (identity == null) {
+                identity = request.getFormAttribute(param);
+            }
+            if (StringUtils.isNotBlank(identity)) {
+                keys.add(RateLimiter.IDENTITY + ':' + identity.trim().toLowerCase());
+            }
+        }
+
+        final long waitMs = limiter.tryAcquire(keys);
+        if (waitMs == 0) {
+            context.next();
+        } else {
+            context.response()
+                    .putHeader(HttpHeaders.RETRY_AFTER, String.valueOf((long) Math.ceil(waitMs / 1000.0)))
+                    .setStatusCode(429)
+                    .end();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package tech.pinhole.service.gateway;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonObject;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Cluster wide token bucket rate limiter of the gateway.
+ * <p>
+ * Buckets are keyed by {@code <dimension>:<value>}, for instance {@code ip:10.0.0.1}, and every dimension has its
+ * own capacity and refill rate. Requests are admitted from the local buckets, no remote call on the request path.
+ * Every sync interval a gateway publishes the tokens it took on the clustered event bus (the Hazelcast cluster) and
+ * takes the tokens the other gateways published from its own buckets, so a bucket reflects the traffic of the
+ * whole cluster within one sync interval.
+ * </p>
+ * <p>
+ * The IP of a client behind proxies is read from the {@code X-Forwarded-For} header, the address appended by the
+ * furthest of the {@code api.gateway.rate.limit.trusted.proxies} proxies in front of the gateway. The addresses
+ * before it are set by the client and are not trusted. With no trusted proxy the peer address is the client IP.
+ * </p>
+ * <p>
+ * Buckets of the least recently seen keys are dropped once there are more than the configured maximum.
+ * Not thread safe, an instance belongs to the verticle which created it and is only used from its context.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class RateLimiter {
+
+    public static final String IP = "ip";
+    public static final String IDENTITY = "identity";
+    public static final String ROUTE = "route";
+
+    private static final String RATE_LIMIT_ADDRESS = "api.gateway.rate.limit.address";
+
+    private static final String RATE_LIMIT = "api.gateway.rate.limit.";
+    private static final String CAPACITY = ".capacity";
+    private static final String REFILL_PER_SECOND = ".refill.per.second";
+    private static final String SYNC_INTERVAL_MS = "api.gateway.rate.limit.sync.interval.ms";
+    private static final String MAX_KEYS = "api.gateway.rate.limit.max.keys";
+    private static final String TRUSTED_PROXIES = "api.gateway.rate.limit.trusted.proxies";
+
+    private final Vertx vertx;
+    private final String node = UUID.randomUUID().toString();
+    private final Map<String, Limit> limits = new HashMap<>();
+    private final Map<String, TokenBucket> buckets;
+    private final int trustedProxies;
+
+    /**
+     * Tokens taken locally since the last sync, by bucket key.
+     */
+    private Map<String, Integer> taken = new HashMap<>();
+
+    private final MessageConsumer<JsonObject> syncs;
+    private final long syncTimer;
+
+    public RateLimiter(Vertx vertx, JsonObject config) {
+        this.vertx = vertx;
+        limits.put(IP, limit(config, IP, 100, 20));
+        limits.put(IDENTITY, limit(config, IDENTITY, 5, 0.1));
+        limits.put(ROUTE, limit(config, ROUTE, 1000, 500));
+
+        this.trustedProxies = config.getInteger(TRUSTED_PROXIES, 0);
+
+        final int maxKeys = config.getInteger(MAX_KEYS, 100000);
+        // Access ordered so that the eldest entry is the least recently used one.
+        this.buckets = new LinkedHashMap<String, TokenBucket>(Math.min(maxKeys, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+                return size() > maxKeys;
+            }
+        };
+
+        this.syncs = vertx.eventBus().consumer(RATE_LIMIT_ADDRESS, message -> onSync(message.body()));
+        this.syncTimer = vertx.setPeriodic(config.getLong(SYNC_INTERVAL_MS, 1000L), id -> sync());
+    }
+
+    private static Limit limit(JsonObject config, String dimension, double capacity, double refillPerSecond) {
+        return new Limit(
+                config.getDouble(RATE_LIMIT + dimension + CAPACITY, capacity),
+                config.getDouble(RATE_LIMIT + dimension + REFILL_PER_SECOND, refillPerSecond));
+    }
+
+    /**
+     * Takes a token from every bucket, if every bucket has one.
+     *
+     * @param keys bucket keys of the request.
+     * @return 0 if the request is admitted, otherwise the milliseconds until it would be.
+     */
+    public long tryAcquire(List<String> keys) {
+        final long now = System.currentTimeMillis();
+        long waitMs = 0;
+        for (String key : keys) {
+            waitMs = Math.max(waitMs, bucket(key, now).waitMs(now));
+        }
+        if (waitMs > 0) {
+            return waitMs;
+        }
+        for (String key : keys) {
+            bucket(key, now).take(1, now);
+            taken.merge(key, 1, Integer::sum);
+        }
+        return 0;
+    }
+
+    /**
+     * @param peerAddress  address the request came from.
+     * @param forwardedFor {@code X-Forwarded-For} header of the request, may be null.
+     * @return IP of the client, see the class description.
+     */
+    public String clientAddress(String peerAddress, String forwardedFor) {
+        if (trustedProxies <= 0 || forwardedFor == null) {
+            return peerAddress;
+        }
+        final String[] forwarded = forwardedFor.split(",");
+        // the last trusted proxy appended the address of the client, a shorter chain starts at the client
+        final String client = forwarded[Math.max(0, forwarded.length - trustedProxies)].trim();
+        return client.isEmpty() ? peerAddress : client;
+    }
+
+    private TokenBucket bucket(String key, long now) {
+        TokenBucket bucket = buckets.get(key);
+        if (bucket == null) {
+            final Limit limit = limits.get(key.substring(0, key.indexOf(':')));
+            bucket = new TokenBucket(limit.capacity, limit.refillPerSecond, now);
+            buckets.put(key, bucket);
+        }
+        return bucket;
+    }
+
+    private void sync() {
+        if (taken.isEmpty()) {
+            return;
+        }
+        final JsonObject tokens = new JsonObject();
+        taken.forEach(tokens::put);
+        taken = new HashMap<>();
+        vertx.eventBus().publish(RATE_LIMIT_ADDRESS, new JsonObject().put("node", node).put("tokens", tokens));
+    }
+
+    private void onSync(JsonObject sync) {
+        if (node.equals(sync.getString("node"))) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        sync.getJsonObject("tokens").forEach(token -> {
+            final int separator = token.getKey().indexOf(':');
+            if (separator > 0 && limits.containsKey(token.getKey().substring(0, separator))) {
+                bucket(token.getKey(), now).take(((Number) token.getValue()).doubleValue(), now);
+            }
+        });
+    }
+
+    public void close() {
+        vertx.cancelTimer(syncTimer);
+        syncs.unregister();
+    }
+
+    private static final class Limit {
+        private final double capacity;
+        private final double refillPerSecond;
+
+        private Limit(double capacity, double refillPerSecond) {
+            this.capacity = capacity;
+            this.refillPerSecond = refillPerSecond;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package tech.pinhole.service.gateway;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.Shareable;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the account responses of the gateway, so that hot profile reads do not go through the registration
+ * service, the account service and the database every time.
+ * <p>
+ * Entries expire after a TTL and are bounded by the memory they hold: the bytes of their bodies and content types
+ * plus a fixed overhead. Once over budget the least recently used entries are evicted. Entries are dropped
+ * explicitly when the account they show changes, see {@link #invalidate(JsonObject)}, the account of an entry being
+ * known by its id, phone number and email. A response fetched while an invalidation came in is not cached, it may
+ * predate the change.
+ * </p>
+ * <p>
+ * Thread safe, shared by the gateway instances of a JVM.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class ResponseCache implements Shareable {
+
+    /**
+     * Rough bytes held by an entry besides its body and content type: key, entry, indexes and map nodes.
+     */
+    private static final int ENTRY_OVERHEAD = 256;
+
+    private final long maxBytes;
+    private final long ttlMs;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private final Map<String, Set<String>> keysByAccount = new HashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long bytes;
+    private long generation;
+
+    public ResponseCache(long maxBytes, long ttlMs) {
+        this.maxBytes = maxBytes;
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * @param key cache key.
+     * @return cached response or null if unknown or expired.
+     */
+    public Entry get(String key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+                hits.incrementAndGet();
+                return entry;
+            }
+            if (entry != null) {
+                remove(key);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * @return generation to hand back to {@link #put(String, String, Buffer, long)} with the response fetched next.
+     */
+    public long generation() {
+        synchronized (entries) {
+            return generation;
+        }
+    }
+
+    /**
+     * Caches an account response, unless an invalidation came in since the generation was read or the response
+     * alone is over the memory budget.
+     *
+     * @param key         cache key.
+     * @param contentType content type of the response.
+     * @param body        response body, an account.
+     * @param generation  generation read before the response was fetched.
+     * @return cached response, or null if not cached.
+     */
+    public Entry put(String key, String contentType, Buffer body, long generation) {
+        final Entry entry = new Entry(key, contentType, body, System.currentTimeMillis() + ttlMs);
+        if (entry.size > maxBytes) {
+            return null;
+        }
+        synchronized (entries) {
+            if (generation != this.generation) {
+                return null;
+            }
+            remove(key);
+            entries.put(key, entry);
+            entry.accountKeys.forEach(accountKey ->
+                    keysByAccount.computeIfAbsent(accountKey, account -> new HashSet<>()).add(key));
+            bytes += entry.size;
+
+            for (Iterator<Entry> eldest = entries.values().iterator(); bytes > maxBytes && eldest.hasNext(); ) {
+                final Entry evicted = eldest.next();
+                eldest.remove();
+                forget(evicted);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Drops the responses of an account.
+     *
+     * @param change changed account, any of its {@code id}, {@code phoneNumber} and {@code email}, or {@code all}
+     *               when every account changed.
+     */
+    public void invalidate(JsonObject change) {
+        synchronized (entries) {
+            generation++;
+            if (change.getBoolean("all", false)) {
+                entries.clear();
+                keysByAccount.clear();
+                bytes = 0;
+                return;
+            }
+            for (String accountKey : accountKeys(change)) {
+                final Set<String> keys = keysByAccount.get(accountKey);
+                if (keys != null) {
+                    new ArrayList<>(keys).forEach(this::remove);
+                }
+            }
+        }
+    }
+
+    private void remove(String key) {
+        final Entry removed = entries.remove(key);
+        if (removed != null) {
+            forget(removed);
+        }
+    }
+
+    private void forget(Entry entry) {
+        bytes -= entry.size;
+        entry.accountKeys.forEach(accountKey -> {
+            final Set<String> keys = keysByAccount.get(accountKey);
+            if (keys != null && keys.remove(entry.key) && keys.isEmpty()) {
+                keysByAccount.remove(accountKey);
+            }
+        });
+    }
+
+    public long getBytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static String[] accountKeys(JsonObject account) {
+        final Object id = account.getValue("id");
+        return new String[]{
+                id == null ? null : "id:" + id,
+                account.getString("phoneNumber") == null ? null : "phone:" + account.getString("phoneNumber"),
+                account.getString("email") == null ? null : "email:" + account.getString("email").toLowerCase()};
+    }
+
+    /**
+     * Cached response.
+     */
+    public static final class Entry {
+        private final String key;
+        private final String contentType;
+        private final Buffer body;
+        private final String etag;
+        private final String opaqueEtag;
+        private final long expiresAt;
+        private final long size;
+        private final List<String> accountKeys = new ArrayList<>(3);
+
+        private Entry(String key, String contentType, Buffer body, long expiresAt) {
+            this.key = key;
+            this.contentType = contentType;
+            this.body = body;
+            this.opaqueEtag = opaqueEtag(body);
+            this.etag = "W/" + opaqueEtag;
+            this.expiresAt = expiresAt;
+            this.size = ENTRY_OVERHEAD + 2L * (key.length() + (contentType == null ? 0 : contentType.length()))
+                    + body.length();
+            try {
+                for (String accountKey : accountKeys(new JsonObject(body.toString()))) {
+                    if (accountKey != null) {
+                        accountKeys.add(accountKey);
+                    }
+                }
+            } catch (DecodeException | ClassCastException e) {
+                // not an account, only expires
+            }
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public Buffer getBody() {
+            return body;
+        }
+
+        /**
+         * @return weak entity tag of the response, the same for its compressed and identity bodies.
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * @param ifNoneMatch {@code If-None-Match} header of a request, may be null.
+         * @return whether the client holds this response already, by weak comparison.
+         */
+        public boolean matches(String ifNoneMatch) {
+            return ifNoneMatch != null && (ifNoneMatch.contains(opaqueEtag) || "*".equals(ifNoneMatch.trim()));
+        }
+
+        private static String opaqueEtag(Buffer body) {
+            try {
+                final byte[] digest = MessageDigest.getInstance("SHA-256").digest(body.getBytes());
+                return '"' + new BigInteger(1, digest).toString(36) + '"';
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
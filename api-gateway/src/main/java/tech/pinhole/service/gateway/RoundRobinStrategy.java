@@ -0,0 +1,19 @@
+package tech.pinhole.service.gateway;
+
+import java.util.List;
+
+/**
+ * Sends requests to the available instances in turn.
+ *
+ * @author tosheer.kalra
+ */
+public class RoundRobinStrategy implements LoadBalancingStrategy {
+
+    private int next;
+
+    @Override
+    public BackendInstance select(List<BackendInstance> available) {
+        next = (next + 1) % Integer.MAX_VALUE;
+        return available.get(next % available.size());
+    }
+}
@@ -0,0 +1,54 @@
+package tech.pinhole.service.gateway;
+
+/**
+ * Token bucket, holds up to {@code capacity} tokens and gains {@code refillPerSecond} tokens a second. A request
+ * takes one token. Tokens taken on other gateways can drive the bucket below zero, it then needs to refill before it
+ * lets requests through again.
+ * <p>
+ * Not thread safe.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double refillPerMs;
+    private double tokens;
+    private long refilledAt;
+
+    public TokenBucket(double capacity, double refillPerSecond, long now) {
+        this.capacity = capacity;
+        this.refillPerMs = refillPerSecond / 1000;
+        this.tokens = capacity;
+        this.refilledAt = now;
+    }
+
+    /**
+     * @param now current time in milliseconds.
+     * @return milliseconds until the bucket has a token, 0 if it has one now.
+     */
+    public long waitMs(long now) {
+        refill(now);
+        if (tokens >= 1) {
+            return 0;
+        }
+        return refillPerMs > 0 ? (long) Math.ceil((1 - tokens) / refillPerMs) : Long.MAX_VALUE;
+    }
+
+    /**
+     * @param count tokens to take, the bucket may go below zero.
+     * @param now   current time in milliseconds.
+     */
+    public void take(double count, long now) {
+        refill(now);
+        tokens -= count;
+    }
+
+    private void refill(long now) {
+        if (now > refilledAt) {
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * refillPerMs);
+            refilledAt = now;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package tech.pinhole.service.verticle;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+
+/**
+ * Deploys the {@link APIGatewayVerticle} instances and publishes the gateway once they all listen.
+ *
+ * @author tosheer.kalra
+ */
+public class APIGatewayDeploymentVerticle extends BaseMicroserviceVerticle {
+
+    /**
+     * Number of {@link APIGatewayVerticle} instances to deploy, each one has its own event loop and they share the
+     * listening port. Defaults to the number of cores.
+     */
+    private static final String API_GATEWAY_INSTANCES = "api.gateway.instances";
+
+    @Override
+    public void start(Future<Void> future) throws Exception {
+        super.start();
+        final String host = config().getString(APIGatewayVerticle.API_GATEWAY_HTTP_ADDRESS, "localhost");
+        final int port = config().getInteger(APIGatewayVerticle.API_GATEWAY_HTTP_PORT, APIGatewayVerticle.DEFAULT_PORT);
+
+        deployAPIGatewayVerticle()
+                .compose(deployed -> publishApiGateway(host, port))
+                .setHandler(compositeFutureAsyncResult -> {
+                    if (compositeFutureAsyncResult.failed()) {
+                        future.fail(compositeFutureAsyncResult.cause());
+                    } else {
+                        future.complete();
+                    }
+                });
+    }
+
+    private Future<Void> deployAPIGatewayVerticle() {
+        Future<String> future = Future.future();
+        vertx.deployVerticle(APIGatewayVerticle.class.getName(),
+                new DeploymentOptions()
+                        .setConfig(config())
+                        .setInstances(config().getInteger(API_GATEWAY_INSTANCES,
+                                Runtime.getRuntime().availableProcessors())),
+                future.completer());
+        return future.map(r -> null);
+    }
+}
@@ -1,32 +1,39 @@
 package tech.pinhole.service.verticle;
 
-import io.vertx.codegen.annotations.Nullable;
 import io.vertx.core.*;
-import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.*;
 import io.vertx.core.json.JsonObject;
-import io.vertx.ext.auth.jwt.JWT;
+import io.vertx.core.shareddata.LocalMap;
 import io.vertx.ext.auth.jwt.JWTAuth;
 import io.vertx.ext.auth.jwt.JWTOptions;
-import io.vertx.ext.auth.jwt.impl.JWTAuthProviderImpl;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.BodyHandler;
-import io.vertx.ext.web.handler.JWTAuthHandler;
-import io.vertx.servicediscovery.types.HttpEndpoint;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import tech.pinhole.service.concurrent.SingleFlight;
+import tech.pinhole.service.constant.PinholeServiceAddressConstants;
 import tech.pinhole.service.constant.PinholeServiceNameConstants;
+import tech.pinhole.service.gateway.BackendClientRegistry;
+import tech.pinhole.service.gateway.BearerTokenHandler;
+import tech.pinhole.service.gateway.BufferedResponse;
+import tech.pinhole.service.gateway.CachingJWTAuth;
+import tech.pinhole.service.gateway.GatewayServerOptions;
+import tech.pinhole.service.gateway.ProxyHandler;
+import tech.pinhole.service.gateway.RateLimitHandler;
+import tech.pinhole.service.gateway.RateLimiter;
+import tech.pinhole.service.gateway.ResponseCache;
 import tech.pinhole.service.services.AccountService;
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
-import java.security.KeyStore;
-import java.util.regex.Pattern;
 
 /**
  *
  * API gateway for every call.
+ * <p>
+ * Deployed in several instances by {@link APIGatewayDeploymentVerticle}, all listening on the same port. The
+ * backend clients, verified tokens and rate limit buckets belong to an instance, the response cache is shared by
+ * the instances of the JVM.
+ * </p>
  * @author tosheer.kalra
  */
 public class APIGatewayVerticle extends RestAPIVerticle {
@@ -34,27 +41,58 @@ public class APIGatewayVerticle extends RestAPIVerticle {
     private static final Logger logger = LoggerFactory.getLogger(APIGatewayVerticle.class);
 
     /**
-     * Patten for finding the JWT token in authorization header.
+     * Vertx config constant for API gateway hostname.
      */
-    private static final Pattern BEARER = Pattern.compile("^Bearer$", Pattern.CASE_INSENSITIVE);
+    static final String API_GATEWAY_HTTP_ADDRESS = "api.gateway.http.address";
 
     /**
-     * Vertx config constant for API gateway hostname.
+     * Default fallback port for api gateway.
      */
-    private static final String API_GATEWAY_HTTP_ADDRESS = "api.gateway.http.address";
+    static final int DEFAULT_PORT = 8787;
+    static final String API_GATEWAY_HTTP_PORT = "api.gateway.http.port";
 
     /**
-     * Default fallback port for api gateway.
+     * Milliseconds a backend service may stay silent before a proxied request fails.
+     */
+    private static final String API_GATEWAY_PROXY_TIMEOUT_MS = "api.gateway.proxy.timeout.ms";
+
+    /**
+     * Bounds of the verified token cache.
+     */
+    private static final String API_GATEWAY_JWT_CACHE_MAX_ENTRIES = "api.gateway.jwt.cache.max.entries";
+    private static final String API_GATEWAY_JWT_CACHE_TTL_MS = "api.gateway.jwt.cache.ttl.ms";
+
+    /**
+     * Largest form the gateway reads, from the routes rate limited by the identity in their form.
+     */
+    private static final String API_GATEWAY_FORM_BODY_LIMIT = "api.gateway.form.body.limit";
+
+    /**
+     * Bounds of the account response cache.
      */
-    private static final int DEFAULT_PORT = 8787;
-    private static final String API_GATEWAY_HTTP_PORT = "api.gateway.http.port";
+    private static final String API_GATEWAY_RESPONSE_CACHE_MAX_BYTES = "api.gateway.response.cache.max.bytes";
+    private static final String API_GATEWAY_RESPONSE_CACHE_TTL_MS = "api.gateway.response.cache.ttl.ms";
 
-    private JWTAuth jwtAuth;
+    /**
+     * Local map holding the caches shared by the gateway instances.
+     */
+    private static final String API_GATEWAY_SHARED_CACHES = "api.gateway.shared.caches";
+    private static final String API_GATEWAY_RESPONSE_CACHE = "response";
 
-    private JWT jwt;
+    private CachingJWTAuth jwtAuth;
 
     private AccountService accountService;
 
+    private BackendClientRegistry clients;
+
+    private RateLimiter rateLimiter;
+
+    private ResponseCache responseCache;
+
+    private long proxyTimeout;
+
+    private final SingleFlight<String, BufferedResponse> userInfoFlights = new SingleFlight<>();
+
     @Override
     public void start(Future<Void> future) throws Exception {
         super.start();
@@ -65,32 +103,29 @@ public class APIGatewayVerticle extends RestAPIVerticle {
                         .put("path", "keystore.jceks")
                         .put("password", "secret"));
 
-        this.jwtAuth = JWTAuth.create(vertx, config);
-
-        final JsonObject keyStore = config.getJsonObject("keyStore");
-
-        KeyStore ks = KeyStore.getInstance(keyStore.getString("type", "jceks"));
-
-        // synchronize on the class to avoid the case where multiple file accesses will overlap
-        synchronized (JWTAuthProviderImpl.class) {
-            final Buffer keystore = vertx.fileSystem().readFileBlocking(keyStore.getString("path"));
-
-            try (InputStream in = new ByteArrayInputStream(keystore.getBytes())) {
-                ks.load(in, keyStore.getString("password").toCharArray());
-            }
-        }
-
-        this.jwt = new JWT(ks, keyStore.getString("password").toCharArray());
+        // verified tokens are cached, a token is verified once and not on each request
+        this.jwtAuth = new CachingJWTAuth(JWTAuth.create(vertx, config),
+                config().getInteger(API_GATEWAY_JWT_CACHE_MAX_ENTRIES, 10000),
+                config().getLong(API_GATEWAY_JWT_CACHE_TTL_MS, 300000L));
+
+        this.clients = new BackendClientRegistry(vertx, discovery, config(), circuitBreakerOptions());
+        this.proxyTimeout = config().getLong(API_GATEWAY_PROXY_TIMEOUT_MS, 10000L);
+        this.rateLimiter = new RateLimiter(vertx, config());
+        this.responseCache = sharedResponseCache();
+        // the account calls in flight may predate the change, the next requests make their own
+        vertx.eventBus().<JsonObject>consumer(PinholeServiceAddressConstants.USER_ACCOUNT_CHANGED_ADDRESS, message -> {
+            responseCache.invalidate(message.body());
+            userInfoFlights.forgetAll();
+        });
 
         // get HTTP host and port from configuration, or use default value
         final String host = config().getString(API_GATEWAY_HTTP_ADDRESS, "localhost");
         final int port = config().getInteger(API_GATEWAY_HTTP_PORT, DEFAULT_PORT);
 
+        // published once by the deployment verticle, not by every instance
         Future<HttpServer> httpServerFuture = configureHTTPServer(host, port);
-        Future<Void> apiGatewayPublishedFuture = httpServerFuture.compose(server ->
-                    publishApiGateway(host, port));
 
-        apiGatewayPublishedFuture.setHandler(compositeAsyncHandler -> {
+        httpServerFuture.setHandler(compositeAsyncHandler -> {
             if(compositeAsyncHandler.failed()) {
                 System.out.println("failed!! because: " + compositeAsyncHandler.cause());
                 future.fail(compositeAsyncHandler.cause());
@@ -103,6 +138,18 @@ public class APIGatewayVerticle extends RestAPIVerticle {
 
     }
 
+    /**
+     * @return response cache of the gateway instances of this JVM, created by the first instance.
+     */
+    private ResponseCache sharedResponseCache() {
+        final LocalMap<String, ResponseCache> caches = vertx.sharedData().getLocalMap(API_GATEWAY_SHARED_CACHES);
+        final ResponseCache created = new ResponseCache(
+                config().getLong(API_GATEWAY_RESPONSE_CACHE_MAX_BYTES, 16L * 1024 * 1024),
+                config().getLong(API_GATEWAY_RESPONSE_CACHE_TTL_MS, 60000L));
+        final ResponseCache existing = caches.putIfAbsent(API_GATEWAY_RESPONSE_CACHE, created);
+        return existing != null ? existing : created;
+    }
+
     private Future<HttpServer> configureHTTPServer(String host, int port) {
         Future<HttpServer> future = Future.future();
 
@@ -110,30 +157,46 @@ public class APIGatewayVerticle extends RestAPIVerticle {
         Router router = Router.router(vertx);
 
         // cookie and session handler
-        enableLocalSession(router);
+        enableSession(router);
 
-        // body handler
-        router.route().handler(BodyHandler.create());
+        // requests are streamed to the services, only the small forms the rate limits look into are read first
+        final String registrationService = PinholeServiceNameConstants.REGISTRATION_HTTP_SERVICE;
+        final BodyHandler formHandler = BodyHandler.create()
+                .setBodyLimit(config().getLong(API_GATEWAY_FORM_BODY_LIMIT, 8192L));
 
         // version handler
         router.get("/api/v").handler(this::apiVersion);
+        router.post("/login").handler(formHandler);
+        router.post("/login").handler(new RateLimitHandler(rateLimiter, "login", "username"));
         router.post("/login").handler(this::loginEntryHandler);
-        router.post("/user").handler(this::registrationHandler);
-        router.get("/user/confirmEmail").handler(this::confirmEmail);
-        router.post("/user/confirmOTP").handler(this::confirmOtp);
-        router.get("/resendOtp").handler(this::confirmEmail);
-        router.get("/resendEmail").handler(this::confirmEmail);
-
-        router.route().handler(JWTAuthHandler.create(jwtAuth));
+        router.post("/user").handler(formHandler);
+        router.post("/user").handler(new RateLimitHandler(rateLimiter, "register", "phoneNumber", "email"));
+        router.post("/user").handler(
+                new ProxyHandler(clients, registrationService, request -> "/registerUser", proxyTimeout));
+        router.get("/user/confirmEmail").handler(new RateLimitHandler(rateLimiter, "confirmEmail", "email"));
+        router.get("/user/confirmEmail").handler(
+                new ProxyHandler(clients, registrationService, HttpServerRequest::uri, proxyTimeout));
+        router.post("/user/confirmOTP").handler(formHandler);
+        router.post("/user/confirmOTP").handler(new RateLimitHandler(rateLimiter, "confirmOtp", "phoneNumber"));
+        router.post("/user/confirmOTP").handler(
+                new ProxyHandler(clients, registrationService, request -> "/confirmOtp", proxyTimeout));
+        router.get("/resendOtp").handler(new RateLimitHandler(rateLimiter, "resendOtp", "phoneNumber"));
+        router.get("/resendOtp").handler(
+                new ProxyHandler(clients, registrationService, HttpServerRequest::uri, proxyTimeout));
+        router.get("/resendEmail").handler(new RateLimitHandler(rateLimiter, "resendEmail", "email"));
+        router.get("/resendEmail").handler(
+                new ProxyHandler(clients, registrationService, HttpServerRequest::uri, proxyTimeout));
+
+        router.route().handler(new BearerTokenHandler(jwtAuth));
         router.get("/logout").handler(this::logutHandler);
         router.get("/user").handler(this::userInfoHandler);
 
-        vertx.createHttpServer()
+        // HTTP/2 over clear text, or TLS with ALPN when enabled
+        vertx.createHttpServer(GatewayServerOptions.create(vertx, config()))
                 .requestHandler(router::accept)
                 .listen(port, host, ar -> {
                     if (ar.succeeded()) {
-                        publishApiGateway(host, port);
-                        future.complete();
+                        future.complete(ar.result());
                         logger.info("API Gateway is running on port " + port);
                         // publish log
                         publishGatewayLog("api_gateway_init_success:" + port);
@@ -145,66 +208,6 @@ public class APIGatewayVerticle extends RestAPIVerticle {
         return future;
     }
 
-    private void confirmEmail(RoutingContext context) {
-        HttpServerResponse response = context.response();
-        HttpServerRequest request = context.request();
-        Future<HttpClient> future = Future.future();
-        HttpEndpoint.getClient(discovery,
-                new JsonObject().put("name", PinholeServiceNameConstants.REGISTRATION_HTTP_SERVICE),
-                future.completer());
-
-        Handler<AsyncResult<HttpClient>> asyncHttpClient = httpClientAsyncResult -> {
-            if (httpClientAsyncResult.failed()) {
-                response.setStatusCode(500).end("An error occurred while getting client for user service");
-            } else {
-                HttpClient httpClient = httpClientAsyncResult.result();
-                HttpClientRequest confirmEmailRequest = httpClient.get(request.uri(),
-                        findUserResponse -> {
-                            response.setStatusCode(findUserResponse.statusCode()).end();
-                        }).exceptionHandler(event -> {
-                    response.setStatusCode(500).end("Service error while authenticating customer");
-                }).setTimeout(10000);
-
-                request.headers().forEach(
-                        header -> confirmEmailRequest.putHeader(header.getKey(), header.getValue()));
-                confirmEmailRequest.end();
-            }
-        };
-        future.setHandler(asyncHttpClient);
-
-
-    }
-
-    private void confirmOtp(RoutingContext context) {
-        HttpServerResponse response = context.response();
-        @Nullable Buffer body = context.getBody();
-        Future<HttpClient> future = Future.future();
-
-        HttpEndpoint.getClient(discovery,
-                new JsonObject().put("name", PinholeServiceNameConstants.REGISTRATION_HTTP_SERVICE),
-                future.completer());
-
-        Handler<AsyncResult<HttpClient>> asyncHttpClient = httpClientAsyncResult -> {
-            if(httpClientAsyncResult.failed()) {
-                response.setStatusCode(500).end("An error occurred while getting client for user service");
-            } else {
-                HttpClient httpClient = httpClientAsyncResult.result();
-                HttpClientRequest authorization = httpClient.post("/confirmOtp", confirmOtpResponse -> {
-                    response.setStatusCode(confirmOtpResponse.statusCode()).end();
-                }).exceptionHandler(event -> {
-                    response.setStatusCode(500).end("Service error while authenticating customer");
-                });
-
-                context.request().headers().forEach(header -> {
-                    authorization.putHeader(header.getKey(), header.getValue());
-                });
-                authorization.write(body).end();
-
-            }
-        };
-        future.setHandler(asyncHttpClient);
-    }
-
     private void apiVersion(RoutingContext context) {
         HttpServerResponse response = context.response();
 
@@ -213,7 +216,7 @@ public class APIGatewayVerticle extends RestAPIVerticle {
         response.putHeader("Authorization","Bearer " +
                 jwtAuth.generateToken(new JsonObject(), new JWTOptions().setExpiresInSeconds(60L)));
         response
-                .end(new JsonObject().put("version", "v1").encodePrettily());
+                .end(new JsonObject().put("version", "v1").encode());
 
     }
 
@@ -228,142 +231,138 @@ public class APIGatewayVerticle extends RestAPIVerticle {
     private void loginEntryHandler(RoutingContext context) {
 
         HttpServerResponse response = context.response();
-        @Nullable Buffer body = context.getBody();
-        System.out.println("body" + body.toString());
-        Future<HttpClient> future = Future.future();
-
-        HttpEndpoint.getClient(discovery,
-                new JsonObject().put("name", PinholeServiceNameConstants.REGISTRATION_HTTP_SERVICE),
-                future.completer());
 
-        Handler<AsyncResult<HttpClient>> asyncHttpClient = httpClientAsyncResult -> {
-            if(httpClientAsyncResult.failed()) {
-                response.setStatusCode(500).end("An error occurred while getting client for authentication service");
-            } else {
-                HttpClient httpClient = httpClientAsyncResult.result();
-                HttpClientRequest authorization = httpClient.post("/login", findUserResponse -> {
-                    if (findUserResponse.statusCode() == 200) {
-                        findUserResponse.bodyHandler(responseAsString -> {
-                            JsonObject entries = new JsonObject(responseAsString.toString());
-                            response.putHeader(HttpHeaders.CONTENT_TYPE, "application/json; charset=utf-8");
-                            JsonObject payload = new JsonObject()
-                                    .put("sub", entries.getLong("id"))
-                                    .put("exp", 1747055313);
-                            String s = jwtAuth.generateToken(
-                                    payload,
-                                    new JWTOptions().setExpiresInMinutes(4320L).setIssuer("pinhole.tech"));
-                            response.putHeader(HttpHeaders.AUTHORIZATION, "Bearer " +
-                                    s);
-                            response.setStatusCode(200).end();
-                        });
-                    } else {
-                        response.setStatusCode(findUserResponse.statusCode()).end();
-                    }
-                }).exceptionHandler(event -> {
-                    response.setStatusCode(500).end("Service error while authenticating customer");
-                }).setTimeout(10000);
-
-                context.request().headers().forEach(header -> {
-                    authorization.putHeader(header.getKey(), header.getValue());
+        clients.execute(PinholeServiceNameConstants.REGISTRATION_HTTP_SERVICE, (httpClient, attempt) -> {
+            HttpClientRequest authorization = httpClient.post("/login", attempt::tryComplete)
+                    .setTimeout(proxyTimeout);
+            ProxyHandler.sendRequest(context, authorization, attempt::tryFail);
+        }, findUserResponse -> {
+            if (findUserResponse.failed()) {
+                response.setStatusCode(500).end("Service error while authenticating customer");
+            } else if (findUserResponse.result().statusCode() == 200) {
+                findUserResponse.result().bodyHandler(responseAsString -> {
+                    JsonObject entries = new JsonObject(responseAsString.toString());
+                    response.putHeader(HttpHeaders.CONTENT_TYPE, "application/json; charset=utf-8");
+                    JsonObject payload = new JsonObject()
+                            .put("sub", entries.getLong("id"))
+                            .put("exp", 1747055313);
+                    String s = jwtAuth.generateToken(
+                            payload,
+                            new JWTOptions().setExpiresInMinutes(4320L).setIssuer("pinhole.tech"));
+                    response.putHeader(HttpHeaders.AUTHORIZATION, "Bearer " +
+                            s);
+                    response.setStatusCode(200).end();
                 });
-                authorization.write(body).end();
-
+            } else {
+                response.setStatusCode(findUserResponse.result().statusCode()).end();
             }
-        };
-        future.setHandler(asyncHttpClient);
+        });
     }
 
     private void logutHandler(RoutingContext context) {
         context.response().putHeader(HttpHeaders.AUTHORIZATION, StringUtils.EMPTY).setStatusCode(200).end();
     }
 
-    private void registrationHandler(RoutingContext context) {
-        HttpServerResponse response = context.response();
-        @Nullable Buffer body = context.getBody();
-        System.out.println("body" + body.toString());
-        Future<HttpClient> future = Future.future();
-
-        HttpEndpoint.getClient(discovery,
-                new JsonObject().put("name", PinholeServiceNameConstants.REGISTRATION_HTTP_SERVICE),
-                future.completer());
-
-        Handler<AsyncResult<HttpClient>> asyncHttpClient = httpClientAsyncResult -> {
-            if(httpClientAsyncResult.failed()) {
-                response.setStatusCode(500).end("An error occurred while getting client for user service");
-            } else {
-                HttpClient httpClient = httpClientAsyncResult.result();
-                HttpClientRequest authorization = httpClient.post("/registerUser", registerUserResponse -> {
-                    response.setStatusCode(registerUserResponse.statusCode()).end();
-                }).exceptionHandler(event -> {
-                    response.setStatusCode(500).end("Service error while authenticating customer");
-                });
-
-                context.request().headers().forEach(header -> {
-                    authorization.putHeader(header.getKey(), header.getValue());
-                });
-                authorization.write(body).end();
-
-            }
-        };
-        future.setHandler(asyncHttpClient);
-    }
-
     private void userInfoHandler(RoutingContext context) {
         HttpServerResponse response = context.response();
         HttpServerRequest request = context.request();
 
-        Long customerId = getCustomerId(request);
+        Long customerId = getCustomerId(context);
 
         if (customerId != 0) {
 
-            Future<HttpClient> future = Future.future();
-            HttpEndpoint.getClient(discovery,
-                    new JsonObject().put("name", PinholeServiceNameConstants.REGISTRATION_HTTP_SERVICE),
-                    future.completer());
+            final String cacheKey = "/user|" + customerId + '|' + request.getHeader(HttpHeaders.ACCEPT);
+            final ResponseCache.Entry cached = responseCache.get(cacheKey);
+            if (cached != null) {
+                sendCached(cached, request, response);
+                return;
+            }
 
-            Handler<AsyncResult<HttpClient>> asyncHttpClient = httpClientAsyncResult -> {
-                if (httpClientAsyncResult.failed()) {
-                    response.setStatusCode(500).end("An error occurred while getting client for user service");
+            // concurrent fetches of the same account share one backend call
+            userInfoFlights.execute(cacheKey, flight -> fetchUserInfo(customerId, request, flight), userInfo -> {
+                if (userInfo.failed()) {
+                    response.setStatusCode(500).end("Service error while finding customer");
+                } else if (userInfo.result().getStatusCode() == 200) {
+                    final ResponseCache.Entry entry = responseCache.put(cacheKey,
+                            userInfo.result().getContentType(), userInfo.result().getBody(),
+                            userInfo.result().getGeneration());
+                    if (entry != null) {
+                        sendCached(entry, request, response);
+                    } else {
+                        response.setStatusCode(200);
+                        compression().end(request, response, contentType(userInfo.result().getContentType()),
+                                userInfo.result().getBody());
+                    }
                 } else {
-                    HttpClient httpClient = httpClientAsyncResult.result();
-                    HttpClientRequest userInfoRequest = httpClient.get("/user?id=" + customerId,
-                            findUserResponse -> {
-                                if (findUserResponse.statusCode() == 200) {
-                                    findUserResponse.bodyHandler(responseAsString -> {
-                                        response.putHeader(HttpHeaders.CONTENT_TYPE, "application/json; charset=utf-8");
-                                        response.setStatusCode(200).end(responseAsString.toString());
-                                    });
-                                } else {
-                                    response.setStatusCode(findUserResponse.statusCode()).end();
-                                }
-                    }).exceptionHandler(event -> {
-                        response.setStatusCode(500).end("Service error while authenticating customer");
-                    }).setTimeout(10000);
-
-                    request.headers().forEach(
-                            header -> userInfoRequest.putHeader(header.getKey(), header.getValue()));
-                    userInfoRequest.end();
+                    if (userInfo.result().getContentType() != null) {
+                        response.putHeader(HttpHeaders.CONTENT_TYPE, userInfo.result().getContentType());
+                    }
+                    response.setStatusCode(userInfo.result().getStatusCode()).end(userInfo.result().getBody());
                 }
-            };
-            future.setHandler(asyncHttpClient);
+            });
         }
     }
 
-    private Long getCustomerId(HttpServerRequest request) {
-
-        Long customerId = 0L;
-        final String authorization = request.headers().get(HttpHeaders.AUTHORIZATION);
-        if (authorization != null) {
-            String[] parts = authorization.split(" ");
-            if (parts.length == 2) {
-                if (BEARER.matcher(parts[0]).matches()) {
-                    JsonObject decode = jwt.decode(parts[1]);
-                    customerId = decode.getLong("sub");
-                }
+    /**
+     * Fetches an account from the registration service, read whole to be shared by the requests waiting for it.
+     */
+    private void fetchUserInfo(Long customerId, HttpServerRequest request, Future<BufferedResponse> future) {
+        final long generation = responseCache.generation();
+        clients.execute(PinholeServiceNameConstants.REGISTRATION_HTTP_SERVICE, (httpClient, attempt) -> {
+            HttpClientRequest userInfoRequest = httpClient.get("/user?id=" + customerId, attempt::tryComplete)
+                    .exceptionHandler(attempt::tryFail)
+                    .setTimeout(proxyTimeout);
+
+            ProxyHandler.copyHeaders(request.headers(), userInfoRequest.headers());
+            userInfoRequest.headers().remove(HttpHeaders.IF_NONE_MATCH);
+            // cached as is, compressed by the gateway
+            userInfoRequest.headers().remove(HttpHeaders.ACCEPT_ENCODING);
+            userInfoRequest.end();
+        }, findUserResponse -> {
+            if (findUserResponse.failed()) {
+                future.fail(findUserResponse.cause());
+            } else {
+                final HttpClientResponse userInfoResponse = findUserResponse.result();
+                userInfoResponse.exceptionHandler(future::tryFail);
+                userInfoResponse.bodyHandler(body -> future.tryComplete(new BufferedResponse(
+                        userInfoResponse.statusCode(), userInfoResponse.getHeader(HttpHeaders.CONTENT_TYPE), body,
+                        generation)));
             }
+        });
+    }
 
+    /**
+     * Answers from the response cache, with {@code 304 Not Modified} if the client holds the response already.
+     */
+    private void sendCached(ResponseCache.Entry entry, HttpServerRequest request, HttpServerResponse response) {
+        response.putHeader(HttpHeaders.ETAG, entry.getEtag())
+                .putHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+        if (entry.matches(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            response.setStatusCode(304).end();
+        } else {
+            response.setStatusCode(200);
+            compression().end(request, response, contentType(entry.getContentType()), entry.getBody());
         }
-        return customerId;
+    }
+
+    private static String contentType(String contentType) {
+        return contentType == null ? "application/json; charset=utf-8" : contentType;
+    }
+
+    /**
+     * @return id of the customer the token of the request was issued to, the token is verified by the
+     * {@link BearerTokenHandler} of the route already.
+     */
+    private Long getCustomerId(RoutingContext context) {
+        final Long customerId = context.user() == null ? null : context.user().principal().getLong("sub");
+        return customerId == null ? 0L : customerId;
+    }
+
+    @Override
+    public void stop(Future<Void> future) throws Exception {
+        clients.close();
+        rateLimiter.close();
+        super.stop(future);
     }
 
 }
@@ -0,0 +1,148 @@
+package tech.pinhole.service.gateway;
+
+import io.vertx.circuitbreaker.CircuitBreakerOptions;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.servicediscovery.Record;
+import io.vertx.servicediscovery.ServiceDiscovery;
+import io.vertx.servicediscovery.types.HttpEndpoint;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link BackendClientRegistry}.
+ */
+public class BackendClientRegistryTest {
+
+    private static final String SERVICE = "user-account-rest-api";
+
+    private Vertx vertx;
+    private Context context;
+    private HttpServer server;
+    private ServiceDiscovery discovery;
+    private BackendClientRegistry registry;
+    private Record record;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        // the registry is used from a single event loop, like the verticle owning it
+        context = vertx.getOrCreateContext();
+        CompletableFuture<HttpServer> listening = new CompletableFuture<>();
+        vertx.createHttpServer()
+                .connectionHandler(connection -> connections.incrementAndGet())
+                .requestHandler(request -> request.response().end("ok"))
+                .listen(0, ar -> listening.complete(ar.result()));
+        server = listening.get(5, TimeUnit.SECONDS);
+
+        discovery = countingLookups(ServiceDiscovery.create(vertx));
+        CompletableFuture<Record> published = new CompletableFuture<>();
+        discovery.publish(HttpEndpoint.createRecord(SERVICE, "localhost", server.actualPort(), "/"),
+                ar -> published.complete(ar.result()));
+        record = published.get(5, TimeUnit.SECONDS);
+
+        CompletableFuture<BackendClientRegistry> created = new CompletableFuture<>();
+        context.runOnContext(v -> created.complete(
+                new BackendClientRegistry(vertx, discovery, new JsonObject(), new CircuitBreakerOptions())));
+        registry = created.get(5, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        context.runOnContext(v -> {
+            registry.close();
+            discovery.close();
+            vertx.close(ar -> closed.complete(null));
+        });
+        closed.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testConcurrentFirstRequestsShareOneLookup() throws Exception {
+        List<AsyncResult<HttpClientResponse>> responses = new CopyOnWriteArrayList<>();
+        context.runOnContext(v -> {
+            get(responses);
+            get(responses);
+        });
+        await().until(() -> responses.size() == 2);
+        context.runOnContext(v -> get(responses));
+        await().until(() -> responses.size() == 3);
+
+        responses.forEach(response -> assertEquals(200, response.result().statusCode()));
+        assertEquals(1, lookups.get());
+    }
+
+    @Test
+    public void testRequestsReuseTheConnection() throws Exception {
+        List<AsyncResult<HttpClientResponse>> responses = new CopyOnWriteArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            context.runOnContext(v -> get(responses));
+            final int sent = i;
+            await().until(() -> responses.size() == sent);
+        }
+
+        responses.forEach(response -> assertEquals(200, response.result().statusCode()));
+        assertEquals(1, connections.get());
+    }
+
+    @Test
+    public void testUnpublishedInstanceGetsNoMoreRequests() throws Exception {
+        List<AsyncResult<HttpClientResponse>> responses = new CopyOnWriteArrayList<>();
+        context.runOnContext(v -> get(responses));
+        await().until(() -> responses.size() == 1);
+
+        CompletableFuture<Void> unpublished = new CompletableFuture<>();
+        discovery.unpublish(record.getRegistration(), ar -> unpublished.complete(null));
+        unpublished.get(5, TimeUnit.SECONDS);
+        // the announcement reaches the registry asynchronously
+        await().until(() -> {
+            CompletableFuture<AsyncResult<HttpClientResponse>> response = new CompletableFuture<>();
+            context.runOnContext(v -> registry.execute(SERVICE, (client, future) ->
+                    client.get("/", future::tryComplete).exceptionHandler(future::tryFail).end(), response::complete));
+            return response.get(5, TimeUnit.SECONDS).failed();
+        });
+
+        assertEquals(2, lookups.get());
+        assertTrue(responses.get(0).succeeded());
+    }
+
+    private void get(List<AsyncResult<HttpClientResponse>> responses) {
+        registry.execute(SERVICE, (client, future) ->
+                client.get("/", future::tryComplete).exceptionHandler(future::tryFail).end(), ar -> {
+            if (ar.succeeded()) {
+                ar.result().bodyHandler(body -> responses.add(ar));
+            } else {
+                responses.add(ar);
+            }
+        });
+    }
+
+    private ServiceDiscovery countingLookups(ServiceDiscovery delegate) {
+        return (ServiceDiscovery) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ServiceDiscovery.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("getRecords")) {
+                        lookups.incrementAndGet();
+                    }
+                    return method.invoke(delegate, args);
+                });
+    }
+}
@@ -0,0 +1,116 @@
+package tech.pinhole.service.gateway;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for the {@link LoadBalancingStrategy} implementations.
+ */
+public class LoadBalancingStrategyTest {
+
+    @Test
+    public void testRoundRobinSendsToEveryInstanceInTurn() {
+        List<BackendInstance> instances = instances(0, 0, 0);
+        LoadBalancingStrategy strategy = LoadBalancingStrategy.create(LoadBalancingStrategy.ROUND_ROBIN);
+
+        Map<BackendInstance, Integer> selected = select(strategy, instances, 300);
+
+        instances.forEach(instance -> assertEquals(Integer.valueOf(100), selected.get(instance)));
+    }
+
+    @Test
+    public void testLeastOutstandingPicksTheLeastLoadedInstance() {
+        List<BackendInstance> instances = instances(3, 1, 2);
+        LoadBalancingStrategy strategy = LoadBalancingStrategy.create(LoadBalancingStrategy.LEAST_OUTSTANDING);
+
+        for (int i = 0; i < 10; i++) {
+            assertSame(instances.get(1), strategy.select(instances));
+        }
+    }
+
+    @Test
+    public void testLeastOutstandingSpreadsTies() {
+        List<BackendInstance> instances = instances(0, 0, 5);
+        LoadBalancingStrategy strategy = LoadBalancingStrategy.create(LoadBalancingStrategy.LEAST_OUTSTANDING);
+
+        Map<BackendInstance, Integer> selected = select(strategy, instances, 100);
+
+        assertTrue(selected.get(instances.get(0)) > 0);
+        assertTrue(selected.get(instances.get(1)) > 0);
+        assertEquals(Integer.valueOf(0), selected.get(instances.get(2)));
+    }
+
+    @Test
+    public void testPowerOfTwoChoicesNeverPicksTheMostLoadedInstance() {
+        List<BackendInstance> instances = instances(1, 9, 2);
+        LoadBalancingStrategy strategy = LoadBalancingStrategy.create(LoadBalancingStrategy.POWER_OF_TWO_CHOICES);
+
+        Map<BackendInstance, Integer> selected = select(strategy, instances, 1000);
+
+        assertEquals(Integer.valueOf(0), selected.get(instances.get(1)));
+        assertTrue(selected.get(instances.get(0)) > selected.get(instances.get(2)));
+    }
+
+    @Test
+    public void testPowerOfTwoChoicesComparesTwoDistinctInstances() {
+        List<BackendInstance> instances = instances(0, 1);
+        LoadBalancingStrategy strategy = LoadBalancingStrategy.create(LoadBalancingStrategy.POWER_OF_TWO_CHOICES);
+
+        for (int i = 0; i < 100; i++) {
+            assertSame(instances.get(0), strategy.select(instances));
+        }
+    }
+
+    @Test
+    public void testSingleInstanceIsAlwaysSelected() {
+        List<BackendInstance> instances = instances(4);
+        for (String name : Arrays.asList(LoadBalancingStrategy.ROUND_ROBIN, LoadBalancingStrategy.LEAST_OUTSTANDING,
+                LoadBalancingStrategy.POWER_OF_TWO_CHOICES)) {
+            assertSame(instances.get(0), LoadBalancingStrategy.create(name).select(instances));
+        }
+    }
+
+    @Test
+    public void testStrategiesAreNotShared() {
+        assertNotSame(LoadBalancingStrategy.create(LoadBalancingStrategy.ROUND_ROBIN),
+                LoadBalancingStrategy.create(LoadBalancingStrategy.ROUND_ROBIN));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownStrategyIsRejected() {
+        LoadBalancingStrategy.create("random");
+    }
+
+    private static Map<BackendInstance, Integer> select(LoadBalancingStrategy strategy,
+                                                        List<BackendInstance> instances, int requests) {
+        Map<BackendInstance, Integer> selected = new HashMap<>();
+        instances.forEach(instance -> selected.put(instance, 0));
+        for (int i = 0; i < requests; i++) {
+            selected.merge(strategy.select(instances), 1, Integer::sum);
+        }
+        return selected;
+    }
+
+    private static List<BackendInstance> instances(int... outstanding) {
+        BackendInstance[] instances = new BackendInstance[outstanding.length];
+        for (int i = 0; i < outstanding.length; i++) {
+            final int inFlight = outstanding[i];
+            instances[i] = new BackendInstance(null, null, null) {
+                @Override
+                public int outstanding() {
+                    return inFlight;
+                }
+            };
+        }
+        return Arrays.asList(instances);
+    }
+}
@@ -0,0 +1,98 @@
+package tech.pinhole.service.gateway;
+
+import io.vertx.circuitbreaker.CircuitBreakerOptions;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import io.vertx.servicediscovery.ServiceDiscovery;
+import io.vertx.servicediscovery.types.HttpEndpoint;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for {@link ProxyHandler}.
+ */
+public class ProxyHandlerTest {
+
+    private static final String SERVICE = "registration-rest-api";
+
+    private Vertx vertx;
+    private Context context;
+    private ServiceDiscovery discovery;
+    private BackendClientRegistry registry;
+    private HttpServer gateway;
+    private final CompletableFuture<String> received = new CompletableFuture<>();
+
+    @Before
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        context = vertx.getOrCreateContext();
+
+        // echoes the request body with the way it was framed
+        CompletableFuture<HttpServer> backend = new CompletableFuture<>();
+        vertx.createHttpServer().requestHandler(request -> request.bodyHandler(body -> {
+            received.complete(request.getHeader("Transfer-Encoding") + "|" + body);
+            request.response().end(body);
+        })).listen(0, ar -> backend.complete(ar.result()));
+        final int backendPort = backend.get(5, TimeUnit.SECONDS).actualPort();
+
+        discovery = ServiceDiscovery.create(vertx);
+        CompletableFuture<Void> published = new CompletableFuture<>();
+        discovery.publish(HttpEndpoint.createRecord(SERVICE, "localhost", backendPort, "/"),
+                ar -> published.complete(null));
+        published.get(5, TimeUnit.SECONDS);
+
+        CompletableFuture<HttpServer> listening = new CompletableFuture<>();
+        context.runOnContext(v -> {
+            registry = new BackendClientRegistry(vertx, discovery, new JsonObject(), new CircuitBreakerOptions());
+            Router router = Router.router(vertx);
+            router.post("/user").handler(new ProxyHandler(registry, SERVICE, request -> "/registerUser", 5000));
+            vertx.createHttpServer().requestHandler(router::accept).listen(0, ar -> listening.complete(ar.result()));
+        });
+        gateway = listening.get(5, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        context.runOnContext(v -> {
+            registry.close();
+            discovery.close();
+            vertx.close(ar -> closed.complete(null));
+        });
+        closed.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testHttp2BodyWithoutContentLengthIsStreamedChunked() throws Exception {
+        HttpClient client = vertx.createHttpClient(new HttpClientOptions()
+                .setProtocolVersion(HttpVersion.HTTP_2)
+                .setHttp2ClearTextUpgrade(false));
+        CompletableFuture<String> answered = new CompletableFuture<>();
+
+        HttpClientRequest request = client.post(gateway.actualPort(), "localhost", "/user",
+                response -> response.bodyHandler(body -> answered.complete(response.statusCode() + "|" + body)));
+        // streamed in DATA frames, HTTP/2 sends no transfer encoding and here no content length either
+        request.setChunked(true).exceptionHandler(answered::completeExceptionally);
+        request.write(Buffer.buffer("phoneNumber=%2B15550100"));
+        request.end("&email=customer%40pinhole.tech");
+
+        assertEquals("chunked|phoneNumber=%2B15550100&email=customer%40pinhole.tech",
+                received.get(5, TimeUnit.SECONDS));
+        assertEquals("200|phoneNumber=%2B15550100&email=customer%40pinhole.tech",
+                answered.get(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,73 @@
+package tech.pinhole.service.gateway;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link RateLimiter}.
+ */
+public class RateLimiterTest {
+
+    private Vertx vertx;
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+    }
+
+    @After
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Test
+    public void testPeerAddressIsTheClientWithoutTrustedProxy() {
+        RateLimiter limiter = new RateLimiter(vertx, new JsonObject());
+
+        assertEquals("10.0.0.7", limiter.clientAddress("10.0.0.7", "1.2.3.4"));
+        assertEquals("10.0.0.7", limiter.clientAddress("10.0.0.7", null));
+    }
+
+    @Test
+    public void testClientIsTheAddressAppendedByTheFurthestTrustedProxy() {
+        RateLimiter oneProxy = new RateLimiter(vertx, config(1));
+        RateLimiter twoProxies = new RateLimiter(vertx, config(2));
+
+        assertEquals("1.2.3.4", oneProxy.clientAddress("10.0.0.7", "1.2.3.4"));
+        // spoofed by the client
+        assertEquals("1.2.3.4", oneProxy.clientAddress("10.0.0.7", "6.6.6.6, 1.2.3.4"));
+        assertEquals("1.2.3.4", twoProxies.clientAddress("10.0.0.7", "6.6.6.6, 1.2.3.4, 10.0.0.3"));
+        // fewer hops than trusted proxies
+        assertEquals("1.2.3.4", twoProxies.clientAddress("10.0.0.7", "1.2.3.4"));
+        assertEquals("10.0.0.7", oneProxy.clientAddress("10.0.0.7", null));
+    }
+
+    @Test
+    public void testRequestIsAdmittedOnlyIfEveryBucketHasAToken() {
+        RateLimiter limiter = new RateLimiter(vertx, new JsonObject()
+                .put("api.gateway.rate.limit.identity.capacity", 1)
+                .put("api.gateway.rate.limit.identity.refill.per.second", 1));
+
+        assertEquals(0, limiter.tryAcquire(Arrays.asList("ip:1.2.3.4", "identity:customer@pinhole.tech")));
+        long waitMs = limiter.tryAcquire(Arrays.asList("ip:1.2.3.4", "identity:customer@pinhole.tech"));
+
+        assertTrue(waitMs > 0 && waitMs <= 1000);
+        // the refused request took no token from the IP bucket
+        for (int i = 0; i < 99; i++) {
+            assertEquals(0, limiter.tryAcquire(Collections.singletonList("ip:1.2.3.4")));
+        }
+    }
+
+    private static JsonObject config(int trustedProxies) {
+        return new JsonObject().put("api.gateway.rate.limit.trusted.proxies", trustedProxies);
+    }
+}
@@ -0,0 +1,101 @@
+package tech.pinhole.service.gateway;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test class for {@link ResponseCache}.
+ */
+public class ResponseCacheTest {
+
+    private static final String JSON = "application/json";
+    private static final String KEY = "/user|42|application/json";
+
+    private final ResponseCache cache = new ResponseCache(1024 * 1024, 60000);
+
+    @Test
+    public void testCachedResponseIsServed() {
+        cache.put(KEY, JSON, account(), cache.generation());
+
+        ResponseCache.Entry entry = cache.get(KEY);
+
+        assertNotNull(entry);
+        assertEquals(account(), entry.getBody());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testResponseFetchedDuringAnInvalidationIsNotCached() {
+        long generation = cache.generation();
+        // the account changes while its response is fetched
+        cache.invalidate(new JsonObject().put("id", 42));
+
+        assertNull(cache.put(KEY, JSON, account(), generation));
+        assertNull(cache.get(KEY));
+    }
+
+    @Test
+    public void testInvalidationOfAnyAccountKeyDropsTheResponse() {
+        for (JsonObject change : new JsonObject[]{new JsonObject().put("id", 42L),
+                new JsonObject().put("phoneNumber", "+15550100"),
+                new JsonObject().put("email", "Customer@Pinhole.tech"),
+                new JsonObject().put("all", true)}) {
+            cache.put(KEY, JSON, account(), cache.generation());
+
+            cache.invalidate(change);
+
+            assertNull(change.encode(), cache.get(KEY));
+            assertEquals(0, cache.getBytes());
+        }
+    }
+
+    @Test
+    public void testInvalidationOfAnotherAccountKeepsTheResponse() {
+        cache.put(KEY, JSON, account(), cache.generation());
+
+        cache.invalidate(new JsonObject().put("id", 7));
+
+        assertNotNull(cache.get(KEY));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedResponseIsEvictedOverBudget() {
+        ResponseCache small = new ResponseCache(2 * entrySize(), 60000);
+        small.put("a", JSON, account(), small.generation());
+        small.put("b", JSON, account(), small.generation());
+        small.get("a");
+
+        small.put("c", JSON, account(), small.generation());
+
+        assertNotNull(small.get("a"));
+        assertNull(small.get("b"));
+        assertNotNull(small.get("c"));
+    }
+
+    @Test
+    public void testResponseOverTheBudgetIsNotCached() {
+        ResponseCache tiny = new ResponseCache(16, 60000);
+
+        assertNull(tiny.put(KEY, JSON, account(), tiny.generation()));
+        assertEquals(0, tiny.getBytes());
+    }
+
+    private long entrySize() {
+        ResponseCache sizing = new ResponseCache(1024 * 1024, 60000);
+        sizing.put("a", JSON, account(), sizing.generation());
+        return sizing.getBytes();
+    }
+
+    private static Buffer account() {
+        return Buffer.buffer(new JsonObject()
+                .put("id", 42)
+                .put("phoneNumber", "+15550100")
+                .put("email", "customer@pinhole.tech")
+                .encode());
+    }
+}
@@ -0,0 +1,70 @@
+package tech.pinhole.service.gateway;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for {@link TokenBucket}.
+ */
+public class TokenBucketTest {
+
+    private static final long NOW = 1000000L;
+
+    @Test
+    public void testFullBucketAdmitsUpToItsCapacity() {
+        TokenBucket bucket = new TokenBucket(3, 1, NOW);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.waitMs(NOW));
+            bucket.take(1, NOW);
+        }
+        assertEquals(1000, bucket.waitMs(NOW));
+    }
+
+    @Test
+    public void testBucketRefillsOverTime() {
+        TokenBucket bucket = new TokenBucket(2, 4, NOW);
+        bucket.take(2, NOW);
+
+        assertEquals(250, bucket.waitMs(NOW));
+        assertEquals(100, bucket.waitMs(NOW + 150));
+        assertEquals(0, bucket.waitMs(NOW + 250));
+    }
+
+    @Test
+    public void testRefillStopsAtCapacity() {
+        TokenBucket bucket = new TokenBucket(2, 10, NOW);
+        bucket.take(2, NOW);
+
+        // a long idle time refills the capacity only
+        bucket.take(2, NOW + 60000);
+
+        assertEquals(100, bucket.waitMs(NOW + 60000));
+    }
+
+    @Test
+    public void testTokensTakenElsewhereDriveTheBucketBelowZero() {
+        TokenBucket bucket = new TokenBucket(5, 1, NOW);
+        bucket.take(8, NOW);
+
+        assertEquals(4000, bucket.waitMs(NOW));
+        assertEquals(0, bucket.waitMs(NOW + 4000));
+    }
+
+    @Test
+    public void testBucketWithoutRefillWaitsForever() {
+        TokenBucket bucket = new TokenBucket(1, 0, NOW);
+        bucket.take(1, NOW);
+
+        assertEquals(Long.MAX_VALUE, bucket.waitMs(NOW + 3600000));
+    }
+
+    @Test
+    public void testClockGoingBackDoesNotRefill() {
+        TokenBucket bucket = new TokenBucket(1, 1, NOW);
+        bucket.take(1, NOW);
+
+        assertEquals(1000, bucket.waitMs(NOW - 5000));
+    }
+}
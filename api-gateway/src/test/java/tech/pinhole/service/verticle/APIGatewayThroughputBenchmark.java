@@ -0,0 +1,215 @@
+package tech.pinhole.service.verticle;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.servicediscovery.ServiceDiscovery;
+import io.vertx.servicediscovery.types.HttpEndpoint;
+import tech.pinhole.service.constant.PinholeServiceNameConstants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput of the gateway by number of {@link APIGatewayVerticle} instances.
+ * <p>
+ * Deploys the gateway with 1, 2, 4... up to the number of cores instances and measures the requests a second
+ * answered on two routes: {@code GET /api/v}, which signs a token on the event loop, and {@code POST /user}, which
+ * reads and rate limits the registration form and proxies it to a stub registration service answering at once.
+ * Closed loop load: every connection sends its next request when the previous one is answered. The load and the
+ * stub service run in the same JVM and take their share of the cores, so the numbers compare the instance counts
+ * with each other, they are not the capacity of a gateway. The rate limits are raised out of the way.
+ * </p>
+ * <p>
+ * No numbers have been recorded yet, it needs a multi-core machine: with a single core only one instance count is
+ * measured and the load competes with the gateway for that core. Requests answered with an error or failing are
+ * counted apart, a run where they are not zero does not measure the gateway.
+ * </p>
+ * <pre>
+ * java -cp ... tech.pinhole.service.verticle.APIGatewayThroughputBenchmark [seconds] [connections]
+ * </pre>
+ *
+ * @author tosheer.kalra
+ */
+public class APIGatewayThroughputBenchmark {
+
+    private static final int PORT = 18787;
+
+    private static final Route VERSION = new Route("/api/v", HttpMethod.GET, "/api/v", null);
+    private static final Route REGISTER = new Route("/user", HttpMethod.POST, "/user",
+            Buffer.buffer("phoneNumber=%2B15550100&email=customer%40pinhole.tech&firstName=Pin&lastName=Hole"));
+
+    public static void main(String[] args) throws Exception {
+        final int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        final int connections = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        final int cores = Runtime.getRuntime().availableProcessors();
+
+        final List<Integer> instanceCounts = new ArrayList<>();
+        for (int instances = 1; instances < cores; instances *= 2) {
+            instanceCounts.add(instances);
+        }
+        instanceCounts.add(cores);
+
+        System.out.printf("%-8s %-10s %12s %8s %10s%n", "route", "instances", "requests/s", "speedup", "errors");
+        for (Route route : Arrays.asList(VERSION, REGISTER)) {
+            double single = 0;
+            for (int instances : instanceCounts) {
+                final LongAdder errors = new LongAdder();
+                final double throughput = run(route, instances, seconds, connections, errors);
+                if (instances == 1) {
+                    single = throughput;
+                }
+                System.out.printf("%-8s %-10d %12.0f %8s %10d%n", route.name, instances, throughput,
+                        single > 0 ? String.format("%.2fx", throughput / single) : "-", errors.sum());
+            }
+        }
+        System.exit(0);
+    }
+
+    private static double run(Route route, int instances, int seconds, int connections, LongAdder errors)
+            throws Exception {
+        final Vertx gateway = Vertx.vertx();
+        publishRegistrationStub(gateway);
+        final CompletableFuture<String> deployed = new CompletableFuture<>();
+        gateway.deployVerticle(APIGatewayVerticle.class.getName(), new DeploymentOptions()
+                .setInstances(instances)
+                .setConfig(new JsonObject()
+                        .put("api.gateway.http.address", "127.0.0.1")
+                        .put("api.gateway.http.port", PORT)
+                        .put("api.gateway.rate.limit.ip.capacity", 1e9)
+                        .put("api.gateway.rate.limit.ip.refill.per.second", 1e9)
+                        .put("api.gateway.rate.limit.identity.capacity", 1e9)
+                        .put("api.gateway.rate.limit.identity.refill.per.second", 1e9)
+                        .put("api.gateway.rate.limit.route.capacity", 1e9)
+                        .put("api.gateway.rate.limit.route.refill.per.second", 1e9)), ar -> {
+            if (ar.succeeded()) {
+                deployed.complete(ar.result());
+            } else {
+                deployed.completeExceptionally(ar.cause());
+            }
+        });
+        deployed.get(30, TimeUnit.SECONDS);
+
+        final Vertx load = Vertx.vertx(new VertxOptions()
+                .setEventLoopPoolSize(Runtime.getRuntime().availableProcessors()));
+        final LongAdder answered = new LongAdder();
+        final AtomicBoolean measuring = new AtomicBoolean();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final List<HttpClient> clients = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            final HttpClient client = load.createHttpClient(new HttpClientOptions()
+                    .setDefaultHost("127.0.0.1")
+                    .setDefaultPort(PORT)
+                    .setKeepAlive(true)
+                    .setMaxPoolSize(1));
+            clients.add(client);
+            // one client a connection, spread over the event loops of the load
+            load.runOnContext(v -> send(route, client, answered, errors, measuring, running));
+        }
+
+        // warm up, then measure
+        TimeUnit.SECONDS.sleep(Math.max(2, seconds / 3));
+        measuring.set(true);
+        final long start = System.nanoTime();
+        TimeUnit.SECONDS.sleep(seconds);
+        final double throughput = answered.sum() / ((System.nanoTime() - start) / 1e9);
+        running.set(false);
+
+        clients.forEach(HttpClient::close);
+        close(load);
+        close(gateway);
+        return throughput;
+    }
+
+    /**
+     * Registration service answering every registration at once, published where the gateway looks it up.
+     */
+    private static void publishRegistrationStub(Vertx vertx) throws Exception {
+        final CompletableFuture<HttpServer> listening = new CompletableFuture<>();
+        vertx.createHttpServer()
+                .requestHandler(request -> request.bodyHandler(body -> request.response()
+                        .putHeader(HttpHeaders.CONTENT_TYPE, "application/json; charset=utf-8")
+                        .end("{\"id\":42}")))
+                .listen(0, "127.0.0.1", ar -> {
+                    if (ar.succeeded()) {
+                        listening.complete(ar.result());
+                    } else {
+                        listening.completeExceptionally(ar.cause());
+                    }
+                });
+        final int port = listening.get(30, TimeUnit.SECONDS).actualPort();
+
+        final CompletableFuture<Void> published = new CompletableFuture<>();
+        ServiceDiscovery.create(vertx).publish(HttpEndpoint.createRecord(
+                PinholeServiceNameConstants.REGISTRATION_HTTP_SERVICE, "127.0.0.1", port, "/"), ar -> {
+            if (ar.succeeded()) {
+                published.complete(null);
+            } else {
+                published.completeExceptionally(ar.cause());
+            }
+        });
+        published.get(30, TimeUnit.SECONDS);
+    }
+
+    private static void send(Route route, HttpClient client, LongAdder answered, LongAdder errors,
+                             AtomicBoolean measuring, AtomicBoolean running) {
+        if (!running.get()) {
+            return;
+        }
+        final HttpClientRequest request = client.request(route.method, route.uri, response ->
+                response.bodyHandler(body -> {
+                    if (measuring.get()) {
+                        (response.statusCode() == 200 ? answered : errors).increment();
+                    }
+                    send(route, client, answered, errors, measuring, running);
+                }));
+        request.exceptionHandler(e -> {
+            if (measuring.get()) {
+                errors.increment();
+            }
+            send(route, client, answered, errors, measuring, running);
+        });
+        if (route.form == null) {
+            request.end();
+        } else {
+            request.putHeader(HttpHeaders.CONTENT_TYPE, "application/x-www-form-urlencoded").end(route.form);
+        }
+    }
+
+    private static void close(Vertx vertx) throws Exception {
+        final CompletableFuture<Void> closed = new CompletableFuture<>();
+        vertx.close(ar -> closed.complete(null));
+        closed.get(30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Request sent by the load.
+     */
+    private static final class Route {
+
+        private final String name;
+        private final HttpMethod method;
+        private final String uri;
+        private final Buffer form;
+
+        private Route(String name, HttpMethod method, String uri, Buffer form) {
+            this.name = name;
+            this.method = method;
+            this.uri = uri;
+            this.form = form;
+        }
+    }
+}
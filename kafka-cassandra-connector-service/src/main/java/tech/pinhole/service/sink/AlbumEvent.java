@@ -0,0 +1,126 @@
+package tech.pinhole.service.sink;
+
+import io.vertx.core.json.JsonObject;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import tech.pinhole.service.avro.AlbumEventCodec;
+
+/**
+ * Album event consumed from kafka, decoded once so the writer can route it to its table and partition.
+ * <p>
+ * Every event carries a write timestamp derived from its kafka record alone, used as cassandra write time, so a
+ * record consumed again after a restart or a rebalance writes with the same write time. Write times grow with the
+ * offsets of a partition, so a later event of an album wins over an earlier one. A dead letter replay carries the
+ * write time its event was first given, see {@link RecordSource}, so a replayed event writes exactly the cells it
+ * would have written and can not override a newer event of the same row.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class AlbumEvent {
+
+    private static final String PAYLOAD_EVENT_TYPE = "event_type";
+    private static final String PAYLOAD_ALBUM_ID = "album_id";
+
+    /**
+     * Microseconds of a millisecond, the write times of the records of a partition in one millisecond.
+     */
+    private static final long OFFSET_SLOTS = 1000L;
+
+    private final AlbumEventType type;
+    private final String albumId;
+    private final JsonObject payload;
+    private final ConsumerRecord<String, byte[]> record;
+    private final RecordSource source;
+    private final long writeTimestamp;
+
+    public AlbumEvent(AlbumEventType type, String albumId, JsonObject payload, ConsumerRecord<String, byte[]> record,
+                      RecordSource source, long writeTimestamp) {
+        this.type = type;
+        this.albumId = albumId;
+        this.payload = payload;
+        this.record = record;
+        this.source = source;
+        this.writeTimestamp = writeTimestamp;
+    }
+
+    /**
+     * Decodes a binary avro album event, legacy JSON events are accepted as well.
+     *
+     * @param record kafka record, or dead letter replayed from it.
+     * @return decoded event.
+     * @throws IllegalArgumentException if the value is not a known album event.
+     */
+    public static AlbumEvent decode(ConsumerRecord<String, byte[]> record) {
+        final RecordSource source = RecordSource.of(record);
+        final JsonObject payload = AlbumEventCodec.getDefault().decode(source.getValue());
+        AlbumEventType type = AlbumEventType.fromEventType(payload.getString(PAYLOAD_EVENT_TYPE));
+        if (type == null) {
+            throw new IllegalArgumentException("Unknown album event type " + payload.getValue(PAYLOAD_EVENT_TYPE));
+        }
+        for (String field : type.getRequiredFields()) {
+            if (payload.getValue(field) == null) {
+                throw new IllegalArgumentException("Album event " + type.getEventType() + " is missing " + field);
+            }
+        }
+        return new AlbumEvent(type, payload.getValue(PAYLOAD_ALBUM_ID).toString(), payload, record, source,
+                writeTimestamp(source));
+    }
+
+    /**
+     * Cassandra write time in microseconds. A replayed event keeps the write time it was first given. Otherwise the
+     * record timestamp in microseconds plus the offset modulo {@value #OFFSET_SLOTS}, the same whenever the record
+     * is consumed. Events of an album share a partition so within a millisecond the later offset wins, e.g. an album
+     * deleted and created again in the same millisecond stays created, unless the two offsets straddle a multiple of
+     * {@value #OFFSET_SLOTS}.
+     *
+     * @param source source of the event.
+     * @return write timestamp or -1 if the record has no timestamp, in which case cassandra assigns one.
+     */
+    static long writeTimestamp(RecordSource source) {
+        if (source.getWriteTimestamp() >= 0) {
+            return source.getWriteTimestamp();
+        }
+        if (source.getTimestamp() < 0) {
+            return -1L;
+        }
+        return source.getTimestamp() * OFFSET_SLOTS + Math.floorMod(source.getOffset(), OFFSET_SLOTS);
+    }
+
+    public AlbumEventType getType() {
+        return type;
+    }
+
+    public String getAlbumId() {
+        return albumId;
+    }
+
+    public JsonObject getPayload() {
+        return payload;
+    }
+
+    /**
+     * @return kafka record the event was decoded from.
+     */
+    public ConsumerRecord<String, byte[]> getRecord() {
+        return record;
+    }
+
+    /**
+     * @return kafka record the event was first consumed from.
+     */
+    public RecordSource getSource() {
+        return source;
+    }
+
+    /**
+     * @return cassandra write time in microseconds or -1 if none could be derived.
+     */
+    public long getWriteTimestamp() {
+        return writeTimestamp;
+    }
+
+    @Override
+    public String toString() {
+        return payload.encode();
+    }
+}
@@ -0,0 +1,115 @@
+package tech.pinhole.service.sink;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Session;
+import tech.pinhole.service.dao.CassandraSessionManager;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Prepared statements for every {@link AlbumEventType}, prepared once at startup and bound per event.
+ *
+ * @author tosheer.kalra
+ */
+public class AlbumEventStatements {
+
+    private static final String WRITE_TIMESTAMP = "write_timestamp";
+
+    private final Map<AlbumEventType, PreparedStatement> preparedStatements = new EnumMap<>(AlbumEventType.class);
+
+    private AlbumEventStatements() {
+
+    }
+
+    /**
+     * Creates the album tables if needed and prepares the statement of every event type. Blocking, call it from a
+     * worker thread.
+     *
+     * @param sessionManager cassandra session manager connected to the album keyspace.
+     * @return prepared statements.
+     * @throws ExecutionException if cassandra could not be reached or a statement could not be prepared.
+     */
+    public static AlbumEventStatements prepare(CassandraSessionManager sessionManager)
+            throws ExecutionException, InterruptedException {
+        Session session = sessionManager.session().get();
+        for (String createStatement : CREATE_STATEMENTS) {
+            session.execute(createStatement);
+        }
+        AlbumEventStatements statements = new AlbumEventStatements();
+        for (AlbumEventType type : AlbumEventType.values()) {
+            statements.preparedStatements.put(type, sessionManager.prepare(type.getCql()).get());
+        }
+        return statements;
+    }
+
+    /**
+     * Binds the event payload to the statement of its type. Optional fields missing from the payload are left
+     * unset so they neither overwrite existing values nor write tombstones, same for a missing write timestamp
+     * which lets cassandra assign one.
+     *
+     * @param event decoded album event.
+     * @return statement ready to be executed or batched.
+     */
+    public BoundStatement bind(AlbumEvent event) {
+        BoundStatement bound = preparedStatements.get(event.getType()).bind();
+        for (String field : event.getType().getRequiredFields()) {
+            bound.setString(field, event.getPayload().getValue(field).toString());
+        }
+        for (String field : event.getType().getOptionalFields()) {
+            Object value = event.getPayload().getValue(field);
+            if (value != null) {
+                bound.setString(field, value.toString());
+            }
+        }
+        if (event.getWriteTimestamp() >= 0) {
+            bound.setLong(WRITE_TIMESTAMP, event.getWriteTimestamp());
+        }
+        return bound;
+    }
+
+    // CQL statement
+
+    private static final List<String> CREATE_STATEMENTS = Arrays.asList(
+            "CREATE TABLE IF NOT EXISTS albums (\n" +
+                    "  album_id text PRIMARY KEY,\n" +
+                    "  album_label text,\n" +
+                    "  album_created_on text,\n" +
+                    "  album_location text,\n" +
+                    "  album_owner text,\n" +
+                    "  album_updated_on text,\n" +
+                    "  album_updated_by text )",
+            "CREATE TABLE IF NOT EXISTS album_members (\n" +
+                    "  album_id text,\n" +
+                    "  member_id text,\n" +
+                    "  invitation_sender text,\n" +
+                    "  invitee_privileges text,\n" +
+                    "  invitation_message text,\n" +
+                    "  PRIMARY KEY (album_id, member_id) )",
+            "CREATE TABLE IF NOT EXISTS album_photos (\n" +
+                    "  album_id text,\n" +
+                    "  photo_id text,\n" +
+                    "  photo_caption text,\n" +
+                    "  photo_uploaded_on text,\n" +
+                    "  photo_location text,\n" +
+                    "  photo_owner text,\n" +
+                    "  photo_thumb text,\n" +
+                    "  PRIMARY KEY (album_id, photo_id) )",
+            "CREATE TABLE IF NOT EXISTS photo_comments (\n" +
+                    "  album_id text,\n" +
+                    "  photo_id text,\n" +
+                    "  commented_on text,\n" +
+                    "  comment_by text,\n" +
+                    "  comment text,\n" +
+                    "  PRIMARY KEY (album_id, photo_id, commented_on, comment_by) )",
+            "CREATE TABLE IF NOT EXISTS photo_likes (\n" +
+                    "  album_id text,\n" +
+                    "  photo_id text,\n" +
+                    "  liked_by text,\n" +
+                    "  liked_on text,\n" +
+                    "  PRIMARY KEY (album_id, photo_id, liked_by) )");
+}
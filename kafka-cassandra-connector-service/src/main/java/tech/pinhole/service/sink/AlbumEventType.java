@@ -0,0 +1,126 @@
+package tech.pinhole.service.sink;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Album event types as described in {@code MQTT Topics and Events.md} with the CQL each event is persisted with.
+ * <p>
+ * Statements use named bind markers which are named after the payload fields, so binding an event is a lookup of
+ * each marker in the payload. Every table is partitioned by {@code album_id} so all statements of an album can be
+ * sent in one single partition unlogged batch.
+ * </p>
+ * <p>
+ * Every statement is an upsert (or delete) of a row keyed by the event identity, e.g. album, photo and liking user
+ * for a like or album, photo, comment time and author for a comment, written {@code USING TIMESTAMP} of the event.
+ * Replaying an event therefore rewrites identical cells and is a no op.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public enum AlbumEventType {
+
+    CREATE_ALBUM("create_album",
+            "INSERT INTO albums (album_id, album_label, album_created_on, album_location, album_owner) "
+                    + "VALUES (:album_id, :album_label, :album_created_on, :album_location, :album_owner) "
+                    + "USING TIMESTAMP :write_timestamp",
+            fields("album_id"),
+            fields("album_label", "album_created_on", "album_location", "album_owner")),
+
+    UPDATE_ALBUM("update_album",
+            "UPDATE albums USING TIMESTAMP :write_timestamp "
+                    + "SET album_updated_on = :album_upated_on, album_updated_by = :album_updated_by "
+                    + "WHERE album_id = :album_id",
+            fields("album_id"),
+            fields("album_upated_on", "album_updated_by")),
+
+    DELETE_ALBUM("delete_album",
+            "DELETE FROM albums USING TIMESTAMP :write_timestamp WHERE album_id = :album_id",
+            fields("album_id"),
+            fields()),
+
+    ADD_USER_TO_ALBUM("add_user_to_album",
+            "INSERT INTO album_members (album_id, member_id, invitation_sender, invitee_privileges, "
+                    + "invitation_message) VALUES (:album_id, :invitation_receiver, :invitation_sender, "
+                    + ":invitee_privileges, :invitation_message) USING TIMESTAMP :write_timestamp",
+            fields("album_id", "invitation_receiver"),
+            fields("invitation_sender", "invitee_privileges", "invitation_Message")),
+
+    REMOVE_USER_FROM_ALBUM("remove_user_from_album",
+            "DELETE FROM album_members USING TIMESTAMP :write_timestamp "
+                    + "WHERE album_id = :album_id AND member_id = :removal_receiver",
+            fields("album_id", "removal_receiver"),
+            fields()),
+
+    UPLOAD_PHOTO("upload_photo",
+            "INSERT INTO album_photos (album_id, photo_id, photo_caption, photo_uploaded_on, photo_location, "
+                    + "photo_owner, photo_thumb) VALUES (:album_id, :photo_id, :photo_caption, :photo_uploaded_on, "
+                    + ":photo_location, :photo_owner, :photo_thumb) USING TIMESTAMP :write_timestamp",
+            fields("album_id", "photo_id"),
+            fields("photo_caption", "photo_uploaded_on", "photo_location", "photo_owner", "photo_thumb")),
+
+    COMMENT_PHOTO("comment_photo",
+            "INSERT INTO photo_comments (album_id, photo_id, commented_on, comment_by, comment) "
+                    + "VALUES (:album_id, :photo_id, :commented_on, :comment_by, :comment) "
+                    + "USING TIMESTAMP :write_timestamp",
+            fields("album_id", "photo_id", "commented_on", "comment_by"),
+            fields("comment")),
+
+    LIKE_PHOTO("like_photo",
+            "INSERT INTO photo_likes (album_id, photo_id, liked_by, liked_on) "
+                    + "VALUES (:album_id, :photo_id, :liked_by, :liked_on) USING TIMESTAMP :write_timestamp",
+            fields("album_id", "photo_id", "liked_by"),
+            fields("liked_on"));
+
+    private final String eventType;
+    private final String cql;
+    private final List<String> requiredFields;
+    private final List<String> optionalFields;
+
+    AlbumEventType(String eventType, String cql, List<String> requiredFields, List<String> optionalFields) {
+        this.eventType = eventType;
+        this.cql = cql;
+        this.requiredFields = requiredFields;
+        this.optionalFields = optionalFields;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public String getCql() {
+        return cql;
+    }
+
+    /**
+     * @return payload fields making the primary key of the row, an event without them can not be persisted.
+     */
+    public List<String> getRequiredFields() {
+        return requiredFields;
+    }
+
+    /**
+     * @return payload fields which are written when present and left unset otherwise.
+     */
+    public List<String> getOptionalFields() {
+        return optionalFields;
+    }
+
+    /**
+     * @param eventType value of the {@code event_type} payload field.
+     * @return matching type or null if event type is unknown.
+     */
+    public static AlbumEventType fromEventType(String eventType) {
+        for (AlbumEventType type : values()) {
+            if (type.eventType.equalsIgnoreCase(eventType)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    private static List<String> fields(String... fields) {
+        return Collections.unmodifiableList(Arrays.asList(fields));
+    }
+}
@@ -0,0 +1,182 @@
+package tech.pinhole.service.sink;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.QueryValidationException;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes album events to cassandra in single partition unlogged batches.
+ * <p>
+ * Events are grouped by album id (the partition key of every album table) and each group is sent as one or more
+ * {@link BatchStatement.Type#UNLOGGED} batches, which costs one coordinator round trip per album instead of one per
+ * event without the batch log overhead of logged batches. The batches of an album are written one after the other,
+ * a batch only starts once the previous one is written, so the events of an album land in kafka order while
+ * different albums are written concurrently. The number of albums in flight, and so of batches, is capped by a
+ * semaphore, {@link #write(List)} blocks while the cap is reached which is how cassandra pushes back on the kafka
+ * consumer.
+ * </p>
+ * <p>
+ * Transient failures are retried after a backoff which doubles on every attempt. A batch rejected by cassandra as
+ * invalid is split and its events are written one
+ * by one so only the offending event is given up on. Events which still can not be written go to the
+ * {@link DeadLetterPublisher}, writes are idempotent so retrying a batch that partially applied is harmless. If
+ * they can not be dead lettered either the write fails, and the batches after it of the album are not written.
+ * Failures are handled on the retry scheduler rather than on the cassandra driver threads which complete the writes,
+ * as publishing a dead letter may block.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class CassandraBatchWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(CassandraBatchWriter.class);
+
+    private final Session session;
+    private final AlbumEventStatements statements;
+    private final DeadLetterPublisher deadLetters;
+    private final Semaphore inFlight;
+    private final int maxBatchStatements;
+    private final int maxRetries;
+    private final ScheduledExecutorService scheduler;
+    private final long retryBackoffMs;
+
+    /**
+     * @param scheduler      scheduler the failures are handled on, it must not be the executor blocked in
+     *                       {@link #write(List)} while batches are in flight.
+     * @param retryBackoffMs time to wait before the first retry of a batch.
+     */
+    public CassandraBatchWriter(Session session, AlbumEventStatements statements, DeadLetterPublisher deadLetters,
+                                int maxInFlightBatches, int maxBatchStatements, int maxRetries,
+                                ScheduledExecutorService scheduler, long retryBackoffMs) {
+        this.session = session;
+        this.statements = statements;
+        this.deadLetters = deadLetters;
+        this.inFlight = new Semaphore(maxInFlightBatches);
+        this.maxBatchStatements = maxBatchStatements;
+        this.maxRetries = maxRetries;
+        this.scheduler = scheduler;
+        this.retryBackoffMs = retryBackoffMs;
+    }
+
+    /**
+     * Writes the events, blocking while too many batches are in flight.
+     *
+     * @param events events in kafka order.
+     * @return future completed once every batch has been acknowledged by cassandra or its events have been dead
+     * lettered, failed if events could be neither written nor dead lettered.
+     * @throws InterruptedException if interrupted while waiting for in flight batches.
+     */
+    public ListenableFuture<List<Void>> write(List<AlbumEvent> events) throws InterruptedException {
+        List<ListenableFuture<Void>> written = new ArrayList<>();
+        for (List<AlbumEvent> albumEvents : groupByAlbum(events).values()) {
+            inFlight.acquire();
+            ListenableFuture<Void> result = executeInOrder(albumEvents, maxBatchStatements, 0);
+            result.addListener(inFlight::release, MoreExecutors.directExecutor());
+            written.add(result);
+        }
+        return Futures.allAsList(written);
+    }
+
+    /**
+     * Writes the events in chunks, a chunk only starts once the previous one is written or dead lettered.
+     *
+     * @param events    events of an album, in kafka order.
+     * @param chunkSize maximum statements a batch.
+     * @param from      index of the first event to write.
+     * @return future completed once every event is written or dead lettered, failed if one could be neither.
+     */
+    private ListenableFuture<Void> executeInOrder(List<AlbumEvent> events, int chunkSize, int from) {
+        List<AlbumEvent> chunk = events.subList(from, Math.min(from + chunkSize, events.size()));
+        ListenableFuture<Void> result = execute(toStatement(chunk), chunk, maxRetries);
+        int next = from + chunk.size();
+        if (next >= events.size()) {
+            return result;
+        }
+        return Futures.transformAsync(result, written -> executeInOrder(events, chunkSize, next),
+                MoreExecutors.directExecutor());
+    }
+
+    private Map<String, List<AlbumEvent>> groupByAlbum(List<AlbumEvent> events) {
+        // Insertion ordered so events of an album keep their kafka order inside the batch.
+        Map<String, List<AlbumEvent>> byAlbum = new LinkedHashMap<>();
+        for (AlbumEvent event : events) {
+            byAlbum.computeIfAbsent(event.getAlbumId(), albumId -> new ArrayList<>()).add(event);
+        }
+        return byAlbum;
+    }
+
+    private Statement toStatement(List<AlbumEvent> events) {
+        if (events.size() == 1) {
+            return statements.bind(events.get(0));
+        }
+        BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+        for (AlbumEvent event : events) {
+            batch.add(statements.bind(event));
+        }
+        return batch;
+    }
+
+    private ListenableFuture<Void> execute(Statement statement, List<AlbumEvent> events, int retriesLeft) {
+        SettableFuture<Void> result = SettableFuture.create();
+        Futures.addCallback(session.executeAsync(statement), new FutureCallback<ResultSet>() {
+            public void onSuccess(ResultSet resultSet) {
+                result.set(null);
+            }
+
+            public void onFailure(Throwable t) {
+                try {
+                    if (t instanceof QueryValidationException) {
+                        scheduler.execute(() -> result.setFuture(events.size() > 1
+                                ? executeOneByOne(events)
+                                : deadLetter(events, t)));
+                    } else if (retriesLeft > 0) {
+                        long backoff = retryBackoffMs << Math.min(maxRetries - retriesLeft, 16);
+                        logger.warn("Cassandra write failed, {} retries left, retrying in {} ms: {}", retriesLeft,
+                                backoff, t.getMessage());
+                        scheduler.schedule(() -> result.setFuture(execute(statement, events, retriesLeft - 1)),
+                                backoff, TimeUnit.MILLISECONDS);
+                    } else {
+                        logger.error("Cassandra write failed after {} retries: {}", maxRetries, t.getMessage());
+                        scheduler.execute(() -> result.setFuture(deadLetter(events, t)));
+                    }
+                } catch (RejectedExecutionException e) {
+                    // Shutting down, the events are replayed by the next owner of the partition.
+                    result.setException(t);
+                }
+            }
+        });
+        return result;
+    }
+
+    private ListenableFuture<Void> executeOneByOne(List<AlbumEvent> events) {
+        // The events of a batch are of one album, one by one keeps them in order.
+        return executeInOrder(events, 1, 0);
+    }
+
+    private ListenableFuture<Void> deadLetter(List<AlbumEvent> events, Throwable cause) {
+        List<ListenableFuture<Void>> published = new ArrayList<>(events.size());
+        for (AlbumEvent event : events) {
+            published.add(deadLetters.publish(event, cause));
+        }
+        return Futures.transformAsync(Futures.allAsList(published), all -> Futures.immediateFuture(null),
+                MoreExecutors.directExecutor());
+    }
+}
@@ -0,0 +1,69 @@
+package tech.pinhole.service.sink;
+
+import io.vertx.core.json.JsonObject;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import java.time.Instant;
+
+/**
+ * JSON envelope of a dead letter record.
+ * <pre>
+ * {
+ *   "key" : "album key of the original record",
+ *   "value" : "base64 of the original record value",
+ *   "source_topic" : "album_data",
+ *   "source_partition" : 3,
+ *   "source_offset" : 1234,
+ *   "source_timestamp" : 1489000000000,
+ *   "write_timestamp" : 1489000000000000,
+ *   "stage" : "decode|write",
+ *   "error_class" : "java.lang.IllegalArgumentException",
+ *   "error_message" : "Unknown album event type foo",
+ *   "failed_on" : "2017-03-09T10:15:30Z"
+ * }
+ * </pre>
+ * <p>
+ * The source is the record the event was first consumed from, a replayed event failing again keeps it, see
+ * {@link RecordSource}. The write timestamp is -1 if the event never got one, e.g. it could not be decoded.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public final class DeadLetter {
+
+    public static final String STAGE_DECODE = "decode";
+    public static final String STAGE_WRITE = "write";
+
+    public static final String KEY = "key";
+    public static final String VALUE = "value";
+    public static final String SOURCE_TOPIC = "source_topic";
+    public static final String SOURCE_PARTITION = "source_partition";
+    public static final String SOURCE_OFFSET = "source_offset";
+    public static final String SOURCE_TIMESTAMP = "source_timestamp";
+    public static final String WRITE_TIMESTAMP = "write_timestamp";
+    public static final String STAGE = "stage";
+    public static final String ERROR_CLASS = "error_class";
+    public static final String ERROR_MESSAGE = "error_message";
+    public static final String FAILED_ON = "failed_on";
+
+    private DeadLetter() {
+
+    }
+
+    static JsonObject envelope(ConsumerRecord<String, byte[]> record, long writeTimestamp, String stage,
+                               Throwable cause) {
+        final RecordSource source = RecordSource.of(record);
+        return new JsonObject()
+                .put(KEY, record.key())
+                .put(VALUE, source.getValue())
+                .put(SOURCE_TOPIC, source.getTopic())
+                .put(SOURCE_PARTITION, source.getPartition())
+                .put(SOURCE_OFFSET, source.getOffset())
+                .put(SOURCE_TIMESTAMP, source.getTimestamp())
+                .put(WRITE_TIMESTAMP, writeTimestamp)
+                .put(STAGE, stage)
+                .put(ERROR_CLASS, cause.getClass().getName())
+                .put(ERROR_MESSAGE, cause.getMessage())
+                .put(FAILED_ON, Instant.now().toString());
+    }
+}
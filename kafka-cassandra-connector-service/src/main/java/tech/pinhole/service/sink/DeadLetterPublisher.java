@@ -0,0 +1,106 @@
+package tech.pinhole.service.sink;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import io.vertx.core.json.JsonObject;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes album events which can not be persisted to a dead letter kafka topic.
+ * <p>
+ * Kafka 0.10 records have no headers so the original record is wrapped in a JSON envelope together with its source
+ * coordinates and the error, see {@link DeadLetter}. Envelopes are keyed like the original record so dead letters
+ * of an album stay ordered.
+ * </p>
+ * <p>
+ * The returned futures fail if the dead letter could not be published, or if there is no dead letter topic, so the
+ * offsets of the record are not committed. Only a publisher created to drop undeliverable dead letters logs them
+ * with their content and completes instead, the record is lost then.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class DeadLetterPublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeadLetterPublisher.class);
+
+    private final Producer<String, String> producer;
+    private final String topic;
+    private final boolean dropUndeliverable;
+
+    /**
+     * @param producer          producer used to publish dead letters, null if there is no dead letter topic.
+     * @param topic             dead letter topic, null if there is none.
+     * @param dropUndeliverable true to log and give up on dead letters which can not be published instead of failing.
+     */
+    public DeadLetterPublisher(Producer<String, String> producer, String topic, boolean dropUndeliverable) {
+        this.producer = producer;
+        this.topic = topic;
+        this.dropUndeliverable = dropUndeliverable;
+    }
+
+    /**
+     * @param event event which could not be written.
+     * @param cause failure.
+     * @return future completed once the dead letter has been acknowledged by kafka, failed if it was not.
+     */
+    public ListenableFuture<Void> publish(AlbumEvent event, Throwable cause) {
+        return publish(event.getRecord(), event.getWriteTimestamp(), DeadLetter.STAGE_WRITE, cause);
+    }
+
+    /**
+     * @param record record which could not be persisted.
+     * @param stage  stage the record failed in, {@link DeadLetter#STAGE_DECODE} or {@link DeadLetter#STAGE_WRITE}.
+     * @param cause  failure.
+     * @return future completed once the dead letter has been acknowledged by kafka, failed if it was not.
+     */
+    public ListenableFuture<Void> publish(ConsumerRecord<String, byte[]> record, String stage, Throwable cause) {
+        return publish(record, RecordSource.of(record).getWriteTimestamp(), stage, cause);
+    }
+
+    private ListenableFuture<Void> publish(ConsumerRecord<String, byte[]> record, long writeTimestamp, String stage,
+                                           Throwable cause) {
+        final JsonObject envelope = DeadLetter.envelope(record, writeTimestamp, stage, cause);
+        if (producer == null) {
+            return undeliverable(record, envelope, new IllegalStateException("No dead letter topic"));
+        }
+        final SettableFuture<Void> published = SettableFuture.create();
+        try {
+            producer.send(new ProducerRecord<>(topic, record.key(), envelope.encode()), (metadata, exception) -> {
+                if (exception != null) {
+                    published.setFuture(undeliverable(record, envelope, exception));
+                } else {
+                    logger.warn("Album event at {}-{} offset {} failed in {}, moved to {}-{} offset {}",
+                            record.topic(), record.partition(), record.offset(), stage, metadata.topic(),
+                            metadata.partition(), metadata.offset());
+                    published.set(null);
+                }
+            });
+        } catch (RuntimeException e) {
+            published.setFuture(undeliverable(record, envelope, e));
+        }
+        return published;
+    }
+
+    private ListenableFuture<Void> undeliverable(ConsumerRecord<String, byte[]> record, JsonObject envelope,
+                                                 Throwable cause) {
+        if (dropUndeliverable) {
+            logger.error("Dropping dead letter {}: {}", envelope.encode(), cause.getMessage());
+            return Futures.immediateFuture(null);
+        }
+        logger.error("Could not publish the dead letter of {}-{} offset {}: {}", record.topic(), record.partition(),
+                record.offset(), cause.getMessage());
+        return Futures.immediateFailedFuture(cause);
+    }
+
+    public void close() {
+        if (producer != null) {
+            producer.close();
+        }
+    }
+}
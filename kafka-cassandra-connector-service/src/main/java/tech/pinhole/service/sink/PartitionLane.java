@@ -0,0 +1,316 @@
+package tech.pinhole.service.sink;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ordered processing lane of one kafka partition.
+ * <p>
+ * Record chunks handed over by the polling thread are decoded and written one chunk at a time, the next chunk of a
+ * partition only starts once cassandra acknowledged the previous one. Events of an album (which always share a
+ * partition) are therefore persisted in kafka order while different partitions are processed in parallel on the
+ * shared worker executor. Records which can not be decoded or written are dead lettered and the lane moves on, a
+ * chunk only counts as done (and its offsets as committable) once its dead letters have been published. A chunk
+ * whose events could be neither written nor dead lettered is tried again after a backoff and the lane does not move
+ * past it until it went through. The chunk is not decoded again and the dead letters already published are not
+ * published again, its events are written again as a whole as writes are idempotent. A lane interrupted while
+ * waiting for cassandra stops: its chunk was decoded and partly written already, so it is not
+ * processed again here, neither are the chunks after it. Their offsets are not committed, the next owner of the
+ * partition consumes them again.
+ * </p>
+ * <p>
+ * All methods are safe to call from the polling thread, processing happens on the executor and on cassandra
+ * driver callback threads.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class PartitionLane {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionLane.class);
+
+    private final TopicPartition partition;
+    private final CassandraBatchWriter writer;
+    private final DeadLetterPublisher deadLetters;
+    private final Executor executor;
+    private final ScheduledExecutorService scheduler;
+    private final long retryBackoffMs;
+    private final Queue<List<ConsumerRecord<String, byte[]>>> chunks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingRecords = new AtomicInteger();
+    private final AtomicBoolean processing = new AtomicBoolean();
+    private volatile boolean stopped;
+    // Chunk being processed, handed over between tasks of the lane.
+    private Chunk current;
+
+    private volatile long completedOffset = -1L;
+    private volatile long firstOffset = -1L;
+    private long committedOffset = -1L;
+    private boolean paused;
+
+    /**
+     * @param executor       executor the chunks are processed on.
+     * @param scheduler      scheduler of the retries, they are handed over to the executor when due.
+     * @param retryBackoffMs time to wait before a chunk which failed is tried again.
+     */
+    public PartitionLane(TopicPartition partition, CassandraBatchWriter writer, DeadLetterPublisher deadLetters,
+                         Executor executor, ScheduledExecutorService scheduler, long retryBackoffMs) {
+        this.partition = partition;
+        this.writer = writer;
+        this.deadLetters = deadLetters;
+        this.executor = executor;
+        this.scheduler = scheduler;
+        this.retryBackoffMs = retryBackoffMs;
+    }
+
+    /**
+     * Queues records of this partition, in offset order.
+     */
+    public void submit(List<ConsumerRecord<String, byte[]>> records) {
+        if (firstOffset < 0 && !records.isEmpty()) {
+            firstOffset = records.get(0).offset();
+        }
+        pendingRecords.addAndGet(records.size());
+        chunks.add(records);
+        scheduleNext();
+    }
+
+    /**
+     * @return number of records queued or being written.
+     */
+    public int getPendingRecords() {
+        return pendingRecords.get();
+    }
+
+    /**
+     * Returns the offset to commit if the lane made progress since the last call, polling thread only.
+     *
+     * @return next offset to consume for this partition or -1 if there is nothing new to commit.
+     */
+    public long takeCommittableOffset() {
+        long offset = completedOffset;
+        if (offset <= committedOffset) {
+            return -1L;
+        }
+        committedOffset = offset;
+        return offset;
+    }
+
+    /**
+     * Waits until every queued record has been written.
+     *
+     * @param timeoutMs maximum time to wait.
+     * @return true if the lane drained in time.
+     */
+    public boolean awaitDrained(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (pendingRecords.get() > 0) {
+            if (stopped || System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            Thread.sleep(10L);
+        }
+        return true;
+    }
+
+    public TopicPartition getPartition() {
+        return partition;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    /**
+     * @return true if the lane stopped, its pending records are left to the next owner of the partition.
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * @return offset to consume the partition again from once the lane stopped, the first one not written, -1 if
+     * the lane never got a record.
+     */
+    public long getResumeOffset() {
+        return completedOffset >= 0 ? completedOffset : firstOffset;
+    }
+
+    private void scheduleNext() {
+        if (!stopped && !chunks.isEmpty() && processing.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::processNext);
+            } catch (RejectedExecutionException e) {
+                // Shutting down, the queued records are replayed by the next owner of the partition.
+                processing.set(false);
+            }
+        }
+    }
+
+    private void processNext() {
+        if (current == null) {
+            List<ConsumerRecord<String, byte[]>> records = chunks.poll();
+            if (records == null) {
+                processing.set(false);
+                scheduleNext();
+                return;
+            }
+            current = decode(records);
+        }
+        final Chunk chunk = current;
+        ListenableFuture<?> written = null;
+        if (!chunk.written) {
+            try {
+                written = writer.write(chunk.events);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // Processing stays taken, nothing else runs on this lane.
+                stopped = true;
+                logger.warn("Interrupted while writing partition {}, lane stopped with {} records left to the next "
+                        + "owner", partition, pendingRecords.get());
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Could not write records of partition {}, dead lettering them", partition, e);
+                for (AlbumEvent event : chunk.events) {
+                    chunk.failed.add(new FailedRecord(event.getRecord(), DeadLetter.STAGE_WRITE, e));
+                }
+                chunk.written = true;
+            }
+        }
+        Map<FailedRecord, ListenableFuture<Void>> published = new LinkedHashMap<>();
+        for (FailedRecord failed : chunk.failed) {
+            published.put(failed, deadLetters.publish(failed.record, failed.stage, failed.cause));
+        }
+        List<ListenableFuture<?>> done = new ArrayList<>(published.values());
+        if (written != null) {
+            done.add(written);
+        }
+        final ListenableFuture<?> write = written;
+        Futures.successfulAsList(done).addListener(() -> finish(chunk, write, published),
+                MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Completes the chunk if it went through, tries what did not go through again after the backoff otherwise.
+     */
+    private void finish(Chunk chunk, ListenableFuture<?> written, Map<FailedRecord, ListenableFuture<Void>> published) {
+        if (written != null && succeeded(written)) {
+            chunk.written = true;
+        }
+        published.forEach((failed, future) -> {
+            if (succeeded(future)) {
+                chunk.failed.remove(failed);
+            }
+        });
+        if (chunk.written && chunk.failed.isEmpty()) {
+            current = null;
+            complete(chunk.records);
+            return;
+        }
+        logger.warn("Records of partition {} could be neither written nor dead lettered, trying again in {} ms",
+                partition, retryBackoffMs);
+        try {
+            scheduler.schedule(this::retry, retryBackoffMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            stopped = true;
+        }
+    }
+
+    private void retry() {
+        try {
+            executor.execute(this::processNext);
+        } catch (RejectedExecutionException e) {
+            // Shutting down, the chunk is replayed by the next owner of the partition.
+            stopped = true;
+        }
+    }
+
+    private void complete(List<ConsumerRecord<String, byte[]>> chunk) {
+        completedOffset = chunk.get(chunk.size() - 1).offset() + 1;
+        pendingRecords.addAndGet(-chunk.size());
+        processing.set(false);
+        scheduleNext();
+    }
+
+    /**
+     * Decodes the records, records which can not be decoded are left to dead letter.
+     *
+     * @param records records of a chunk.
+     * @return chunk of the decoded events.
+     */
+    private Chunk decode(List<ConsumerRecord<String, byte[]>> records) {
+        Chunk chunk = new Chunk(records);
+        for (ConsumerRecord<String, byte[]> record : records) {
+            try {
+                chunk.events.add(AlbumEvent.decode(record));
+            } catch (IllegalArgumentException e) {
+                chunk.failed.add(new FailedRecord(record, DeadLetter.STAGE_DECODE, e));
+            }
+        }
+        return chunk;
+    }
+
+    private static boolean succeeded(ListenableFuture<?> future) {
+        try {
+            // done already, does not block
+            future.get();
+            return true;
+        } catch (ExecutionException | RuntimeException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Records of a kafka poll with their decoded events and the records still to dead letter.
+     */
+    private static class Chunk {
+
+        private final List<ConsumerRecord<String, byte[]>> records;
+        private final List<AlbumEvent> events;
+        private final List<FailedRecord> failed = new ArrayList<>();
+        private boolean written;
+
+        private Chunk(List<ConsumerRecord<String, byte[]>> records) {
+            this.records = records;
+            this.events = new ArrayList<>(records.size());
+        }
+    }
+
+    private static class FailedRecord {
+
+        private final ConsumerRecord<String, byte[]> record;
+        private final String stage;
+        private final Throwable cause;
+
+        private FailedRecord(ConsumerRecord<String, byte[]> record, String stage, Throwable cause) {
+            this.record = record;
+            this.stage = stage;
+            this.cause = cause;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package tech.pinhole.service.sink;
+
+import io.vertx.core.json.JsonObject;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.record.TimestampType;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Kafka record an album event was first consumed from, with the write time it was given then.
+ * <p>
+ * Kafka 0.10 records have no headers, so a dead letter replayed to the album topic carries the coordinates of its
+ * original record in front of its value, see {@link #replayValue(JsonObject)}:
+ * </p>
+ * <pre>
+ * 0x7F | source partition (int) | source offset (long) | source timestamp (long) | write timestamp (long) | value
+ * </pre>
+ * <p>
+ * The magic byte is neither the avro magic byte nor the start of a JSON event. A record which is not a replay is
+ * its own source, without a write time yet.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public final class RecordSource {
+
+    public static final byte REPLAY_MAGIC_BYTE = 0x7F;
+
+    private static final int REPLAY_HEADER_LENGTH = 1 + 4 + 8 + 8 + 8;
+
+    private final String topic;
+    private final int partition;
+    private final long offset;
+    private final long timestamp;
+    private final long writeTimestamp;
+    private final byte[] value;
+
+    private RecordSource(String topic, int partition, long offset, long timestamp, long writeTimestamp,
+                         byte[] value) {
+        this.topic = topic;
+        this.partition = partition;
+        this.offset = offset;
+        this.timestamp = timestamp;
+        this.writeTimestamp = writeTimestamp;
+        this.value = value;
+    }
+
+    /**
+     * @param record album record, replayed or not.
+     * @return source of the record.
+     */
+    public static RecordSource of(ConsumerRecord<String, byte[]> record) {
+        final byte[] value = record.value();
+        if (value != null && value.length >= REPLAY_HEADER_LENGTH && value[0] == REPLAY_MAGIC_BYTE) {
+            final ByteBuffer header = ByteBuffer.wrap(value, 1, REPLAY_HEADER_LENGTH - 1);
+            return new RecordSource(record.topic(), header.getInt(), header.getLong(), header.getLong(),
+                    header.getLong(), Arrays.copyOfRange(value, REPLAY_HEADER_LENGTH, value.length));
+        }
+        final long timestamp = record.timestampType() == TimestampType.NO_TIMESTAMP_TYPE ? -1L : record.timestamp();
+        return new RecordSource(record.topic(), record.partition(), record.offset(), timestamp, -1L, value);
+    }
+
+    /**
+     * @param envelope dead letter envelope, see {@link DeadLetter}.
+     * @return value to replay to the album topic: the original value behind its source coordinates.
+     */
+    public static byte[] replayValue(JsonObject envelope) {
+        final byte[] original = envelope.getBinary(DeadLetter.VALUE);
+        return ByteBuffer.allocate(REPLAY_HEADER_LENGTH + original.length)
+                .put(REPLAY_MAGIC_BYTE)
+                .putInt(envelope.getInteger(DeadLetter.SOURCE_PARTITION, -1))
+                .putLong(envelope.getLong(DeadLetter.SOURCE_OFFSET, -1L))
+                .putLong(envelope.getLong(DeadLetter.SOURCE_TIMESTAMP, -1L))
+                .putLong(envelope.getLong(DeadLetter.WRITE_TIMESTAMP, -1L))
+                .put(original)
+                .array();
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return timestamp of the original record in milliseconds, -1 if it has none.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return cassandra write time in microseconds given to the event when first consumed, -1 if not a replay or
+     * the event never got one.
+     */
+    public long getWriteTimestamp() {
+        return writeTimestamp;
+    }
+
+    /**
+     * @return original value.
+     */
+    public byte[] getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,207 @@
+package tech.pinhole.service.verticle;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonObject;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tech.pinhole.service.kafka.AlbumPartitioner;
+import tech.pinhole.service.sink.DeadLetter;
+import tech.pinhole.service.sink.RecordSource;
+
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replay tool re-ingesting dead lettered album events once the cause of their failure has been fixed.
+ * <p>
+ * Reads the dead letter topic from the last replayed position, unwraps every envelope and publishes the original
+ * value to the album topic with its original key and timestamp, through the {@link AlbumPartitioner} like the MQTT
+ * connector so the event lands on its album partition ({@code kafka.album.partitions} must match the connector).
+ * The value carries the coordinates of the original record and its write time, see {@link RecordSource}, so the
+ * event is written with the write time it was first given however many times it is replayed. Offsets of the dead letter topic are committed once a polled batch has
+ * been acknowledged by kafka, a failed publish stops the replay without committing so running it again is safe.
+ * The tool stops and closes vertx when the dead letter topic is drained ({@code replay.idle.polls} empty polls) or
+ * {@code replay.max.records} records have been replayed.
+ * </p>
+ * <pre>
+ * java -cp kafka-cassandra-connector-service-fat.jar io.vertx.core.Launcher \
+ *   run tech.pinhole.service.verticle.DeadLetterReplayVerticle -conf replay.json
+ * </pre>
+ * <p>
+ * {@code replay.stage} restricts the replay to {@code decode} or {@code write} failures.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class DeadLetterReplayVerticle extends BaseMicroserviceVerticle {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeadLetterReplayVerticle.class);
+
+    private static final String KAFKA_SERVER_URI = "kafka.serverURI";
+    private static final String KAFKA_ALBUM_TOPIC = "kafka.album.topic";
+    private static final String KAFKA_DLQ_TOPIC = "kafka.dlq.topic";
+    private static final String KAFKA_ALBUM_PARTITIONS = "kafka.album.partitions";
+    private static final String REPLAY_GROUP_ID = "replay.group.id";
+    private static final String REPLAY_STAGE = "replay.stage";
+    private static final String REPLAY_MAX_RECORDS = "replay.max.records";
+    private static final String REPLAY_IDLE_POLLS = "replay.idle.polls";
+
+    private static final long POLL_TIMEOUT_MS = 1000L;
+
+    private KafkaConsumer<String, String> consumer;
+    private KafkaProducer<String, byte[]> producer;
+    private volatile boolean running;
+    private Thread replayThread;
+
+    @Override
+    public void start(Future<Void> future) throws Exception {
+        final JsonObject config = config();
+        final String dlqTopic = config.getString(KAFKA_DLQ_TOPIC);
+        final String albumTopic = config.getString(KAFKA_ALBUM_TOPIC);
+        if (StringUtils.isBlank(dlqTopic) || StringUtils.isBlank(albumTopic)) {
+            future.fail(KAFKA_DLQ_TOPIC + " and " + KAFKA_ALBUM_TOPIC + " are required");
+            return;
+        }
+        consumer = new KafkaConsumer<>(consumerProperties(config));
+        producer = new KafkaProducer<>(producerProperties(config));
+        consumer.subscribe(Collections.singletonList(dlqTopic));
+        running = true;
+        replayThread = new Thread(() -> replay(config, albumTopic), "kafka-dlq-replay");
+        replayThread.start();
+        logger.info("Replaying dead letters of {} to {}", dlqTopic, albumTopic);
+        future.complete();
+    }
+
+    @Override
+    public void stop(Future<Void> future) throws Exception {
+        vertx.<Void>executeBlocking(blocking -> {
+            running = false;
+            if (consumer != null) {
+                consumer.wakeup();
+            }
+            try {
+                if (replayThread != null && replayThread != Thread.currentThread()) {
+                    replayThread.join();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            blocking.complete();
+        }, future.completer());
+    }
+
+    private Properties consumerProperties(JsonObject config) {
+        Properties props = new Properties();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, config.getString(KAFKA_SERVER_URI));
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, config.getString(REPLAY_GROUP_ID, "album-dlq-replay"));
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        return props;
+    }
+
+    private Properties producerProperties(JsonObject config) {
+        Properties props = new Properties();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, config.getString(KAFKA_SERVER_URI));
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.RETRIES_CONFIG, 3);
+        // Keeps dead letters of an album in order on the album topic.
+        props.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 1);
+        props.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, AlbumPartitioner.class);
+        if (config.containsKey(KAFKA_ALBUM_PARTITIONS)) {
+            props.put(AlbumPartitioner.ALBUM_PARTITIONS_CONFIG, config.getInteger(KAFKA_ALBUM_PARTITIONS));
+        }
+        return props;
+    }
+
+    private void replay(JsonObject config, String albumTopic) {
+        final String stage = config.getString(REPLAY_STAGE);
+        final long maxRecords = config.getLong(REPLAY_MAX_RECORDS, 0L);
+        final int idlePolls = config.getInteger(REPLAY_IDLE_POLLS, 5);
+        long replayed = 0;
+        long skipped = 0;
+        int emptyPolls = 0;
+        try {
+            while (running && emptyPolls < idlePolls && (maxRecords <= 0 || replayed < maxRecords)) {
+                ConsumerRecords<String, String> records = consumer.poll(POLL_TIMEOUT_MS);
+                if (records.isEmpty()) {
+                    emptyPolls++;
+                    continue;
+                }
+                emptyPolls = 0;
+                final AtomicInteger failed = new AtomicInteger();
+                for (ConsumerRecord<String, String> record : records) {
+                    JsonObject envelope = unwrap(record);
+                    if (envelope == null || (StringUtils.isNotBlank(stage)
+                            && !stage.equals(envelope.getString(DeadLetter.STAGE)))) {
+                        skipped++;
+                        continue;
+                    }
+                    producer.send(toAlbumRecord(albumTopic, envelope), (metadata, exception) -> {
+                        if (exception != null) {
+                            failed.incrementAndGet();
+                            logger.error("Could not replay dead letter {}", envelope.encode(), exception);
+                        }
+                    });
+                    replayed++;
+                }
+                producer.flush();
+                if (failed.get() > 0) {
+                    logger.error("{} dead letters could not be replayed, stopping without committing", failed.get());
+                    return;
+                }
+                consumer.commitSync();
+            }
+            logger.info("Dead letter replay done, {} replayed, {} skipped", replayed, skipped);
+        } catch (WakeupException e) {
+            // stop() wakes the consumer up, nothing to do.
+        } catch (Exception e) {
+            logger.error("Dead letter replay failed", e);
+        } finally {
+            consumer.close();
+            producer.close();
+            if (running) {
+                vertx.close();
+            }
+        }
+    }
+
+    private JsonObject unwrap(ConsumerRecord<String, String> record) {
+        if (record.value() != null) {
+            try {
+                JsonObject envelope = new JsonObject(record.value());
+                if (envelope.getBinary(DeadLetter.VALUE) != null) {
+                    return envelope;
+                }
+            } catch (DecodeException | IllegalArgumentException | ClassCastException e) {
+                // Not an envelope, falls through to the warning below.
+            }
+        }
+        logger.warn("Skipping dead letter at {}-{} offset {} which is not a dead letter envelope",
+                record.topic(), record.partition(), record.offset());
+        return null;
+    }
+
+    private ProducerRecord<String, byte[]> toAlbumRecord(String albumTopic, JsonObject envelope) {
+        Long timestamp = envelope.getLong(DeadLetter.SOURCE_TIMESTAMP);
+        return new ProducerRecord<>(albumTopic, null, timestamp != null && timestamp >= 0 ? timestamp : null,
+                envelope.getString(DeadLetter.KEY), RecordSource.replayValue(envelope));
+    }
+}
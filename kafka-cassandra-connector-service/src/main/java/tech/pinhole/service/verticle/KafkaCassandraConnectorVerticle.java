@@ -8,6 +8,11 @@ import io.vertx.core.Future;
  */
 public class KafkaCassandraConnectorVerticle extends BaseMicroserviceVerticle {
 
+    /**
+     * Number of {@link KafkaConsumerVerticle} instances to deploy, each one is a member of the consumer group and
+     * gets its share of the partitions.
+     */
+    private static final String KAFKA_CONSUMER_INSTANCES = "kafka.consumer.instances";
 
     @Override
     public void start(Future<Void> future) throws Exception {
@@ -22,8 +27,11 @@ public class KafkaCassandraConnectorVerticle extends BaseMicroserviceVerticle {
 
     private Future<Void> deployMessageSubscriberVerticle() {
         Future<String> future = Future.future();
-        vertx.deployVerticle(new KafkaConsumerVerticle(),
-                new DeploymentOptions().setConfig(config()), future.completer());
+        vertx.deployVerticle(KafkaConsumerVerticle.class.getName(),
+                new DeploymentOptions()
+                        .setConfig(config())
+                        .setInstances(config().getInteger(KAFKA_CONSUMER_INSTANCES, 1)),
+                future.completer());
         return future.map(r -> null);
     }
 }
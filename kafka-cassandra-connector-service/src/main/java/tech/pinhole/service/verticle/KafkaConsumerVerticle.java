@@ -1,42 +1,187 @@
 package tech.pinhole.service.verticle;
 
-import com.datastax.driver.core.Cluster;
-import com.datastax.driver.core.ResultSet;
-import com.datastax.driver.core.Row;
-import com.datastax.driver.core.Session;
-import com.google.common.base.Function;
-import com.google.common.util.concurrent.AsyncFunction;
-import com.google.common.util.concurrent.FutureCallback;
-import com.google.common.util.concurrent.Futures;
-import com.google.common.util.concurrent.ListenableFuture;
+import io.vertx.core.Future;
 import io.vertx.core.json.JsonObject;
-import io.vertx.kafka.client.consumer.KafkaConsumer;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tech.pinhole.service.dao.CassandraSessionManager;
+import tech.pinhole.service.sink.AlbumEventStatements;
+import tech.pinhole.service.sink.CassandraBatchWriter;
+import tech.pinhole.service.sink.DeadLetterPublisher;
+import tech.pinhole.service.sink.PartitionLane;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * Consumes album events from kafka and persists them to cassandra.
+ * <p>
+ * Every assigned partition gets its own {@link PartitionLane}, lanes write in partition order and run in parallel
+ * on a fixed worker pool. A lane with more than {@value #DEFAULT_LANE_MAX_PENDING_RECORDS} (configurable) records
+ * waiting for cassandra gets its partition paused until it drained to half of that. Offsets are committed per
+ * partition once the lane has written the records, and revoked partitions are drained and committed before the
+ * rebalance completes. A lane which stopped is replaced and its partition consumed again from its first record not
+ * written. Polling runs on a dedicated thread as the kafka consumer is blocking and not thread safe. If the consumer
+ * fails, the lanes are drained and committed, and a new consumer subscribes again after
+ * {@code kafka.consumer.restart.backoff.ms}.
+ * </p>
+ * <p>
+ * Writes are idempotent so records replayed after a crash are harmless. Records which can not be decoded or written
+ * are published to the {@code kafka.dlq.topic} dead letter topic (see {@link DeadLetterReplayVerticle}) instead of
+ * blocking their partition. A partition whose records can not be dead lettered either stops advancing and is tried
+ * again every {@code sink.lane.retry.backoff.ms}, unless {@code kafka.dlq.drop.undeliverable} is set to drop them.
+ * </p>
+ *
  * Created by tosheer.kalra on 03/03/2017.
  */
 public class KafkaConsumerVerticle extends BaseMicroserviceVerticle {
 
+    private static final Logger logger = LoggerFactory.getLogger(KafkaConsumerVerticle.class);
+
+    private static final int DEFAULT_LANE_MAX_PENDING_RECORDS = 2000;
+
     private static final String KAFKA_SERVER_URI = "kafka.serverURI";
     private static final String KAFKA_ALBUM_TOPIC = "kafka.album.topic";
     private static final String KAFKA_GROUP_ID = "kafka.group.id";
+    private static final String KAFKA_MAX_POLL_RECORDS = "kafka.max.poll.records";
+    private static final String KAFKA_POLL_TIMEOUT_MS = "kafka.poll.timeout.ms";
+    private static final String KAFKA_CONSUMER_RESTART_BACKOFF_MS = "kafka.consumer.restart.backoff.ms";
+    private static final String KAFKA_DLQ_TOPIC = "kafka.dlq.topic";
+    private static final String KAFKA_DLQ_DROP_UNDELIVERABLE = "kafka.dlq.drop.undeliverable";
+    private static final String CASSANDRA_MAX_INFLIGHT_BATCHES = "cassandra.max.inflight.batches";
+    private static final String CASSANDRA_BATCH_MAX_STATEMENTS = "cassandra.batch.max.statements";
+    private static final String CASSANDRA_WRITE_MAX_RETRIES = "cassandra.write.max.retries";
+    private static final String CASSANDRA_WRITE_RETRY_BACKOFF_MS = "cassandra.write.retry.backoff.ms";
+    private static final String SINK_WORKER_THREADS = "sink.worker.threads";
+    private static final String SINK_LANE_MAX_PENDING_RECORDS = "sink.lane.max.pending.records";
+    private static final String SINK_REBALANCE_DRAIN_TIMEOUT_MS = "sink.rebalance.drain.timeout.ms";
+    private static final String SINK_LANE_RETRY_BACKOFF_MS = "sink.lane.retry.backoff.ms";
 
-    @Override
-    public void start() throws Exception {
+    private CassandraSessionManager sessionManager;
+    private volatile KafkaConsumer<String, byte[]> consumer;
+    private CassandraBatchWriter writer;
+    private DeadLetterPublisher deadLetters;
+    private ExecutorService workers;
+    private ScheduledExecutorService retries;
+    private final Map<TopicPartition, PartitionLane> lanes = new HashMap<>();
+
+    private int laneMaxPendingRecords;
+    private long rebalanceDrainTimeout;
+    private long laneRetryBackoff;
+
+    private volatile boolean running;
+    private Thread pollingThread;
 
+    @Override
+    public void start(Future<Void> future) throws Exception {
 
         final JsonObject config = config();
+        laneMaxPendingRecords = config.getInteger(SINK_LANE_MAX_PENDING_RECORDS, DEFAULT_LANE_MAX_PENDING_RECORDS);
+        rebalanceDrainTimeout = config.getLong(SINK_REBALANCE_DRAIN_TIMEOUT_MS, 30000L);
+        laneRetryBackoff = config.getLong(SINK_LANE_RETRY_BACKOFF_MS, 1000L);
+        if (StringUtils.isBlank(config.getString(KAFKA_DLQ_TOPIC))
+                && !config.getBoolean(KAFKA_DLQ_DROP_UNDELIVERABLE, false)) {
+            future.fail(KAFKA_DLQ_TOPIC + " is required unless " + KAFKA_DLQ_DROP_UNDELIVERABLE + " is set");
+            return;
+        }
 
-        Cluster cluster = Cluster.builder()                                                    // (1)
-                .addContactPoint("127.0.0.1")
-                .build();
-        ListenableFuture<Session> session = cluster.connectAsync("pinhole");
+        // Failed writes and chunks are retried on their own thread, never on the lane workers waiting for cassandra.
+        retries = Executors.newSingleThreadScheduledExecutor(threadFactory("kafka-cassandra-retry-"));
+        vertx.<Void>executeBlocking(blocking -> {
+            sessionManager = CassandraSessionManager.acquire(config);
+            try {
+                deadLetters = deadLetterPublisher(config);
+                writer = new CassandraBatchWriter(sessionManager.session().get(),
+                        AlbumEventStatements.prepare(sessionManager), deadLetters,
+                        config.getInteger(CASSANDRA_MAX_INFLIGHT_BATCHES, 64),
+                        config.getInteger(CASSANDRA_BATCH_MAX_STATEMENTS, 50),
+                        config.getInteger(CASSANDRA_WRITE_MAX_RETRIES, 3), retries,
+                        config.getLong(CASSANDRA_WRITE_RETRY_BACKOFF_MS, 100L));
+                blocking.complete();
+            } catch (ExecutionException e) {
+                blocking.fail(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                blocking.fail(e);
+            }
+        }, prepared -> {
+            if (prepared.failed()) {
+                logger.error("Could not connect to cassandra", prepared.cause());
+                // null when acquiring the session failed
+                if (sessionManager != null) {
+                    sessionManager.release();
+                }
+                retries.shutdownNow();
+                future.fail(prepared.cause());
+                return;
+            }
+            workers = Executors.newFixedThreadPool(
+                    config.getInteger(SINK_WORKER_THREADS, Runtime.getRuntime().availableProcessors()),
+                    threadFactory("kafka-cassandra-lane-"));
+            running = true;
+            pollingThread = new Thread(() -> pollLoop(config), "kafka-cassandra-consumer");
+            pollingThread.start();
+            logger.info("Consuming kafka topic {}", config.getString(KAFKA_ALBUM_TOPIC));
+            future.complete();
+        });
+    }
 
+    @Override
+    public void stop(Future<Void> future) throws Exception {
+        vertx.<Void>executeBlocking(blocking -> {
+            running = false;
+            // The polling thread replaces the consumer when it fails.
+            final KafkaConsumer<String, byte[]> polling = consumer;
+            if (polling != null) {
+                polling.wakeup();
+            }
+            try {
+                if (pollingThread != null) {
+                    pollingThread.join();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (workers != null) {
+                workers.shutdown();
+            }
+            if (retries != null) {
+                retries.shutdownNow();
+            }
+            if (deadLetters != null) {
+                deadLetters.close();
+            }
+            if (sessionManager != null) {
+                sessionManager.release();
+            }
+            blocking.complete();
+        }, future.completer());
+    }
+
+    private Properties consumerProperties(JsonObject config) {
         Properties props = new Properties();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, config.getString(KAFKA_SERVER_URI));
         final String groupId = config.getString(KAFKA_GROUP_ID);
@@ -44,41 +189,217 @@ public class KafkaConsumerVerticle extends BaseMicroserviceVerticle {
             props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
         }
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
         props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, config.getInteger(KAFKA_MAX_POLL_RECORDS, 500));
+        return props;
+    }
 
-        KafkaConsumer<String, String> consumer = KafkaConsumer.create(this.vertx, props);
+    private DeadLetterPublisher deadLetterPublisher(JsonObject config) {
+        final String topic = config.getString(KAFKA_DLQ_TOPIC);
+        final boolean dropUndeliverable = config.getBoolean(KAFKA_DLQ_DROP_UNDELIVERABLE, false);
+        if (dropUndeliverable) {
+            logger.warn("Dead letters which can not be published will be dropped");
+        }
+        if (StringUtils.isBlank(topic)) {
+            logger.warn("No dead letter topic configured, failed album events will only be logged");
+            return new DeadLetterPublisher(null, null, true);
+        }
+        Properties props = new Properties();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, config.getString(KAFKA_SERVER_URI));
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.RETRIES_CONFIG, 3);
+        return new DeadLetterPublisher(new KafkaProducer<>(props), topic, dropUndeliverable);
+    }
 
-        consumer.handler(stringStringKafkaConsumerRecord -> {
-            System.out.println(stringStringKafkaConsumerRecord.value());
-            ListenableFuture<ResultSet> resultSet = Futures.transformAsync(session,
-                    session1 -> session1.executeAsync("in"));
+    /**
+     * Subscribes and polls until stopped, subscribing again with a new consumer after a backoff if the consumer fails.
+     */
+    private void pollLoop(JsonObject config) {
+        final long pollTimeout = config.getLong(KAFKA_POLL_TIMEOUT_MS, 100L);
+        final long restartBackoff = config.getLong(KAFKA_CONSUMER_RESTART_BACKOFF_MS, 5000L);
+        while (running) {
+            try {
+                consumer = new KafkaConsumer<>(consumerProperties(config));
+                consumer.subscribe(Collections.singletonList(config.getString(KAFKA_ALBUM_TOPIC)),
+                        new LaneRebalanceListener());
+                poll(pollTimeout);
+            } catch (WakeupException e) {
+                // stop() wakes the consumer up, nothing to do.
+            } catch (Exception e) {
+                logger.error("Kafka consumer failed, subscribing again in {} ms", restartBackoff, e);
+            } finally {
+                closeConsumer();
+            }
+            sleepWhileRunning(restartBackoff);
+        }
+    }
 
-            // Use transform with a simple Function to apply a synchronous computation on the result:
-            ListenableFuture<String> version = Futures.transform(resultSet,
-                    (Function<ResultSet, String>) rs -> rs.one().getString("release_version"));
+    private void poll(long pollTimeout) {
+        while (running) {
+            ConsumerRecords<String, byte[]> records = consumer.poll(pollTimeout);
+            for (TopicPartition partition : records.partitions()) {
+                lanes.computeIfAbsent(partition, this::createLane).submit(records.records(partition));
+            }
+            replaceStoppedLanes();
+            applyBackpressure();
+            commitLanes(lanes.values(), false);
+        }
+    }
 
-            // Use a callback to perform an action once the future is complete:
-            Futures.addCallback(version, new FutureCallback<String>() {
-                public void onSuccess(String version) {
-                    System.out.printf("Cassandra version: %s%n", version);
-                }
+    /**
+     * Drains the lanes and commits what they wrote before closing the consumer, the next consumer starts from there.
+     */
+    private void closeConsumer() {
+        if (consumer == null) {
+            return;
+        }
+        try {
+            drainLanes(lanes.values());
+            commitLanes(lanes.values(), true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("Could not commit offsets of the closing consumer", e);
+        }
+        lanes.clear();
+        try {
+            consumer.close();
+        } catch (Exception e) {
+            logger.warn("Could not close the kafka consumer", e);
+        }
+        consumer = null;
+    }
+
+    private void sleepWhileRunning(long millis) {
+        long deadline = System.currentTimeMillis() + millis;
+        try {
+            while (running && System.currentTimeMillis() < deadline) {
+                Thread.sleep(Math.min(100L, millis));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private PartitionLane createLane(TopicPartition partition) {
+        return new PartitionLane(partition, writer, deadLetters, workers, retries, laneRetryBackoff);
+    }
+
+    /**
+     * Consumes the partitions of the stopped lanes again, from their first record not written, with a new lane.
+     */
+    private void replaceStoppedLanes() {
+        for (PartitionLane lane : new ArrayList<>(lanes.values())) {
+            if (!lane.isStopped()) {
+                continue;
+            }
+            TopicPartition partition = lane.getPartition();
+            commitLanes(Collections.singleton(lane), false);
+            if (lane.getResumeOffset() >= 0) {
+                consumer.seek(partition, lane.getResumeOffset());
+            }
+            if (lane.isPaused()) {
+                consumer.resume(Collections.singleton(partition));
+            }
+            lanes.put(partition, createLane(partition));
+            logger.warn("Lane of partition {} stopped, consuming it again from offset {}", partition,
+                    lane.getResumeOffset());
+        }
+    }
 
-                public void onFailure(Throwable t) {
-                    System.out.printf("Failed to retrieve the version: %s%n",
-                            t.getMessage());
+    /**
+     * Pauses partitions whose lane is too far behind and resumes them once they caught up.
+     */
+    private void applyBackpressure() {
+        for (PartitionLane lane : lanes.values()) {
+            int pending = lane.getPendingRecords();
+            if (!lane.isPaused() && pending > laneMaxPendingRecords) {
+                consumer.pause(Collections.singleton(lane.getPartition()));
+                lane.setPaused(true);
+                logger.debug("Paused partition {} with {} pending records", lane.getPartition(), pending);
+            } else if (lane.isPaused() && pending <= laneMaxPendingRecords / 2) {
+                consumer.resume(Collections.singleton(lane.getPartition()));
+                lane.setPaused(false);
+                logger.debug("Resumed partition {} with {} pending records", lane.getPartition(), pending);
+            }
+        }
+    }
+
+    private void commitLanes(Collection<PartitionLane> toCommit, boolean sync) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (PartitionLane lane : toCommit) {
+            long offset = lane.takeCommittableOffset();
+            if (offset >= 0) {
+                offsets.put(lane.getPartition(), new OffsetAndMetadata(offset));
+            }
+        }
+        if (offsets.isEmpty()) {
+            return;
+        }
+        if (sync) {
+            consumer.commitSync(offsets);
+        } else {
+            consumer.commitAsync(offsets, (committed, exception) -> {
+                if (exception != null) {
+                    logger.warn("Offset commit failed, records will be replayed: {}", exception.getMessage());
                 }
             });
+        }
+    }
 
-        });
-        consumer.subscribe(config.getString(KAFKA_ALBUM_TOPIC), ar -> {
-            if (ar.succeeded()) {
-                System.out.println("subscribed");
-            } else {
-                System.out.println("Could not subscribe " + ar.cause().getMessage());
+    private void drainLanes(Collection<PartitionLane> toDrain) throws InterruptedException {
+        for (PartitionLane lane : toDrain) {
+            if (!lane.awaitDrained(rebalanceDrainTimeout)) {
+                logger.warn("Partition {} not drained in {} ms, {} records will be replayed by the next owner",
+                        lane.getPartition(), rebalanceDrainTimeout, lane.getPendingRecords());
             }
-        });
+        }
+    }
+
+    private ThreadFactory threadFactory(String namePrefix) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Runs on the polling thread inside {@code poll()}: revoked partitions are drained and committed so the next
+     * owner starts exactly after what was written here.
+     */
+    private class LaneRebalanceListener implements ConsumerRebalanceListener {
 
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            Map<TopicPartition, PartitionLane> revoked = new HashMap<>();
+            for (TopicPartition partition : partitions) {
+                PartitionLane lane = lanes.remove(partition);
+                if (lane != null) {
+                    revoked.put(partition, lane);
+                }
+            }
+            try {
+                drainLanes(revoked.values());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            commitLanes(revoked.values(), true);
+            logger.info("Partitions revoked {}", partitions);
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            for (TopicPartition partition : partitions) {
+                lanes.computeIfAbsent(partition, KafkaConsumerVerticle.this::createLane);
+            }
+            logger.info("Partitions assigned {}", partitions);
+        }
     }
 }
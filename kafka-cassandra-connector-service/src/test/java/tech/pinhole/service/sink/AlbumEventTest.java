@@ -0,0 +1,99 @@
+package tech.pinhole.service.sink;
+
+import io.vertx.core.json.JsonObject;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for the write times of {@link AlbumEvent} and their replay through {@link RecordSource}.
+ */
+public class AlbumEventTest {
+
+    private static final long TIMESTAMP = 1490000000000L;
+    private static final byte[] DELETE_ALBUM = "{\"event_type\":\"delete_album\",\"album_id\":\"album_1\"}"
+            .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CREATE_ALBUM = ("{\"event_type\":\"create_album\",\"album_id\":\"album_1\","
+            + "\"album_label\":\"Holidays\",\"album_owner\":\"customer_1\"}").getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testWriteTimeGrowsWithOffsetWithinMillisecond() {
+        AlbumEvent first = AlbumEvent.decode(record(3, 1000, TIMESTAMP, DELETE_ALBUM));
+        AlbumEvent second = AlbumEvent.decode(record(3, 1001, TIMESTAMP, CREATE_ALBUM));
+
+        assertEquals(TIMESTAMP * 1000L, first.getWriteTimestamp());
+        assertEquals(TIMESTAMP * 1000L + 1, second.getWriteTimestamp());
+    }
+
+    @Test
+    public void testWriteTimeIsTheSameWhenTheRecordIsConsumedAgain() {
+        // the delete was committed, the create is consumed again after a restart, on its own
+        AlbumEvent first = AlbumEvent.decode(record(3, 1000, TIMESTAMP, DELETE_ALBUM));
+        AlbumEvent second = AlbumEvent.decode(record(3, 1001, TIMESTAMP, CREATE_ALBUM));
+        AlbumEvent secondAgain = AlbumEvent.decode(record(3, 1001, TIMESTAMP, CREATE_ALBUM));
+
+        assertEquals(second.getWriteTimestamp(), secondAgain.getWriteTimestamp());
+        assertTrue(secondAgain.getWriteTimestamp() > first.getWriteTimestamp());
+    }
+
+    @Test
+    public void testLaterMillisecondWinsOverEveryOffsetOfTheEarlierOne() {
+        AlbumEvent earlier = AlbumEvent.decode(record(3, 999, TIMESTAMP, DELETE_ALBUM));
+        AlbumEvent later = AlbumEvent.decode(record(3, 1000, TIMESTAMP + 1, CREATE_ALBUM));
+
+        assertEquals(TIMESTAMP * 1000L + 999, earlier.getWriteTimestamp());
+        assertEquals((TIMESTAMP + 1) * 1000L, later.getWriteTimestamp());
+    }
+
+    @Test
+    public void testRecordWithoutTimestampLetsCassandraAssignOne() {
+        AlbumEvent event = AlbumEvent.decode(record(3, 1000, -1L, DELETE_ALBUM));
+
+        assertEquals(-1L, event.getWriteTimestamp());
+    }
+
+    @Test
+    public void testReplayKeepsSourceAndWriteTime() {
+        AlbumEvent original = AlbumEvent.decode(record(3, 1234, TIMESTAMP, DELETE_ALBUM));
+        JsonObject envelope = new JsonObject(DeadLetter.envelope(original.getRecord(), original.getWriteTimestamp(),
+                DeadLetter.STAGE_WRITE, new IllegalStateException("cassandra down")).encode());
+
+        // Replayed to another partition and offset, a long time after.
+        ConsumerRecord<String, byte[]> replay = record(5, 42, TIMESTAMP + 60000L, RecordSource.replayValue(envelope));
+        AlbumEvent replayed = AlbumEvent.decode(replay);
+
+        assertEquals(original.getWriteTimestamp(), replayed.getWriteTimestamp());
+        assertEquals(original.getPayload(), replayed.getPayload());
+        assertEquals(3, replayed.getSource().getPartition());
+        assertEquals(1234L, replayed.getSource().getOffset());
+        assertEquals(TIMESTAMP, replayed.getSource().getTimestamp());
+    }
+
+    @Test
+    public void testReplayFailingAgainKeepsItsSource() {
+        AlbumEvent original = AlbumEvent.decode(record(3, 1234, TIMESTAMP, DELETE_ALBUM));
+        JsonObject envelope = DeadLetter.envelope(original.getRecord(), original.getWriteTimestamp(),
+                DeadLetter.STAGE_WRITE, new IllegalStateException("cassandra down"));
+        ConsumerRecord<String, byte[]> replay = record(5, 42, TIMESTAMP + 60000L, RecordSource.replayValue(envelope));
+
+        JsonObject again = DeadLetter.envelope(replay, original.getWriteTimestamp(), DeadLetter.STAGE_WRITE,
+                new IllegalStateException("cassandra down"));
+
+        assertArrayEquals(DELETE_ALBUM, again.getBinary(DeadLetter.VALUE));
+        assertEquals(Integer.valueOf(3), again.getInteger(DeadLetter.SOURCE_PARTITION));
+        assertEquals(Long.valueOf(1234L), again.getLong(DeadLetter.SOURCE_OFFSET));
+        assertEquals(Long.valueOf(original.getWriteTimestamp()), again.getLong(DeadLetter.WRITE_TIMESTAMP));
+    }
+
+    private static ConsumerRecord<String, byte[]> record(int partition, long offset, long timestamp, byte[] value) {
+        return new ConsumerRecord<>("album_data", partition, offset, timestamp,
+                timestamp < 0 ? TimestampType.NO_TIMESTAMP_TYPE : TimestampType.CREATE_TIME, 0L, 7, value.length,
+                "album_1", value);
+    }
+}
@@ -0,0 +1,111 @@
+package tech.pinhole.service.sink;
+
+import io.vertx.core.json.JsonObject;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for {@link PartitionLane}.
+ */
+public class PartitionLaneTest {
+
+    private static final TopicPartition PARTITION = new TopicPartition("album_data", 3);
+    // Decodes to no album event, so it is dead lettered.
+    private static final byte[] UNKNOWN_EVENT = "{\"event_type\":\"rename_album\",\"album_id\":\"album_1\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final MockProducer<String, String> producer = new MockProducer<>(false, null, null);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testChunkIsNotCommittedUntilItsDeadLettersArePublished() throws InterruptedException {
+        PartitionLane lane = lane(new DeadLetterPublisher(producer, "album_data_dlq", false));
+        lane.submit(asList(record(10), record(11)));
+
+        producer.errorNext(new IllegalStateException("kafka down"));
+        producer.completeNext();
+        assertEquals(-1L, lane.takeCommittableOffset());
+
+        awaitSent(3);
+        // only the dead letter which failed is published again
+        assertEquals(asList(10L, 11L, 10L), sourceOffsets());
+        producer.completeNext();
+        assertEquals(12L, lane.takeCommittableOffset());
+        assertEquals(0, lane.getPendingRecords());
+    }
+
+    @Test
+    public void testLaneDoesNotMovePastAChunkWhichFailed() throws InterruptedException {
+        PartitionLane lane = lane(new DeadLetterPublisher(producer, "album_data_dlq", false));
+        lane.submit(Collections.singletonList(record(10)));
+        lane.submit(Collections.singletonList(record(11)));
+
+        producer.errorNext(new IllegalStateException("kafka down"));
+        awaitSent(2);
+        producer.completeNext();
+        awaitSent(3);
+
+        assertEquals(asList(10L, 10L, 11L), sourceOffsets());
+        producer.completeNext();
+        assertEquals(12L, lane.takeCommittableOffset());
+    }
+
+    @Test
+    public void testUndeliverableDeadLettersAreOnlyDroppedWhenConfigured() throws InterruptedException {
+        PartitionLane kept = lane(new DeadLetterPublisher(null, null, false));
+        PartitionLane dropped = lane(new DeadLetterPublisher(null, null, true));
+
+        kept.submit(Collections.singletonList(record(10)));
+        dropped.submit(Collections.singletonList(record(10)));
+        Thread.sleep(50L);
+
+        assertEquals(-1L, kept.takeCommittableOffset());
+        assertEquals(1, kept.getPendingRecords());
+        assertEquals(11L, dropped.takeCommittableOffset());
+    }
+
+    private PartitionLane lane(DeadLetterPublisher deadLetters) {
+        // There are no events to write, the writer is not given a session.
+        CassandraBatchWriter writer = new CassandraBatchWriter(null, null, deadLetters, 1, 50, 0, scheduler, 10L);
+        return new PartitionLane(PARTITION, writer, deadLetters, Runnable::run, scheduler, 10L);
+    }
+
+    private void awaitSent(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (producer.history().size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5L);
+        }
+        assertEquals(count, producer.history().size());
+    }
+
+    private List<Long> sourceOffsets() {
+        List<Long> offsets = new ArrayList<>();
+        for (ProducerRecord<String, String> deadLetter : producer.history()) {
+            offsets.add(new JsonObject(deadLetter.value()).getLong(DeadLetter.SOURCE_OFFSET));
+        }
+        return offsets;
+    }
+
+    private static ConsumerRecord<String, byte[]> record(long offset) {
+        return new ConsumerRecord<>("album_data", 3, offset, "album_1", UNKNOWN_EVENT);
+    }
+}
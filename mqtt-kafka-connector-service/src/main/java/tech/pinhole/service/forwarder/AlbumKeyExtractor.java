@@ -0,0 +1,53 @@
+package tech.pinhole.service.forwarder;
+
+import org.apache.commons.lang3.StringUtils;
+import tech.pinhole.service.avro.AlbumEventCodec;
+
+/**
+ * Finds the album an MQTT album event belongs to, the album id is used as kafka record key so that every event of
+ * an album lands on the same partition.
+ *
+ * @author tosheer.kalra
+ */
+public final class AlbumKeyExtractor {
+
+    private static final String ALBUM_TOPIC_SEGMENT = "album";
+    private static final String ALBUMS_TOPIC_SEGMENT = "albums";
+
+    private AlbumKeyExtractor() {
+
+    }
+
+    /**
+     * Returns album id for the message, looking at the topic first ({@code album/{album_id}/...}) and falling back
+     * to the {@code album_id} field of the payload, binary or JSON.
+     *
+     * @param topic   MQTT topic the message was published to.
+     * @param payload MQTT message payload.
+     * @return album id or null if message does not belong to any album.
+     */
+    public static String albumId(String topic, byte[] payload) {
+        String albumId = albumIdFromTopic(topic);
+        if (albumId == null) {
+            albumId = albumIdFromPayload(payload);
+        }
+        return albumId;
+    }
+
+    static String albumIdFromTopic(String topic) {
+        if (topic == null) {
+            return null;
+        }
+        String[] segments = StringUtils.split(topic, '/');
+        for (int i = 0; i < segments.length - 1; i++) {
+            if (ALBUM_TOPIC_SEGMENT.equalsIgnoreCase(segments[i]) || ALBUMS_TOPIC_SEGMENT.equalsIgnoreCase(segments[i])) {
+                return segments[i + 1];
+            }
+        }
+        return null;
+    }
+
+    static String albumIdFromPayload(byte[] payload) {
+        return StringUtils.trimToNull(AlbumEventCodec.getDefault().albumId(payload));
+    }
+}
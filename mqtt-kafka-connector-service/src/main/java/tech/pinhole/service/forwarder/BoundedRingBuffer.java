@@ -0,0 +1,120 @@
+package tech.pinhole.service.forwarder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed size array backed ring buffer sitting between the MQTT callback threads (producers) and the kafka
+ * forwarding thread (single consumer). Elements are drained in batches so the consumer pays for the lock once
+ * per batch instead of once per message.
+ *
+ * @author tosheer.kalra
+ */
+public class BoundedRingBuffer<T> {
+
+    private final Object[] elements;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    private int head;
+    private int tail;
+    private int count;
+
+    public BoundedRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Ring buffer capacity must be positive, was " + capacity);
+        }
+        this.elements = new Object[capacity];
+    }
+
+    /**
+     * Adds the element if there is free space.
+     *
+     * @param element element to add.
+     * @return true if element was added, false if buffer is full.
+     */
+    public boolean offer(T element) {
+        lock.lock();
+        try {
+            if (count == elements.length) {
+                return false;
+            }
+            enqueue(element);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds the element, waiting for free space if the buffer is full.
+     *
+     * @param element element to add.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void put(T element) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == elements.length) {
+                notFull.await();
+            }
+            enqueue(element);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves up to {@code maxElements} elements into {@code sink}, waiting up to {@code timeout} for the first one.
+     *
+     * @return number of elements drained.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    @SuppressWarnings("unchecked")
+    public int drainTo(List<? super T> sink, int maxElements, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (nanos <= 0) {
+                    return 0;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            int drained = Math.min(maxElements, count);
+            for (int i = 0; i < drained; i++) {
+                sink.add((T) elements[head]);
+                elements[head] = null;
+                head = (head + 1) % elements.length;
+            }
+            count -= drained;
+            notFull.signalAll();
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int capacity() {
+        return elements.length;
+    }
+
+    private void enqueue(T element) {
+        elements[tail] = element;
+        tail = (tail + 1) % elements.length;
+        count++;
+        notEmpty.signal();
+    }
+}
@@ -0,0 +1,307 @@
+package tech.pinhole.service.forwarder;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tech.pinhole.service.avro.AlbumEventCodec;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Forwarding pipeline between MQTT subscriptions and kafka.
+ * <p>
+ * MQTT callback threads only copy the message into a {@link BoundedRingBuffer} and return. A single forwarding
+ * thread drains the buffer in batches and hands the records to the kafka producer asynchronously, the producer
+ * itself batches them further using {@code linger.ms} and {@code batch.size}. Records are keyed by album id and
+ * sent in arrival order from a single thread, see {@link tech.pinhole.service.kafka.AlbumPartitioner}.
+ * </p>
+ * <p>
+ * Payloads are forwarded in the binary avro format of {@link AlbumEventCodec}, JSON events from clients which do
+ * not publish binary events yet are converted on the MQTT callback thread. A payload which is not a valid album
+ * event is forwarded unchanged so the kafka sink can dead letter it.
+ * </p>
+ * <p>
+ * Acks: MQTT clients are expected to run with manual acks. A message is acked to the broker once kafka acknowledged
+ * its record, never before, and acks are released in arrival order. The unacked messages fill the inflight window
+ * of the broker, so the broker stops sending while kafka is unavailable instead of the connector dropping QoS 1/2
+ * messages.
+ * </p>
+ * <p>
+ * Failures: once a record fails after the producer retries, nothing more is drained. When the records sent before
+ * the failure are all answered, and {@code retryBackoffMs} later, the failed records are sent again in arrival
+ * order. The records of their albums which kafka took in between are sent again after them, so the last copy of
+ * every event of an album is in order. Draining resumes once kafka took all of them, the acks are withheld
+ * meanwhile.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class MqttKafkaForwarder {
+
+    private static final Logger logger = LoggerFactory.getLogger(MqttKafkaForwarder.class);
+
+    private static final long DRAIN_POLL_TIMEOUT_MS = 100L;
+    private static final long IN_FLIGHT_POLL_MS = 10L;
+
+    /**
+     * Acknowledges a MQTT message to the broker, usually {@code MqttClient::messageArrivedComplete}.
+     */
+    @FunctionalInterface
+    public interface MessageAcknowledger {
+        void acknowledge(int messageId, int qos) throws MqttException;
+    }
+
+    private final Producer<String, byte[]> producer;
+    private final String kafkaTopic;
+    private final BoundedRingBuffer<PendingMessage> buffer;
+    private final int maxDrainBatch;
+    private final long retryBackoffMs;
+    private final Queue<PendingMessage> unacked = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong forwardedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private volatile boolean running;
+    private volatile boolean failing;
+    private Thread forwardingThread;
+
+    public MqttKafkaForwarder(Producer<String, byte[]> producer, String kafkaTopic, int capacity,
+                              int maxDrainBatch, long retryBackoffMs) {
+        this.producer = producer;
+        this.kafkaTopic = kafkaTopic;
+        this.buffer = new BoundedRingBuffer<>(capacity);
+        this.maxDrainBatch = maxDrainBatch;
+        this.retryBackoffMs = retryBackoffMs;
+    }
+
+    /**
+     * Creates a MQTT listener which feeds this forwarder.
+     *
+     * @param acknowledger acknowledger of the MQTT client the listener is subscribed with.
+     * @return listener to pass to {@code MqttClient#subscribe}.
+     */
+    public IMqttMessageListener listener(MessageAcknowledger acknowledger) {
+        return (topic, mqttMessage) -> {
+            PendingAck ack = new PendingAck(acknowledger, mqttMessage.getId(), mqttMessage.getQos());
+            PendingMessage message = toPendingMessage(topic, mqttMessage.getPayload(), ack);
+            // Queued before the message is buffered, so that it is there when kafka acknowledges the record.
+            unacked.add(message);
+            try {
+                if (!buffer.offer(message)) {
+                    // Only reachable when the broker inflight windows of the clients are larger than the buffer.
+                    logger.warn("Forwarding buffer full with {} messages, waiting for space", buffer.capacity());
+                    buffer.put(message);
+                }
+            } catch (InterruptedException | RuntimeException e) {
+                // Not buffered, the broker sends it again. Left queued it would hold back every later ack.
+                unacked.remove(message);
+                releaseAcks();
+                throw e;
+            }
+        };
+    }
+
+    public void start() {
+        running = true;
+        forwardingThread = new Thread(this::forwardLoop, "mqtt-kafka-forwarder-" + kafkaTopic);
+        forwardingThread.setDaemon(true);
+        forwardingThread.start();
+    }
+
+    /**
+     * Stops accepting work, forwards whatever is left in the buffer and flushes the producer, which acks the
+     * forwarded messages. Call it before disconnecting the MQTT clients, once they are unsubscribed. The messages
+     * kafka did not take are left unacked.
+     */
+    public void close() throws InterruptedException {
+        running = false;
+        if (forwardingThread != null) {
+            forwardingThread.join();
+        }
+        producer.flush();
+        releaseAcks();
+        logger.info("Forwarder for kafka topic {} closed, forwarded {} failed {} left unacked {}",
+                kafkaTopic, forwardedCount.get(), failedCount.get(), unacked.size());
+    }
+
+    public long getForwardedCount() {
+        return forwardedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * @return messages received but not acked yet, their records are not acknowledged by kafka yet or precede them.
+     */
+    public int getUnackedCount() {
+        return unacked.size();
+    }
+
+    private void forwardLoop() {
+        List<PendingMessage> batch = new ArrayList<>(maxDrainBatch);
+        try {
+            while (running || buffer.size() > 0) {
+                if (failing) {
+                    // Not once closed, the messages kafka did not take stay unacked.
+                    if (!running) {
+                        return;
+                    }
+                    recover();
+                    continue;
+                }
+                batch.clear();
+                buffer.drainTo(batch, maxDrainBatch, DRAIN_POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                for (PendingMessage message : batch) {
+                    message.drained = true;
+                    send(message);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void send(PendingMessage message) {
+        inFlight.incrementAndGet();
+        // Records are keyed by album so that every event of an album is kept in order on one partition.
+        producer.send(new ProducerRecord<>(kafkaTopic, message.albumId, message.payload), sendCallback(message));
+    }
+
+    private Callback sendCallback(PendingMessage message) {
+        return (metadata, exception) -> {
+            if (exception != null) {
+                failedCount.incrementAndGet();
+                logger.error("Failed to forward message to kafka topic {}, holding the forwarding back for {}ms",
+                        kafkaTopic, retryBackoffMs, exception);
+                failing = true;
+            } else {
+                forwardedCount.incrementAndGet();
+                message.ack.sent = true;
+                releaseAcks();
+            }
+            // after failing is set, the forwarding thread reads it once nothing is in flight
+            inFlight.decrementAndGet();
+        };
+    }
+
+    /**
+     * Sends the failed records again, until kafka took them all, before anything new is drained.
+     */
+    private void recover() throws InterruptedException {
+        do {
+            awaitInFlight();
+            sleepWhileRunning(retryBackoffMs);
+            if (!running) {
+                return;
+            }
+            failing = false;
+            resendFailed();
+            awaitInFlight();
+        } while (failing && running);
+    }
+
+    /**
+     * Sends again, in arrival order, the forwarded records kafka did not take and the records of the same albums
+     * which arrived after them. Nothing is in flight, the unacked records kafka took all follow a failed one.
+     */
+    private void resendFailed() {
+        final Set<String> failedAlbums = new HashSet<>();
+        for (PendingMessage message : unacked) {
+            if (!message.drained) {
+                continue;
+            }
+            if (!message.ack.sent) {
+                failedAlbums.add(message.albumId);
+                send(message);
+            } else if (failedAlbums.contains(message.albumId)) {
+                message.ack.sent = false;
+                send(message);
+            }
+        }
+    }
+
+    private void awaitInFlight() throws InterruptedException {
+        while (running && inFlight.get() > 0) {
+            Thread.sleep(IN_FLIGHT_POLL_MS);
+        }
+    }
+
+    private void sleepWhileRunning(long ms) throws InterruptedException {
+        final long until = System.currentTimeMillis() + ms;
+        while (running && System.currentTimeMillis() < until) {
+            Thread.sleep(Math.min(IN_FLIGHT_POLL_MS, Math.max(1L, until - System.currentTimeMillis())));
+        }
+    }
+
+    /**
+     * Acks the messages, in arrival order, up to the first one whose record is not acknowledged by kafka yet.
+     */
+    private synchronized void releaseAcks() {
+        PendingMessage message;
+        while ((message = unacked.peek()) != null && message.ack.sent) {
+            unacked.poll();
+            message.ack.acknowledge();
+        }
+    }
+
+    private PendingMessage toPendingMessage(String topic, byte[] payload, PendingAck ack) {
+        byte[] binary = payload;
+        try {
+            binary = AlbumEventCodec.getDefault().toBinary(payload);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Forwarding invalid album event from topic {} unchanged: {}", topic, e.getMessage());
+        }
+        return new PendingMessage(AlbumKeyExtractor.albumId(topic, binary), binary, ack);
+    }
+
+    private static final class PendingMessage {
+        private final String albumId;
+        private final byte[] payload;
+        private final PendingAck ack;
+        /**
+         * Handed to the producer at least once, read and written by the forwarding thread only.
+         */
+        private boolean drained;
+
+        private PendingMessage(String albumId, byte[] payload, PendingAck ack) {
+            this.albumId = albumId;
+            this.payload = payload;
+            this.ack = ack;
+        }
+    }
+
+    private static final class PendingAck {
+        private final MessageAcknowledger acknowledger;
+        private final int messageId;
+        private final int qos;
+        private volatile boolean sent;
+
+        private PendingAck(MessageAcknowledger acknowledger, int messageId, int qos) {
+            this.acknowledger = acknowledger;
+            this.messageId = messageId;
+            this.qos = qos;
+        }
+
+        private void acknowledge() {
+            try {
+                acknowledger.acknowledge(messageId, qos);
+            } catch (MqttException e) {
+                logger.error("Failed to ack MQTT message {}", messageId, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package tech.pinhole.service.forwarder;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Helper for MQTT shared subscriptions ({@code $share/<group>/<topic filter>}).
+ * <p>
+ * The broker delivers each message published to a shared subscription to exactly one client of the group, so any
+ * number of connector clients, verticle instances or nodes can subscribe with the same group without forwarding
+ * a message to kafka more than once.
+ * </p>
+ * <p>
+ * Ordering: the broker picks a member of the group per message, not per album, so two events of an album can go to
+ * two clients, each with its own buffer and forwarding thread, and reach kafka in either order. The events of an
+ * album are only kept in order when a single client subscribes, which is why no group is configured by default.
+ * Use a group when ingest needs more than one client and the consumers tolerate reordered album events.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public final class SharedSubscription {
+
+    public static final String SHARE_PREFIX = "$share/";
+
+    private SharedSubscription() {
+
+    }
+
+    /**
+     * Builds the topic filter to subscribe with.
+     *
+     * @param group       shared subscription group, blank for a plain subscription.
+     * @param topicFilter topic filter, e.g. {@code album/#}.
+     * @return {@code $share/<group>/<topicFilter>} or the topic filter itself if group is blank.
+     */
+    public static String topicFilter(String group, String topicFilter) {
+        if (StringUtils.isBlank(group)) {
+            return topicFilter;
+        }
+        return SHARE_PREFIX + group + "/" + topicFilter;
+    }
+}
@@ -1,54 +1,143 @@
 package tech.pinhole.service.verticle;
 
+import io.vertx.core.Future;
 import io.vertx.core.json.JsonObject;
 import org.apache.commons.lang3.RandomStringUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
-import org.apache.kafka.clients.producer.ProducerRecord;
-import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.eclipse.paho.client.mqttv3.MqttClient;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tech.pinhole.service.forwarder.MqttKafkaForwarder;
+import tech.pinhole.service.forwarder.SharedSubscription;
+import tech.pinhole.service.kafka.AlbumPartitioner;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.Future;
 
 /**
  * Created by tosheer.kalra on 03/03/2017.
  */
 public class MessageSubscriberVerticle extends BaseMicroserviceVerticle {
 
+    private static final Logger logger = LoggerFactory.getLogger(MessageSubscriberVerticle.class);
+
     private static final String MQTT_SERVER_URI = "mqtt.serverURI";
     private static final String MQTT_ALBUM_TOPIC = "mqtt.album.topic";
     private static final String MQTT_ALBUM_QOS = "mqtt.album.qos";
+    private static final String MQTT_SHARED_GROUP = "mqtt.shared.group";
+    private static final String MQTT_CLIENTS_PER_VERTICLE = "mqtt.clients.per.verticle";
+    private static final String MQTT_CLIENT_ID_PREFIX = "mqtt.client.id.prefix";
     private static final String KAFKA_SERVER_URI = "kafka.serverURI";
     private static final String KAFKA_ALBUM_TOPIC = "kafka.album.topic";
+    private static final String KAFKA_PRODUCER_ACKS = "kafka.producer.acks";
+    private static final String KAFKA_PRODUCER_LINGER_MS = "kafka.producer.linger.ms";
+    private static final String KAFKA_PRODUCER_BATCH_SIZE = "kafka.producer.batch.size";
+    private static final String KAFKA_PRODUCER_COMPRESSION_TYPE = "kafka.producer.compression.type";
+    private static final String KAFKA_PRODUCER_BUFFER_MEMORY = "kafka.producer.buffer.memory";
+    private static final String KAFKA_PRODUCER_MAX_BLOCK_MS = "kafka.producer.max.block.ms";
+    private static final String KAFKA_PRODUCER_RETRIES = "kafka.producer.retries";
+    private static final String KAFKA_ALBUM_PARTITIONS = "kafka.album.partitions";
+    private static final String KAFKA_ALBUM_STICKY_RECORDS = "kafka.album.sticky.records";
+    private static final String FORWARDER_BUFFER_CAPACITY = "forwarder.buffer.capacity";
+    private static final String FORWARDER_DRAIN_BATCH_SIZE = "forwarder.drain.batch.size";
+    private static final String FORWARDER_RETRY_BACKOFF_MS = "forwarder.retry.backoff.ms";
+
+    private final List<MqttClient> clients = new ArrayList<>();
+    private String topicFilter;
+    private Producer<String, byte[]> producerKafka;
+    private MqttKafkaForwarder forwarder;
 
     @Override
     public void start() throws Exception {
 
         final JsonObject config = config();
 
-        MqttClient client = new MqttClient(
-                config.getString(MQTT_SERVER_URI), RandomStringUtils.randomNumeric(8), new MemoryPersistence());
-        client.connect();
+        producerKafka = new KafkaProducer<>(producerProperties(config));
+
+        forwarder = new MqttKafkaForwarder(producerKafka, config.getString(KAFKA_ALBUM_TOPIC),
+                config.getInteger(FORWARDER_BUFFER_CAPACITY, 16384),
+                config.getInteger(FORWARDER_DRAIN_BATCH_SIZE, 512),
+                config.getLong(FORWARDER_RETRY_BACKOFF_MS, 1000L));
+        forwarder.start();
+
+        // Without a shared group every client receives every message, so only one client makes sense. With one the
+        // events of an album may be split over the clients and reordered, see SharedSubscription.
+        final String sharedGroup = config.getString(MQTT_SHARED_GROUP);
+        final int clientCount = StringUtils.isBlank(sharedGroup) ? 1 : config.getInteger(MQTT_CLIENTS_PER_VERTICLE, 1);
+        topicFilter = SharedSubscription.topicFilter(sharedGroup, config.getString(MQTT_ALBUM_TOPIC));
+        final String clientIdPrefix = config.getString(MQTT_CLIENT_ID_PREFIX, "mqtt-kafka-connector")
+                + "-" + RandomStringUtils.randomAlphanumeric(8) + "-";
+
+        for (int i = 0; i < clientCount; i++) {
+            MqttClient client = new MqttClient(
+                    config.getString(MQTT_SERVER_URI), clientIdPrefix + i, new MemoryPersistence());
+            clients.add(client);
+            // Acks are sent by the forwarder once kafka has the message, so a slow kafka slows the broker down.
+            client.setManualAcks(true);
+            client.connect();
+            client.subscribe(topicFilter, config.getInteger(MQTT_ALBUM_QOS),
+                    forwarder.listener(client::messageArrivedComplete));
+        }
+        logger.info("Forwarding MQTT topic {} to kafka topic {} with {} clients",
+                topicFilter, config.getString(KAFKA_ALBUM_TOPIC), clientCount);
+    }
+
+    @Override
+    public void stop(Future<Void> future) throws Exception {
+        vertx.<Void>executeBlocking(blocking -> {
+            try {
+                // No new messages, then ack the forwarded ones while the clients are still connected.
+                for (MqttClient client : clients) {
+                    if (client.isConnected()) {
+                        client.unsubscribe(topicFilter);
+                    }
+                }
+                if (forwarder != null) {
+                    forwarder.close();
+                }
+                for (MqttClient client : clients) {
+                    if (client.isConnected()) {
+                        client.disconnect();
+                    }
+                }
+                if (producerKafka != null) {
+                    producerKafka.close();
+                }
+                blocking.complete();
+            } catch (Exception e) {
+                blocking.fail(e);
+            }
+        }, future.completer());
+    }
 
+    private Properties producerProperties(JsonObject config) {
         Properties props = new Properties();
         props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, config.getString(KAFKA_SERVER_URI));
-        props.put(ProducerConfig.ACKS_CONFIG, Integer.toString(1));
+        props.put(ProducerConfig.ACKS_CONFIG, config.getString(KAFKA_PRODUCER_ACKS, Integer.toString(1)));
         props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        props.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, 2000);
-        final Producer<String, String> producerKafka = new KafkaProducer<>(props);
-
-        client.subscribe(config.getString(MQTT_ALBUM_TOPIC), config.getInteger(MQTT_ALBUM_QOS),
-                (topic, mqttMessage) -> {
-                    System.out.println(mqttMessage);
-                    final Future<RecordMetadata> send = producerKafka.send(
-                            new ProducerRecord<>(config.getString(KAFKA_ALBUM_TOPIC), topic, mqttMessage.toString()));
-                    System.out.println(send.get().topic());
-                });
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        props.put(ProducerConfig.LINGER_MS_CONFIG, config.getInteger(KAFKA_PRODUCER_LINGER_MS, 5));
+        props.put(ProducerConfig.BATCH_SIZE_CONFIG, config.getInteger(KAFKA_PRODUCER_BATCH_SIZE, 65536));
+        props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, config.getString(KAFKA_PRODUCER_COMPRESSION_TYPE, "lz4"));
+        props.put(ProducerConfig.BUFFER_MEMORY_CONFIG, config.getLong(KAFKA_PRODUCER_BUFFER_MEMORY, 33554432L));
+        // Sends happen on the forwarder thread, blocking there is what pushes back on the MQTT broker.
+        props.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, config.getLong(KAFKA_PRODUCER_MAX_BLOCK_MS, 60000L));
+        // A retried batch must not overtake the next one, otherwise events of an album are reordered.
+        props.put(ProducerConfig.RETRIES_CONFIG, config.getInteger(KAFKA_PRODUCER_RETRIES, 3));
+        props.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 1);
+        props.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, AlbumPartitioner.class);
+        if (config.containsKey(KAFKA_ALBUM_PARTITIONS)) {
+            props.put(AlbumPartitioner.ALBUM_PARTITIONS_CONFIG, config.getInteger(KAFKA_ALBUM_PARTITIONS));
+        }
+        props.put(AlbumPartitioner.STICKY_RECORDS_CONFIG, config.getInteger(KAFKA_ALBUM_STICKY_RECORDS, 1000));
+        return props;
     }
 
 }
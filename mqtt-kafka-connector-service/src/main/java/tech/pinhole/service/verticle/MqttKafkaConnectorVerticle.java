@@ -2,12 +2,24 @@ package tech.pinhole.service.verticle;
 
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Future;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * @author tosheer.kalra
  */
 public class MqttKafkaConnectorVerticle extends BaseMicroserviceVerticle {
 
+    private static final Logger logger = LoggerFactory.getLogger(MqttKafkaConnectorVerticle.class);
+
+    /**
+     * Number of {@link MessageSubscriberVerticle} instances to deploy, each one has its own MQTT clients,
+     * forwarding thread and event loop. More than one only with a shared group, see {@link
+     * tech.pinhole.service.forwarder.SharedSubscription}.
+     */
+    private static final String MESSAGE_SUBSCRIBER_INSTANCES = "message.subscriber.instances";
+    private static final String MQTT_SHARED_GROUP = "mqtt.shared.group";
 
     @Override
     public void start(Future<Void> future) throws Exception {
@@ -21,9 +33,19 @@ public class MqttKafkaConnectorVerticle extends BaseMicroserviceVerticle {
     }
 
     private Future<Void> deployMessageSubscriberVerticle() {
+        int instances = config().getInteger(MESSAGE_SUBSCRIBER_INSTANCES, 1);
+        if (instances > 1 && StringUtils.isBlank(config().getString(MQTT_SHARED_GROUP))) {
+            // Every plain subscriber receives every message, more instances would only duplicate them.
+            logger.warn("{} is {} without {}, deploying a single instance", MESSAGE_SUBSCRIBER_INSTANCES,
+                    instances, MQTT_SHARED_GROUP);
+            instances = 1;
+        }
         Future<String> future = Future.future();
-        vertx.deployVerticle(new MessageSubscriberVerticle(),
-                new DeploymentOptions().setConfig(config()), future.completer());
+        vertx.deployVerticle(MessageSubscriberVerticle.class.getName(),
+                new DeploymentOptions()
+                        .setConfig(config())
+                        .setInstances(instances),
+                future.completer());
         return future.map(r -> null);
     }
 }
@@ -0,0 +1,65 @@
+package tech.pinhole.service.forwarder;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+import tech.pinhole.service.avro.AlbumEventCodec;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test class for {@link AlbumKeyExtractor}.
+ */
+public class AlbumKeyExtractorTest {
+
+    private static final byte[] NO_ALBUM = "{\"event_type\":\"ping\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testAlbumIdIsReadFromTheTopic() {
+        assertEquals("album_1", AlbumKeyExtractor.albumId("album/album_1/photos", NO_ALBUM));
+        assertEquals("album_2", AlbumKeyExtractor.albumId("pinhole/albums/album_2", NO_ALBUM));
+        assertEquals("album_3", AlbumKeyExtractor.albumId("/Album/album_3", NO_ALBUM));
+    }
+
+    @Test
+    public void testTopicWinsOverThePayload() {
+        assertEquals("album_1", AlbumKeyExtractor.albumId("album/album_1", json(comment("album_2"))));
+    }
+
+    @Test
+    public void testAlbumIdIsReadFromAJsonPayloadOutsideAnAlbumTopic() {
+        assertEquals("album_2", AlbumKeyExtractor.albumId("photos/comments", json(comment("album_2"))));
+        // album is the last segment, there is no album id in the topic
+        assertEquals("album_2", AlbumKeyExtractor.albumId("photos/album", json(comment("album_2"))));
+        assertEquals("album_2", AlbumKeyExtractor.albumId(null, json(comment("album_2"))));
+    }
+
+    @Test
+    public void testAlbumIdIsReadFromABinaryPayload() {
+        byte[] binary = AlbumEventCodec.getDefault().encode(comment("album_2"));
+
+        assertEquals("album_2", AlbumKeyExtractor.albumId("photos/comments", binary));
+    }
+
+    @Test
+    public void testMessageOfNoAlbumHasNoKey() {
+        assertNull(AlbumKeyExtractor.albumId("photos/comments", NO_ALBUM));
+        assertNull(AlbumKeyExtractor.albumId("photos/comments", json(comment("  "))));
+    }
+
+    private static JsonObject comment(String albumId) {
+        return new JsonObject()
+                .put("event_type", "comment_photo")
+                .put("album_id", albumId)
+                .put("photo_id", "s3_id")
+                .put("comment", "great selfie")
+                .put("commented_on", "2017-03-20T10:15:30")
+                .put("comment_by", "customer_2");
+    }
+
+    private static byte[] json(JsonObject event) {
+        return event.encode().getBytes(StandardCharsets.UTF_8);
+    }
+}
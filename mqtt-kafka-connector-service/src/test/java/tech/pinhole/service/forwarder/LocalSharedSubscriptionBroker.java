@@ -0,0 +1,86 @@
+package tech.pinhole.service.forwarder;
+
+import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In memory stand-in for the MQTT broker which implements just enough of the broker side of subscriptions for
+ * tests: topic filters with {@code +} / {@code #} wildcards, plain subscriptions which get every message and
+ * {@code $share/<group>/} subscriptions where every message goes to exactly one member of the group (round robin).
+ */
+class LocalSharedSubscriptionBroker {
+
+    private final List<Subscriber> plainSubscribers = new ArrayList<>();
+    private final Map<String, List<Subscriber>> sharedGroups = new LinkedHashMap<>();
+    private final Map<String, AtomicInteger> sharedGroupCursors = new LinkedHashMap<>();
+    private int nextMessageId = 1;
+
+    void subscribe(String topicFilter, IMqttMessageListener listener) {
+        if (topicFilter.startsWith(SharedSubscription.SHARE_PREFIX)) {
+            String groupAndFilter = topicFilter.substring(SharedSubscription.SHARE_PREFIX.length());
+            int separator = groupAndFilter.indexOf('/');
+            String group = groupAndFilter.substring(0, separator);
+            String filter = groupAndFilter.substring(separator + 1);
+            sharedGroups.computeIfAbsent(group + "|" + filter, key -> new ArrayList<>())
+                    .add(new Subscriber(filter, listener));
+            sharedGroupCursors.putIfAbsent(group + "|" + filter, new AtomicInteger());
+        } else {
+            plainSubscribers.add(new Subscriber(topicFilter, listener));
+        }
+    }
+
+    void publish(String topic, byte[] payload, int qos) throws Exception {
+        for (Subscriber subscriber : plainSubscribers) {
+            if (matches(subscriber.topicFilter, topic)) {
+                subscriber.listener.messageArrived(topic, message(payload, qos));
+            }
+        }
+        for (Map.Entry<String, List<Subscriber>> group : sharedGroups.entrySet()) {
+            List<Subscriber> members = group.getValue();
+            if (matches(members.get(0).topicFilter, topic)) {
+                int member = sharedGroupCursors.get(group.getKey()).getAndIncrement() % members.size();
+                members.get(member).listener.messageArrived(topic, message(payload, qos));
+            }
+        }
+    }
+
+    private MqttMessage message(byte[] payload, int qos) {
+        MqttMessage message = new MqttMessage(payload);
+        message.setQos(qos);
+        message.setId(nextMessageId++);
+        return message;
+    }
+
+    static boolean matches(String topicFilter, String topic) {
+        String[] filterLevels = topicFilter.split("/", -1);
+        String[] topicLevels = topic.split("/", -1);
+        for (int i = 0; i < filterLevels.length; i++) {
+            if ("#".equals(filterLevels[i])) {
+                return true;
+            }
+            if (i >= topicLevels.length) {
+                return false;
+            }
+            if (!"+".equals(filterLevels[i]) && !filterLevels[i].equals(topicLevels[i])) {
+                return false;
+            }
+        }
+        return filterLevels.length == topicLevels.length;
+    }
+
+    private static final class Subscriber {
+        private final String topicFilter;
+        private final IMqttMessageListener listener;
+
+        private Subscriber(String topicFilter, IMqttMessageListener listener) {
+            this.topicFilter = topicFilter;
+            this.listener = listener;
+        }
+    }
+}
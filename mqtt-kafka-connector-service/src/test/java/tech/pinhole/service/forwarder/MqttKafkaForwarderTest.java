@@ -0,0 +1,200 @@
+package tech.pinhole.service.forwarder;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import tech.pinhole.service.avro.AlbumEventCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for the acks of {@link MqttKafkaForwarder}.
+ */
+public class MqttKafkaForwarderTest {
+
+    private MockProducer<String, byte[]> producer;
+    private MqttKafkaForwarder forwarder;
+    private List<Integer> acked;
+    private IMqttMessageListener listener;
+
+    @Before
+    public void setUp() {
+        producer = new MockProducer<>(false, new StringSerializer(), new ByteArraySerializer());
+        forwarder = new MqttKafkaForwarder(producer, "album_data", 1024, 64, 10);
+        forwarder.start();
+        acked = new CopyOnWriteArrayList<>();
+        listener = forwarder.listener((messageId, qos) -> acked.add(messageId));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        forwarder.close();
+    }
+
+    @Test
+    public void testMessageIsAckedOnceKafkaAcknowledgesIt() throws Exception {
+        listener.messageArrived("album/album_1", message(1));
+        await().until(() -> producer.history().size() == 1);
+
+        assertTrue(acked.isEmpty());
+        producer.completeNext();
+
+        assertEquals(singletonList(1), acked);
+        assertEquals(0, forwarder.getUnackedCount());
+    }
+
+    @Test
+    public void testAcksAreReleasedInArrivalOrder() throws Exception {
+        listener.messageArrived("album/album_1", message(1));
+        listener.messageArrived("album/album_2", message(2));
+        await().until(() -> producer.history().size() == 2);
+
+        assertTrue(producer.completeNext());
+        assertTrue(producer.completeNext());
+
+        assertEquals(asList(1, 2), acked);
+    }
+
+    @Test
+    public void testFailedSendIsNotAckedAndIsSentAgain() throws Exception {
+        listener.messageArrived("album/album_1", message(1));
+        listener.messageArrived("album/album_2", message(2));
+        await().until(() -> producer.history().size() == 2);
+
+        producer.errorNext(new RuntimeException("broker down"));
+        producer.completeNext();
+
+        // The second message waits for the first one.
+        assertTrue(acked.isEmpty());
+        assertEquals(1, forwarder.getFailedCount());
+
+        await().until(() -> producer.history().size() == 3);
+        producer.completeNext();
+
+        assertEquals(asList(1, 2), acked);
+        assertEquals("album_1", producer.history().get(2).key());
+    }
+
+    @Test
+    public void testRecordsOfTheFailedAlbumAreSentAgainAfterIt() throws Exception {
+        listener.messageArrived("album/album_1", message(1, "album_1"));
+        listener.messageArrived("album/album_1", message(2, "album_1"));
+        listener.messageArrived("album/album_2", message(3, "album_2"));
+        await().until(() -> producer.history().size() == 3);
+
+        producer.errorNext(new RuntimeException("broker down"));
+        producer.completeNext();
+        producer.completeNext();
+
+        // The second event of album_1 already landed, it is sent again after the first one, album_2 is not.
+        await().until(() -> producer.history().size() == 5);
+        assertEquals(asList(1, 2), ids(producer.history().subList(3, 5)));
+        assertTrue(acked.isEmpty());
+
+        producer.completeNext();
+        producer.completeNext();
+
+        assertEquals(asList(1, 2, 3), acked);
+    }
+
+    @Test
+    public void testNothingNewIsSentUntilTheFailedRecordIsTaken() throws Exception {
+        listener.messageArrived("album/album_1", message(1));
+        await().until(() -> producer.history().size() == 1);
+        producer.errorNext(new RuntimeException("broker down"));
+        await().until(() -> producer.history().size() == 2);
+
+        listener.messageArrived("album/album_1", message(2, "album_1"));
+        Thread.sleep(100);
+        assertEquals(2, producer.history().size());
+
+        producer.completeNext();
+
+        await().until(() -> producer.history().size() == 3);
+        producer.completeNext();
+        assertEquals(asList(1, 1, 2), ids(producer.history()));
+        assertEquals(asList(1, 2), acked);
+    }
+
+    @Test
+    public void testMessageWhichCouldNotBeBufferedDoesNotHoldBackTheAcks() throws Exception {
+        forwarder.close();
+        // Not started, the buffer does not drain.
+        forwarder = new MqttKafkaForwarder(producer, "album_data", 1, 64, 10);
+        IMqttMessageListener full = forwarder.listener((messageId, qos) -> acked.add(messageId));
+        full.messageArrived("album/album_1", message(1));
+        Thread.currentThread().interrupt();
+        try {
+            full.messageArrived("album/album_2", message(2));
+            fail("buffered into a full buffer");
+        } catch (InterruptedException expected) {
+            // the broker sends it again
+        }
+
+        forwarder.start();
+        full.messageArrived("album/album_3", message(3));
+        await().until(() -> producer.history().size() == 2);
+        producer.completeNext();
+        producer.completeNext();
+
+        assertEquals(asList(1, 3), acked);
+        assertEquals(0, forwarder.getUnackedCount());
+    }
+
+    @Test
+    public void testCloseLeavesMessagesKafkaDidNotTakeUnacked() throws Exception {
+        forwarder.close();
+        // Not sent again before the close.
+        forwarder = new MqttKafkaForwarder(producer, "album_data", 1024, 64, 60000);
+        forwarder.start();
+        forwarder.listener((messageId, qos) -> acked.add(messageId)).messageArrived("album/album_1", message(1));
+        await().until(() -> producer.history().size() == 1);
+        producer.errorNext(new RuntimeException("broker down"));
+
+        forwarder.close();
+
+        assertTrue(acked.isEmpty());
+        assertEquals(1, forwarder.getUnackedCount());
+    }
+
+    private MqttMessage message(int id) {
+        return message(id, "album_" + id);
+    }
+
+    private MqttMessage message(int id, String albumId) {
+        MqttMessage message = new MqttMessage(("{\"event_type\":\"like_photo\",\"album_id\":\"" + albumId
+                + "\",\"photo_id\":\"photo_" + id + "\",\"liked_by\":\"customer_1\"}")
+                .getBytes(StandardCharsets.UTF_8));
+        message.setQos(1);
+        message.setId(id);
+        return message;
+    }
+
+    /**
+     * @return ids of the messages the records were forwarded from, by their photo id.
+     */
+    private static List<Integer> ids(List<ProducerRecord<String, byte[]>> records) {
+        List<Integer> ids = new ArrayList<>();
+        for (ProducerRecord<String, byte[]> record : records) {
+            String photoId = AlbumEventCodec.getDefault().decode(record.value()).getString("photo_id");
+            ids.add(Integer.valueOf(photoId.substring("photo_".length())));
+        }
+        return ids;
+    }
+}
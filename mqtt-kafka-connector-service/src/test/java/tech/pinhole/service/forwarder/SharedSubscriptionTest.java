@@ -0,0 +1,145 @@
+package tech.pinhole.service.forwarder;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import tech.pinhole.service.avro.AlbumEventCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for MQTT shared subscription ingest, see {@link SharedSubscription} and {@link MqttKafkaForwarder}.
+ */
+public class SharedSubscriptionTest {
+
+    private static final String ALBUM_TOPIC_FILTER = "album/#";
+    private static final String KAFKA_TOPIC = "album_data";
+    private static final int CONSUMERS = 3;
+    private static final int MESSAGES = 300;
+
+    private LocalSharedSubscriptionBroker broker;
+    private List<MockProducer<String, byte[]>> producers;
+    private List<MqttKafkaForwarder> forwarders;
+    private AtomicInteger acks;
+
+    @Before
+    public void setUp() {
+        broker = new LocalSharedSubscriptionBroker();
+        producers = new ArrayList<>();
+        forwarders = new ArrayList<>();
+        acks = new AtomicInteger();
+        for (int i = 0; i < CONSUMERS; i++) {
+            MockProducer<String, byte[]> producer =
+                    new MockProducer<>(true, new StringSerializer(), new ByteArraySerializer());
+            MqttKafkaForwarder forwarder = new MqttKafkaForwarder(producer, KAFKA_TOPIC, 1024, 64, 10);
+            forwarder.start();
+            producers.add(producer);
+            forwarders.add(forwarder);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        closeForwarders();
+    }
+
+    @Test
+    public void testSharedSubscriptionSplitsLoadWithoutDuplicates() throws Exception {
+        for (MqttKafkaForwarder forwarder : forwarders) {
+            broker.subscribe(SharedSubscription.topicFilter("connector", ALBUM_TOPIC_FILTER),
+                    forwarder.listener((messageId, qos) -> acks.incrementAndGet()));
+        }
+
+        publishAlbumEvents();
+        closeForwarders();
+
+        Set<String> forwarded = new HashSet<>();
+        for (MockProducer<String, byte[]> producer : producers) {
+            assertEquals(MESSAGES / CONSUMERS, producer.history().size());
+            for (ProducerRecord<String, byte[]> record : producer.history()) {
+                String photoId = AlbumEventCodec.getDefault().decode(record.value()).getString("photo_id");
+                assertTrue("Duplicate message " + photoId, forwarded.add(photoId));
+            }
+        }
+        assertEquals(MESSAGES, forwarded.size());
+        assertEquals(MESSAGES, acks.get());
+    }
+
+    @Test
+    public void testPlainSubscriptionDuplicatesEveryMessage() throws Exception {
+        for (MqttKafkaForwarder forwarder : forwarders) {
+            broker.subscribe(SharedSubscription.topicFilter(null, ALBUM_TOPIC_FILTER),
+                    forwarder.listener((messageId, qos) -> acks.incrementAndGet()));
+        }
+
+        publishAlbumEvents();
+        closeForwarders();
+
+        for (MockProducer<String, byte[]> producer : producers) {
+            assertEquals(MESSAGES, producer.history().size());
+        }
+        assertEquals(MESSAGES * CONSUMERS, acks.get());
+    }
+
+    @Test
+    public void testRecordsAreKeyedByAlbum() throws Exception {
+        broker.subscribe(SharedSubscription.topicFilter("connector", ALBUM_TOPIC_FILTER),
+                forwarders.get(0).listener((messageId, qos) -> acks.incrementAndGet()));
+
+        broker.publish("album/customer_1_1490000000", payload(0), 2);
+        broker.publish("album", "{\"album_id\":\"customer_2_1490000000\"}".getBytes(StandardCharsets.UTF_8), 2);
+        closeForwarders();
+
+        List<ProducerRecord<String, byte[]>> history = producers.get(0).history();
+        assertEquals("customer_1_1490000000", history.get(0).key());
+        assertEquals("customer_2_1490000000", history.get(1).key());
+    }
+
+    @Test
+    public void testJsonEventsAreForwardedAsBinary() throws Exception {
+        broker.subscribe(SharedSubscription.topicFilter("connector", ALBUM_TOPIC_FILTER),
+                forwarders.get(0).listener((messageId, qos) -> acks.incrementAndGet()));
+
+        byte[] invalid = "{\"event_type\":\"unknown\"}".getBytes(StandardCharsets.UTF_8);
+        broker.publish("album/album_1", payload(1), 2);
+        broker.publish("album/album_1", invalid, 2);
+        closeForwarders();
+
+        List<ProducerRecord<String, byte[]>> history = producers.get(0).history();
+        assertTrue(AlbumEventCodec.isBinary(history.get(0).value()));
+        assertEquals("photo_1", AlbumEventCodec.getDefault().decode(history.get(0).value()).getString("photo_id"));
+        // Invalid events are forwarded unchanged for the sink to dead letter them.
+        assertArrayEquals(invalid, history.get(1).value());
+    }
+
+    private void publishAlbumEvents() throws Exception {
+        for (int i = 0; i < MESSAGES; i++) {
+            broker.publish("album/album_" + (i % 10), payload(i), 2);
+        }
+    }
+
+    private byte[] payload(int sequence) {
+        return ("{\"event_type\":\"like_photo\",\"album_id\":\"album_" + (sequence % 10)
+                + "\",\"photo_id\":\"photo_" + sequence + "\",\"liked_by\":\"customer_1\"}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void closeForwarders() throws InterruptedException {
+        for (MqttKafkaForwarder forwarder : forwarders) {
+            forwarder.close();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package tech.pinhole.service.acl;
+
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded (user id, album topic) to permission cache of the MQTT webhooks.
+ * <p>
+ * Entries expire after a TTL, granted and denied permissions have their own TTL so a denial (negative entry) can be
+ * kept short. Once full the least recently used entry is evicted. Entries are dropped explicitly whenever the
+ * authorization of a user on an album changes, see {@link #invalidate(String, String)}. A permission looked up
+ * while an invalidation came in is not cached, it may predate the change.
+ * </p>
+ * <p>
+ * Thread safe, shared by the webhook instances of a JVM.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class AclCache implements Shareable {
+
+    private final int maxEntries;
+    private final long ttlMs;
+    private final long negativeTtlMs;
+    private final Map<String, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long generation;
+
+    public AclCache(int maxEntries, long ttlMs, long negativeTtlMs) {
+        this.maxEntries = maxEntries;
+        this.ttlMs = ttlMs;
+        this.negativeTtlMs = negativeTtlMs;
+        // Access ordered so that the eldest entry is the least recently used one.
+        this.entries = new LinkedHashMap<String, Entry>(Math.min(maxEntries, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > AclCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param userId  MQTT client id.
+     * @param albumId album topic.
+     * @return cached permission or null if unknown or expired.
+     */
+    public Boolean get(String userId, String albumId) {
+        final String key = key(userId, albumId);
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+                hits.incrementAndGet();
+                return entry.allowed;
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * @return generation to hand back to {@link #put(String, String, boolean, long)} with the permission looked up
+     * next.
+     */
+    public long generation() {
+        synchronized (entries) {
+            return generation;
+        }
+    }
+
+    /**
+     * Caches a permission, unless an invalidation came in since the generation was read.
+     *
+     * @param userId     MQTT client id.
+     * @param albumId    album topic.
+     * @param allowed    permission looked up.
+     * @param generation generation read before the permission was looked up.
+     */
+    public void put(String userId, String albumId, boolean allowed, long generation) {
+        if (maxEntries <= 0) {
+            return;
+        }
+        Entry entry = new Entry(allowed, System.currentTimeMillis() + (allowed ? ttlMs : negativeTtlMs));
+        synchronized (entries) {
+            if (generation != this.generation) {
+                return;
+            }
+            entries.put(key(userId, albumId), entry);
+        }
+    }
+
+    public void invalidate(String userId, String albumId) {
+        synchronized (entries) {
+            generation++;
+            entries.remove(key(userId, albumId));
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static String key(String userId, String albumId) {
+        return userId + '\u0000' + albumId;
+    }
+
+    private static final class Entry {
+        private final boolean allowed;
+        private final long expiresAt;
+
+        private Entry(boolean allowed, long expiresAt) {
+            this.allowed = allowed;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
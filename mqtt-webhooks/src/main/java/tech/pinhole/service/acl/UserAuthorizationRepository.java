@@ -0,0 +1,42 @@
+package tech.pinhole.service.acl;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import tech.pinhole.service.dao.CassandraRepositoryWrapper;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Access to the {@code user_authorization} table which holds the album topics a MQTT client may use.
+ *
+ * @author tosheer.kalra
+ */
+public class UserAuthorizationRepository extends CassandraRepositoryWrapper {
+
+    private static final String STATUS_VALUE = "yes";
+
+    public UserAuthorizationRepository(Vertx vertx, JsonObject config) {
+        super(vertx, config);
+    }
+
+    public Future<Boolean> isAuthorized(String userId, String albumId) {
+        return retrieveOne(SELECT_STATEMENT, userId, albumId).map(Optional::isPresent);
+    }
+
+    public Future<Void> addAuthorization(String userId, String albumId) {
+        return execute(INSERT_STATEMENT, userId, albumId, LocalDateTime.now().toString(), STATUS_VALUE)
+                .map(resultSet -> null);
+    }
+
+    public Future<Void> removeAuthorization(String userId, String albumId) {
+        return execute(DELETE_STATEMENT, userId, albumId).map(resultSet -> null);
+    }
+
+    // CQL statement
+
+    static final String SELECT_STATEMENT = "SELECT status FROM user_authorization WHERE userid = ? AND albumid = ?";
+    static final String INSERT_STATEMENT = "INSERT INTO user_authorization (userid, albumid, operationTimestamp, status) VALUES (?, ?, ?, ?)";
+    static final String DELETE_STATEMENT = "DELETE FROM user_authorization WHERE userid = ? AND albumid = ?";
+}
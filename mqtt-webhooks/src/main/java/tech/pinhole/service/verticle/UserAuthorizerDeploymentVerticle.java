@@ -0,0 +1,40 @@
+package tech.pinhole.service.verticle;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+
+/**
+ * Deploys the {@link UserAuthorizerVerticle} instances.
+ *
+ * @author tosheer.kalra
+ */
+public class UserAuthorizerDeploymentVerticle extends BaseMicroserviceVerticle {
+
+    /**
+     * Number of {@link UserAuthorizerVerticle} instances to deploy, each one has its own event loop and they share
+     * the listening port. Defaults to the number of cores.
+     */
+    private static final String WEBHOOKS_INSTANCES = "webhooks.instances";
+
+    @Override
+    public void start(Future<Void> future) throws Exception {
+        deployUserAuthorizerVerticle().setHandler(compositeFutureAsyncResult -> {
+            if (compositeFutureAsyncResult.failed()) {
+                future.fail(compositeFutureAsyncResult.cause());
+            } else {
+                future.complete();
+            }
+        });
+    }
+
+    private Future<Void> deployUserAuthorizerVerticle() {
+        Future<String> future = Future.future();
+        vertx.deployVerticle(UserAuthorizerVerticle.class.getName(),
+                new DeploymentOptions()
+                        .setConfig(config())
+                        .setInstances(config().getInteger(WEBHOOKS_INSTANCES,
+                                Runtime.getRuntime().availableProcessors())),
+                future.completer());
+        return future.map(r -> null);
+    }
+}
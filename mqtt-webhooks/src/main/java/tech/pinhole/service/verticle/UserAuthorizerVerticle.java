@@ -1,17 +1,6 @@
 package tech.pinhole.service.verticle;
 
-import com.datastax.driver.core.Cluster;
-import com.datastax.driver.core.ResultSet;
-import com.datastax.driver.core.Session;
-import com.datastax.driver.core.Statement;
-import com.datastax.driver.core.querybuilder.Insert;
-import com.datastax.driver.core.querybuilder.QueryBuilder;
-import com.google.common.base.Function;
 import com.google.common.net.MediaType;
-import com.google.common.util.concurrent.AsyncFunction;
-import com.google.common.util.concurrent.FutureCallback;
-import com.google.common.util.concurrent.Futures;
-import com.google.common.util.concurrent.ListenableFuture;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
@@ -20,22 +9,40 @@ import io.vertx.core.http.HttpServer;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.shareddata.LocalMap;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.BodyHandler;
+import tech.pinhole.service.acl.AclCache;
+import tech.pinhole.service.acl.UserAuthorizationRepository;
+import tech.pinhole.service.avro.AlbumEventCodec;
 
-import java.time.LocalDateTime;
 import java.util.Base64;
 
+import static tech.pinhole.service.constant.PinholeServiceAddressConstants.MQTT_ACL_INVALIDATION_ADDRESS;
+
 /**
+ * VerneMQ webhooks authorizing MQTT clients on album topics.
+ * <p>
+ * Publish and subscribe permissions are looked up in the {@code user_authorization} table through an
+ * {@link AclCache}, so hot albums are authorized without a cassandra round trip. Whenever the authorization of a
+ * user on an album changes (album created, user added or removed, unsubscribe) the cache entry is invalidated on
+ * every webhook instance through an event bus publish on {@code MQTT_ACL_INVALIDATION_ADDRESS}.
+ * </p>
+ * <p>
+ * Deployed in several instances by {@link UserAuthorizerDeploymentVerticle}, all listening on the same port and
+ * sharing the {@link AclCache} and cassandra session of the JVM. The instance creating the cache is the one
+ * consuming the invalidations for it.
+ * </p>
+ *
  * Created by tosheer.kalra on 4/8/17.
  */
 public class UserAuthorizerVerticle extends BaseMicroserviceVerticle {
 
+    private static final Logger logger = LoggerFactory.getLogger(UserAuthorizerVerticle.class);
 
-    private static final String USER_AUTHORIZATION_TABLE = "user_authorization";
-    private static final String CASSANDRA_HOSTNAME = "cassandra.hostname";
-    private static final String CASSANDRA_DB_KEYSPACE = "cassandra.db.keyspace";
     private static final String WEBHOOKS_PORT = "webhooks.port";
     private static final String WEBHOOK_ENDPOINT_AUTH_PUBLISH = "/auth/publish";
     private static final String WEBHOOK_ENDPOINT_AUTH_SUBSCRIBE = "/auth/subscribe";
@@ -44,36 +51,56 @@ public class UserAuthorizerVerticle extends BaseMicroserviceVerticle {
     private static final String MQTT_TOPIC = "topic";
     private static final String MQTT_TOPICS = "topics";
     private static final String MQTT_MESSAGE_PAYLOAD = "payload";
-    private static final String MQTT_MESSAGE_PAYLOAD_EVENT_TYPE = "event_type";
     private static final String MQTT_MESSAGE_CREATE_ALBUM = "create_album";
+    private static final String MQTT_MESSAGE_ADD_USER_TO_ALBUM = "add_user_to_album";
+    private static final String MQTT_MESSAGE_REMOVE_USER_FROM_ALBUM = "remove_user_from_album";
+    private static final String MQTT_MESSAGE_PAYLOAD_INVITATION_RECEIVER = "invitation_receiver";
+    private static final String MQTT_MESSAGE_PAYLOAD_REMOVAL_RECEIVER = "removal_receiver";
     private static final String RESPONSE_RESULT_OK = "{'result': 'ok'}";
     private static final String RESPONSE_RESULT_ERROR = "{'result': 'error'}";
-    private static final String USER_AUTHORIZATION_COLUMN_STATUS = "status";
     private static final String USER_AUTHORIZATION_COLUMN_USERID = "userid";
     private static final String MQTT_MESSAGE_PAYLOAD_CLIENT_ID = "client_id";
     private static final String USER_AUTHORIZATION_COLUMN_ALBUMID = "albumid";
     private static final String MQTT_MESSAGE_PAYLOAD_ALBUM_ID = "album_id";
     private static final String MQTT_MESSAGE_PAYLOAD_ALBUM_OWNER = "album_owner";
-    private static final String USER_AUTHORIZATION_COLUMN_OPERATION_TIMESTAMP = "operationTimestamp";
     private static final String PINHOLE_ALBUMS_PREFIX = "/pinhole/albums/";
-    private static final String USER_AUTHORIZATION_COLUMN_STATUS_VALUE = "yes";
-
-    ListenableFuture<Session> session;
+    private static final String ACL_CACHE_MAX_ENTRIES = "acl.cache.max.entries";
+    private static final String ACL_CACHE_TTL_MS = "acl.cache.ttl.ms";
+    private static final String ACL_CACHE_NEGATIVE_TTL_MS = "acl.cache.negative.ttl.ms";
+    private static final String WEBHOOKS_SHARED_CACHES = "webhooks.shared.caches";
+    private static final String WEBHOOKS_ACL_CACHE = "acl";
 
+    private UserAuthorizationRepository repository;
 
-    private String keyspace;
+    private AclCache aclCache;
 
     @Override
     public void start(Future<Void> future) throws Exception {
-        keyspace = config().getString(CASSANDRA_DB_KEYSPACE);
         super.start();
-        Cluster cluster = Cluster.builder()
-                .addContactPoint(config().getString(CASSANDRA_HOSTNAME))
-                .build();
-        session = cluster.connectAsync(keyspace);
+        repository = new UserAuthorizationRepository(vertx, config());
+        aclCache = sharedAclCache();
         startWeebhooksEndpoints(http -> completeStartup(http, future));
     }
 
+    /**
+     * @return ACL cache of the webhook instances of this JVM, created by the first instance which then consumes the
+     * invalidations for all of them.
+     */
+    private AclCache sharedAclCache() {
+        final LocalMap<String, AclCache> caches = vertx.sharedData().getLocalMap(WEBHOOKS_SHARED_CACHES);
+        final AclCache created = new AclCache(config().getInteger(ACL_CACHE_MAX_ENTRIES, 100000),
+                config().getLong(ACL_CACHE_TTL_MS, 60000L),
+                config().getLong(ACL_CACHE_NEGATIVE_TTL_MS, 5000L));
+        final AclCache existing = caches.putIfAbsent(WEBHOOKS_ACL_CACHE, created);
+        if (existing != null) {
+            return existing;
+        }
+        vertx.eventBus().<JsonObject>consumer(MQTT_ACL_INVALIDATION_ADDRESS, message -> created.invalidate(
+                message.body().getString(USER_AUTHORIZATION_COLUMN_USERID),
+                message.body().getString(USER_AUTHORIZATION_COLUMN_ALBUMID)));
+        return created;
+    }
+
     private void startWeebhooksEndpoints(Handler<AsyncResult<HttpServer>> next) {
 
         Router router = Router.router(vertx);
@@ -107,48 +134,28 @@ public class UserAuthorizerVerticle extends BaseMicroserviceVerticle {
         final JsonObject bodyAsJson = routingContext.getBodyAsJson();
 
         String topic = bodyAsJson.getString(MQTT_TOPIC);
-        String decodePayload = new String(Base64.getDecoder().decode(bodyAsJson.getString(MQTT_MESSAGE_PAYLOAD)));
-        JsonObject payloadJson = new JsonObject(decodePayload);
-        String event_type = payloadJson.getString(MQTT_MESSAGE_PAYLOAD_EVENT_TYPE);
+        byte[] payload = Base64.getDecoder().decode(bodyAsJson.getString(MQTT_MESSAGE_PAYLOAD));
+        // Only the event type is read, the payload is decoded for album creation only.
+        String event_type = AlbumEventCodec.getDefault().eventType(payload);
 
         if (topic != null ) {
             if (MQTT_MESSAGE_CREATE_ALBUM.equalsIgnoreCase(event_type)) {
-                addOwner(payloadJson);
+                try {
+                    addOwner(AlbumEventCodec.getDefault().decode(payload));
+                } catch (IllegalArgumentException e) {
+                    createFailureResponse(routingContext);
+                    return;
+                }
                 createSuccessResponse(routingContext);
                 return;
             }
 
-            Statement retrieveStatus = QueryBuilder.select(USER_AUTHORIZATION_COLUMN_STATUS)
-                    .from(keyspace, USER_AUTHORIZATION_TABLE)
-                    .where(QueryBuilder.eq(USER_AUTHORIZATION_COLUMN_USERID, bodyAsJson.getString(MQTT_MESSAGE_PAYLOAD_CLIENT_ID)))
-                    .and(QueryBuilder.eq(USER_AUTHORIZATION_COLUMN_ALBUMID, topic));
-
-            AsyncFunction<Session, ResultSet> asyncFunction = session -> session.executeAsync(retrieveStatus);
-            ListenableFuture<ResultSet> resultSetFuture = Futures.transformAsync(session, asyncFunction);
-
-            Function<ResultSet, Boolean> function = resultSet -> {
-                if(!resultSet.iterator().hasNext()) {
-                    return false;
+            authorize(bodyAsJson.getString(MQTT_MESSAGE_PAYLOAD_CLIENT_ID), topic, authorized -> {
+                if (authorized) {
+                    invalidateMembershipChange(event_type, payload);
+                    createSuccessResponse(routingContext);
                 } else {
-                    return true;
-                }
-            };
-            ListenableFuture<Boolean> status = Futures.transform(resultSetFuture, function);
-
-            // Use a callback to perform an action once the future is complete:
-            Futures.addCallback(status, new FutureCallback<Boolean>() {
-                public void onSuccess(Boolean status) {
-                    if (status) {
-                        createSuccessResponse(routingContext);
-                        return;
-                    } else {
-                        createFailureResponse(routingContext);
-                        return;
-                    }
-                }
-                public void onFailure(Throwable t) {
                     createFailureResponse(routingContext);
-                    return;
                 }
             });
 
@@ -168,36 +175,10 @@ public class UserAuthorizerVerticle extends BaseMicroserviceVerticle {
         if (topics != null) {
             JsonObject jsonObject = topics.getJsonObject(0);
             String topic = jsonObject.getString(MQTT_TOPIC);
-            System.out.println("topic " + topic);
-            Statement retrieveStatus = QueryBuilder.select(USER_AUTHORIZATION_COLUMN_STATUS)
-                    .from(keyspace, USER_AUTHORIZATION_TABLE)
-                    .where(QueryBuilder.eq(USER_AUTHORIZATION_COLUMN_USERID, bodyAsJson.getString(MQTT_MESSAGE_PAYLOAD_CLIENT_ID)))
-                    .and(QueryBuilder.eq(USER_AUTHORIZATION_COLUMN_ALBUMID, topic));
-
-            System.out.println(retrieveStatus.toString());
-
-            AsyncFunction<Session, ResultSet> asyncFunction = session -> session.executeAsync(retrieveStatus);
-            ListenableFuture<ResultSet> resultSetFuture = Futures.transformAsync(session, asyncFunction);
-
-            Function<ResultSet, Boolean> function = resultSet -> {
-                if (!resultSet.iterator().hasNext()) {
-                    return false;
+            authorize(bodyAsJson.getString(MQTT_MESSAGE_PAYLOAD_CLIENT_ID), topic, authorized -> {
+                if (authorized) {
+                    createSuccessResponse(routingContext);
                 } else {
-                    return true;
-                }
-            };
-            ListenableFuture<Boolean> status = Futures.transform(resultSetFuture, function);
-
-            // Use a callback to perform an action once the future is complete:
-            Futures.addCallback(status, new FutureCallback<Boolean>() {
-                public void onSuccess(Boolean status) {
-                    if (status) {
-                        createSuccessResponse(routingContext);
-                    } else {
-                        createFailureResponse(routingContext);
-                    }
-                }
-                public void onFailure(Throwable t) {
                     createFailureResponse(routingContext);
                 }
             });
@@ -214,31 +195,12 @@ public class UserAuthorizerVerticle extends BaseMicroserviceVerticle {
         JsonArray topics = bodyAsJson.getJsonArray(MQTT_TOPICS);
         if (topics != null) {
             String topic = topics.getString(0);
-            Statement deleteStatement = QueryBuilder.delete().from(keyspace, USER_AUTHORIZATION_TABLE)
-                    .where(QueryBuilder.eq(USER_AUTHORIZATION_COLUMN_ALBUMID, topic)).and(QueryBuilder.eq(USER_AUTHORIZATION_COLUMN_USERID, bodyAsJson.getString(MQTT_MESSAGE_PAYLOAD_CLIENT_ID)));
-            System.out.println(deleteStatement.toString());
-
-            AsyncFunction<Session, ResultSet> asyncFunction = session -> session.executeAsync(deleteStatement);
-            ListenableFuture<ResultSet> resultSetFuture = Futures.transformAsync(session, asyncFunction);
-
-            Function<ResultSet, Boolean> function = resultSet -> {
-                if(!resultSet.iterator().hasNext()) {
-                    return false;
+            String clientId = bodyAsJson.getString(MQTT_MESSAGE_PAYLOAD_CLIENT_ID);
+            repository.removeAuthorization(clientId, topic).setHandler(removed -> {
+                publishInvalidation(clientId, topic);
+                if (removed.succeeded()) {
+                    createSuccessResponse(routingContext);
                 } else {
-                    return true;
-                }
-            };
-            ListenableFuture<Boolean> status = Futures.transform(resultSetFuture, function);
-
-            // Use a callback to perform an action once the future is complete:
-            Futures.addCallback(status, new FutureCallback<Boolean>() {
-                public void onSuccess(Boolean status) {
-                    if (status) createSuccessResponse(routingContext);
-                    else {
-                        createFailureResponse(routingContext);
-                    }
-                }
-                public void onFailure(Throwable t) {
                     createFailureResponse(routingContext);
                 }
             });
@@ -303,28 +265,74 @@ public class UserAuthorizerVerticle extends BaseMicroserviceVerticle {
         String album_owner = payloadJson.getString(MQTT_MESSAGE_PAYLOAD_ALBUM_OWNER);
         String album_id = payloadJson.getString(MQTT_MESSAGE_PAYLOAD_ALBUM_ID);
 
-        final Insert insert = QueryBuilder.insertInto(keyspace, USER_AUTHORIZATION_TABLE)
-                .value(USER_AUTHORIZATION_COLUMN_USERID, album_owner)
-                .value(USER_AUTHORIZATION_COLUMN_ALBUMID, PINHOLE_ALBUMS_PREFIX + album_id)
-                .value(USER_AUTHORIZATION_COLUMN_OPERATION_TIMESTAMP, LocalDateTime.now().toString())
-                .value(USER_AUTHORIZATION_COLUMN_STATUS, USER_AUTHORIZATION_COLUMN_STATUS_VALUE);
-
-        AsyncFunction<Session, ResultSet> asyncFunction = session -> session.executeAsync(insert.toString());
-        ListenableFuture<ResultSet> resultSetFuture = Futures.transformAsync(session, asyncFunction);
-        Function<ResultSet, String> function = resultSet -> resultSet.toString();
-        ListenableFuture<String> insertResult = Futures.transform(resultSetFuture, function);
+        repository.addAuthorization(album_owner, PINHOLE_ALBUMS_PREFIX + album_id).setHandler(inserted -> {
+            if (inserted.succeeded()) {
+                publishInvalidation(album_owner, PINHOLE_ALBUMS_PREFIX + album_id);
+                logger.debug("Owner " + album_owner + " of album " + album_id + " authorized");
+            } else {
+                logger.error("Could not authorize owner " + album_owner + " of album " + album_id,
+                        inserted.cause());
+            }
+        });
 
+    }
 
-        Futures.addCallback(insertResult, new FutureCallback<String>() {
-            public void onSuccess(String version) {
-                System.out.printf("Insert successful to cassandra");
-            }
+    /**
+     * Checks whether the user is authorized on the album topic, from the cache if possible. Lookup failures are
+     * denials and are not cached, neither are permissions looked up while an invalidation came in.
+     */
+    private void authorize(String userId, String albumId, Handler<Boolean> handler) {
+        Boolean cached = aclCache.get(userId, albumId);
+        if (cached != null) {
+            handler.handle(cached);
+            return;
+        }
 
-            public void onFailure(Throwable t) {
-                System.out.printf("Insert failed : %s%n", t.getMessage());
+        final long generation = aclCache.generation();
+        repository.isAuthorized(userId, albumId).setHandler(status -> {
+            if (status.succeeded()) {
+                aclCache.put(userId, albumId, status.result(), generation);
+                handler.handle(status.result());
+            } else {
+                handler.handle(false);
             }
         });
+    }
+
+    /**
+     * Invalidates the permission of the invited or removed user when a membership event is published.
+     */
+    private void invalidateMembershipChange(String eventType, byte[] payload) {
+        final String receiverField;
+        if (MQTT_MESSAGE_ADD_USER_TO_ALBUM.equalsIgnoreCase(eventType)) {
+            receiverField = MQTT_MESSAGE_PAYLOAD_INVITATION_RECEIVER;
+        } else if (MQTT_MESSAGE_REMOVE_USER_FROM_ALBUM.equalsIgnoreCase(eventType)) {
+            receiverField = MQTT_MESSAGE_PAYLOAD_REMOVAL_RECEIVER;
+        } else {
+            return;
+        }
+        try {
+            JsonObject payloadJson = AlbumEventCodec.getDefault().decode(payload);
+            publishInvalidation(payloadJson.getString(receiverField),
+                    PINHOLE_ALBUMS_PREFIX + payloadJson.getString(MQTT_MESSAGE_PAYLOAD_ALBUM_ID));
+        } catch (IllegalArgumentException e) {
+            // Not a valid membership event, nothing changes.
+        }
+    }
+
+    private void publishInvalidation(String userId, String albumId) {
+        aclCache.invalidate(userId, albumId);
+        vertx.eventBus().publish(MQTT_ACL_INVALIDATION_ADDRESS, new JsonObject()
+                .put(USER_AUTHORIZATION_COLUMN_USERID, userId)
+                .put(USER_AUTHORIZATION_COLUMN_ALBUMID, albumId));
+    }
 
+    @Override
+    public void stop(Future<Void> future) throws Exception {
+        if (repository != null) {
+            repository.close();
+        }
+        super.stop(future);
     }
 
     private void completeStartup(AsyncResult<HttpServer> http, Future<Void> fut) {
@@ -0,0 +1,53 @@
+package tech.pinhole.service.acl;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for {@link UserAuthorizationRepository}.
+ */
+public class UserAuthorizationRepositoryTest {
+
+    /**
+     * Columns of {@code user_authorization} as cassandra names them: created unquoted, so folded to lower case.
+     */
+    private static final List<String> TABLE_COLUMNS = Arrays.asList("userid", "albumid", "operationtimestamp", "status");
+
+    @Test
+    public void testInsertNamesTheColumnsOfTheTable() {
+        assertEquals(TABLE_COLUMNS, columns(UserAuthorizationRepository.INSERT_STATEMENT));
+    }
+
+    @Test
+    public void testEveryInsertedColumnIsBound() {
+        // addAuthorization binds the user, album, timestamp and status
+        assertEquals(4, markers(UserAuthorizationRepository.INSERT_STATEMENT));
+        assertEquals(2, markers(UserAuthorizationRepository.SELECT_STATEMENT));
+        assertEquals(2, markers(UserAuthorizationRepository.DELETE_STATEMENT));
+    }
+
+    /**
+     * @return columns of an insert, the unquoted ones folded to lower case as cassandra does.
+     */
+    private static List<String> columns(String insert) {
+        String names = insert.substring(insert.indexOf('(') + 1, insert.indexOf(')'));
+        List<String> columns = new ArrayList<>();
+        for (String name : names.split(",")) {
+            name = name.trim();
+            columns.add(name.startsWith("\"")
+                    ? name.substring(1, name.length() - 1)
+                    : name.toLowerCase(Locale.ROOT));
+        }
+        return columns;
+    }
+
+    private static long markers(String statement) {
+        return statement.chars().filter(c -> c == '?').count();
+    }
+}
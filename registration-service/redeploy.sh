@@ -1,7 +1,7 @@
 #!/usr/bin/env bash
 
 export LAUNCHER="io.vertx.core.Launcher"
-export VERTICLE="tech.pinhole.service.verticle.UserServiceVerticle"
+export VERTICLE="tech.pinhole.service.verticle.UserServiceDeploymentVerticle"
 export CMD="mvn compile"
 export VERTX_CMD="run"
 
@@ -0,0 +1,68 @@
+package tech.pinhole.service.verticle;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import tech.pinhole.service.constant.PinholeServiceAddressConstants;
+import tech.pinhole.service.constant.PinholeServiceNameConstants;
+
+/**
+ * Deploys the {@link UserServiceVerticle} instances, then publishes the registration service and its message
+ * sources once.
+ *
+ * @author tosheer.kalra
+ */
+public class UserServiceDeploymentVerticle extends BaseMicroserviceVerticle {
+
+    /**
+     * Number of {@link UserServiceVerticle} instances to deploy, each one has its own event loop and they share the
+     * listening port. Defaults to the number of cores.
+     */
+    private static final String USER_SERVICE_INSTANCES = "user.service.instances";
+
+    @Override
+    public void start(Future<Void> future) throws Exception {
+        super.start();
+        final String host = config().getString(UserServiceVerticle.USER_ACCOUNT_HTTP_ADDRESS, "0.0.0.0");
+        final int port = config().getInteger(UserServiceVerticle.USER_ACCOUNT_HTTP_PORT,
+                UserServiceVerticle.DEFAULT_PORT);
+
+        deployUserServiceVerticle()
+                .compose(deployed -> CompositeFuture.all(
+                        publishHttpEndpoint(PinholeServiceNameConstants.REGISTRATION_HTTP_SERVICE, host, port),
+                        createMessageSourceForPhoneNumberConfirmation(),
+                        createMessageSourceForEmailConfirmation()))
+                .setHandler(compositeFutureAsyncResult -> {
+                    if (compositeFutureAsyncResult.failed()) {
+                        future.fail(compositeFutureAsyncResult.cause());
+                    } else {
+                        future.complete();
+                    }
+                });
+    }
+
+    private Future<Void> deployUserServiceVerticle() {
+        Future<String> future = Future.future();
+        vertx.deployVerticle(UserServiceVerticle.class.getName(),
+                new DeploymentOptions()
+                        .setConfig(config())
+                        .setInstances(config().getInteger(USER_SERVICE_INSTANCES,
+                                Runtime.getRuntime().availableProcessors())),
+                future.completer());
+        return future.map(r -> null);
+    }
+
+    private Future<Void> createMessageSourceForPhoneNumberConfirmation() {
+
+        return publishMessageSource(PinholeServiceNameConstants.REGISTRATION_USER_PHONE_CREATED_MESSAGE_SOURCE_SERVICE,
+                PinholeServiceAddressConstants.REGISTRATION_USER_PHONE_CREATED_MESSAGE_SOURCE_ADDRESS);
+
+    }
+
+    private Future<Void> createMessageSourceForEmailConfirmation() {
+
+        return publishMessageSource(PinholeServiceNameConstants.REGISTRATION_USER_EMAIL_CREATED_MESSAGE_SOURCE_SERVICE,
+                PinholeServiceAddressConstants.REGISTRATION_USER_EMAIL_CREATED_MESSAGE_SOURCE_ADDRESS);
+
+    }
+}
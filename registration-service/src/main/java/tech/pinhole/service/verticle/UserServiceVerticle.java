@@ -23,39 +23,35 @@ import tech.pinhole.service.services.*;
 import java.time.Instant;
 
 /**
+ * Registration REST service, deployed in several instances by {@link UserServiceDeploymentVerticle}, all listening
+ * on the same port.
+ *
  * @author piyush.goyal
  */
 public class UserServiceVerticle extends BaseMicroserviceVerticle {
 
-    private static final String USER_ACCOUNT_HTTP_ADDRESS = "user.service.http.address";
-    private static final String USER_ACCOUNT_HTTP_PORT = "user.service.http.port";
+    static final String USER_ACCOUNT_HTTP_ADDRESS = "user.service.http.address";
+    static final String USER_ACCOUNT_HTTP_PORT = "user.service.http.port";
+    static final int DEFAULT_PORT = 9091;
+
     private AccountService accountService;
 
-    private String host;
     private int port;
 
     @Override
     public void start(Future<Void> future) throws Exception {
 
         super.start();
-        host = config().getString(USER_ACCOUNT_HTTP_ADDRESS, "0.0.0.0");
-        port = config().getInteger(USER_ACCOUNT_HTTP_PORT, 9091);
+        port = config().getInteger(USER_ACCOUNT_HTTP_PORT, DEFAULT_PORT);
 
+        // the service and its message sources are published once by the deployment verticle
         Future<HttpServer> httpServerFuture = configureHTTPServer(port);
 
-        Future<Void> httpServicePublishedFuture = httpServerFuture.compose(server ->
-                publishHttpEndpoint(PinholeServiceNameConstants.REGISTRATION_HTTP_SERVICE, host, port));
-
         Future<AccountService> accountServiceFuture = getAccountServiceProxy();
 
-        Future<Void> messageSourceForOtpConfirmation = createMessageSourceForPhoneNumberConfirmation();
-        Future<Void> messageSourceForEmailConfirmation = createMessageSourceForEmailConfirmation();
-
         CompositeFuture.all(
-                httpServicePublishedFuture,
-                accountServiceFuture,
-                messageSourceForEmailConfirmation,
-                messageSourceForOtpConfirmation)
+                httpServerFuture,
+                accountServiceFuture)
                 .setHandler(compositeAsyncHandler -> {
 
             if(compositeAsyncHandler.failed()) {
@@ -80,20 +76,6 @@ public class UserServiceVerticle extends BaseMicroserviceVerticle {
        return future;
     }
 
-    private Future<Void> createMessageSourceForPhoneNumberConfirmation() {
-
-        return publishMessageSource(PinholeServiceNameConstants.REGISTRATION_USER_PHONE_CREATED_MESSAGE_SOURCE_SERVICE,
-                PinholeServiceAddressConstants.REGISTRATION_USER_PHONE_CREATED_MESSAGE_SOURCE_ADDRESS);
-
-    }
-
-    private Future<Void> createMessageSourceForEmailConfirmation() {
-
-        return publishMessageSource(PinholeServiceNameConstants.REGISTRATION_USER_EMAIL_CREATED_MESSAGE_SOURCE_SERVICE,
-                PinholeServiceAddressConstants.REGISTRATION_USER_EMAIL_CREATED_MESSAGE_SOURCE_ADDRESS);
-
-    }
-
     private Future<HttpServer> configureHTTPServer(final int port) {
         Future<HttpServer> future = Future.future();
 
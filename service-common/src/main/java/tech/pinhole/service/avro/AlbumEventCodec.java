@@ -0,0 +1,244 @@
+package tech.pinhole.service.avro;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonObject;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Binary codec of album event payloads.
+ * <p>
+ * Wire format: a {@value #MAGIC_BYTE} magic byte, the 4 byte big endian schema id of the {@link LocalSchemaRegistry}
+ * and the avro binary encoding of the event. The event type is implied by the schema, so it is not part of the
+ * encoded record. Kafka 0.10 records have no headers which is why the schema id travels in front of the payload.
+ * </p>
+ * <p>
+ * Payloads not starting with the magic byte are treated as legacy JSON text events, every method accepts both
+ * formats so producers can be migrated one by one. {@link #eventType(byte[])} and {@link #albumId(byte[])} only
+ * read what they need: the schema id, respectively the leading {@code album_id} field, or a streaming scan of the
+ * top level JSON fields.
+ * </p>
+ * <p>
+ * Instances are thread safe.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class AlbumEventCodec {
+
+  public static final byte MAGIC_BYTE = 0x0;
+
+  private static final int HEADER_LENGTH = 5;
+  private static final String EVENT_TYPE = "event_type";
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private static volatile AlbumEventCodec defaultCodec;
+
+  private final LocalSchemaRegistry registry;
+  private final Map<Integer, GenericDatumWriter<GenericRecord>> writers = new ConcurrentHashMap<>();
+  private final Map<Integer, GenericDatumReader<GenericRecord>> readers = new ConcurrentHashMap<>();
+
+  public AlbumEventCodec(LocalSchemaRegistry registry) {
+    this.registry = registry;
+  }
+
+  /**
+   * @return codec backed by {@link LocalSchemaRegistry#getDefault()}.
+   */
+  public static AlbumEventCodec getDefault() {
+    if (defaultCodec == null) {
+      synchronized (AlbumEventCodec.class) {
+        if (defaultCodec == null) {
+          defaultCodec = new AlbumEventCodec(LocalSchemaRegistry.getDefault());
+        }
+      }
+    }
+    return defaultCodec;
+  }
+
+  /**
+   * @param payload event payload.
+   * @return true if the payload is in the binary wire format.
+   */
+  public static boolean isBinary(byte[] payload) {
+    return payload != null && payload.length >= HEADER_LENGTH && payload[0] == MAGIC_BYTE;
+  }
+
+  /**
+   * Encodes an event with the schema of its event type. Fields which are not part of the schema are dropped.
+   *
+   * @param event JSON event.
+   * @return binary payload.
+   * @throws IllegalArgumentException if the event type is unknown or a required field is missing.
+   */
+  public byte[] encode(JsonObject event) {
+    Integer id = registry.writeId(event.getString(EVENT_TYPE));
+    if (id == null) {
+      throw new IllegalArgumentException("Unknown album event type " + event.getValue(EVENT_TYPE));
+    }
+    Schema schema = registry.schema(id);
+    GenericRecord record = new GenericData.Record(schema);
+    for (Schema.Field field : schema.getFields()) {
+      Object value = event.getValue(field.name());
+      if (value == null && field.schema().getType() == Schema.Type.STRING) {
+        throw new IllegalArgumentException("Album event " + schema.getProp(LocalSchemaRegistry.EVENT_TYPE_PROPERTY)
+            + " is missing " + field.name());
+      }
+      record.put(field.pos(), value == null ? null : value.toString());
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+    out.write(MAGIC_BYTE);
+    out.write(ByteBuffer.allocate(4).putInt(id).array(), 0, 4);
+    BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(out, null);
+    try {
+      writers.computeIfAbsent(id, schemaId -> new GenericDatumWriter<>(schema)).write(record, encoder);
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not encode album event", e);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Converts a payload to the binary format, binary payloads are returned as is.
+   *
+   * @param payload binary or JSON payload.
+   * @return binary payload.
+   * @throws IllegalArgumentException if a JSON payload is not a valid album event.
+   */
+  public byte[] toBinary(byte[] payload) {
+    if (isBinary(payload)) {
+      return payload;
+    }
+    return encode(parseJson(payload));
+  }
+
+  /**
+   * Decodes a payload into its JSON representation, including the {@code event_type} field.
+   *
+   * @param payload binary or JSON payload.
+   * @return decoded event.
+   * @throws IllegalArgumentException if the payload can not be decoded.
+   */
+  public JsonObject decode(byte[] payload) {
+    if (!isBinary(payload)) {
+      return parseJson(payload);
+    }
+    int id = schemaId(payload);
+    Schema schema = schema(id);
+    BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(payload, HEADER_LENGTH,
+        payload.length - HEADER_LENGTH, null);
+    final GenericRecord record;
+    try {
+      record = readers.computeIfAbsent(id, schemaId -> new GenericDatumReader<>(schema)).read(null, decoder);
+    } catch (IOException | AvroRuntimeException e) {
+      throw new IllegalArgumentException("Album event is not valid " + schema.getFullName(), e);
+    }
+    JsonObject event = new JsonObject().put(EVENT_TYPE, schema.getProp(LocalSchemaRegistry.EVENT_TYPE_PROPERTY));
+    for (Schema.Field field : schema.getFields()) {
+      Object value = record.get(field.pos());
+      if (value != null) {
+        event.put(field.name(), value.toString());
+      }
+    }
+    return event;
+  }
+
+  /**
+   * Reads the event type without decoding the event.
+   *
+   * @param payload binary or JSON payload.
+   * @return event type or null if it can not be determined.
+   */
+  public String eventType(byte[] payload) {
+    if (isBinary(payload)) {
+      return registry.eventType(schemaId(payload));
+    }
+    return topLevelField(payload, EVENT_TYPE);
+  }
+
+  /**
+   * Reads the album id without decoding the event.
+   *
+   * @param payload binary or JSON payload.
+   * @return album id or null if it can not be determined.
+   */
+  public String albumId(byte[] payload) {
+    if (!isBinary(payload)) {
+      return topLevelField(payload, LocalSchemaRegistry.ALBUM_ID_FIELD);
+    }
+    if (registry.schema(schemaId(payload)) == null) {
+      return null;
+    }
+    try {
+      // Every album event schema starts with album_id.
+      return DecoderFactory.get().binaryDecoder(payload, HEADER_LENGTH, payload.length - HEADER_LENGTH, null)
+          .readString();
+    } catch (IOException | AvroRuntimeException e) {
+      return null;
+    }
+  }
+
+  private Schema schema(int id) {
+    Schema schema = registry.schema(id);
+    if (schema == null) {
+      throw new IllegalArgumentException("Unknown album event schema id " + id);
+    }
+    return schema;
+  }
+
+  private static int schemaId(byte[] payload) {
+    return ByteBuffer.wrap(payload, 1, 4).getInt();
+  }
+
+  private static JsonObject parseJson(byte[] payload) {
+    if (payload == null || payload.length == 0) {
+      throw new IllegalArgumentException("Album event is empty");
+    }
+    try {
+      return new JsonObject(new String(payload, StandardCharsets.UTF_8));
+    } catch (DecodeException e) {
+      throw new IllegalArgumentException("Album event is neither binary nor valid json", e);
+    }
+  }
+
+  private static String topLevelField(byte[] json, String name) {
+    if (json == null || json.length == 0) {
+      return null;
+    }
+    try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        return null;
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        JsonToken value = parser.nextToken();
+        if (name.equals(field)) {
+          return value.isScalarValue() && value != JsonToken.VALUE_NULL ? parser.getValueAsString() : null;
+        }
+        parser.skipChildren();
+      }
+      return null;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+}
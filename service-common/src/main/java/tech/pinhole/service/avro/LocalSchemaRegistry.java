@@ -0,0 +1,130 @@
+package tech.pinhole.service.avro;
+
+import io.vertx.core.json.JsonObject;
+import org.apache.avro.Schema;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Embedded stand-in for a schema registry, every service resolves schema ids from the same registry file bundled
+ * with service-common instead of calling a registry server.
+ * <p>
+ * The registry file maps schema ids to avsc resources. Each album event schema carries its event type in the
+ * {@code event_type} schema property and starts with a required {@code album_id} string field. Ids are never
+ * reused: an evolved schema is added under a new id, the highest id of an event type is the one written while
+ * every id stays readable.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class LocalSchemaRegistry {
+
+  public static final String DEFAULT_REGISTRY = "avro/registry.json";
+
+  static final String EVENT_TYPE_PROPERTY = "event_type";
+  static final String ALBUM_ID_FIELD = "album_id";
+
+  private static volatile LocalSchemaRegistry defaultRegistry;
+
+  private final Map<Integer, Schema> schemasById;
+  private final Map<String, Integer> writeIdsByEventType;
+
+  private LocalSchemaRegistry(Map<Integer, Schema> schemasById, Map<String, Integer> writeIdsByEventType) {
+    this.schemasById = Collections.unmodifiableMap(schemasById);
+    this.writeIdsByEventType = Collections.unmodifiableMap(writeIdsByEventType);
+  }
+
+  /**
+   * @return registry loaded from {@value #DEFAULT_REGISTRY}.
+   */
+  public static LocalSchemaRegistry getDefault() {
+    if (defaultRegistry == null) {
+      synchronized (LocalSchemaRegistry.class) {
+        if (defaultRegistry == null) {
+          defaultRegistry = load(LocalSchemaRegistry.class.getClassLoader(), DEFAULT_REGISTRY);
+        }
+      }
+    }
+    return defaultRegistry;
+  }
+
+  /**
+   * Loads a registry file and every schema it references from the class path.
+   *
+   * @param classLoader class loader to load the resources with.
+   * @param resource    registry file.
+   * @return loaded registry.
+   * @throws IllegalStateException if a resource is missing or a schema is invalid.
+   */
+  public static LocalSchemaRegistry load(ClassLoader classLoader, String resource) {
+    JsonObject registry = new JsonObject(readResource(classLoader, resource));
+    Map<Integer, Schema> schemasById = new HashMap<>();
+    Map<String, Integer> writeIdsByEventType = new HashMap<>();
+    for (String id : registry.fieldNames()) {
+      Schema schema = new Schema.Parser().parse(readResource(classLoader, registry.getString(id)));
+      validate(schema);
+      int schemaId = Integer.parseInt(id);
+      schemasById.put(schemaId, schema);
+      writeIdsByEventType.merge(schema.getProp(EVENT_TYPE_PROPERTY), schemaId, Math::max);
+    }
+    return new LocalSchemaRegistry(schemasById, writeIdsByEventType);
+  }
+
+  /**
+   * @param id schema id.
+   * @return schema or null if the id is unknown.
+   */
+  public Schema schema(int id) {
+    return schemasById.get(id);
+  }
+
+  /**
+   * @param eventType album event type.
+   * @return id of the schema events of this type are written with or null if the type is unknown.
+   */
+  public Integer writeId(String eventType) {
+    return eventType == null ? null : writeIdsByEventType.get(eventType.toLowerCase());
+  }
+
+  /**
+   * @param id schema id.
+   * @return event type of the schema or null if the id is unknown.
+   */
+  public String eventType(int id) {
+    Schema schema = schemasById.get(id);
+    return schema == null ? null : schema.getProp(EVENT_TYPE_PROPERTY);
+  }
+
+  private static void validate(Schema schema) {
+    if (schema.getType() != Schema.Type.RECORD || schema.getProp(EVENT_TYPE_PROPERTY) == null) {
+      throw new IllegalStateException("Schema " + schema.getFullName() + " is not an album event record");
+    }
+    Schema.Field first = schema.getFields().isEmpty() ? null : schema.getFields().get(0);
+    if (first == null || !ALBUM_ID_FIELD.equals(first.name()) || first.schema().getType() != Schema.Type.STRING) {
+      throw new IllegalStateException("Schema " + schema.getFullName() + " must start with a string album_id");
+    }
+  }
+
+  private static String readResource(ClassLoader classLoader, String resource) {
+    try (InputStream in = classLoader.getResourceAsStream(resource)) {
+      if (in == null) {
+        throw new IllegalStateException("Resource " + resource + " not found");
+      }
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] chunk = new byte[4096];
+      int read;
+      while ((read = in.read(chunk)) != -1) {
+        out.write(chunk, 0, read);
+      }
+      return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not read " + resource, e);
+    }
+  }
+}
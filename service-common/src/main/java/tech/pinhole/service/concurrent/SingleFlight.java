@@ -0,0 +1,111 @@
+package tech.pinhole.service.concurrent;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent identical calls: while a call for a key is in flight, callers asking for the same key wait for
+ * its result instead of making the call again. Once the call completes every waiting caller gets the same result,
+ * success or failure, and the next caller for the key makes a new call.
+ * <p>
+ * The result is shared between the callers, it must not be modified by them. Results are handed over on the thread
+ * which completed the call.
+ * </p>
+ * <p>
+ * Thread safe.
+ * </p>
+ *
+ * @param <K> type of the call keys.
+ * @param <V> type of the call results.
+ * @author tosheer.kalra
+ */
+public class SingleFlight<K, V> {
+
+  private static final Logger logger = LoggerFactory.getLogger(SingleFlight.class);
+
+  private final Map<K, Flight<V>> flights = new HashMap<>();
+  private final AtomicLong calls = new AtomicLong();
+  private final AtomicLong joins = new AtomicLong();
+
+  /**
+   * Makes the call for the key, or waits for the call already in flight for it.
+   *
+   * @param key           key of the call, equal keys make identical calls.
+   * @param call          makes the call and completes the future given to it.
+   * @param resultHandler handler of the call result.
+   */
+  public void execute(K key, Handler<Future<V>> call, Handler<AsyncResult<V>> resultHandler) {
+    final Flight<V> flight;
+    synchronized (flights) {
+      final Flight<V> inFlight = flights.get(key);
+      if (inFlight != null) {
+        inFlight.waiting.add(resultHandler);
+        joins.incrementAndGet();
+        return;
+      }
+      flight = new Flight<>();
+      flight.waiting.add(resultHandler);
+      flights.put(key, flight);
+    }
+    calls.incrementAndGet();
+
+    final Future<V> future = Future.future();
+    future.setHandler(ar -> complete(key, flight, ar));
+    try {
+      call.handle(future);
+    } catch (RuntimeException e) {
+      future.tryFail(e);
+    }
+  }
+
+  private void complete(K key, Flight<V> flight, AsyncResult<V> result) {
+    synchronized (flights) {
+      flights.remove(key, flight);
+    }
+    // no caller joins once the flight is out of the map
+    for (Handler<AsyncResult<V>> handler : flight.waiting) {
+      try {
+        handler.handle(result);
+      } catch (RuntimeException e) {
+        logger.error("Failure while handing over the result of call " + key, e);
+      }
+    }
+  }
+
+  /**
+   * Lets the next callers make new calls instead of waiting for the calls in flight, for instance once the data
+   * they read changed. The callers already waiting still get the results of the calls in flight.
+   */
+  public void forgetAll() {
+    synchronized (flights) {
+      flights.clear();
+    }
+  }
+
+  /**
+   * @return number of calls made.
+   */
+  public long getCalls() {
+    return calls.get();
+  }
+
+  /**
+   * @return number of callers which waited for a call in flight instead of making one.
+   */
+  public long getJoins() {
+    return joins.get();
+  }
+
+  private static final class Flight<V> {
+    private final List<Handler<AsyncResult<V>>> waiting = new ArrayList<>(2);
+  }
+}
@@ -22,4 +22,12 @@ public class PinholeServiceAddressConstants {
     public static final String NOTIFICATION_SEND_OTP_MESSAGE_SOURCE_ADDRESS = "notification.send.otp.sms.message.source.address";
 
     public static final String NOTIFICATION_SEND_CONFIRMATION_EMAIL_MESSAGE_SOURCE_ADDRESS = "notification.send.confirmation.email.message.source.address";
+
+    public static final String USER_ACCOUNT_CHANGED_ADDRESS = "user.account.changed.address";
+
+    public static final String MQTT_ACL_INVALIDATION_ADDRESS = "mqtt.acl.invalidation.address";
+
+    public static final String JDBC_POOL_METRICS_ADDRESS = "jdbc.pool.metrics.address";
+
+    public static final String USER_ACCOUNT_CACHE_METRICS_ADDRESS = "user.account.cache.metrics.address";
 }
@@ -0,0 +1,207 @@
+package tech.pinhole.service.dao;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.SQLConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Inserts rows of a table in batches: rows added by concurrent callers are written together, once the batch holds the
+ * maximum rows or once the window after its first row elapsed, with multi-row {@code INSERT ... VALUES (...),(...)}
+ * statements on one connection and in one transaction.
+ * <p>
+ * When the batch fails, for instance on a duplicate key, its rows are written one by one so that every caller gets
+ * the result of its own row. With one row a batch, or no window, every row is written on its own right away.
+ * </p>
+ * <p>
+ * Thread safe.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class BatchedInsert {
+
+  private static final Logger logger = LoggerFactory.getLogger(BatchedInsert.class);
+
+  private final Vertx vertx;
+  private final JDBCClient client;
+  private final String insert;
+  private final int columns;
+  private final int maxRows;
+  private final long windowMs;
+
+  private List<Row> pending = new ArrayList<>();
+  private long windowTimer = -1;
+
+  /**
+   * @param vertx    vertx, for the batch windows.
+   * @param client   client of the database.
+   * @param insert   insert statement up to its values, like {@code INSERT INTO t (a, b) VALUES}.
+   * @param columns  number of values of a row.
+   * @param maxRows  maximum rows of a batch.
+   * @param windowMs milliseconds a batch waits for rows after its first one.
+   */
+  public BatchedInsert(Vertx vertx, JDBCClient client, String insert, int columns, int maxRows, long windowMs) {
+    this.vertx = vertx;
+    this.client = client;
+    this.insert = insert;
+    this.columns = columns;
+    this.maxRows = maxRows;
+    this.windowMs = windowMs;
+  }
+
+  /**
+   * Inserts the row with the next batch.
+   *
+   * @param params        values of the row.
+   * @param resultHandler handler of the insert result, called once the batch is written.
+   */
+  public void add(JsonArray params, Handler<AsyncResult<Void>> resultHandler) {
+    if (params.size() != columns) {
+      resultHandler.handle(Future.failedFuture(
+        new IllegalArgumentException("Expected " + columns + " values, got " + params.size())));
+      return;
+    }
+    if (maxRows <= 1 || windowMs <= 0) {
+      write(Collections.singletonList(new Row(params, resultHandler)));
+      return;
+    }
+
+    final List<Row> full;
+    synchronized (this) {
+      pending.add(new Row(params, resultHandler));
+      if (pending.size() < maxRows) {
+        if (windowTimer < 0) {
+          windowTimer = vertx.setTimer(windowMs, id -> flush());
+        }
+        return;
+      }
+      full = takePending();
+    }
+    write(full);
+  }
+
+  /**
+   * Writes the rows waiting for their batch window right away.
+   */
+  public void flush() {
+    final List<Row> rows;
+    synchronized (this) {
+      rows = takePending();
+    }
+    if (!rows.isEmpty()) {
+      write(rows);
+    }
+  }
+
+  private List<Row> takePending() {
+    if (windowTimer >= 0) {
+      vertx.cancelTimer(windowTimer);
+      windowTimer = -1;
+    }
+    final List<Row> rows = pending;
+    pending = new ArrayList<>();
+    return rows;
+  }
+
+  private void write(List<Row> rows) {
+    client.getConnection(conn -> {
+      if (conn.failed()) {
+        rows.forEach(row -> row.resultHandler.handle(Future.failedFuture(conn.cause())));
+        return;
+      }
+      final SQLConnection connection = conn.result();
+      if (rows.size() == 1) {
+        writeOneByOne(connection, rows.iterator());
+        return;
+      }
+      writeInTransaction(connection, rows, ar -> {
+        if (ar.succeeded()) {
+          connection.close();
+          rows.forEach(row -> row.resultHandler.handle(Future.succeededFuture()));
+        } else {
+          logger.debug("Batch of {} rows failed, writing them one by one", rows.size(), ar.cause());
+          writeOneByOne(connection, rows.iterator());
+        }
+      });
+    });
+  }
+
+  private void writeInTransaction(SQLConnection connection, List<Row> rows, Handler<AsyncResult<Void>> handler) {
+    final Future<Void> autoCommitOff = Future.future();
+    connection.setAutoCommit(false, autoCommitOff.completer());
+    autoCommitOff
+      .compose(v -> {
+        final Future<Void> inserted = Future.future();
+        final JsonArray params = new JsonArray();
+        rows.forEach(row -> params.addAll(row.params));
+        connection.updateWithParams(multiRowInsert(insert, columns, rows.size()), params,
+          r -> inserted.handle(r.map((Void) null)));
+        return inserted;
+      })
+      .compose(v -> {
+        final Future<Void> committed = Future.future();
+        connection.commit(committed.completer());
+        return committed;
+      })
+      .setHandler(ar -> {
+        if (ar.succeeded()) {
+          connection.setAutoCommit(true, r -> handler.handle(ar));
+        } else {
+          connection.rollback(rollback -> connection.setAutoCommit(true, r -> handler.handle(ar)));
+        }
+      });
+  }
+
+  private void writeOneByOne(SQLConnection connection, Iterator<Row> rows) {
+    if (!rows.hasNext()) {
+      connection.close();
+      return;
+    }
+    final Row row = rows.next();
+    connection.updateWithParams(multiRowInsert(insert, columns, 1), row.params, r -> {
+      row.resultHandler.handle(r.map((Void) null));
+      writeOneByOne(connection, rows);
+    });
+  }
+
+  /**
+   * @param insert  insert statement up to its values, like {@code INSERT INTO t (a, b) VALUES}.
+   * @param columns number of values of a row.
+   * @param rows    number of rows.
+   * @return the insert statement of the rows, with a parameter a value.
+   */
+  public static String multiRowInsert(String insert, int columns, int rows) {
+    final StringBuilder row = new StringBuilder("(");
+    for (int i = 0; i < columns; i++) {
+      row.append(i == 0 ? "?" : ", ?");
+    }
+    row.append(')');
+
+    final StringBuilder sql = new StringBuilder(insert.length() + rows * (row.length() + 2)).append(insert);
+    for (int i = 0; i < rows; i++) {
+      sql.append(i == 0 ? " " : ", ").append(row);
+    }
+    return sql.toString();
+  }
+
+  private static final class Row {
+    private final JsonArray params;
+    private final Handler<AsyncResult<Void>> resultHandler;
+
+    private Row(JsonArray params, Handler<AsyncResult<Void>> resultHandler) {
+      this.params = params;
+      this.resultHandler = resultHandler;
+    }
+  }
+}
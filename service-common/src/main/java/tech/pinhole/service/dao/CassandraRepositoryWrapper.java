@@ -0,0 +1,83 @@
+package tech.pinhole.service.dao;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Statement;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Optional;
+
+/**
+ * Helper and wrapper class for cassandra repository services, the cassandra counterpart of
+ * {@link JdbcRepositoryWrapper}.
+ * <p>
+ * Statements are prepared once through the shared {@link CassandraSessionManager} and bound per call. Results are
+ * delivered on the vert.x context of the caller, not on a driver thread.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class CassandraRepositoryWrapper {
+
+  protected final Vertx vertx;
+  protected final CassandraSessionManager sessionManager;
+
+  public CassandraRepositoryWrapper(Vertx vertx, JsonObject config) {
+    this.vertx = vertx;
+    this.sessionManager = CassandraSessionManager.acquire(config);
+  }
+
+  /**
+   * Suitable for `insert`, `update` and `delete` operations.
+   *
+   * @param cql    CQL with positional bind markers, prepared on first use.
+   * @param values bind values.
+   * @return result set.
+   */
+  protected Future<ResultSet> execute(String cql, Object... values) {
+    return toFuture(Futures.transformAsync(sessionManager.prepare(cql), prepared ->
+      Futures.transformAsync(sessionManager.session(), session -> session.executeAsync(prepared.bind(values)))));
+  }
+
+  protected Future<ResultSet> execute(Statement statement) {
+    return toFuture(Futures.transformAsync(sessionManager.session(), session -> session.executeAsync(statement)));
+  }
+
+  protected Future<Optional<Row>> retrieveOne(String cql, Object... values) {
+    return execute(cql, values).map(resultSet -> Optional.ofNullable(resultSet.one()));
+  }
+
+  /**
+   * Adapts a driver future to a vert.x future completed on the context of the caller.
+   *
+   * @param listenable driver future.
+   * @return vert.x future.
+   */
+  protected <T> Future<T> toFuture(ListenableFuture<T> listenable) {
+    final Context context = vertx.getOrCreateContext();
+    final Future<T> future = Future.future();
+    Futures.addCallback(listenable, new FutureCallback<T>() {
+      @Override
+      public void onSuccess(T result) {
+        context.runOnContext(v -> future.complete(result));
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        context.runOnContext(v -> future.fail(t));
+      }
+    }, MoreExecutors.directExecutor());
+    return future;
+  }
+
+  public void close() {
+    sessionManager.release();
+  }
+}
@@ -0,0 +1,193 @@
+package tech.pinhole.service.dao;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.HostDistance;
+import com.datastax.driver.core.PoolingOptions;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.QueryOptions;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.policies.DCAwareRoundRobinPolicy;
+import com.datastax.driver.core.policies.TokenAwarePolicy;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Owns the cassandra {@link Cluster} and {@link Session} of a JVM.
+ * <p>
+ * Every verticle (and every instance of it) asks for its session with {@link #acquire(JsonObject)} and gets the
+ * same manager for the same contact points and keyspace, the driver multiplexes all requests over its connection
+ * pools so one session per JVM is what the driver is designed for. The session is closed when the last user
+ * {@link #release()}s it.
+ * </p>
+ * <p>
+ * Requests are routed token aware on top of DC aware round robin, so they go straight to a replica of the local
+ * datacenter. Statements are prepared once per CQL text and cached.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class CassandraSessionManager {
+
+  private static final Logger logger = LoggerFactory.getLogger(CassandraSessionManager.class);
+
+  private static final String CASSANDRA_HOSTNAME = "cassandra.hostname";
+  private static final String CASSANDRA_PORT = "cassandra.port";
+  private static final String CASSANDRA_DB_KEYSPACE = "cassandra.db.keyspace";
+  private static final String CASSANDRA_LOCAL_DC = "cassandra.local.dc";
+  private static final String CASSANDRA_USED_HOSTS_PER_REMOTE_DC = "cassandra.used.hosts.per.remote.dc";
+  private static final String CASSANDRA_POOL_CORE_CONNECTIONS = "cassandra.pool.core.connections";
+  private static final String CASSANDRA_POOL_MAX_CONNECTIONS = "cassandra.pool.max.connections";
+  private static final String CASSANDRA_POOL_MAX_REQUESTS_PER_CONNECTION = "cassandra.pool.max.requests.per.connection";
+  private static final String CASSANDRA_POOL_HEARTBEAT_INTERVAL_SECONDS = "cassandra.pool.heartbeat.interval.seconds";
+  private static final String CASSANDRA_CONSISTENCY_LEVEL = "cassandra.consistency.level";
+  private static final String CASSANDRA_FETCH_SIZE = "cassandra.fetch.size";
+
+  private static final Map<String, CassandraSessionManager> managers = new HashMap<>();
+
+  private final String name;
+  private final Cluster cluster;
+  private final ListenableFuture<Session> session;
+  private final Map<String, ListenableFuture<PreparedStatement>> preparedStatements = new ConcurrentHashMap<>();
+  private int references;
+
+  private CassandraSessionManager(String name, Cluster cluster, String keyspace) {
+    this.name = name;
+    this.cluster = cluster;
+    this.session = StringUtils.isBlank(keyspace) ? cluster.connectAsync() : cluster.connectAsync(keyspace);
+  }
+
+  /**
+   * Returns the manager of the configured cluster and keyspace, connecting it on first use. Non blocking, the
+   * session is connected asynchronously.
+   *
+   * @param config service configuration.
+   * @return shared session manager, to be {@link #release()}d when no longer used.
+   */
+  public static CassandraSessionManager acquire(JsonObject config) {
+    final String hosts = config.getString(CASSANDRA_HOSTNAME, "127.0.0.1");
+    final String keyspace = config.getString(CASSANDRA_DB_KEYSPACE);
+    final String name = hosts + "/" + keyspace;
+    synchronized (managers) {
+      CassandraSessionManager manager = managers.get(name);
+      if (manager == null) {
+        manager = new CassandraSessionManager(name, buildCluster(config, hosts), keyspace);
+        managers.put(name, manager);
+        logger.info("Connecting cassandra session " + name);
+        manager.forgetOnConnectionFailure();
+      }
+      manager.references++;
+      return manager;
+    }
+  }
+
+  /**
+   * @return session, completed once connected to the keyspace.
+   */
+  public ListenableFuture<Session> session() {
+    return session;
+  }
+
+  /**
+   * Prepares a statement once, later calls with the same CQL get the cached statement. A failed preparation is
+   * not cached.
+   *
+   * @param cql CQL text.
+   * @return prepared statement.
+   */
+  public ListenableFuture<PreparedStatement> prepare(String cql) {
+    ListenableFuture<PreparedStatement> prepared = preparedStatements.get(cql);
+    if (prepared != null) {
+      return prepared;
+    }
+    return preparedStatements.computeIfAbsent(cql, statement -> {
+      ListenableFuture<PreparedStatement> preparing =
+        Futures.transformAsync(session, connected -> connected.prepareAsync(statement));
+      Futures.addCallback(preparing, new FutureCallback<PreparedStatement>() {
+        @Override
+        public void onSuccess(PreparedStatement result) {
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          preparedStatements.remove(statement, preparing);
+        }
+      }, MoreExecutors.directExecutor());
+      return preparing;
+    });
+  }
+
+  /**
+   * A session which could not connect is not handed out again, the next {@link #acquire(JsonObject)} reconnects.
+   */
+  private void forgetOnConnectionFailure() {
+    Futures.addCallback(session, new FutureCallback<Session>() {
+      @Override
+      public void onSuccess(Session result) {
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        logger.error("Could not connect cassandra session " + name, t);
+        synchronized (managers) {
+          managers.remove(name, CassandraSessionManager.this);
+        }
+        cluster.closeAsync();
+      }
+    }, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Releases the session, the cluster is closed once every user released it.
+   */
+  public void release() {
+    synchronized (managers) {
+      if (--references > 0) {
+        return;
+      }
+      managers.remove(name, this);
+    }
+    logger.info("Closing cassandra session " + name);
+    cluster.closeAsync();
+  }
+
+  private static Cluster buildCluster(JsonObject config, String hosts) {
+    DCAwareRoundRobinPolicy.Builder dcAware = DCAwareRoundRobinPolicy.builder();
+    if (config.containsKey(CASSANDRA_LOCAL_DC)) {
+      dcAware.withLocalDc(config.getString(CASSANDRA_LOCAL_DC));
+    }
+    if (config.containsKey(CASSANDRA_USED_HOSTS_PER_REMOTE_DC)) {
+      dcAware.withUsedHostsPerRemoteDc(config.getInteger(CASSANDRA_USED_HOSTS_PER_REMOTE_DC));
+    }
+
+    PoolingOptions poolingOptions = new PoolingOptions()
+      .setConnectionsPerHost(HostDistance.LOCAL,
+        config.getInteger(CASSANDRA_POOL_CORE_CONNECTIONS, 1),
+        config.getInteger(CASSANDRA_POOL_MAX_CONNECTIONS, 2))
+      .setMaxRequestsPerConnection(HostDistance.LOCAL,
+        config.getInteger(CASSANDRA_POOL_MAX_REQUESTS_PER_CONNECTION, 1024))
+      .setHeartbeatIntervalSeconds(config.getInteger(CASSANDRA_POOL_HEARTBEAT_INTERVAL_SECONDS, 30));
+
+    QueryOptions queryOptions = new QueryOptions()
+      .setConsistencyLevel(ConsistencyLevel.valueOf(config.getString(CASSANDRA_CONSISTENCY_LEVEL, "LOCAL_ONE")))
+      .setFetchSize(config.getInteger(CASSANDRA_FETCH_SIZE, QueryOptions.DEFAULT_FETCH_SIZE));
+
+    return Cluster.builder()
+      .addContactPoints(StringUtils.split(hosts, ", "))
+      .withPort(config.getInteger(CASSANDRA_PORT, 9042))
+      .withLoadBalancingPolicy(new TokenAwarePolicy(dcAware.build()))
+      .withPoolingOptions(poolingOptions)
+      .withQueryOptions(queryOptions)
+      .build();
+  }
+}
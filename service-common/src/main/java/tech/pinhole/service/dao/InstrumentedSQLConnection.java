@@ -0,0 +1,169 @@
+package tech.pinhole.service.dao;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.sql.ResultSet;
+import io.vertx.ext.sql.SQLConnection;
+import io.vertx.ext.sql.SQLRowStream;
+import io.vertx.ext.sql.TransactionIsolation;
+import io.vertx.ext.sql.UpdateResult;
+
+import java.util.List;
+
+/**
+ * Connection of an instrumented pool: times its statements, and releases its checkout once closed.
+ *
+ * @author tosheer.kalra
+ */
+class InstrumentedSQLConnection implements SQLConnection {
+
+  private final SQLConnection delegate;
+  private final JdbcPoolMetrics metrics;
+  private boolean closed;
+
+  InstrumentedSQLConnection(SQLConnection delegate, JdbcPoolMetrics metrics) {
+    this.delegate = delegate;
+    this.metrics = metrics;
+  }
+
+  private <T> Handler<AsyncResult<T>> timed(String sql, Handler<AsyncResult<T>> handler) {
+    final long start = System.nanoTime();
+    return ar -> {
+      metrics.statementRan(sql, System.nanoTime() - start, ar.succeeded());
+      handler.handle(ar);
+    };
+  }
+
+  @Override
+  public SQLConnection setAutoCommit(boolean autoCommit, Handler<AsyncResult<Void>> resultHandler) {
+    delegate.setAutoCommit(autoCommit, resultHandler);
+    return this;
+  }
+
+  @Override
+  public SQLConnection execute(String sql, Handler<AsyncResult<Void>> resultHandler) {
+    delegate.execute(sql, timed(sql, resultHandler));
+    return this;
+  }
+
+  @Override
+  public SQLConnection query(String sql, Handler<AsyncResult<ResultSet>> resultHandler) {
+    delegate.query(sql, timed(sql, resultHandler));
+    return this;
+  }
+
+  @Override
+  public SQLConnection queryStream(String sql, Handler<AsyncResult<SQLRowStream>> handler) {
+    delegate.queryStream(sql, timed(sql, handler));
+    return this;
+  }
+
+  @Override
+  public SQLConnection queryWithParams(String sql, JsonArray params, Handler<AsyncResult<ResultSet>> resultHandler) {
+    delegate.queryWithParams(sql, params, timed(sql, resultHandler));
+    return this;
+  }
+
+  @Override
+  public SQLConnection queryStreamWithParams(String sql, JsonArray params,
+                                            Handler<AsyncResult<SQLRowStream>> handler) {
+    delegate.queryStreamWithParams(sql, params, timed(sql, handler));
+    return this;
+  }
+
+  @Override
+  public SQLConnection update(String sql, Handler<AsyncResult<UpdateResult>> resultHandler) {
+    delegate.update(sql, timed(sql, resultHandler));
+    return this;
+  }
+
+  @Override
+  public SQLConnection updateWithParams(String sql, JsonArray params,
+                                        Handler<AsyncResult<UpdateResult>> resultHandler) {
+    delegate.updateWithParams(sql, params, timed(sql, resultHandler));
+    return this;
+  }
+
+  @Override
+  public SQLConnection call(String sql, Handler<AsyncResult<ResultSet>> resultHandler) {
+    delegate.call(sql, timed(sql, resultHandler));
+    return this;
+  }
+
+  @Override
+  public SQLConnection callWithParams(String sql, JsonArray params, JsonArray outputs,
+                                      Handler<AsyncResult<ResultSet>> resultHandler) {
+    delegate.callWithParams(sql, params, outputs, timed(sql, resultHandler));
+    return this;
+  }
+
+  @Override
+  public void close(Handler<AsyncResult<Void>> handler) {
+    release();
+    delegate.close(handler);
+  }
+
+  @Override
+  public void close() {
+    release();
+    delegate.close();
+  }
+
+  private void release() {
+    if (!closed) {
+      closed = true;
+      metrics.released();
+    }
+  }
+
+  @Override
+  public SQLConnection commit(Handler<AsyncResult<Void>> handler) {
+    delegate.commit(handler);
+    return this;
+  }
+
+  @Override
+  public SQLConnection rollback(Handler<AsyncResult<Void>> handler) {
+    delegate.rollback(handler);
+    return this;
+  }
+
+  @Override
+  public SQLConnection setQueryTimeout(int timeoutInSeconds) {
+    delegate.setQueryTimeout(timeoutInSeconds);
+    return this;
+  }
+
+  @Override
+  public SQLConnection batch(List<String> sqlStatements, Handler<AsyncResult<List<Integer>>> handler) {
+    delegate.batch(sqlStatements, timed("batch", handler));
+    return this;
+  }
+
+  @Override
+  public SQLConnection batchWithParams(String sql, List<JsonArray> args,
+                                       Handler<AsyncResult<List<Integer>>> handler) {
+    delegate.batchWithParams(sql, args, timed(sql, handler));
+    return this;
+  }
+
+  @Override
+  public SQLConnection batchCallableWithParams(String sql, List<JsonArray> inArgs, List<JsonArray> outArgs,
+                                               Handler<AsyncResult<List<Integer>>> handler) {
+    delegate.batchCallableWithParams(sql, inArgs, outArgs, timed(sql, handler));
+    return this;
+  }
+
+  @Override
+  public SQLConnection setTransactionIsolation(TransactionIsolation isolation, Handler<AsyncResult<Void>> handler) {
+    delegate.setTransactionIsolation(isolation, handler);
+    return this;
+  }
+
+  @Override
+  public SQLConnection getTransactionIsolation(Handler<AsyncResult<TransactionIsolation>> handler) {
+    delegate.getTransactionIsolation(handler);
+    return this;
+  }
+}
@@ -0,0 +1,140 @@
+package tech.pinhole.service.dao;
+
+import com.mchange.v2.c3p0.AbstractComboPooledDataSource;
+import com.mchange.v2.c3p0.C3P0Registry;
+import com.mchange.v2.c3p0.PooledDataSource;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import tech.pinhole.service.metrics.LatencyHistogram;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of a named JDBC pool: connections checked out and waited for, checkout latency, checkout timeouts and
+ * failures, and latency of every statement run on the pool. Idle and open connections are read from the c3p0 data
+ * sources of the pool url, the default provider of the JDBC client.
+ * <p>
+ * Thread safe.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class JdbcPoolMetrics {
+
+  private static final Logger logger = LoggerFactory.getLogger(JdbcPoolMetrics.class);
+
+  /**
+   * Statements are the constants of the repositories, past this many distinct ones they are counted together.
+   */
+  private static final int MAX_STATEMENTS = 256;
+  private static final String OTHER_STATEMENTS = "other";
+
+  private final String name;
+  private final String url;
+  private final int maxSize;
+  private final AtomicInteger active = new AtomicInteger();
+  private final AtomicInteger waiting = new AtomicInteger();
+  private final LongAdder timeouts = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+  private final LatencyHistogram checkoutLatency = new LatencyHistogram();
+  private final Map<String, StatementMetrics> statements = new ConcurrentHashMap<>();
+
+  JdbcPoolMetrics(String name, String url, int maxSize) {
+    this.name = name;
+    this.url = url;
+    this.maxSize = maxSize;
+  }
+
+  void checkoutStarted() {
+    waiting.incrementAndGet();
+  }
+
+  void checkedOut(long nanos) {
+    waiting.decrementAndGet();
+    active.incrementAndGet();
+    checkoutLatency.record(nanos);
+  }
+
+  void checkoutFailed() {
+    waiting.decrementAndGet();
+    failures.increment();
+  }
+
+  void checkoutTimedOut() {
+    waiting.decrementAndGet();
+    timeouts.increment();
+  }
+
+  void released() {
+    active.decrementAndGet();
+  }
+
+  void statementRan(String sql, long nanos, boolean succeeded) {
+    StatementMetrics metrics = statements.get(sql);
+    if (metrics == null) {
+      metrics = statements.size() < MAX_STATEMENTS
+        ? statements.computeIfAbsent(sql, s -> new StatementMetrics())
+        : statements.computeIfAbsent(OTHER_STATEMENTS, s -> new StatementMetrics());
+    }
+    metrics.latency.record(nanos);
+    if (!succeeded) {
+      metrics.errors.increment();
+    }
+  }
+
+  /**
+   * @return metrics of the pool.
+   */
+  public JsonObject toJson() {
+    final JsonObject json = new JsonObject()
+      .put("name", name)
+      .put("maxSize", maxSize)
+      .put("active", active.get())
+      .put("waiting", waiting.get())
+      .put("timeouts", timeouts.sum())
+      .put("failures", failures.sum())
+      .put("checkout", checkoutLatency.toJson());
+    putDataSources(json);
+
+    final JsonObject statementsJson = new JsonObject();
+    statements.forEach((sql, metrics) -> statementsJson.put(sql, metrics.latency.toJson()
+      .put("errors", metrics.errors.sum())));
+    return json.put("statements", statementsJson);
+  }
+
+  private void putDataSources(JsonObject json) {
+    int idle = 0;
+    int open = 0;
+    int awaiting = 0;
+    boolean found = false;
+    for (Object source : C3P0Registry.getPooledDataSources()) {
+      if (!(source instanceof AbstractComboPooledDataSource)
+        || !Objects.equals(url, ((AbstractComboPooledDataSource) source).getJdbcUrl())) {
+        continue;
+      }
+      final PooledDataSource dataSource = (PooledDataSource) source;
+      try {
+        idle += dataSource.getNumIdleConnectionsDefaultUser();
+        open += dataSource.getNumConnectionsDefaultUser();
+        awaiting += dataSource.getNumThreadsAwaitingCheckoutDefaultUser();
+        found = true;
+      } catch (SQLException e) {
+        logger.warn("Could not read the connections of pool " + name, e);
+      }
+    }
+    if (found) {
+      json.put("idle", idle).put("open", open).put("awaitingThreads", awaiting);
+    }
+  }
+
+  private static final class StatementMetrics {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+  }
+}
@@ -0,0 +1,113 @@
+package tech.pinhole.service.dao;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.SQLConnection;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Named JDBC pools of a JVM.
+ * <p>
+ * Every repository of a pool name shares the same connections, however many repositories and verticle instances
+ * there are, so the connections opened to the database are bounded by `max_pool_size` a pool name. The clients are
+ * instrumented, the metrics of the pools are read with {@link #metrics()}. A checkout waiting past
+ * `jdbc.pool.checkout.timeout.ms` fails instead of waiting for a connection forever.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public final class JdbcPools {
+
+  static final String JDBC_POOL_NAME = "jdbc.pool.name";
+  private static final String JDBC_POOL_CHECKOUT_TIMEOUT_MS = "jdbc.pool.checkout.timeout.ms";
+
+  private static final Map<String, JdbcPoolMetrics> pools = new ConcurrentHashMap<>();
+
+  private JdbcPools() {
+  }
+
+  /**
+   * @param vertx  vertx.
+   * @param config config of the pool, the JDBC client config with its `jdbc.pool.name`.
+   * @return client of the named pool, closed with the verticle which created it.
+   */
+  public static JDBCClient client(Vertx vertx, JsonObject config) {
+    final String name = config.getString(JDBC_POOL_NAME, JDBCClient.DEFAULT_DS_NAME);
+    final JdbcPoolMetrics metrics = pools.computeIfAbsent(name, pool ->
+      new JdbcPoolMetrics(pool, config.getString("url"), config.getInteger("max_pool_size", 15)));
+    return new InstrumentedClient(vertx, JDBCClient.createShared(vertx, config, name), metrics,
+      config.getLong(JDBC_POOL_CHECKOUT_TIMEOUT_MS, 0L));
+  }
+
+  /**
+   * @return metrics of the pools of the JVM.
+   */
+  public static JsonObject metrics() {
+    final JsonArray poolsJson = new JsonArray();
+    pools.values().forEach(pool -> poolsJson.add(pool.toJson()));
+    return new JsonObject().put("pools", poolsJson);
+  }
+
+  private static final class InstrumentedClient implements JDBCClient {
+    private final Vertx vertx;
+    private final JDBCClient delegate;
+    private final JdbcPoolMetrics metrics;
+    private final long checkoutTimeoutMs;
+
+    private InstrumentedClient(Vertx vertx, JDBCClient delegate, JdbcPoolMetrics metrics, long checkoutTimeoutMs) {
+      this.vertx = vertx;
+      this.delegate = delegate;
+      this.metrics = metrics;
+      this.checkoutTimeoutMs = checkoutTimeoutMs;
+    }
+
+    @Override
+    public JDBCClient getConnection(Handler<AsyncResult<SQLConnection>> handler) {
+      final long start = System.nanoTime();
+      final AtomicBoolean answered = new AtomicBoolean();
+      metrics.checkoutStarted();
+      final long timer = checkoutTimeoutMs <= 0 ? -1 : vertx.setTimer(checkoutTimeoutMs, id -> {
+        if (answered.compareAndSet(false, true)) {
+          metrics.checkoutTimedOut();
+          handler.handle(Future.failedFuture(
+            new TimeoutException("No connection available within " + checkoutTimeoutMs + "ms")));
+        }
+      });
+
+      delegate.getConnection(ar -> {
+        if (!answered.compareAndSet(false, true)) {
+          // the caller gave up waiting
+          if (ar.succeeded()) {
+            ar.result().close();
+          }
+          return;
+        }
+        if (timer >= 0) {
+          vertx.cancelTimer(timer);
+        }
+        if (ar.succeeded()) {
+          metrics.checkedOut(System.nanoTime() - start);
+          handler.handle(Future.succeededFuture(new InstrumentedSQLConnection(ar.result(), metrics)));
+        } else {
+          metrics.checkoutFailed();
+          handler.handle(ar);
+        }
+      });
+      return this;
+    }
+
+    @Override
+    public void close() {
+      delegate.close();
+    }
+  }
+}
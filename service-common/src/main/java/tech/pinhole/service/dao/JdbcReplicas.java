@@ -0,0 +1,236 @@
+package tech.pinhole.service.dao;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.SQLConnection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Read replicas of a primary pool.
+ * <p>
+ * Reads go round robin to the replicas which are up to date, and to the primary when there is none. Every
+ * `jdbc.replica.lag.check.interval.ms` the lag of every replica is checked with `jdbc.replica.lag.query` (by default
+ * the `Seconds_Behind_Master` of MySQL), a replica is left out while its lag is over
+ * `jdbc.replica.max.lag.seconds`, while it is not replicating or while it can not be reached.
+ * </p>
+ * <p>
+ * A replica lags behind the primary, so a caller reading what it just wrote would not find it there. Once written
+ * a key is pinned to the primary for `jdbc.read.your.writes.ms`, the reads of the key go to the primary meanwhile.
+ * Health and pins are shared by the repositories of the JVM, per pool name.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+class JdbcReplicas {
+
+  private static final Logger logger = LoggerFactory.getLogger(JdbcReplicas.class);
+
+  private static final String JDBC_REPLICAS = "jdbc.replicas";
+  private static final String JDBC_REPLICA_MAX_LAG_SECONDS = "jdbc.replica.max.lag.seconds";
+  private static final String JDBC_REPLICA_LAG_CHECK_INTERVAL_MS = "jdbc.replica.lag.check.interval.ms";
+  private static final String JDBC_REPLICA_LAG_QUERY = "jdbc.replica.lag.query";
+  private static final String JDBC_REPLICA_LAG_COLUMN = "jdbc.replica.lag.column";
+  private static final String JDBC_READ_YOUR_WRITES_MS = "jdbc.read.your.writes.ms";
+
+  /**
+   * Pins of the keys, by primary pool name.
+   */
+  private static final Map<String, Pins> pins = new ConcurrentHashMap<>();
+
+  /**
+   * Health of the replicas, by replica pool name.
+   */
+  private static final Map<String, Health> health = new ConcurrentHashMap<>();
+
+  private final JDBCClient primary;
+  private final List<Replica> replicas = new ArrayList<>();
+  private final Pins primaryPins;
+  private final long readYourWritesMs;
+  private final long maxLagSeconds;
+  private final long checkIntervalMs;
+  private final String lagQuery;
+  private final String lagColumn;
+  private final AtomicInteger next = new AtomicInteger();
+
+  JdbcReplicas(Vertx vertx, JsonObject config, JDBCClient primary) {
+    this(vertx, config, primary, replicaConfig -> JdbcPools.client(vertx, replicaConfig));
+  }
+
+  /**
+   * @param replicaClients client of a replica, from its config.
+   */
+  JdbcReplicas(Vertx vertx, JsonObject config, JDBCClient primary, Function<JsonObject, JDBCClient> replicaClients) {
+    this.primary = primary;
+    final String primaryName = config.getString(JdbcPools.JDBC_POOL_NAME, JDBCClient.DEFAULT_DS_NAME);
+    this.primaryPins = pins.computeIfAbsent(primaryName, name -> new Pins());
+    this.readYourWritesMs = config.getLong(JDBC_READ_YOUR_WRITES_MS, 1000L);
+    this.maxLagSeconds = config.getLong(JDBC_REPLICA_MAX_LAG_SECONDS, 1L);
+    this.checkIntervalMs = config.getLong(JDBC_REPLICA_LAG_CHECK_INTERVAL_MS, 1000L);
+    this.lagQuery = config.getString(JDBC_REPLICA_LAG_QUERY, "SHOW SLAVE STATUS");
+    this.lagColumn = config.getString(JDBC_REPLICA_LAG_COLUMN, "Seconds_Behind_Master");
+
+    final JsonArray replicasConfig = config.getJsonArray(JDBC_REPLICAS, new JsonArray());
+    for (int i = 0; i < replicasConfig.size(); i++) {
+      final JsonObject replicaConfig = config.copy().mergeIn(replicasConfig.getJsonObject(i));
+      replicaConfig.remove(JDBC_REPLICAS);
+      if (!replicasConfig.getJsonObject(i).containsKey(JdbcPools.JDBC_POOL_NAME)) {
+        replicaConfig.put(JdbcPools.JDBC_POOL_NAME, primaryName + ".replica." + i);
+      }
+      final String name = replicaConfig.getString(JdbcPools.JDBC_POOL_NAME);
+      replicas.add(new Replica(name, replicaClients.apply(replicaConfig),
+        health.computeIfAbsent(name, replica -> new Health())));
+    }
+    if (!replicas.isEmpty()) {
+      vertx.setPeriodic(checkIntervalMs, id -> checkLags());
+    }
+  }
+
+  /**
+   * Gets a connection to read the key, from a replica unless the key is pinned to the primary.
+   *
+   * @param key     key read, null when the read is not about a key written by the caller.
+   * @param handler handler of the connection.
+   */
+  void getConnection(String key, Handler<AsyncResult<SQLConnection>> handler) {
+    if (replicas.isEmpty() || (key != null && primaryPins.isPinned(key)) || primaryPins.isAllPinned()) {
+      primary.getConnection(handler);
+      return;
+    }
+    final Replica replica = nextHealthy();
+    if (replica == null) {
+      primary.getConnection(handler);
+      return;
+    }
+    replica.client.getConnection(ar -> {
+      if (ar.succeeded()) {
+        handler.handle(ar);
+      } else {
+        logger.warn("Replica " + replica.name + " unavailable, reading from the primary", ar.cause());
+        replica.health.healthy.set(false);
+        primary.getConnection(handler);
+      }
+    });
+  }
+
+  /**
+   * Pins the key to the primary, for the reads of the caller to see what it just wrote.
+   *
+   * @param key key written, null when every key may have changed.
+   */
+  void pin(String key) {
+    if (replicas.isEmpty() || readYourWritesMs <= 0) {
+      return;
+    }
+    final long until = System.currentTimeMillis() + readYourWritesMs;
+    if (key == null) {
+      primaryPins.allUntil.set(until);
+    } else {
+      primaryPins.keys.put(key, until);
+    }
+  }
+
+  private Replica nextHealthy() {
+    final int start = Math.abs(next.getAndIncrement() % replicas.size());
+    for (int i = 0; i < replicas.size(); i++) {
+      final Replica replica = replicas.get((start + i) % replicas.size());
+      if (replica.health.healthy.get()) {
+        return replica;
+      }
+    }
+    return null;
+  }
+
+  private void checkLags() {
+    final long now = System.currentTimeMillis();
+    primaryPins.expire(now);
+    for (Replica replica : replicas) {
+      // one check an interval for all the repositories of the replica
+      final long lastCheck = replica.health.lastCheck.get();
+      if (now - lastCheck >= checkIntervalMs && replica.health.lastCheck.compareAndSet(lastCheck, now)) {
+        checkLag(replica);
+      }
+    }
+  }
+
+  private void checkLag(Replica replica) {
+    replica.client.getConnection(conn -> {
+      if (conn.failed()) {
+        eject(replica, "unavailable: " + conn.cause().getMessage());
+        return;
+      }
+      final SQLConnection connection = conn.result();
+      connection.query(lagQuery, r -> {
+        connection.close();
+        if (r.failed()) {
+          eject(replica, "lag unknown: " + r.cause().getMessage());
+          return;
+        }
+        final List<JsonObject> rows = r.result().getRows();
+        final Object lag = rows.isEmpty() ? null : rows.get(0).getValue(lagColumn);
+        if (!(lag instanceof Number)) {
+          eject(replica, "not replicating");
+        } else if (((Number) lag).longValue() > maxLagSeconds) {
+          eject(replica, "lagging " + lag + "s behind");
+        } else if (replica.health.healthy.compareAndSet(false, true)) {
+          logger.info("Replica " + replica.name + " back in the reads, lagging " + lag + "s behind");
+        }
+      });
+    });
+  }
+
+  private static void eject(Replica replica, String reason) {
+    if (replica.health.healthy.compareAndSet(true, false)) {
+      logger.warn("Replica " + replica.name + " left out of the reads, " + reason);
+    }
+  }
+
+  private static final class Replica {
+    private final String name;
+    private final JDBCClient client;
+    private final Health health;
+
+    private Replica(String name, JDBCClient client, Health health) {
+      this.name = name;
+      this.client = client;
+      this.health = health;
+    }
+  }
+
+  private static final class Health {
+    private final AtomicBoolean healthy = new AtomicBoolean(true);
+    private final AtomicLong lastCheck = new AtomicLong();
+  }
+
+  private static final class Pins {
+    private final Map<String, Long> keys = new ConcurrentHashMap<>();
+    private final AtomicLong allUntil = new AtomicLong();
+
+    private boolean isPinned(String key) {
+      final Long until = keys.get(key);
+      return until != null && until > System.currentTimeMillis();
+    }
+
+    private boolean isAllPinned() {
+      return allUntil.get() > System.currentTimeMillis();
+    }
+
+    private void expire(long now) {
+      keys.values().removeIf(until -> until <= now);
+    }
+  }
+}
@@ -11,6 +11,7 @@ import io.vertx.ext.sql.SQLConnection;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
 
 /**
  * Helper and wrapper class for JDBC repository services.
@@ -19,10 +20,19 @@ import java.util.Optional;
  */
 public class JdbcRepositoryWrapper {
 
+  private static final String JDBC_BATCH_MAX_ROWS = "jdbc.batch.max.rows";
+  private static final String JDBC_BATCH_WINDOW_MS = "jdbc.batch.window.ms";
+
   protected final JDBCClient client;
+  private final JdbcReplicas replicas;
+  private final Vertx vertx;
+  private final JsonObject config;
 
   public JdbcRepositoryWrapper(Vertx vertx, JsonObject config) {
-    this.client = JDBCClient.createNonShared(vertx, config);
+    this.client = JdbcPools.client(vertx, config);
+    this.replicas = new JdbcReplicas(vertx, config, client);
+    this.vertx = vertx;
+    this.config = config;
   }
 
   /**
@@ -58,8 +68,49 @@ public class JdbcRepositoryWrapper {
     }));
   }
 
+  /**
+   * Runs the statement once a params, on one connection and in one round-trip.
+   *
+   * @param batch         params of every run.
+   * @param sql           sql
+   * @param resultHandler async result handler, with the updated rows of every run.
+   */
+  protected void executeBatch(List<JsonArray> batch, String sql, Handler<AsyncResult<List<Integer>>> resultHandler) {
+    client.getConnection(connHandler(resultHandler, connection -> {
+      connection.batchWithParams(sql, batch, r -> {
+        resultHandler.handle(r);
+        connection.close();
+      });
+    }));
+  }
+
+  /**
+   * Suitable for `add` operations of many concurrent callers. Batches are configured by `jdbc.batch.max.rows` and
+   * `jdbc.batch.window.ms`, without a window every row is inserted on its own.
+   *
+   * @param insert  insert statement up to its values, like `INSERT INTO t (a, b) VALUES`.
+   * @param columns number of values of a row.
+   * @return batched insert of the rows.
+   */
+  protected BatchedInsert batchedInsert(String insert, int columns) {
+    return new BatchedInsert(vertx, client, insert, columns,
+      config.getInteger(JDBC_BATCH_MAX_ROWS, 50), config.getLong(JDBC_BATCH_WINDOW_MS, 0L));
+  }
+
   protected Future<Optional<JsonObject>> retrieveOne(JsonArray param, String sql) {
-    return getConnection()
+    return retrieveOne(param, sql, null);
+  }
+
+  /**
+   * Retrieves from a replica, or from the primary when the key was written lately, see `pinToPrimary`.
+   *
+   * @param param query params
+   * @param sql   sql
+   * @param key   key read, like the one given to `pinToPrimary` when written.
+   * @return the first row, if any.
+   */
+  protected Future<Optional<JsonObject>> retrieveOne(JsonArray param, String sql, String key) {
+    return getReadConnection(key)
             .compose(connection -> {
               Future<Optional<JsonObject>> future = Future.future();
               connection.queryWithParams(sql, param, r -> {
@@ -87,7 +138,7 @@ public class JdbcRepositoryWrapper {
 
   protected Future<List<JsonObject>> retrieveByPage(int page, int limit, String sql) {
     JsonArray params = new JsonArray().add(calcPage(page, limit)).add(limit);
-    return getConnection().compose(connection -> {
+    return getReadConnection(null).compose(connection -> {
       Future<List<JsonObject>> future = Future.future();
       connection.queryWithParams(sql, params, r -> {
         if (r.succeeded()) {
@@ -101,8 +152,49 @@ public class JdbcRepositoryWrapper {
     });
   }
 
+  /**
+   * Keyset pagination: retrieves the page of rows after the key of the last row of the previous page, with a query
+   * like `SELECT * FROM t WHERE id > ? ORDER BY id LIMIT ?`. Unlike `retrieveByPage`, a deep page costs as much as
+   * the first one, the database seeks the key in the index instead of reading and skipping the previous pages.
+   *
+   * @param lastKey key of the last row of the previous page, the smallest key for the first page.
+   * @param limit   maximum rows of the page.
+   * @param sql     sql, with the key then the limit as params.
+   * @return the page of rows, ordered by key.
+   */
+  protected Future<List<JsonObject>> retrieveAfter(Object lastKey, int limit, String sql) {
+    return retrieveMany(new JsonArray().add(lastKey).add(limit), sql);
+  }
+
+  /**
+   * Suitable for exports and background jobs over many rows: the rows are read as the stream is consumed.
+   *
+   * @param params query params
+   * @param sql    sql
+   * @param mapper mapper of the rows, the values of the selected columns in their order.
+   * @return the stream of the rows.
+   */
+  protected <T> Future<JdbcRowStream<T>> retrieveStream(JsonArray params, String sql, Function<JsonArray, T> mapper) {
+    return getReadConnection(null).compose(connection -> {
+      Future<JdbcRowStream<T>> future = Future.future();
+      connection.queryStreamWithParams(sql, params, r -> {
+        if (r.succeeded()) {
+          future.complete(new JdbcRowStream<>(connection, r.result(), mapper));
+        } else {
+          future.fail(r.cause());
+          connection.close();
+        }
+      });
+      return future;
+    });
+  }
+
   protected Future<List<JsonObject>> retrieveMany(JsonArray param, String sql) {
-    return getConnection().compose(connection -> {
+    return retrieveMany(param, sql, null);
+  }
+
+  protected Future<List<JsonObject>> retrieveMany(JsonArray param, String sql, String key) {
+    return getReadConnection(key).compose(connection -> {
       Future<List<JsonObject>> future = Future.future();
       connection.queryWithParams(sql, param, r -> {
         if (r.succeeded()) {
@@ -117,7 +209,7 @@ public class JdbcRepositoryWrapper {
   }
 
   protected Future<List<JsonObject>> retrieveAll(String sql) {
-    return getConnection().compose(connection -> {
+    return getReadConnection(null).compose(connection -> {
       Future<List<JsonObject>> future = Future.future();
       connection.query(sql, r -> {
         if (r.succeeded()) {
@@ -180,4 +272,34 @@ public class JdbcRepositoryWrapper {
     return future;
   }
 
+  /**
+   * Connection for reads: to a replica up to date, to the primary when there is none or when the key was written
+   * lately. Replicas are configured by `jdbc.replicas`, without any every read goes to the primary.
+   *
+   * @param key key read, null when the read is not about a key written by the caller.
+   * @return connection for the read.
+   */
+  protected Future<SQLConnection> getReadConnection(String key) {
+    Future<SQLConnection> future = Future.future();
+    replicas.getConnection(key, future.completer());
+    return future;
+  }
+
+  /**
+   * Read your writes: the reads of the key go to the primary for `jdbc.read.your.writes.ms`, which replicas may lag
+   * behind, so the caller reads what it just wrote.
+   *
+   * @param key key written.
+   */
+  protected void pinToPrimary(String key) {
+    replicas.pin(key);
+  }
+
+  /**
+   * Read your writes when every key may have changed: all reads go to the primary for `jdbc.read.your.writes.ms`.
+   */
+  protected void pinAllToPrimary() {
+    replicas.pin(null);
+  }
+
 }
@@ -0,0 +1,110 @@
+package tech.pinhole.service.dao;
+
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.sql.SQLConnection;
+import io.vertx.ext.sql.SQLRowStream;
+
+import java.util.function.Function;
+
+/**
+ * Rows of a query read from the database as they are consumed: the rows are fetched a batch at a time, a batch of
+ * `row_stream_fetch_size` rows, and fetching pauses while the stream is paused. The rows of a query are never all in
+ * memory at once, as long as the driver fetches them with a cursor (`useCursorFetch=true` for MySQL).
+ * <p>
+ * The connection of the query is given back to the pool once the stream ends, fails or is closed. A consumer which
+ * stops before the end must {@link #close()} the stream.
+ * </p>
+ *
+ * @param <T> type of the rows.
+ * @author tosheer.kalra
+ */
+public class JdbcRowStream<T> implements ReadStream<T> {
+
+  private final SQLConnection connection;
+  private final SQLRowStream rows;
+  private final Function<JsonArray, T> mapper;
+
+  private Handler<Throwable> exceptionHandler;
+  private Handler<Void> endHandler;
+  private boolean closed;
+
+  JdbcRowStream(SQLConnection connection, SQLRowStream rows, Function<JsonArray, T> mapper) {
+    this.connection = connection;
+    this.rows = rows;
+    this.mapper = mapper;
+    rows.exceptionHandler(e -> {
+      close();
+      if (exceptionHandler != null) {
+        exceptionHandler.handle(e);
+      }
+    });
+    rows.endHandler(v -> {
+      close();
+      if (endHandler != null) {
+        endHandler.handle(null);
+      }
+    });
+  }
+
+  /**
+   * @param columns names of the selected columns, in their order in the query.
+   * @return mapper of the rows to JSON objects with the columns as keys.
+   */
+  public static Function<JsonArray, JsonObject> toJson(String... columns) {
+    return row -> {
+      final JsonObject json = new JsonObject();
+      for (int i = 0; i < columns.length; i++) {
+        json.put(columns[i], row.getValue(i));
+      }
+      return json;
+    };
+  }
+
+  @Override
+  public JdbcRowStream<T> exceptionHandler(Handler<Throwable> handler) {
+    this.exceptionHandler = handler;
+    return this;
+  }
+
+  @Override
+  public JdbcRowStream<T> handler(Handler<T> handler) {
+    if (handler == null) {
+      rows.handler(null);
+    } else {
+      rows.handler(row -> handler.handle(mapper.apply(row)));
+    }
+    return this;
+  }
+
+  @Override
+  public JdbcRowStream<T> pause() {
+    rows.pause();
+    return this;
+  }
+
+  @Override
+  public JdbcRowStream<T> resume() {
+    rows.resume();
+    return this;
+  }
+
+  @Override
+  public JdbcRowStream<T> endHandler(Handler<Void> handler) {
+    this.endHandler = handler;
+    return this;
+  }
+
+  /**
+   * Stops reading the rows and gives the connection back to the pool.
+   */
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    rows.close(ar -> connection.close());
+  }
+}
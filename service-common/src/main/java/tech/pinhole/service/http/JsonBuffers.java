@@ -0,0 +1,63 @@
+package tech.pinhole.service.http;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.EncodeException;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Compact JSON encoding straight into a {@link Buffer}, the bytes of a response body, without the intermediate
+ * {@code String} of {@link JsonObject#encode()}.
+ * <p>
+ * The buffers are not taken from a pool: a response does not release the buffer it is ended with, a pooled one
+ * would leak.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public final class JsonBuffers {
+
+  private static final int INITIAL_CAPACITY = 256;
+
+  private JsonBuffers() {
+  }
+
+  public static Buffer encode(JsonObject json) {
+    return write(json.getMap());
+  }
+
+  public static Buffer encode(JsonArray json) {
+    return write(json.getList());
+  }
+
+  /**
+   * @param value a {@link JsonObject}, a {@link JsonArray}, or any object whose {@code toString} is its JSON.
+   * @return compact JSON of the value.
+   */
+  public static Buffer encode(Object value) {
+    if (value instanceof JsonObject) {
+      return encode((JsonObject) value);
+    }
+    if (value instanceof JsonArray) {
+      return encode((JsonArray) value);
+    }
+    return Buffer.buffer(String.valueOf(value));
+  }
+
+  private static Buffer write(Object value) {
+    final ByteBuf bytes = Unpooled.buffer(INITIAL_CAPACITY);
+    try (OutputStream out = new ByteBufOutputStream(bytes)) {
+      Json.mapper.writeValue(out, value);
+    } catch (IOException e) {
+      throw new EncodeException("Failed to encode as JSON: " + e.getMessage());
+    }
+    return Buffer.buffer(bytes);
+  }
+}
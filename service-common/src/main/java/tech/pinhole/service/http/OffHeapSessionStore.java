@@ -0,0 +1,281 @@
+package tech.pinhole.service.http;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.ext.auth.PRNG;
+import io.vertx.ext.web.Session;
+import io.vertx.ext.web.sstore.SessionStore;
+import io.vertx.ext.web.sstore.impl.SessionImpl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link SessionStore} keeping the sessions of a JVM serialized in direct buffers, out of the heap, so that a large
+ * number of sessions does not grow the heap and the GC pauses with it.
+ * <p>
+ * Stores with the same name share their sessions, like local session stores do. Sessions expire once not accessed
+ * for their timeout, they are reaped periodically and never handed out once expired. Once the serialized sessions
+ * reach the maximum bytes new sessions are refused. Concurrent updates of a session are detected with its version,
+ * as by the local session store.
+ * </p>
+ * <p>
+ * A session written again is serialized into the buffer it already has when it fits, which is what saving a
+ * session on every request mostly does. Otherwise its buffer is taken from the pooled direct allocator of netty and
+ * the one it replaces released, buffers are released as well when their session is deleted, reaped or cleared.
+ * Buffers are only read, written and released holding the lock of their entry.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class OffHeapSessionStore implements SessionStore {
+
+  private final Vertx vertx;
+  private final PRNG random;
+  private final Sessions sessions;
+  private final long reaperTimer;
+
+  /**
+   * @param vertx            vertx.
+   * @param name             name of the sessions shared by the stores.
+   * @param maxBytes         maximum bytes of the serialized sessions.
+   * @param reaperIntervalMs milliseconds between two reaps of the expired sessions.
+   */
+  public OffHeapSessionStore(Vertx vertx, String name, long maxBytes, long reaperIntervalMs) {
+    this.vertx = vertx;
+    this.random = new PRNG(vertx);
+    final LocalMap<String, Sessions> stores = vertx.sharedData().getLocalMap(OffHeapSessionStore.class.getName());
+    final Sessions created = new Sessions(maxBytes);
+    final Sessions existing = stores.putIfAbsent(name, created);
+    this.sessions = existing != null ? existing : created;
+    this.reaperTimer = vertx.setPeriodic(reaperIntervalMs, id -> reap());
+  }
+
+  @Override
+  public long retryTimeout() {
+    return 0;
+  }
+
+  @Override
+  public Session createSession(long timeout) {
+    return new SessionImpl(random, timeout, DEFAULT_SESSIONID_LENGTH);
+  }
+
+  @Override
+  public Session createSession(long timeout, int length) {
+    return new SessionImpl(random, timeout, length);
+  }
+
+  @Override
+  public void get(String id, Handler<AsyncResult<Session>> resultHandler) {
+    Buffer serialized = null;
+    Entry entry = sessions.entries.get(id);
+    while (entry != null) {
+      synchronized (entry) {
+        if (entry.data != null) {
+          serialized = entry.isExpired(System.currentTimeMillis()) ? null : entry.read();
+          break;
+        }
+      }
+      // released as its session outgrew it, look up the entry replacing it
+      entry = sessions.entries.get(id);
+    }
+    if (serialized == null) {
+      resultHandler.handle(Future.succeededFuture());
+      return;
+    }
+    final SessionImpl session = new SessionImpl(random);
+    session.readFromBuffer(0, serialized);
+    resultHandler.handle(Future.succeededFuture(session));
+  }
+
+  @Override
+  public void delete(String id, Handler<AsyncResult<Boolean>> resultHandler) {
+    final Entry removed = sessions.entries.remove(id);
+    if (removed != null) {
+      release(removed);
+    }
+    resultHandler.handle(Future.succeededFuture(true));
+  }
+
+  @Override
+  public void put(Session session, Handler<AsyncResult<Boolean>> resultHandler) {
+    final SessionImpl stored = (SessionImpl) session;
+    final Entry previous = sessions.entries.get(session.id());
+    if (previous == null) {
+      resultHandler.handle(add(stored));
+      return;
+    }
+    synchronized (previous) {
+      if (previous.data == null) {
+        // deleted or reaped meanwhile
+        resultHandler.handle(add(stored));
+        return;
+      }
+      if (previous.version != stored.version()) {
+        resultHandler.handle(Future.failedFuture("Version mismatch"));
+        return;
+      }
+      stored.incrementVersion();
+      final Buffer serialized = serialize(stored);
+      if (serialized.length() <= previous.data.capacity()) {
+        previous.write(serialized, stored);
+        resultHandler.handle(Future.succeededFuture(true));
+        return;
+      }
+
+      final int capacity = capacity(serialized);
+      final long growth = capacity - previous.data.capacity();
+      if (sessions.bytes.get() + growth > sessions.maxBytes) {
+        resultHandler.handle(Future.failedFuture("Session store full"));
+        return;
+      }
+      final Entry entry = new Entry(capacity, serialized, stored);
+      if (!sessions.entries.replace(session.id(), previous, entry)) {
+        entry.data.release();
+        resultHandler.handle(Future.failedFuture("Version mismatch"));
+        return;
+      }
+      sessions.bytes.addAndGet(capacity);
+      releaseData(previous);
+    }
+    resultHandler.handle(Future.succeededFuture(true));
+  }
+
+  /**
+   * Stores a session which is not in the store.
+   */
+  private Future<Boolean> add(SessionImpl stored) {
+    stored.incrementVersion();
+    final Buffer serialized = serialize(stored);
+    final int capacity = capacity(serialized);
+    if (sessions.bytes.get() + capacity > sessions.maxBytes) {
+      return Future.failedFuture("Session store full");
+    }
+    final Entry entry = new Entry(capacity, serialized, stored);
+    if (sessions.entries.putIfAbsent(stored.id(), entry) != null) {
+      entry.data.release();
+      return Future.failedFuture("Version mismatch");
+    }
+    sessions.bytes.addAndGet(capacity);
+    return Future.succeededFuture(true);
+  }
+
+  private static Buffer serialize(SessionImpl session) {
+    final Buffer serialized = Buffer.buffer();
+    session.writeToBuffer(serialized);
+    return serialized;
+  }
+
+  /**
+   * @return capacity of the buffer of a serialized session, with room for the session to grow a little.
+   */
+  private static int capacity(Buffer serialized) {
+    return (serialized.length() + 63) & ~63;
+  }
+
+  /**
+   * Releases the buffer of an entry removed from the store.
+   */
+  private void release(Entry removed) {
+    synchronized (removed) {
+      releaseData(removed);
+    }
+  }
+
+  private void releaseData(Entry entry) {
+    if (entry.data != null) {
+      sessions.bytes.addAndGet(-entry.data.capacity());
+      entry.data.release();
+      entry.data = null;
+    }
+  }
+
+  @Override
+  public void clear(Handler<AsyncResult<Boolean>> resultHandler) {
+    for (Map.Entry<String, Entry> session : sessions.entries.entrySet()) {
+      if (sessions.entries.remove(session.getKey(), session.getValue())) {
+        release(session.getValue());
+      }
+    }
+    resultHandler.handle(Future.succeededFuture(true));
+  }
+
+  @Override
+  public void size(Handler<AsyncResult<Integer>> resultHandler) {
+    resultHandler.handle(Future.succeededFuture(sessions.entries.size()));
+  }
+
+  @Override
+  public void close() {
+    vertx.cancelTimer(reaperTimer);
+    random.close();
+  }
+
+  private void reap() {
+    final long now = System.currentTimeMillis();
+    for (Map.Entry<String, Entry> session : sessions.entries.entrySet()) {
+      final Entry entry = session.getValue();
+      // under the lock, a session written again in place is not expired anymore
+      synchronized (entry) {
+        if (entry.data != null && entry.isExpired(now) && sessions.entries.remove(session.getKey(), entry)) {
+          releaseData(entry);
+        }
+      }
+    }
+  }
+
+  /**
+   * Sessions shared by the stores of a name.
+   */
+  private static final class Sessions implements Shareable {
+    private final long maxBytes;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+
+    private Sessions(long maxBytes) {
+      this.maxBytes = maxBytes;
+    }
+  }
+
+  /**
+   * Serialized session, with what expiry and version checks need kept on the heap. Guarded by its own lock, its
+   * buffer is null once released.
+   */
+  private static final class Entry {
+    private ByteBuf data;
+    private long lastAccessed;
+    private long timeout;
+    private int version;
+
+    private Entry(int capacity, Buffer serialized, SessionImpl session) {
+      this.data = PooledByteBufAllocator.DEFAULT.directBuffer(capacity, capacity);
+      write(serialized, session);
+    }
+
+    private void write(Buffer serialized, SessionImpl session) {
+      data.clear().writeBytes(serialized.getByteBuf());
+      lastAccessed = session.lastAccessed();
+      timeout = session.timeout();
+      version = session.version();
+    }
+
+    private Buffer read() {
+      final byte[] bytes = new byte[data.readableBytes()];
+      data.getBytes(data.readerIndex(), bytes);
+      return Buffer.buffer(bytes);
+    }
+
+    private boolean isExpired(long now) {
+      return now - lastAccessed > timeout;
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package tech.pinhole.service.http;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip compression of whole response bodies.
+ * <p>
+ * Only bodies of at least the minimum size and of an allowed content type are compressed, small bodies do not get
+ * smaller and images or archives are compressed already. A body is compressed for the clients accepting gzip, the
+ * response then varies on {@code Accept-Encoding}.
+ * </p>
+ * <p>
+ * Thread safe.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class ResponseCompression {
+
+  private static final String COMPRESSION_ENABLED = "http.compression.enabled";
+  private static final String COMPRESSION_LEVEL = "http.compression.level";
+  private static final String COMPRESSION_MIN_SIZE = "http.compression.min.size";
+  private static final String COMPRESSION_CONTENT_TYPES = "http.compression.content.types";
+
+  private static final String GZIP = "gzip";
+  private static final String VARY = "Vary";
+
+  private final boolean enabled;
+  private final int level;
+  private final int minSize;
+  private final Set<String> contentTypes = new HashSet<>();
+
+  public ResponseCompression(JsonObject config) {
+    this.enabled = config.getBoolean(COMPRESSION_ENABLED, true);
+    this.level = config.getInteger(COMPRESSION_LEVEL, 6);
+    this.minSize = config.getInteger(COMPRESSION_MIN_SIZE, 1024);
+    config.getJsonArray(COMPRESSION_CONTENT_TYPES, new JsonArray()
+      .add("application/json")
+      .add("text/plain")
+      .add("text/html"))
+      .forEach(contentType -> contentTypes.add(contentType.toString().toLowerCase(Locale.ROOT)));
+  }
+
+  /**
+   * Ends the response with the body, compressed if the client accepts it and the body is worth it.
+   *
+   * @param request     request answered.
+   * @param response    response to end.
+   * @param contentType content type of the body.
+   * @param body        response body.
+   */
+  public void end(HttpServerRequest request, HttpServerResponse response, String contentType, Buffer body) {
+    response.putHeader(HttpHeaders.CONTENT_TYPE, contentType);
+    if (compresses(contentType, body.length())) {
+      response.putHeader(VARY, HttpHeaders.ACCEPT_ENCODING);
+      if (acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+        response.putHeader(HttpHeaders.CONTENT_ENCODING, GZIP).end(gzip(body));
+        return;
+      }
+    }
+    response.end(body);
+  }
+
+  /**
+   * @param contentType content type of a body, may have parameters.
+   * @param length      length of the body.
+   * @return whether the body is compressed for clients accepting it.
+   */
+  public boolean compresses(String contentType, int length) {
+    if (!enabled || length < minSize || contentType == null) {
+      return false;
+    }
+    final int parameters = contentType.indexOf(';');
+    final String mediaType = parameters < 0 ? contentType : contentType.substring(0, parameters);
+    return contentTypes.contains(mediaType.trim().toLowerCase(Locale.ROOT));
+  }
+
+  public Buffer gzip(Buffer body) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length() / 2 + 32);
+    try (GZIPOutputStream out = new GZIPOutputStream(bytes) {
+      {
+        def.setLevel(level);
+      }
+    }) {
+      out.write(body.getBytes());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return Buffer.buffer(bytes.toByteArray());
+  }
+
+  /**
+   * @param acceptEncoding {@code Accept-Encoding} header of a request, may be null.
+   * @return whether the client accepts gzip, named or by {@code *}, with a non zero quality.
+   */
+  static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    for (String coding : acceptEncoding.split(",")) {
+      final String[] parts = coding.split(";");
+      final String name = parts[0].trim();
+      if (GZIP.equalsIgnoreCase(name) || "*".equals(name)) {
+        return parts.length == 1 || !parts[1].trim().matches("q\\s*=\\s*0(\\.0*)?");
+      }
+    }
+    return false;
+  }
+}
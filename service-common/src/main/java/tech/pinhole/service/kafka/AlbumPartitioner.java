@@ -0,0 +1,86 @@
+package tech.pinhole.service.kafka;
+
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.utils.Utils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Kafka partitioner for album events keyed by album id, used by every producer of the album topic: the MQTT
+ * connector and the dead letter replay of the cassandra connector.
+ * <p>
+ * Keyed records are hashed over a fixed number of partitions, so all events of an album go to one partition and
+ * keep their order there. The number of partitions is read from {@value #ALBUM_PARTITIONS_CONFIG} and capped at
+ * the partition count of the topic, it should only be changed together with the consumer deployment as moving an
+ * album to a new partition loses ordering for the in flight events.
+ * </p>
+ * <p>
+ * Unkeyed records stick to one available partition for {@value #STICKY_RECORDS_CONFIG} records before moving on,
+ * which keeps producer batches full instead of spreading single records over every partition.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class AlbumPartitioner implements Partitioner {
+
+  public static final String ALBUM_PARTITIONS_CONFIG = "album.partitioner.partitions";
+  public static final String STICKY_RECORDS_CONFIG = "album.partitioner.sticky.records";
+
+  private int albumPartitions;
+  private int stickyRecords;
+
+  private volatile int stickyPartition = -1;
+  private final AtomicInteger stickyCount = new AtomicInteger();
+
+  @Override
+  public void configure(Map<String, ?> configs) {
+    albumPartitions = intConfig(configs, ALBUM_PARTITIONS_CONFIG, Integer.MAX_VALUE);
+    stickyRecords = intConfig(configs, STICKY_RECORDS_CONFIG, 1000);
+  }
+
+  @Override
+  public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes, Cluster cluster) {
+    List<PartitionInfo> partitions = cluster.partitionsForTopic(topic);
+    if (keyBytes != null) {
+      int numPartitions = Math.min(albumPartitions, partitions.size());
+      return Utils.toPositive(Utils.murmur2(keyBytes)) % numPartitions;
+    }
+    return stickyPartition(topic, partitions.size(), cluster);
+  }
+
+  @Override
+  public void close() {
+
+  }
+
+  private int stickyPartition(String topic, int numPartitions, Cluster cluster) {
+    int partition = stickyPartition;
+    if (partition < 0 || partition >= numPartitions || stickyCount.incrementAndGet() > stickyRecords) {
+      List<PartitionInfo> available = cluster.availablePartitionsForTopic(topic);
+      partition = available.isEmpty()
+          ? ThreadLocalRandom.current().nextInt(numPartitions)
+          : available.get(ThreadLocalRandom.current().nextInt(available.size())).partition();
+      stickyPartition = partition;
+      // this record is the first of the partition
+      stickyCount.set(1);
+    }
+    return partition;
+  }
+
+  private static int intConfig(Map<String, ?> configs, String name, int defaultValue) {
+    Object value = configs.get(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    int parsed = value instanceof Number ? ((Number) value).intValue() : Integer.parseInt(value.toString());
+    if (parsed <= 0) {
+      throw new IllegalArgumentException(name + " must be positive, was " + parsed);
+    }
+    return parsed;
+  }
+}
@@ -0,0 +1,92 @@
+package tech.pinhole.service.metrics;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies, in buckets of powers of two microseconds: recording is a few atomic increments and the
+ * memory is fixed, at the cost of percentiles only accurate to their bucket (reported as its upper bound).
+ * <p>
+ * Thread safe.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class LatencyHistogram {
+
+  private static final int BUCKETS = 40;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder totalMicros = new LongAdder();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  /**
+   * @param nanos latency to record, in nanoseconds.
+   */
+  public void record(long nanos) {
+    final long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+    buckets.incrementAndGet(bucket(micros));
+    count.increment();
+    totalMicros.add(micros);
+    long max = maxMicros.get();
+    while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+      max = maxMicros.get();
+    }
+  }
+
+  /**
+   * @return number of recorded latencies.
+   */
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * @param percentile percentile, between 0 and 100.
+   * @return upper bound of the bucket of the percentile, in microseconds, 0 without latencies.
+   */
+  public long percentileMicros(double percentile) {
+    final long total = count.sum();
+    if (total == 0) {
+      return 0;
+    }
+    final long rank = (long) Math.ceil(total * percentile / 100);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += buckets.get(i);
+      if (seen >= rank) {
+        return Math.min(1L << i, maxMicros.get());
+      }
+    }
+    return maxMicros.get();
+  }
+
+  /**
+   * @return count, mean, p50, p90, p99 and max latencies, in milliseconds.
+   */
+  public JsonObject toJson() {
+    final long total = count.sum();
+    return new JsonObject()
+      .put("count", total)
+      .put("meanMs", total == 0 ? 0 : totalMicros.sum() / (total * 1000.0))
+      .put("p50Ms", percentileMicros(50) / 1000.0)
+      .put("p90Ms", percentileMicros(90) / 1000.0)
+      .put("p99Ms", percentileMicros(99) / 1000.0)
+      .put("maxMs", maxMicros.get() / 1000.0);
+  }
+
+  /**
+   * Bucket i holds the latencies up to 2^i microseconds, above the ones of bucket i - 1.
+   */
+  private static int bucket(long micros) {
+    if (micros <= 1) {
+      return 0;
+    }
+    return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros - 1));
+  }
+}
@@ -44,15 +44,27 @@ public abstract class BaseMicroserviceVerticle extends AbstractVerticle {
     discovery = ServiceDiscovery.create(vertx, new ServiceDiscoveryOptions().setBackendConfiguration(config()));
 
     // init circuit breaker instance
-    JsonObject cbOptions = config().getJsonObject("circuit-breaker") != null ?
+    circuitBreaker = CircuitBreaker.create(circuitBreakerConfig().getString("name", "circuit-breaker"), vertx,
+      circuitBreakerOptions());
+  }
+
+  private JsonObject circuitBreakerConfig() {
+    return config().getJsonObject("circuit-breaker") != null ?
       config().getJsonObject("circuit-breaker") : new JsonObject();
-    circuitBreaker = CircuitBreaker.create(cbOptions.getString("name", "circuit-breaker"), vertx,
-      new CircuitBreakerOptions()
-        .setMaxFailures(cbOptions.getInteger("max-failures", 5))
-        .setTimeout(cbOptions.getLong("timeout", 10000L))
-        .setFallbackOnFailure(true)
-        .setResetTimeout(cbOptions.getLong("reset-timeout", 30000L))
-    );
+  }
+
+  /**
+   * Options of the service circuit breaker, for services which need more breakers configured the same way.
+   *
+   * @return circuit breaker options from the `circuit-breaker` configuration.
+   */
+  protected CircuitBreakerOptions circuitBreakerOptions() {
+    JsonObject cbOptions = circuitBreakerConfig();
+    return new CircuitBreakerOptions()
+      .setMaxFailures(cbOptions.getInteger("max-failures", 5))
+      .setTimeout(cbOptions.getLong("timeout", 10000L))
+      .setFallbackOnFailure(true)
+      .setResetTimeout(cbOptions.getLong("reset-timeout", 30000L));
   }
 
   protected Future<Void> publishHttpEndpoint(String name, String host, int port) {
@@ -3,6 +3,7 @@ package tech.pinhole.service.verticle;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.HttpMethod;
 import io.vertx.core.http.HttpServer;
 import io.vertx.core.json.JsonObject;
@@ -13,6 +14,10 @@ import io.vertx.ext.web.handler.CorsHandler;
 import io.vertx.ext.web.handler.SessionHandler;
 import io.vertx.ext.web.sstore.ClusteredSessionStore;
 import io.vertx.ext.web.sstore.LocalSessionStore;
+import io.vertx.ext.web.sstore.SessionStore;
+import tech.pinhole.service.http.JsonBuffers;
+import tech.pinhole.service.http.OffHeapSessionStore;
+import tech.pinhole.service.http.ResponseCompression;
 
 import java.util.HashSet;
 import java.util.Optional;
@@ -27,6 +32,22 @@ import java.util.function.Function;
  */
 public abstract class RestAPIVerticle extends BaseMicroserviceVerticle {
 
+  private static final String APPLICATION_JSON = "application/json";
+  private static final String BEARER = "Bearer ";
+
+  private static final String HTTP_SESSION_STORE = "http.session.store";
+  private static final String HTTP_SESSION_NAME = "http.session.name";
+  private static final String HTTP_SESSION_TIMEOUT_MS = "http.session.timeout.ms";
+  private static final String HTTP_SESSION_TOKEN_REQUESTS = "http.session.token.requests";
+  private static final String HTTP_SESSION_REAPER_INTERVAL_MS = "http.session.reaper.interval.ms";
+  private static final String HTTP_SESSION_OFF_HEAP_MAX_BYTES = "http.session.off.heap.max.bytes";
+  private static final String SESSION_STORE_NONE = "none";
+  private static final String SESSION_STORE_LOCAL = "local";
+  private static final String SESSION_STORE_CLUSTERED = "clustered";
+  private static final String SESSION_STORE_OFF_HEAP = "off-heap";
+
+  private ResponseCompression compression;
+
   /**
    * Create http server for the REST service.
    *
@@ -45,14 +66,78 @@ public abstract class RestAPIVerticle extends BaseMicroserviceVerticle {
 
 
   /**
-   * Enable local session storage in requests.
+   * Enable session storage in requests, in the store selected by the config: {@code local} to the JVM (default),
+   * {@code clustered} over the cluster manager, {@code off-heap} in direct memory of the JVM or {@code none}.
+   * <p>
+   * Unless configured otherwise, requests authenticated with a bearer token skip the cookie parsing and session
+   * lookup, their token carries all the state they need.
+   * </p>
    *
    * @param router router instance
    */
-  protected void enableLocalSession(Router router) {
-    router.route().handler(CookieHandler.create());
-    router.route().handler(SessionHandler.create(
-      LocalSessionStore.create(vertx, "shopping.user.session")));
+  protected void enableSession(Router router) {
+    final JsonObject config = config();
+    final String store = config.getString(HTTP_SESSION_STORE, SESSION_STORE_LOCAL);
+    if (SESSION_STORE_NONE.equals(store)) {
+      return;
+    }
+
+    final String name = config.getString(HTTP_SESSION_NAME, "pinhole.session");
+    final SessionStore sessionStore;
+    switch (store) {
+      case SESSION_STORE_LOCAL:
+        sessionStore = LocalSessionStore.create(vertx, name,
+          config.getLong(HTTP_SESSION_REAPER_INTERVAL_MS, LocalSessionStore.DEFAULT_REAPER_INTERVAL));
+        break;
+      case SESSION_STORE_CLUSTERED:
+        sessionStore = ClusteredSessionStore.create(vertx, name);
+        break;
+      case SESSION_STORE_OFF_HEAP:
+        sessionStore = new OffHeapSessionStore(vertx, name,
+          config.getLong(HTTP_SESSION_OFF_HEAP_MAX_BYTES, 64L * 1024 * 1024),
+          config.getLong(HTTP_SESSION_REAPER_INTERVAL_MS, LocalSessionStore.DEFAULT_REAPER_INTERVAL));
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown session store " + store);
+    }
+
+    final Handler<RoutingContext> cookieHandler = CookieHandler.create();
+    final Handler<RoutingContext> sessionHandler = SessionHandler.create(sessionStore)
+      .setSessionTimeout(config.getLong(HTTP_SESSION_TIMEOUT_MS, SessionHandler.DEFAULT_SESSION_TIMEOUT));
+    if (config.getBoolean(HTTP_SESSION_TOKEN_REQUESTS, false)) {
+      router.route().handler(cookieHandler);
+      router.route().handler(sessionHandler);
+    } else {
+      router.route().handler(context -> skipTokenRequests(context, cookieHandler));
+      router.route().handler(context -> skipTokenRequests(context, sessionHandler));
+    }
+  }
+
+  private static void skipTokenRequests(RoutingContext context, Handler<RoutingContext> handler) {
+    final String authorization = context.request().getHeader(HttpHeaders.AUTHORIZATION);
+    if (authorization != null && authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+      context.next();
+    } else {
+      handler.handle(context);
+    }
+  }
+
+  /**
+   * @return compression of the responses of this verticle, configured by its config.
+   */
+  protected ResponseCompression compression() {
+    if (compression == null) {
+      compression = new ResponseCompression(config());
+    }
+    return compression;
+  }
+
+  /**
+   * Ends the response with a compact JSON body, compressed when worth it.
+   */
+  protected void sendJson(RoutingContext context, int status, Object json) {
+    context.response().setStatusCode(status);
+    compression().end(context.request(), context.response(), APPLICATION_JSON, JsonBuffers.encode(json));
   }
 
   // helper result handler within a request context
@@ -79,9 +164,7 @@ public abstract class RestAPIVerticle extends BaseMicroserviceVerticle {
     return ar -> {
       if (ar.succeeded()) {
         T res = ar.result();
-        context.response()
-          .putHeader("content-type", "application/json")
-          .end(res == null ? "{}" : res.toString());
+        sendJson(context, 200, res == null ? new JsonObject() : res);
       } else {
         internalError(context, ar.cause());
         ar.cause().printStackTrace();
@@ -106,9 +189,7 @@ public abstract class RestAPIVerticle extends BaseMicroserviceVerticle {
         if (res == null) {
           serviceUnavailable(context, "invalid_result");
         } else {
-          context.response()
-            .putHeader("content-type", "application/json")
-            .end(converter.apply(res));
+          sendJson(context, 200, converter.apply(res));
         }
       } else {
         internalError(context, ar.cause());
@@ -133,9 +214,7 @@ public abstract class RestAPIVerticle extends BaseMicroserviceVerticle {
         if (res == null) {
           notFound(context);
         } else {
-          context.response()
-            .putHeader("content-type", "application/json")
-            .end(res.toString());
+          sendJson(context, 200, res);
         }
       } else {
         internalError(context, ar.cause());
@@ -156,10 +235,7 @@ public abstract class RestAPIVerticle extends BaseMicroserviceVerticle {
   protected Handler<AsyncResult<Void>> resultVoidHandler(RoutingContext context, JsonObject result, int status) {
     return ar -> {
       if (ar.succeeded()) {
-        context.response()
-          .setStatusCode(status == 0 ? 200 : status)
-          .putHeader("content-type", "application/json")
-          .end(result.encodePrettily());
+        sendJson(context, status == 0 ? 200 : status, result);
       } else {
         internalError(context, ar.cause());
         ar.cause().printStackTrace();
@@ -182,22 +258,20 @@ public abstract class RestAPIVerticle extends BaseMicroserviceVerticle {
   }
 
 
+  protected void badRequest(RoutingContext context, String cause) {
+    sendJson(context, 400, new JsonObject().put("error", cause));
+  }
+
   protected void notFound(RoutingContext context) {
-    context.response().setStatusCode(404)
-      .putHeader("content-type", "application/json")
-      .end(new JsonObject().put("message", "not_found").encodePrettily());
+    sendJson(context, 404, new JsonObject().put("message", "not_found"));
   }
 
   protected void internalError(RoutingContext context, Throwable ex) {
-    context.response().setStatusCode(500)
-      .putHeader("content-type", "application/json")
-      .end(new JsonObject().put("error", ex.getMessage()).encodePrettily());
+    sendJson(context, 500, new JsonObject().put("error", ex.getMessage()));
   }
 
   protected void serviceUnavailable(RoutingContext context, String cause) {
-    context.response().setStatusCode(503)
-      .putHeader("content-type", "application/json")
-      .end(new JsonObject().put("error", cause).encodePrettily());
+    sendJson(context, 503, new JsonObject().put("error", cause));
   }
 
 }
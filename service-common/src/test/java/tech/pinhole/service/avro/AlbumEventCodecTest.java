@@ -0,0 +1,77 @@
+package tech.pinhole.service.avro;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link AlbumEventCodec}.
+ */
+public class AlbumEventCodecTest {
+
+  private final AlbumEventCodec codec = AlbumEventCodec.getDefault();
+
+  @Test
+  public void testRoundTrip() {
+    JsonObject event = comment();
+
+    byte[] binary = codec.encode(event);
+
+    assertTrue(AlbumEventCodec.isBinary(binary));
+    assertEquals(event, codec.decode(binary));
+    assertTrue(binary.length < event.encode().getBytes(StandardCharsets.UTF_8).length);
+  }
+
+  @Test
+  public void testReadsEventTypeAndAlbumIdOfBothFormats() {
+    byte[] json = comment().encode().getBytes(StandardCharsets.UTF_8);
+    byte[] binary = codec.toBinary(json);
+
+    assertEquals("comment_photo", codec.eventType(binary));
+    assertEquals("comment_photo", codec.eventType(json));
+    assertEquals("customer_1_1490000000", codec.albumId(binary));
+    assertEquals("customer_1_1490000000", codec.albumId(json));
+    assertArrayEquals(binary, codec.toBinary(binary));
+  }
+
+  @Test
+  public void testMissingOptionalFieldIsNotDecoded() {
+    JsonObject event = comment();
+    event.remove("comment");
+
+    JsonObject decoded = codec.decode(codec.encode(event));
+
+    assertFalse(decoded.containsKey("comment"));
+    assertEquals(event, decoded);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMissingRequiredFieldIsRejected() {
+    JsonObject event = comment();
+    event.remove("comment_by");
+    codec.encode(event);
+  }
+
+  @Test
+  public void testUnknownPayloads() {
+    assertNull(codec.eventType("not json".getBytes(StandardCharsets.UTF_8)));
+    assertNull(codec.albumId(new byte[]{AlbumEventCodec.MAGIC_BYTE, 0, 0, 0x7f, 0x7f}));
+  }
+
+  private JsonObject comment() {
+    return new JsonObject()
+        .put("event_type", "comment_photo")
+        .put("album_id", "customer_1_1490000000")
+        .put("photo_id", "s3_id")
+        .put("comment", "great selfie")
+        .put("commented_on", "2017-03-20T10:15:30")
+        .put("comment_by", "customer_2");
+  }
+}
@@ -0,0 +1,117 @@
+package tech.pinhole.service.concurrent;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link SingleFlight}.
+ */
+public class SingleFlightTest {
+
+  private final SingleFlight<String, String> flights = new SingleFlight<>();
+  private final List<Future<String>> calls = new ArrayList<>();
+  private final List<AsyncResult<String>> results = new ArrayList<>();
+
+  @Test
+  public void testConcurrentCallersShareOneCall() {
+    flights.execute("account:42", calls::add, results::add);
+    flights.execute("account:42", calls::add, results::add);
+
+    assertEquals(1, calls.size());
+    assertTrue(results.isEmpty());
+
+    calls.get(0).complete("account");
+
+    assertEquals(2, results.size());
+    assertSame(results.get(0).result(), results.get(1).result());
+    assertEquals(1, flights.getCalls());
+    assertEquals(1, flights.getJoins());
+  }
+
+  @Test
+  public void testDifferentKeysMakeTheirOwnCalls() {
+    flights.execute("account:42", calls::add, results::add);
+    flights.execute("account:7", calls::add, results::add);
+
+    assertEquals(2, calls.size());
+    assertEquals(0, flights.getJoins());
+  }
+
+  @Test
+  public void testNextCallerAfterCompletionMakesANewCall() {
+    flights.execute("account:42", calls::add, results::add);
+    calls.get(0).complete("before");
+
+    flights.execute("account:42", calls::add, results::add);
+
+    assertEquals(2, calls.size());
+  }
+
+  @Test
+  public void testFailureIsHandedToEveryCaller() {
+    flights.execute("account:42", calls::add, results::add);
+    flights.execute("account:42", calls::add, results::add);
+
+    calls.get(0).fail("backend down");
+
+    assertEquals(2, results.size());
+    results.forEach(result -> assertEquals("backend down", result.cause().getMessage()));
+  }
+
+  @Test
+  public void testThrowingCallFailsTheFlight() {
+    flights.execute("account:42", future -> {
+      throw new IllegalStateException("no client");
+    }, results::add);
+
+    assertEquals(1, results.size());
+    assertTrue(results.get(0).cause() instanceof IllegalStateException);
+
+    // the key is free again
+    flights.execute("account:42", calls::add, results::add);
+    assertEquals(1, calls.size());
+  }
+
+  @Test
+  public void testFailingHandlerDoesNotStopTheOthers() {
+    flights.execute("account:42", calls::add, result -> {
+      throw new IllegalStateException("handler bug");
+    });
+    flights.execute("account:42", calls::add, results::add);
+
+    calls.get(0).complete("account");
+
+    assertEquals(1, results.size());
+  }
+
+  @Test
+  public void testCallerAfterForgetAllDoesNotJoinTheCallInFlight() {
+    flights.execute("account:42", calls::add, results::add);
+
+    flights.forgetAll();
+    flights.execute("account:42", calls::add, results::add);
+
+    assertEquals(2, calls.size());
+    calls.get(0).complete("before");
+
+    // the caller which was waiting still gets the call it waited for
+    assertEquals(1, results.size());
+    assertEquals("before", results.get(0).result());
+
+    // the old call completing did not free the key, the next caller joins the new call
+    flights.execute("account:42", calls::add, results::add);
+    calls.get(1).complete("after");
+
+    assertEquals(2, calls.size());
+    assertEquals("after", results.get(1).result());
+    assertEquals("after", results.get(2).result());
+  }
+}
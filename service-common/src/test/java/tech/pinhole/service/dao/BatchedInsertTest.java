@@ -0,0 +1,186 @@
+package tech.pinhole.service.dao;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.SQLConnection;
+import io.vertx.ext.sql.UpdateResult;
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link BatchedInsert}.
+ */
+public class BatchedInsertTest {
+
+  private static final String INSERT = "INSERT INTO otp (phone_number, otp) VALUES";
+
+  private final Vertx vertx = Vertx.vertx();
+  private final Database database = new Database();
+  private final List<AsyncResult<Void>> results = new CopyOnWriteArrayList<>();
+
+  @After
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Test
+  public void testMultiRowInsert() {
+    assertEquals("INSERT INTO otp (phone_number, otp) VALUES (?, ?), (?, ?), (?, ?)",
+      BatchedInsert.multiRowInsert(INSERT, 2, 3));
+  }
+
+  @Test
+  public void testFullBatchIsWrittenInOneStatementAndTransaction() {
+    BatchedInsert inserts = new BatchedInsert(vertx, database.client(), INSERT, 2, 3, 60000);
+
+    inserts.add(row("+15550101"), results::add);
+    inserts.add(row("+15550102"), results::add);
+    assertTrue(database.log.isEmpty());
+    inserts.add(row("+15550103"), results::add);
+
+    assertEquals(asList("autoCommit false", "insert 3", "commit", "autoCommit true", "close"), database.log);
+    assertEquals(3, results.size());
+    results.forEach(result -> assertTrue(result.succeeded()));
+  }
+
+  @Test
+  public void testBatchIsWrittenOnceItsWindowElapsed() {
+    BatchedInsert inserts = new BatchedInsert(vertx, database.client(), INSERT, 2, 100, 20);
+
+    inserts.add(row("+15550101"), results::add);
+    inserts.add(row("+15550102"), results::add);
+
+    await().until(() -> results.size() == 2);
+    assertTrue(database.log.contains("insert 2"));
+  }
+
+  @Test
+  public void testFailedBatchIsWrittenOneByOne() {
+    BatchedInsert inserts = new BatchedInsert(vertx, database.client(), INSERT, 2, 3, 60000);
+    database.duplicates.add("+15550102");
+
+    inserts.add(row("+15550101"), results::add);
+    inserts.add(row("+15550102"), results::add);
+    inserts.add(row("+15550103"), results::add);
+
+    assertEquals(asList("autoCommit false", "insert 3", "rollback", "autoCommit true",
+      "insert 1", "insert 1", "insert 1", "close"), database.log);
+    assertTrue(results.get(0).succeeded());
+    assertTrue(results.get(1).cause() instanceof SQLIntegrityConstraintViolationException);
+    assertTrue(results.get(2).succeeded());
+  }
+
+  @Test
+  public void testWithoutWindowEveryRowIsWrittenRightAway() {
+    BatchedInsert inserts = new BatchedInsert(vertx, database.client(), INSERT, 2, 100, 0);
+
+    inserts.add(row("+15550101"), results::add);
+
+    assertEquals(asList("insert 1", "close"), database.log);
+    assertTrue(results.get(0).succeeded());
+  }
+
+  @Test
+  public void testConnectionFailureFailsEveryRow() {
+    BatchedInsert inserts = new BatchedInsert(vertx, database.client(), INSERT, 2, 2, 60000);
+    database.down = true;
+
+    inserts.add(row("+15550101"), results::add);
+    inserts.add(row("+15550102"), results::add);
+
+    assertEquals(2, results.size());
+    results.forEach(result -> assertTrue(result.failed()));
+  }
+
+  @Test
+  public void testRowWithWrongValueCountIsRejected() {
+    BatchedInsert inserts = new BatchedInsert(vertx, database.client(), INSERT, 2, 3, 60000);
+
+    inserts.add(new JsonArray().add("+15550101"), results::add);
+
+    assertTrue(results.get(0).cause() instanceof IllegalArgumentException);
+    assertTrue(database.log.isEmpty());
+  }
+
+  private static JsonArray row(String phoneNumber) {
+    return new JsonArray().add(phoneNumber).add("123456");
+  }
+
+  /**
+   * Database answering right away, failing the inserts of the duplicate phone numbers.
+   */
+  private static final class Database {
+
+    private final List<String> log = new ArrayList<>();
+    private final List<String> duplicates = new ArrayList<>();
+    private boolean down;
+
+    @SuppressWarnings("unchecked")
+    JDBCClient client() {
+      return proxy(JDBCClient.class, (method, args) -> {
+        if (method.equals("getConnection")) {
+          ((Handler<AsyncResult<SQLConnection>>) args[0]).handle(down
+            ? Future.failedFuture("database down")
+            : Future.succeededFuture(connection()));
+        }
+      });
+    }
+
+    @SuppressWarnings("unchecked")
+    private SQLConnection connection() {
+      return proxy(SQLConnection.class, (method, args) -> {
+        switch (method) {
+          case "setAutoCommit":
+            log.add("autoCommit " + args[0]);
+            ((Handler<AsyncResult<Void>>) args[1]).handle(Future.succeededFuture());
+            break;
+          case "updateWithParams":
+            final JsonArray params = (JsonArray) args[1];
+            log.add("insert " + params.size() / 2);
+            final boolean duplicate = params.stream().anyMatch(duplicates::contains);
+            ((Handler<AsyncResult<UpdateResult>>) args[2]).handle(duplicate
+              ? Future.failedFuture(new SQLIntegrityConstraintViolationException("Duplicate entry"))
+              : Future.succeededFuture(new UpdateResult(params.size() / 2, new JsonArray())));
+            break;
+          case "commit":
+          case "rollback":
+            log.add(method);
+            ((Handler<AsyncResult<Void>>) args[0]).handle(Future.succeededFuture());
+            break;
+          case "close":
+            log.add(method);
+            break;
+          default:
+            throw new UnsupportedOperationException(method);
+        }
+      });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Call call) {
+      return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+        call.handle(method.getName(), args);
+        return method.getReturnType().isInstance(proxy) ? proxy : null;
+      });
+    }
+  }
+
+  private interface Call {
+    void handle(String method, Object[] args);
+  }
+}
@@ -0,0 +1,141 @@
+package tech.pinhole.service.dao;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.SQLConnection;
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for {@link JdbcReplicas}.
+ */
+public class JdbcReplicasTest {
+
+  private final Vertx vertx = Vertx.vertx();
+  private final List<String> reads = new ArrayList<>();
+
+  @After
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Test
+  public void testReadsGoToTheReplicaUnlessTheKeyIsPinned() {
+    JdbcReplicas replicas = replicas(60000, false);
+
+    read(replicas, "id:42");
+    replicas.pin("id:42");
+    read(replicas, "id:42");
+    read(replicas, "id:7");
+    read(replicas, null);
+
+    assertEquals(asList("replica", "primary", "replica", "replica"), reads);
+  }
+
+  @Test
+  public void testEveryKeyOfAnAccountIsPinnedOnItsOwn() {
+    JdbcReplicas replicas = replicas(60000, false);
+
+    // the account was written by its phone number and is read by its id
+    replicas.pin("phoneNumber:+15550100");
+    read(replicas, "id:42");
+    replicas.pin("id:42");
+    read(replicas, "id:42");
+    read(replicas, "email:customer@pinhole.tech");
+
+    assertEquals(asList("replica", "primary", "replica"), reads);
+  }
+
+  @Test
+  public void testPinOfAllKeysSendsEveryReadToThePrimary() {
+    JdbcReplicas replicas = replicas(60000, false);
+
+    replicas.pin(null);
+    read(replicas, "id:42");
+    read(replicas, null);
+
+    assertEquals(asList("primary", "primary"), reads);
+  }
+
+  @Test
+  public void testPinExpires() throws InterruptedException {
+    JdbcReplicas replicas = replicas(1, false);
+
+    replicas.pin("id:42");
+    Thread.sleep(10);
+    read(replicas, "id:42");
+
+    assertEquals(asList("replica"), reads);
+  }
+
+  @Test
+  public void testPinsAreSharedByTheRepositoriesOfAPool() {
+    JsonObject config = config(60000);
+    JdbcReplicas writer = new JdbcReplicas(vertx, config, client("primary", false),
+      replicaConfig -> client("replica", false));
+    JdbcReplicas reader = new JdbcReplicas(vertx, config, client("primary", false),
+      replicaConfig -> client("replica", false));
+
+    writer.pin("id:42");
+    read(reader, "id:42");
+
+    assertEquals(asList("primary"), reads);
+  }
+
+  @Test
+  public void testUnavailableReplicaFallsBackToThePrimary() {
+    JdbcReplicas replicas = replicas(60000, true);
+
+    read(replicas, "id:42");
+    read(replicas, "id:42");
+
+    // the replica is left out once it failed
+    assertEquals(asList("replica down", "primary", "primary"), reads);
+  }
+
+  private JdbcReplicas replicas(long readYourWritesMs, boolean replicaDown) {
+    return new JdbcReplicas(vertx, config(readYourWritesMs), client("primary", false),
+      replicaConfig -> client("replica", replicaDown));
+  }
+
+  private static JsonObject config(long readYourWritesMs) {
+    // pins and health are shared by pool name, every test has its own
+    return new JsonObject()
+      .put("jdbc.pool.name", UUID.randomUUID().toString())
+      .put("jdbc.read.your.writes.ms", readYourWritesMs)
+      .put("jdbc.replica.lag.check.interval.ms", 60000)
+      .put("jdbc.replicas", new JsonArray().add(new JsonObject()));
+  }
+
+  private void read(JdbcReplicas replicas, String key) {
+    replicas.getConnection(key, ar -> {
+    });
+  }
+
+  @SuppressWarnings("unchecked")
+  private JDBCClient client(String name, boolean down) {
+    return (JDBCClient) Proxy.newProxyInstance(JDBCClient.class.getClassLoader(), new Class<?>[]{JDBCClient.class},
+      (proxy, method, args) -> {
+        if (method.getName().equals("getConnection")) {
+          reads.add(down ? name + " down" : name);
+          ((Handler<AsyncResult<SQLConnection>>) args[0]).handle(down
+            ? Future.failedFuture(name + " down")
+            : Future.succeededFuture());
+        }
+        return method.getReturnType().isInstance(proxy) ? proxy : null;
+      });
+  }
+}
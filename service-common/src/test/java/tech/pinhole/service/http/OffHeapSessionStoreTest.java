@@ -0,0 +1,129 @@
+package tech.pinhole.service.http;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Vertx;
+import io.vertx.ext.web.Session;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link OffHeapSessionStore}.
+ */
+public class OffHeapSessionStoreTest {
+
+  private final Vertx vertx = Vertx.vertx();
+  private final OffHeapSessionStore store = store(1024 * 1024);
+
+  @After
+  public void tearDown() {
+    store.close();
+    vertx.close();
+  }
+
+  @Test
+  public void testSessionWrittenAgainIsReadBackUpdated() {
+    final Session session = store.createSession(60000);
+    session.put("user", "customer_1");
+    assertTrue(put(session).succeeded());
+
+    final Session read = get(session.id());
+    assertEquals("customer_1", read.get("user"));
+    read.put("user", "customer_2");
+    assertTrue(put(read).succeeded());
+
+    assertEquals("customer_2", get(session.id()).get("user"));
+    assertEquals(1, size());
+  }
+
+  @Test
+  public void testSessionOutgrowingItsBufferIsKept() {
+    final Session session = store.createSession(60000);
+    session.put("user", "customer_1");
+    put(session);
+
+    final Session read = get(session.id());
+    read.put("albums", new String(new char[4096]).replace('\0', 'a'));
+    assertTrue(put(read).succeeded());
+
+    assertEquals(4096, get(session.id()).<String>get("albums").length());
+    assertEquals("customer_1", get(session.id()).get("user"));
+  }
+
+  @Test
+  public void testStaleWriteIsRefused() {
+    final Session session = store.createSession(60000);
+    put(session);
+    final Session first = get(session.id());
+    final Session second = get(session.id());
+
+    assertTrue(put(first).succeeded());
+    final AsyncResult<Boolean> stale = put(second);
+
+    assertEquals("Version mismatch", stale.cause().getMessage());
+  }
+
+  @Test
+  public void testDeletedSessionIsGone() {
+    final Session session = store.createSession(60000);
+    put(session);
+
+    store.delete(session.id(), ar -> {
+    });
+
+    assertNull(get(session.id()));
+    assertEquals(0, size());
+  }
+
+  @Test
+  public void testSessionOverTheMaximumBytesIsRefused() {
+    final OffHeapSessionStore small = store(256);
+    final Session session = small.createSession(60000);
+    session.put("albums", new String(new char[512]).replace('\0', 'a'));
+
+    final AtomicReference<AsyncResult<Boolean>> result = new AtomicReference<>();
+    small.put(session, result::set);
+
+    assertEquals("Session store full", result.get().cause().getMessage());
+    small.close();
+  }
+
+  @Test
+  public void testExpiredSessionIsNotHandedOut() throws InterruptedException {
+    final Session session = store.createSession(1);
+    put(session);
+
+    Thread.sleep(10);
+
+    assertNull(get(session.id()));
+  }
+
+  private OffHeapSessionStore store(long maxBytes) {
+    // sessions are shared by store name, every store of a test has its own
+    return new OffHeapSessionStore(vertx, UUID.randomUUID().toString(), maxBytes, 60000);
+  }
+
+  private AsyncResult<Boolean> put(Session session) {
+    final AtomicReference<AsyncResult<Boolean>> result = new AtomicReference<>();
+    store.put(session, result::set);
+    return result.get();
+  }
+
+  private Session get(String id) {
+    final AtomicReference<Session> session = new AtomicReference<>();
+    store.get(id, ar -> session.set(ar.result()));
+    return session.get();
+  }
+
+  private int size() {
+    final AtomicReference<Integer> size = new AtomicReference<>();
+    store.size(ar -> size.set(ar.result()));
+    return size.get();
+  }
+}
@@ -0,0 +1,144 @@
+package tech.pinhole.service.kafka;
+
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.utils.Utils;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link AlbumPartitioner}.
+ */
+public class AlbumPartitionerTest {
+
+  private static final String TOPIC = "album_data";
+  private static final Node BROKER = new Node(0, "localhost", 9092);
+
+  @Test
+  public void testAlbumIsHashedOverTheAlbumPartitions() {
+    AlbumPartitioner partitioner = partitioner(4, 1000);
+    Cluster cluster = cluster(12, -1);
+
+    for (int album = 0; album < 100; album++) {
+      byte[] key = key("album_" + album);
+      assertEquals(Utils.toPositive(Utils.murmur2(key)) % 4, partition(partitioner, key, cluster));
+    }
+  }
+
+  @Test
+  public void testAlbumPartitionsAreCappedAtThePartitionsOfTheTopic() {
+    AlbumPartitioner partitioner = partitioner(100, 1000);
+    Cluster cluster = cluster(12, -1);
+
+    for (int album = 0; album < 100; album++) {
+      byte[] key = key("album_" + album);
+      assertEquals(Utils.toPositive(Utils.murmur2(key)) % 12, partition(partitioner, key, cluster));
+    }
+  }
+
+  @Test
+  public void testAlbumStaysOnItsPartitionWhenAPartitionIsUnavailable() {
+    AlbumPartitioner partitioner = partitioner(12, 1000);
+    byte[] key = key("album_1");
+    int partition = partition(partitioner, key, cluster(12, -1));
+
+    assertEquals(partition, partition(partitioner, key, cluster(12, partition)));
+  }
+
+  @Test
+  public void testUnkeyedRecordsStickToAPartitionForTheStickyRecords() {
+    AlbumPartitioner partitioner = partitioner(12, 3);
+    Cluster cluster = cluster(12, -1);
+
+    List<Integer> partitions = new ArrayList<>();
+    for (int record = 0; record < 300; record++) {
+      partitions.add(partition(partitioner, null, cluster));
+    }
+
+    // a partition is drawn for every 3 records
+    for (int first = 0; first < partitions.size(); first += 3) {
+      assertEquals(partitions.get(first), partitions.get(first + 1));
+      assertEquals(partitions.get(first), partitions.get(first + 2));
+    }
+    // 100 draws do not all pick the first one
+    assertTrue(new HashSet<>(partitions).size() > 1);
+  }
+
+  @Test
+  public void testUnkeyedRecordsOnlyGoToAvailablePartitions() {
+    AlbumPartitioner partitioner = partitioner(12, 1);
+    Cluster cluster = cluster(2, 0);
+
+    for (int record = 0; record < 20; record++) {
+      assertEquals(1, partition(partitioner, null, cluster));
+    }
+  }
+
+  @Test
+  public void testUnkeyedRecordsGoToAnyPartitionWhenNoneIsAvailable() {
+    AlbumPartitioner partitioner = partitioner(12, 1);
+    List<PartitionInfo> partitions = new ArrayList<>();
+    for (int partition = 0; partition < 3; partition++) {
+      partitions.add(new PartitionInfo(TOPIC, partition, null, new Node[0], new Node[0]));
+    }
+    Cluster cluster = new Cluster("pinhole", Collections.singletonList(BROKER), partitions,
+      Collections.<String>emptySet(), Collections.<String>emptySet());
+
+    Set<Integer> used = new HashSet<>();
+    for (int record = 0; record < 100; record++) {
+      used.add(partition(partitioner, null, cluster));
+    }
+
+    assertEquals(new HashSet<>(Arrays.asList(0, 1, 2)), used);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testAlbumPartitionsMustBePositive() {
+    partitioner(0, 1000);
+  }
+
+  private static AlbumPartitioner partitioner(int albumPartitions, int stickyRecords) {
+    Map<String, Object> configs = new HashMap<>();
+    configs.put(AlbumPartitioner.ALBUM_PARTITIONS_CONFIG, albumPartitions);
+    // as read from a properties file
+    configs.put(AlbumPartitioner.STICKY_RECORDS_CONFIG, String.valueOf(stickyRecords));
+    AlbumPartitioner partitioner = new AlbumPartitioner();
+    partitioner.configure(configs);
+    return partitioner;
+  }
+
+  /**
+   * @param unavailable partition without leader, -1 for none.
+   */
+  private static Cluster cluster(int partitionCount, int unavailable) {
+    List<PartitionInfo> partitions = new ArrayList<>();
+    for (int partition = 0; partition < partitionCount; partition++) {
+      Node leader = partition == unavailable ? null : BROKER;
+      partitions.add(new PartitionInfo(TOPIC, partition, leader, new Node[]{BROKER}, new Node[]{BROKER}));
+    }
+    return new Cluster("pinhole", Collections.singletonList(BROKER), partitions,
+      Collections.<String>emptySet(), Collections.<String>emptySet());
+  }
+
+  private static int partition(AlbumPartitioner partitioner, byte[] key, Cluster cluster) {
+    return partitioner.partition(TOPIC, key == null ? null : new String(key, StandardCharsets.UTF_8), key,
+      "{}", new byte[0], cluster);
+  }
+
+  private static byte[] key(String albumId) {
+    return albumId.getBytes(StandardCharsets.UTF_8);
+  }
+}
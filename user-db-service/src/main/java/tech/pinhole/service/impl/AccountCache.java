@@ -0,0 +1,182 @@
+package tech.pinhole.service.impl;
+
+import io.vertx.core.json.JsonObject;
+import tech.pinhole.service.services.Account;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the accounts read by id, phone number and email.
+ * <p>
+ * An account is cached once and indexed by its three keys, so whichever key a change names, the account is dropped
+ * for all of them, see {@link #invalidate(JsonObject)}. Entries expire after a TTL, once over the maximum entries the
+ * least recently used ones are evicted. An account read while an invalidation came in is not cached, it may predate
+ * the change. Accounts are held as JSON and handed out as new {@link Account}s, callers may modify them.
+ * </p>
+ * <p>
+ * Thread safe.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+class AccountCache {
+
+    private final int maxEntries;
+    private final long ttlMs;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private final Map<String, String> idsByKey = new HashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private long generation;
+
+    AccountCache(int maxEntries, long ttlMs) {
+        this.maxEntries = maxEntries;
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * @param key {@code id:}, {@code phoneNumber:} or {@code email:} followed by the value.
+     * @return cached account or null if unknown or expired.
+     */
+    Account get(String key) {
+        synchronized (entries) {
+            final String id = idsByKey.get(key);
+            final Entry entry = id == null ? null : entries.get(id);
+            if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+                hits.incrementAndGet();
+                return new Account(entry.account);
+            }
+            if (entry != null) {
+                remove(id);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * @return generation to hand back to {@link #put(JsonObject, long)} with the account read next.
+     */
+    long generation() {
+        synchronized (entries) {
+            return generation;
+        }
+    }
+
+    /**
+     * Caches an account, unless an invalidation came in since the generation was read.
+     *
+     * @param account    account read, with its id.
+     * @param generation generation read before the account was read.
+     */
+    void put(JsonObject account, long generation) {
+        final List<String> keys = keys(account);
+        if (keys.isEmpty() || !keys.get(0).startsWith("id:")) {
+            return;
+        }
+        final Entry entry = new Entry(account.copy(), keys, System.currentTimeMillis() + ttlMs);
+        synchronized (entries) {
+            if (generation != this.generation) {
+                return;
+            }
+            final String id = keys.get(0);
+            remove(id);
+            entries.put(id, entry);
+            keys.forEach(key -> idsByKey.put(key, id));
+
+            for (Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+                 entries.size() > maxEntries && eldest.hasNext(); ) {
+                final Map.Entry<String, Entry> evicted = eldest.next();
+                eldest.remove();
+                forget(evicted.getKey(), evicted.getValue());
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Drops an account, under all its keys.
+     *
+     * @param change changed account, any of its {@code id}, {@code phoneNumber} and {@code email}, or {@code all}
+     *               when every account changed.
+     */
+    void invalidate(JsonObject change) {
+        invalidations.incrementAndGet();
+        synchronized (entries) {
+            generation++;
+            if (change.getBoolean("all", false)) {
+                entries.clear();
+                idsByKey.clear();
+                return;
+            }
+            for (String key : keys(change)) {
+                final String id = idsByKey.get(key);
+                if (id != null) {
+                    remove(id);
+                }
+            }
+        }
+    }
+
+    private void remove(String id) {
+        final Entry removed = entries.remove(id);
+        if (removed != null) {
+            forget(id, removed);
+        }
+    }
+
+    private void forget(String id, Entry entry) {
+        entry.keys.forEach(key -> idsByKey.remove(key, id));
+    }
+
+    /**
+     * @return size, hits, misses, evictions and invalidations of the cache.
+     */
+    JsonObject metrics() {
+        final int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new JsonObject()
+                .put("size", size)
+                .put("maxEntries", maxEntries)
+                .put("hits", hits.get())
+                .put("misses", misses.get())
+                .put("evictions", evictions.get())
+                .put("invalidations", invalidations.get());
+    }
+
+    /**
+     * @param account account, or change of accounts.
+     * @return the keys of the account, its id first when known.
+     */
+    static List<String> keys(JsonObject account) {
+        final List<String> keys = new ArrayList<>(3);
+        for (String field : new String[]{"id", "phoneNumber", "email"}) {
+            if (account.getValue(field) != null) {
+                keys.add(field + ":" + account.getValue(field));
+            }
+        }
+        return keys;
+    }
+
+    private static final class Entry {
+        private final JsonObject account;
+        private final List<String> keys;
+        private final long expiresAt;
+
+        private Entry(JsonObject account, List<String> keys, long expiresAt) {
+            this.account = account;
+            this.keys = keys;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package tech.pinhole.service.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import tech.pinhole.service.constant.PinholeServiceAddressConstants;
+import tech.pinhole.service.services.Account;
+import tech.pinhole.service.services.AccountService;
+import tech.pinhole.service.services.EmailToken;
+import tech.pinhole.service.services.Otp;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * {@link AccountService} reading accounts by id, phone number and email through an {@link AccountCache}.
+ * <p>
+ * The writes through this service drop the accounts they change before handing over their result, so a caller reads
+ * its own writes. The changes of accounts are published by the account service, the caches of the other JVMs drop
+ * the changed accounts when they receive them.
+ * </p>
+ * <p>
+ * An account is cached as read by the account service, which reads the accounts changed lately from the primary,
+ * so a fill does not cache what a lagging replica still holds. The cache is local to the JVM: a map shared by the
+ * cluster would be filled asynchronously by every JVM, a fill from before a change could land after the change
+ * dropped the account and be served until it expires. Authentication and lists of accounts are not cached.
+ * </p>
+ *
+ * @author tosheer.kalra
+ */
+public class CachingAccountService implements AccountService {
+
+    private static final String USER_ACCOUNT_CACHE_MAX_ENTRIES = "user.account.cache.max.entries";
+    private static final String USER_ACCOUNT_CACHE_TTL_MS = "user.account.cache.ttl.ms";
+
+    private final AccountService delegate;
+    private final AccountCache cache;
+
+    /**
+     * @param vertx    vertx.
+     * @param config   config of the cache.
+     * @param delegate service reading and writing the accounts.
+     */
+    public CachingAccountService(Vertx vertx, JsonObject config, AccountService delegate) {
+        this.delegate = delegate;
+        this.cache = new AccountCache(config.getInteger(USER_ACCOUNT_CACHE_MAX_ENTRIES, 100000),
+                config.getLong(USER_ACCOUNT_CACHE_TTL_MS, 300000L));
+
+        vertx.eventBus().<JsonObject>consumer(PinholeServiceAddressConstants.USER_ACCOUNT_CHANGED_ADDRESS,
+                message -> cache.invalidate(message.body()));
+    }
+
+    @Override
+    public AccountService initializePersistence(Handler<AsyncResult<Void>> resultHandler) {
+        delegate.initializePersistence(resultHandler);
+        return this;
+    }
+
+    @Override
+    public AccountService addAccount(Account account, Handler<AsyncResult<Void>> resultHandler) {
+        delegate.addAccount(account, invalidating(new JsonObject()
+                .put("phoneNumber", account.getPhoneNumber())
+                .put("email", account.getEmail()), resultHandler));
+        return this;
+    }
+
+    @Override
+    public AccountService retrieveAccount(String id, Handler<AsyncResult<Account>> resultHandler) {
+        cached("id:" + id, id, delegate::retrieveAccount, resultHandler);
+        return this;
+    }
+
+    @Override
+    public AccountService retrieveByPhoneNumber(String phoneNumber, Handler<AsyncResult<Account>> resultHandler) {
+        cached("phoneNumber:" + phoneNumber, phoneNumber, delegate::retrieveByPhoneNumber, resultHandler);
+        return this;
+    }
+
+    @Override
+    public AccountService retrieveByEmail(String email, Handler<AsyncResult<Account>> resultHandler) {
+        cached("email:" + email, email, delegate::retrieveByEmail, resultHandler);
+        return this;
+    }
+
+    @Override
+    public AccountService retrieveAllAccounts(Handler<AsyncResult<List<Account>>> resultHandler) {
+        delegate.retrieveAllAccounts(resultHandler);
+        return this;
+    }
+
+    @Override
+    public AccountService retrieveAccountsAfter(long lastId, int limit,
+                                                Handler<AsyncResult<List<Account>>> resultHandler) {
+        delegate.retrieveAccountsAfter(lastId, limit, resultHandler);
+        return this;
+    }
+
+    @Override
+    public AccountService confirmUserPhoneNumber(Otp otp, Handler<AsyncResult<Void>> resultHandler) {
+        delegate.confirmUserPhoneNumber(otp, invalidating(
+                new JsonObject().put("phoneNumber", otp.getPhoneNumber()), resultHandler));
+        return this;
+    }
+
+    @Override
+    public AccountService confirmUserEmail(EmailToken emailConfirm, Handler<AsyncResult<Void>> resultHandler) {
+        delegate.confirmUserEmail(emailConfirm, invalidating(
+                new JsonObject().put("email", emailConfirm.getEmail()), resultHandler));
+        return this;
+    }
+
+    @Override
+    public AccountService deleteAccount(String id, Handler<AsyncResult<Void>> resultHandler) {
+        delegate.deleteAccount(id, invalidating(new JsonObject().put("id", id), resultHandler));
+        return this;
+    }
+
+    @Override
+    public AccountService deleteAllAccounts(Handler<AsyncResult<Void>> resultHandler) {
+        delegate.deleteAllAccounts(invalidating(new JsonObject().put("all", true), resultHandler));
+        return this;
+    }
+
+    @Override
+    public AccountService authemnticateAccountForEmail(String email, String password,
+                                                       Handler<AsyncResult<Account>> resultHandler) {
+        delegate.authemnticateAccountForEmail(email, password, resultHandler);
+        return this;
+    }
+
+    @Override
+    public AccountService authemnticateAccountForPhoneNumber(String phonenumber, String password,
+                                                             Handler<AsyncResult<Account>> resultHandler) {
+        delegate.authemnticateAccountForPhoneNumber(phonenumber, password, resultHandler);
+        return this;
+    }
+
+    /**
+     * @return size, hits, misses, evictions and invalidations of the cache.
+     */
+    public JsonObject metrics() {
+        return cache.metrics();
+    }
+
+    /**
+     * Reads the account from the cache, then from the account service. An account read while an invalidation came in
+     * is not cached, it may predate the change.
+     */
+    private void cached(String key, String value, BiConsumer<String, Handler<AsyncResult<Account>>> read,
+                        Handler<AsyncResult<Account>> resultHandler) {
+        final Account cached = cache.get(key);
+        if (cached != null) {
+            resultHandler.handle(Future.succeededFuture(cached));
+            return;
+        }
+        final long generation = cache.generation();
+        read.accept(value, ar -> {
+            if (ar.succeeded() && ar.result() != null) {
+                cache.put(ar.result().toJson(), generation);
+            }
+            resultHandler.handle(ar);
+        });
+    }
+
+    /**
+     * Drops the accounts changed by a successful write before handing over the result of the write.
+     */
+    private Handler<AsyncResult<Void>> invalidating(JsonObject change, Handler<AsyncResult<Void>> resultHandler) {
+        return ar -> {
+            if (ar.succeeded()) {
+                cache.invalidate(change);
+            }
+            resultHandler.handle(ar);
+        };
+    }
+}
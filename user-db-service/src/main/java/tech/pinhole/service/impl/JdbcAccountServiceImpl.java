@@ -9,10 +9,14 @@ import io.vertx.core.json.JsonObject;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import tech.pinhole.service.concurrent.SingleFlight;
+import tech.pinhole.service.constant.PinholeServiceAddressConstants;
 import tech.pinhole.service.dao.JdbcRepositoryWrapper;
+import tech.pinhole.service.dao.JdbcRowStream;
 import tech.pinhole.service.services.*;
 
 import java.time.Instant;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -27,6 +31,15 @@ public class JdbcAccountServiceImpl extends JdbcRepositoryWrapper implements Acc
     private static final String VERTX_CONFIG_ACCOUNT_OTP_TTL = "account.otp.ttl";
     private static final String VERTX_CONFIG_ACCOUNT_EMAIL_TOKEN_TTL = "account.email.token.ttl";
 
+    private final Vertx vertx;
+
+    /**
+     * Concurrent reads of the same account share one query.
+     */
+    private final SingleFlight<String, Account> accountReads = new SingleFlight<>();
+
+    private final SingleFlight<String, List<Account>> allAccountsReads = new SingleFlight<>();
+
     private OtpService otpService;
 
     private EmailTokenService emailTokenService;
@@ -37,10 +50,16 @@ public class JdbcAccountServiceImpl extends JdbcRepositoryWrapper implements Acc
 
     public JdbcAccountServiceImpl(Vertx vertx, JsonObject config) {
         super(vertx, config);
+        this.vertx = vertx;
         accountOtpTTL = config.getLong(VERTX_CONFIG_ACCOUNT_OTP_TTL, 120000L);
         accountEmailTokenTTL = config.getLong(VERTX_CONFIG_ACCOUNT_EMAIL_TOKEN_TTL, 120000L);
         otpService = new JdbcOtpServiceImpl(vertx, config);
         emailTokenService = new JdbcEmailTokenServiceImpl(vertx, config);
+
+        // the pins are local to the JVM, the accounts changed by the other JVMs are read from the primary here too,
+        // for the caches refilled after the change not to hold what a lagging replica still has
+        vertx.eventBus().<JsonObject>consumer(PinholeServiceAddressConstants.USER_ACCOUNT_CHANGED_ADDRESS,
+                message -> pinChange(message.body()));
     }
 
     @Override
@@ -63,7 +82,9 @@ public class JdbcAccountServiceImpl extends JdbcRepositoryWrapper implements Acc
                 .add(account.getFirstName())
                 .add(account.getLastName())
                 .add(account.getPassword());
-        this.executeNoResult(params, INSERT_STATEMENT, resultHandler);
+        this.executeNoResult(params, INSERT_STATEMENT, publishingChange(new JsonObject()
+                .put("phoneNumber", account.getPhoneNumber())
+                .put("email", account.getEmail()), resultHandler));
         return this;
     }
 
@@ -71,9 +92,9 @@ public class JdbcAccountServiceImpl extends JdbcRepositoryWrapper implements Acc
     public AccountService retrieveAccount(String id, Handler<AsyncResult<Account>> resultHandler) {
         logger.debug("Retrieve account request for account id: {}", id);
         JsonArray params = new JsonArray().add(id);
-        this.retrieveOne(params, FETCH_STATEMENT)
+        accountReads.execute("id:" + id, read -> this.retrieveOne(params, FETCH_STATEMENT, "id:" + id)
                 .map(option -> option.map(Account::new).orElse(null))
-                .setHandler(resultHandler);
+                .setHandler(read.completer()), resultHandler);
         return this;
     }
 
@@ -81,9 +102,10 @@ public class JdbcAccountServiceImpl extends JdbcRepositoryWrapper implements Acc
     public AccountService retrieveByPhoneNumber(String username, Handler<AsyncResult<Account>> resultHandler) {
         logger.debug("Retrieve account request for account phone: {}", username);
         JsonArray params = new JsonArray().add(username);
-        this.retrieveOne(params, FETCH_BY_PHONE_NUMBER_STATEMENT)
+        accountReads.execute("phoneNumber:" + username, read -> this
+                .retrieveOne(params, FETCH_BY_PHONE_NUMBER_STATEMENT, "phoneNumber:" + username)
                 .map(option -> option.map(Account::new).orElse(null))
-                .setHandler(resultHandler);
+                .setHandler(read.completer()), resultHandler);
         return this;
     }
 
@@ -91,15 +113,26 @@ public class JdbcAccountServiceImpl extends JdbcRepositoryWrapper implements Acc
     public AccountService retrieveByEmail(String email, Handler<AsyncResult<Account>> resultHandler) {
         logger.debug("Retrieve account request for account email: {}", email);
         JsonArray params = new JsonArray().add(email);
-        this.retrieveOne(params, FETCH_BY_EMAIl_STATEMENT)
+        accountReads.execute("email:" + email, read -> this.retrieveOne(params, FETCH_BY_EMAIl_STATEMENT, "email:" + email)
                 .map(option -> option.map(Account::new).orElse(null))
-                .setHandler(resultHandler);
+                .setHandler(read.completer()), resultHandler);
         return this;
     }
 
     @Override
     public AccountService retrieveAllAccounts(Handler<AsyncResult<List<Account>>> resultHandler) {
-        this.retrieveAll(FETCH_ALL_STATEMENT)
+        allAccountsReads.execute(FETCH_ALL_STATEMENT, read -> this.retrieveAll(FETCH_ALL_STATEMENT)
+                .map(rawList -> rawList.stream()
+                        .map(Account::new)
+                        .collect(Collectors.toList()))
+                .setHandler(read.completer()), resultHandler);
+        return this;
+    }
+
+    @Override
+    public AccountService retrieveAccountsAfter(long lastId, int limit,
+                                                Handler<AsyncResult<List<Account>>> resultHandler) {
+        this.retrieveAfter(lastId, limit, FETCH_PAGE_AFTER_STATEMENT)
                 .map(rawList -> rawList.stream()
                         .map(Account::new)
                         .collect(Collectors.toList()))
@@ -107,6 +140,18 @@ public class JdbcAccountServiceImpl extends JdbcRepositoryWrapper implements Acc
         return this;
     }
 
+    /**
+     * Streams all accounts ordered by id, without their password, for exports over all accounts. Not part of
+     * {@link AccountService} as streams do not go through the event bus.
+     *
+     * @param resultHandler handler of the stream, which must be consumed or closed.
+     */
+    public void streamAccounts(Handler<AsyncResult<JdbcRowStream<Account>>> resultHandler) {
+        this.retrieveStream(new JsonArray(), STREAM_ALL_STATEMENT,
+                JdbcRowStream.toJson(STREAM_ALL_COLUMNS).andThen(Account::new))
+                .setHandler(resultHandler);
+    }
+
     @Override
     public AccountService confirmUserPhoneNumber(Otp otp, Handler<AsyncResult<Void>> resultHandler) {
         logger.debug("Account confirmation request for account with phonenumber: {}", otp.getPhoneNumber());
@@ -123,7 +168,8 @@ public class JdbcAccountServiceImpl extends JdbcRepositoryWrapper implements Acc
                             .add(true)
                             .add(currentTime)
                             .add(otp.getPhoneNumber());
-                    this.executeNoResult(params, UPDATE_PHONENUMBER_STATEMENT, resultHandler);
+                    this.executeNoResult(params, UPDATE_PHONENUMBER_STATEMENT, publishingChange(
+                            new JsonObject().put("phoneNumber", otp.getPhoneNumber()), resultHandler));
                 } else {
                     logger.info("Account confirmation request failed for account with otp: {}", otp);
                     resultHandler.handle(Future.failedFuture("Otp does not match."));
@@ -148,7 +194,8 @@ public class JdbcAccountServiceImpl extends JdbcRepositoryWrapper implements Acc
                     JsonArray params = new JsonArray()
                             .add(true)
                             .add(emailToken.getEmail());
-                    this.executeNoResult(params, UPDATE_EMAIL_CONFIRM_STATEMENT, resultHandler);
+                    this.executeNoResult(params, UPDATE_EMAIL_CONFIRM_STATEMENT, publishingChange(
+                            new JsonObject().put("email", emailToken.getEmail()), resultHandler));
                 } else {
                     logger.info("Email verification request failed for account with email token :{}", emailToken);
                     resultHandler.handle(Future.failedFuture("token does not match."));
@@ -161,14 +208,21 @@ public class JdbcAccountServiceImpl extends JdbcRepositoryWrapper implements Acc
     @Override
     public AccountService deleteAccount(String id, Handler<AsyncResult<Void>> resultHandler) {
         logger.debug("Delete account request for account with id: {}", id);
-        this.removeOne(id, DELETE_STATEMENT, resultHandler);
+        // the keys are gone once deleted, they are read first
+        accountKeys(new JsonObject().put("id", id)).setHandler(keys ->
+                this.removeOne(id, DELETE_STATEMENT, ar -> {
+                    if (ar.succeeded()) {
+                        publishChanges(keys.result());
+                    }
+                    resultHandler.handle(ar);
+                }));
         return this;
     }
 
     @Override
     public AccountService deleteAllAccounts(Handler<AsyncResult<Void>> resultHandler) {
         logger.debug("Delete all account request received.");
-        this.removeAll(DELETE_ALL_STATEMENT, resultHandler);
+        this.removeAll(DELETE_ALL_STATEMENT, publishingChange(new JsonObject().put("all", true), resultHandler));
         return this;
     }
 
@@ -177,7 +231,7 @@ public class JdbcAccountServiceImpl extends JdbcRepositoryWrapper implements Acc
             String email, String password, Handler<AsyncResult<Account>> resultHandler) {
         logger.debug("Authentication request received for account with email {}.", email);
         JsonArray params = new JsonArray().add(email).add(password);
-        this.retrieveOne(params, AUTHETICATE_USER_WITH_EMAIL_STATEMENT)
+        this.retrieveOne(params, AUTHETICATE_USER_WITH_EMAIL_STATEMENT, "email:" + email)
                 .map(option -> option.map(account -> {
                     logger.debug("Account found {}.", account);
                     return new Account(account);
@@ -191,7 +245,7 @@ public class JdbcAccountServiceImpl extends JdbcRepositoryWrapper implements Acc
             String phonenumber, String password, Handler<AsyncResult<Account>> resultHandler) {
         logger.debug("Authentication request received for account with phonenumber {}.", phonenumber);
         JsonArray params = new JsonArray().add(phonenumber).add(password);
-        this.retrieveOne(params, AUTHETICATE_USER_WITH_PHONENUMBER_STATEMENT)
+        this.retrieveOne(params, AUTHETICATE_USER_WITH_PHONENUMBER_STATEMENT, "phoneNumber:" + phonenumber)
                 .map(option -> option.map(account -> {
                     logger.debug("Account found {}.", account);
                     return new Account(account);
@@ -200,6 +254,97 @@ public class JdbcAccountServiceImpl extends JdbcRepositoryWrapper implements Acc
         return this;
     }
 
+    /**
+     * Publishes a change of accounts once it is written, for the caches of accounts to drop what it touched, detaches
+     * the reads in flight from the next callers and pins the reads of the changed account to the primary.
+     *
+     * @param change        changed account, any of its id, phoneNumber and email, or all when every account changed.
+     * @param resultHandler result handler of the change.
+     * @return result handler publishing the change before handing over the result.
+     */
+    private Handler<AsyncResult<Void>> publishingChange(JsonObject change, Handler<AsyncResult<Void>> resultHandler) {
+        return ar -> {
+            if (ar.failed()) {
+                resultHandler.handle(ar);
+                return;
+            }
+            accountKeys(change).setHandler(keys -> {
+                publishChanges(keys.result());
+                resultHandler.handle(ar);
+            });
+        };
+    }
+
+    /**
+     * Every key of the accounts a change names, read from the primary. A change names the key it was written by, the
+     * account is read and cached by any of its keys, so all of them are pinned and published. Never fails: when the
+     * keys can not be read, the change stands for itself.
+     *
+     * @param change changed account, any of its id, phoneNumber and email, or all when every account changed.
+     * @return the id, phoneNumber and email of every account the change names.
+     */
+    private Future<List<JsonObject>> accountKeys(JsonObject change) {
+        Future<List<JsonObject>> keys = Future.future();
+        if (change.getBoolean("all", false)) {
+            keys.complete(Collections.singletonList(change));
+            return keys;
+        }
+        String field = change.containsKey("id") ? "id" : change.containsKey("phoneNumber") ? "phoneNumber" : "email";
+        JsonArray params = new JsonArray().add(change.getValue(field));
+        getConnection().compose(connection -> {
+            Future<List<JsonObject>> rows = Future.future();
+            connection.queryWithParams(FETCH_KEYS_STATEMENT + field + " = ?", params, r -> {
+                connection.close();
+                if (r.succeeded()) {
+                    rows.complete(r.result().getRows());
+                } else {
+                    rows.fail(r.cause());
+                }
+            });
+            return rows;
+        }).setHandler(rows -> {
+            if (rows.failed()) {
+                logger.warn("Could not read the keys of the changed account {}", change, rows.cause());
+                keys.complete(Collections.singletonList(change));
+            } else if (rows.result().isEmpty()) {
+                // no account left by that key, the change stands for itself
+                keys.complete(Collections.singletonList(change));
+            } else {
+                keys.complete(rows.result());
+            }
+        });
+        return keys;
+    }
+
+    /**
+     * Publishes changes written: detaches the reads in flight, pins the changed keys to the primary and tells the
+     * caches of accounts.
+     */
+    private void publishChanges(List<JsonObject> changes) {
+        // reads in flight may predate the change, later reads make their own queries
+        accountReads.forgetAll();
+        allAccountsReads.forgetAll();
+        for (JsonObject change : changes) {
+            pinChange(change);
+            vertx.eventBus().publish(PinholeServiceAddressConstants.USER_ACCOUNT_CHANGED_ADDRESS, change);
+        }
+    }
+
+    /**
+     * Read your writes: reads of the changed account, by any key the change names, go to the primary for a while.
+     */
+    private void pinChange(JsonObject change) {
+        if (change.getBoolean("all", false)) {
+            pinAllToPrimary();
+            return;
+        }
+        for (String key : new String[]{"id", "phoneNumber", "email"}) {
+            if (change.getValue(key) != null) {
+                pinToPrimary(key + ":" + change.getValue(key));
+            }
+        }
+    }
+
     // SQL statement
 
     private static final String CREATE_STATEMENT = "CREATE TABLE IF NOT EXISTS `user_account` (\n" +
@@ -220,6 +365,16 @@ public class JdbcAccountServiceImpl extends JdbcRepositoryWrapper implements Acc
     private static final String FETCH_BY_PHONE_NUMBER_STATEMENT = "SELECT * FROM user_account WHERE phoneNumber = ?";
     private static final String FETCH_BY_EMAIl_STATEMENT = "SELECT * FROM user_account WHERE email = ?";
     private static final String FETCH_ALL_STATEMENT = "SELECT * FROM user_account";
+    private static final String FETCH_KEYS_STATEMENT = "SELECT id, phoneNumber, email FROM user_account WHERE ";
+    /**
+     * Columns of the accounts listed in pages or streams, all but the password.
+     */
+    private static final String[] STREAM_ALL_COLUMNS = {"id", "phoneNumber", "email", "firstName", "lastName",
+            "isPhoneNumberConfirmed", "isEmailConfirmed", "confirmationDate"};
+    private static final String FETCH_PAGE_AFTER_STATEMENT = "SELECT " + String.join(", ", STREAM_ALL_COLUMNS)
+            + " FROM user_account WHERE id > ? ORDER BY id LIMIT ?";
+    private static final String STREAM_ALL_STATEMENT = "SELECT " + String.join(", ", STREAM_ALL_COLUMNS)
+            + " FROM user_account ORDER BY id";
     private static final String UPDATE_PHONENUMBER_STATEMENT = "UPDATE user_account\n" +
             "SET isPhoneNumberConfirmed = ?,\n" +
             "confirmationDate = ?\n" +
@@ -7,6 +7,7 @@ import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import tech.pinhole.service.dao.BatchedInsert;
 import tech.pinhole.service.dao.JdbcRepositoryWrapper;
 import tech.pinhole.service.services.Account;
 import tech.pinhole.service.services.EmailToken;
@@ -20,8 +21,11 @@ public class JdbcEmailTokenServiceImpl extends JdbcRepositoryWrapper implements
 
     private static final Logger logger = LoggerFactory.getLogger(JdbcEmailTokenServiceImpl.class);
 
+    private final BatchedInsert inserts;
+
     public JdbcEmailTokenServiceImpl(Vertx vertx, JsonObject config) {
         super(vertx, config);
+        this.inserts = batchedInsert(INSERT_STATEMENT, 3);
     }
 
     @Override
@@ -41,7 +45,13 @@ public class JdbcEmailTokenServiceImpl extends JdbcRepositoryWrapper implements
         JsonArray params = new JsonArray().add(emailToken.getEmail())
                 .add(emailToken.getToken())
                 .add(emailToken.getCreationTime());
-        this.executeNoResult(params, INSERT_STATEMENT, resultHandler);
+        inserts.add(params, ar -> {
+            if (ar.succeeded()) {
+                // the last token is read right after, by the confirmation
+                pinToPrimary("email:" + emailToken.getEmail());
+            }
+            resultHandler.handle(ar);
+        });
         return this;
     }
 
@@ -49,7 +59,7 @@ public class JdbcEmailTokenServiceImpl extends JdbcRepositoryWrapper implements
     public EmailTokenService retrieveLastToken(String email, Handler<AsyncResult<EmailToken>> resultHandler) {
         logger.debug("Retrieve last email token request for email: {}", email);
         JsonArray params = new JsonArray().add(email);
-        this.retrieveOne(params, FIND_USER_LAST_TOKEN)
+        this.retrieveOne(params, FIND_USER_LAST_TOKEN, "email:" + email)
                 .map(option -> option.map(emailToken -> {
                     logger.debug("Retrieve last email token found email token: {}", emailToken);
                     return new EmailToken(emailToken);
@@ -65,7 +75,7 @@ public class JdbcEmailTokenServiceImpl extends JdbcRepositoryWrapper implements
             "  `creationTime` bigint(20) NOT NULL,\n" +
             "  PRIMARY KEY (`email`),\n" +
             "  UNIQUE KEY `phone_UNIQUE` (`email`) )";
-    private static final String INSERT_STATEMENT = "INSERT INTO user_email_token (email, token, creationTime) VALUES (?, ?, ?)";
+    private static final String INSERT_STATEMENT = "INSERT INTO user_email_token (email, token, creationTime) VALUES";
     private static final String FIND_USER_LAST_TOKEN = "SELECT * FROM user_email_token WHERE email = ? ORDER BY creationTime DESC LIMIT 1";
 
 }
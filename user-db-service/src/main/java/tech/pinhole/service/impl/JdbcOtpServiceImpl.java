@@ -7,6 +7,7 @@ import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import tech.pinhole.service.dao.BatchedInsert;
 import tech.pinhole.service.dao.JdbcRepositoryWrapper;
 import tech.pinhole.service.services.Account;
 import tech.pinhole.service.services.Otp;
@@ -19,8 +20,11 @@ public class JdbcOtpServiceImpl extends JdbcRepositoryWrapper implements OtpServ
 
     private static final Logger logger = LoggerFactory.getLogger(JdbcEmailTokenServiceImpl.class);
 
+    private final BatchedInsert inserts;
+
     public JdbcOtpServiceImpl(Vertx vertx, JsonObject config) {
         super(vertx, config);
+        this.inserts = batchedInsert(INSERT_STATEMENT, 3);
     }
 
     @Override
@@ -40,7 +44,13 @@ public class JdbcOtpServiceImpl extends JdbcRepositoryWrapper implements OtpServ
         JsonArray params = new JsonArray().add(otp.getPhoneNumber())
                 .add(otp.getOtp())
                 .add(otp.getCreationTime());
-        this.executeNoResult(params, INSERT_STATEMENT, resultHandler);
+        inserts.add(params, ar -> {
+            if (ar.succeeded()) {
+                // the last otp is read right after, by the confirmation
+                pinToPrimary("phoneNumber:" + otp.getPhoneNumber());
+            }
+            resultHandler.handle(ar);
+        });
         return this;
     }
 
@@ -48,7 +58,7 @@ public class JdbcOtpServiceImpl extends JdbcRepositoryWrapper implements OtpServ
     public OtpService retrieveLastOtp(String phoneNumber, Handler<AsyncResult<Otp>> resultHandler) {
         logger.debug("Retrieve last otp request for phonenumber: {}", phoneNumber);
         JsonArray params = new JsonArray().add(phoneNumber);
-        this.retrieveOne(params, FIND_USER_LAST_OTP)
+        this.retrieveOne(params, FIND_USER_LAST_OTP, "phoneNumber:" + phoneNumber)
                 .map(option -> option.map(otp -> {
                     logger.debug("Retrieve last otp found email token: {}", otp);
                     return new Otp(otp);
@@ -64,7 +74,7 @@ public class JdbcOtpServiceImpl extends JdbcRepositoryWrapper implements OtpServ
             "  `creationTime` bigint(20) NOT NULL,\n" +
             "  PRIMARY KEY (`phoneNumber`),\n" +
             "  UNIQUE KEY `phone_UNIQUE` (`phoneNumber`) )";
-    private static final String INSERT_STATEMENT = "INSERT INTO user_otp (phoneNumber, otp, creationTime) VALUES (?, ?, ?)";
+    private static final String INSERT_STATEMENT = "INSERT INTO user_otp (phoneNumber, otp, creationTime) VALUES";
 
     private static final String FIND_USER_LAST_OTP = "SELECT * FROM user_otp WHERE phoneNumber = ? ORDER BY creationTime DESC LIMIT 1";
 
@@ -1,16 +1,22 @@
 package tech.pinhole.service.rest.api;
 
 import io.vertx.core.Future;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import tech.pinhole.service.constant.PinholeServiceNameConstants;
+import tech.pinhole.service.dao.JdbcPools;
+import tech.pinhole.service.http.JsonBuffers;
 import tech.pinhole.service.services.*;
 import tech.pinhole.service.impl.JdbcAccountServiceImpl;
 import tech.pinhole.service.impl.JdbcOtpServiceImpl;
 import tech.pinhole.service.verticle.RestAPIVerticle;
 
+import java.util.Optional;
+
 /**
  * @author piyush.goyal
  */
@@ -20,7 +26,10 @@ public class RestUserAccountVerticle extends RestAPIVerticle {
     private static final String VERTX_CONFIG_USER_ACCOUNT_SERVICE_REST_HOST = "user.account.service.rest.host";
     private static final String VERTX_CONFIG_USER_ACCOUNT_SERVICE_REST_PORT = "user.account.service.rest.port";
 
-    private AccountService accountService;
+    private static final String APPLICATION_NDJSON = "application/x-ndjson";
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private JdbcAccountServiceImpl accountService;
     private OtpService otpService;
 
     private String host;
@@ -61,6 +70,9 @@ public class RestUserAccountVerticle extends RestAPIVerticle {
         router.get("/getUser").handler(this::retrieveOperations);
         router.post("/confirmUser").handler(this::confirmUser);
         router.post("/addOtp").handler(this::addOtp);
+        router.get("/accounts").handler(this::retrieveAccountsPage);
+        router.get("/accounts/export").handler(this::exportAccounts);
+        router.get("/metrics/jdbc").handler(context -> sendJson(context, 200, JdbcPools.metrics()));
 
         return createHttpServer(router, host, port);
     }
@@ -77,6 +89,49 @@ public class RestUserAccountVerticle extends RestAPIVerticle {
         accountService.retrieveByPhoneNumber(phone, resultHandlerNonEmpty(context));
     }
 
+    /**
+     * Page of accounts after the id of the last account of the previous page, `?after=<id>&limit=<n>`.
+     */
+    private void retrieveAccountsPage(RoutingContext context) {
+        final long after;
+        final int limit;
+        try {
+            after = Long.parseLong(Optional.ofNullable(context.request().getParam("after")).orElse("0"));
+            limit = Integer.parseInt(Optional.ofNullable(context.request().getParam("limit")).orElse("100"));
+        } catch (NumberFormatException e) {
+            badRequest(context, "invalid_page");
+            return;
+        }
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            badRequest(context, "invalid_page");
+            return;
+        }
+        accountService.retrieveAccountsAfter(after, limit, resultHandler(context));
+    }
+
+    /**
+     * All accounts, one JSON object a line, streamed as they are read and only as fast as the client reads them.
+     */
+    private void exportAccounts(RoutingContext context) {
+        final HttpServerResponse response = context.response();
+        accountService.streamAccounts(resultHandler(context, accounts -> {
+            response.setChunked(true).putHeader(HttpHeaders.CONTENT_TYPE, APPLICATION_NDJSON);
+            response.closeHandler(v -> accounts.close());
+            response.drainHandler(v -> accounts.resume());
+            accounts.exceptionHandler(e -> {
+                logger.error("Export of the accounts failed", e);
+                response.close();
+            });
+            accounts.endHandler(v -> response.end());
+            accounts.handler(account -> {
+                response.write(JsonBuffers.encode(account.toJson()).appendString("\n"));
+                if (response.writeQueueFull()) {
+                    accounts.pause();
+                }
+            });
+        }));
+    }
+
     private void confirmUser(RoutingContext context) {
         //to be implememented.
         context.response().setStatusCode(200).end("Yet to be impleme");
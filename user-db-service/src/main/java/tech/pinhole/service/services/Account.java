@@ -120,6 +120,6 @@ public class Account {
 
   @Override
   public String toString() {
-    return toJson().encodePrettily();
+    return toJson().encode();
   }
 }
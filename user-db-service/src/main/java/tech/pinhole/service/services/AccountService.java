@@ -78,6 +78,17 @@ public interface AccountService {
     @Fluent
     AccountService retrieveAllAccounts(Handler<AsyncResult<List<Account>>> resultHandler);
 
+    /**
+     * Retrieve a page of user accounts, ordered by id, without their password.
+     *
+     * @param lastId        id of the last account of the previous page, 0 for the first page.
+     * @param limit         maximum number of accounts of the page.
+     * @param resultHandler the result handler will be called as soon as the users have been retrieved. The async result indicates
+     *                      whether the operation was successful or not.
+     */
+    @Fluent
+    AccountService retrieveAccountsAfter(long lastId, int limit, Handler<AsyncResult<List<Account>>> resultHandler);
+
     /**
      * Confirm the account and set the confirmation date.
      *
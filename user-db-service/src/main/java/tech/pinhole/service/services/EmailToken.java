@@ -62,6 +62,6 @@ public class EmailToken {
 
     @Override
     public String toString() {
-        return toJson().encodePrettily();
+        return toJson().encode();
     }
 }
@@ -65,6 +65,6 @@ public class Otp {
 
     @Override
     public String toString() {
-        return toJson().encodePrettily();
+        return toJson().encode();
     }
 }
@@ -8,6 +8,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import tech.pinhole.service.constant.PinholeServiceAddressConstants;
 import tech.pinhole.service.constant.PinholeServiceNameConstants;
+import tech.pinhole.service.dao.JdbcPools;
+import tech.pinhole.service.impl.CachingAccountService;
 import tech.pinhole.service.impl.JdbcAccountServiceImpl;
 import tech.pinhole.service.impl.JdbcEmailTokenServiceImpl;
 import tech.pinhole.service.impl.JdbcOtpServiceImpl;
@@ -35,7 +37,9 @@ public class UserAccountVerticle extends BaseMicroserviceVerticle {
         super.start();
 
         // create the service instance
-        accountService = new JdbcAccountServiceImpl(vertx, config());
+        final CachingAccountService cachingAccountService =
+                new CachingAccountService(vertx, config(), new JdbcAccountServiceImpl(vertx, config()));
+        accountService = cachingAccountService;
         otpService = new JdbcOtpServiceImpl(vertx, config());
         emailTokenService = new JdbcEmailTokenServiceImpl(vertx, config());
 
@@ -47,6 +51,12 @@ public class UserAccountVerticle extends BaseMicroserviceVerticle {
         ProxyHelper.registerService(EmailTokenService.class, vertx, emailTokenService,
                 PinholeServiceAddressConstants.USER_EMAIL_CONFIRM_DB_EVENT_BUS_ADDRESS);
 
+        // metrics of the connection pools of this JVM
+        vertx.eventBus().consumer(PinholeServiceAddressConstants.JDBC_POOL_METRICS_ADDRESS,
+                message -> message.reply(JdbcPools.metrics()));
+        vertx.eventBus().consumer(PinholeServiceAddressConstants.USER_ACCOUNT_CACHE_METRICS_ADDRESS,
+                message -> message.reply(cachingAccountService.metrics()));
+
         // publish the service and REST endpoint in the discovery infrastructure
         Future<Void> accountEventBusServicefuture = publishEventBusService(PinholeServiceNameConstants.
                         USER_ACCOUNT_DB_EVENT_BUS_SERVICE, PinholeServiceAddressConstants.USER_ACCOUNT_DB_EVENT_BUS_ADDRESS,
@@ -0,0 +1,119 @@
+package tech.pinhole.service.impl;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test class for {@link AccountCache}.
+ */
+public class AccountCacheTest {
+
+    private final AccountCache cache = new AccountCache(100, 60000);
+
+    @Test
+    public void testAccountIsServedByEveryKey() {
+        cache.put(account(42, "+15550100"), cache.generation());
+
+        assertEquals(42L, (long) cache.get("id:42").getId());
+        assertNotNull(cache.get("phoneNumber:+15550100"));
+        assertNotNull(cache.get("email:customer@pinhole.tech"));
+        assertEquals(3L, (long) cache.metrics().getLong("hits"));
+    }
+
+    @Test
+    public void testAccountReadDuringAnInvalidationIsNotCached() {
+        long generation = cache.generation();
+        // the account changes while it is read
+        cache.invalidate(new JsonObject().put("phoneNumber", "+15550100"));
+
+        cache.put(account(42, "+15550100"), generation);
+
+        assertNull(cache.get("id:42"));
+        assertEquals(0, (int) cache.metrics().getInteger("size"));
+    }
+
+    @Test
+    public void testInvalidationOfAnotherAccountAlsoRefusesTheReadsInFlight() {
+        long generation = cache.generation();
+        cache.invalidate(new JsonObject().put("id", 7));
+
+        cache.put(account(42, "+15550100"), generation);
+
+        assertNull(cache.get("id:42"));
+        // read again after the invalidation
+        cache.put(account(42, "+15550100"), cache.generation());
+        assertNotNull(cache.get("id:42"));
+    }
+
+    @Test
+    public void testInvalidationOfAnyKeyDropsTheAccountUnderAllItsKeys() {
+        for (JsonObject change : new JsonObject[]{new JsonObject().put("id", "42"),
+                new JsonObject().put("phoneNumber", "+15550100"),
+                new JsonObject().put("email", "customer@pinhole.tech"),
+                new JsonObject().put("all", true)}) {
+            cache.put(account(42, "+15550100"), cache.generation());
+
+            cache.invalidate(change);
+
+            assertNull(change.encode(), cache.get("id:42"));
+            assertNull(change.encode(), cache.get("phoneNumber:+15550100"));
+            assertNull(change.encode(), cache.get("email:customer@pinhole.tech"));
+        }
+    }
+
+    @Test
+    public void testInvalidationOfAnotherAccountKeepsTheAccount() {
+        cache.put(account(42, "+15550100"), cache.generation());
+
+        cache.invalidate(new JsonObject().put("id", 7));
+
+        assertNotNull(cache.get("id:42"));
+    }
+
+    @Test
+    public void testAccountWithoutIdIsNotCached() {
+        cache.put(new JsonObject().put("phoneNumber", "+15550100"), cache.generation());
+
+        assertNull(cache.get("phoneNumber:+15550100"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedAccountIsEvictedOverTheMaximum() {
+        AccountCache small = new AccountCache(2, 60000);
+        small.put(account(1, "+15550101"), small.generation());
+        small.put(account(2, "+15550102"), small.generation());
+        small.get("id:1");
+
+        small.put(account(3, "+15550103"), small.generation());
+
+        assertNotNull(small.get("id:1"));
+        assertNull(small.get("id:2"));
+        // evicted under all its keys
+        assertNull(small.get("phoneNumber:+15550102"));
+        assertNotNull(small.get("id:3"));
+        assertEquals(1L, (long) small.metrics().getLong("evictions"));
+    }
+
+    @Test
+    public void testExpiredAccountIsNotServed() throws InterruptedException {
+        AccountCache shortLived = new AccountCache(100, 1);
+        shortLived.put(account(42, "+15550100"), shortLived.generation());
+
+        Thread.sleep(10);
+
+        assertNull(shortLived.get("id:42"));
+    }
+
+    private static JsonObject account(int id, String phoneNumber) {
+        return new JsonObject()
+                .put("id", id)
+                .put("phoneNumber", phoneNumber)
+                .put("email", id == 42 ? "customer@pinhole.tech" : "customer" + id + "@pinhole.tech")
+                .put("firstName", "Pin")
+                .put("lastName", "Hole");
+    }
+}